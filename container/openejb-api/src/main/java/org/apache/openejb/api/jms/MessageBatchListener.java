@@ -0,0 +1,33 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.api.jms;
+
+import javax.jms.Message;
+import java.util.List;
+
+/**
+ * A message driven bean implementing this interface along with {@link javax.jms.MessageListener}
+ * and activated with a <code>batchSize</code> greater than 1 gets the messages of a delivery
+ * in batches, in a single invocation and transaction. <code>batchTimeout</code> (ms) bounds how long
+ * the first message of a batch waits for the next ones.
+ * <p/>
+ * An exception thrown by {@link #onMessages(List)} applies to the whole batch: a system exception rolls
+ * back the transaction, so every message of the batch is redelivered.
+ */
+public interface MessageBatchListener {
+    void onMessages(List<Message> messages);
+}
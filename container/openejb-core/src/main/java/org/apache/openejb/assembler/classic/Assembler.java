@@ -240,10 +240,12 @@ import java.util.Properties;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
@@ -267,6 +269,7 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
     public static final String TIMER_STORE_CLASS = "timerStore.class";
     private static final ReentrantLock lock = new ReentrantLock(true);
     public static final String OPENEJB_TIMERS_ON = "openejb.timers.on";
+    public static final String OPENEJB_DEPLOYMENT_PARALLELISM = "openejb.deployment.parallelism";
     public static final Class<?>[] VALIDATOR_FACTORY_INTERFACES = new Class<?>[]{ValidatorFactory.class};
     public static final Class<?>[] VALIDATOR_INTERFACES = new Class<?>[]{Validator.class};
     private final boolean skipLoaderIfPossible;
@@ -281,9 +284,9 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
     private TransactionManager transactionManager;
     private SecurityService securityService;
     protected OpenEjbConfigurationFactory configFactory;
-    private final Map<String, AppInfo> deployedApplications = new HashMap<String, AppInfo>();
-    private final Map<ObjectName, CreationalContext> creationalContextForAppMbeans = new HashMap<ObjectName, CreationalContext>();
-    private final Set<ObjectName> containerObjectNames = new HashSet<ObjectName>();
+    private final Map<String, AppInfo> deployedApplications = new ConcurrentHashMap<String, AppInfo>();
+    private final Map<ObjectName, CreationalContext> creationalContextForAppMbeans = new ConcurrentHashMap<ObjectName, CreationalContext>(); // apps can deploy in parallel
+    private final Set<ObjectName> containerObjectNames = Collections.newSetFromMap(new ConcurrentHashMap<ObjectName, Boolean>());
     private final RemoteResourceMonitor remoteResourceMonitor = new RemoteResourceMonitor();
 
     @Override
@@ -589,25 +592,66 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
 
         createJavaGlobal(); // before any deployment bind global to be able to share the same context
 
-        for (final AppInfo appInfo : containerSystemInfo.applications) {
-
+        final int parallelism = systemInstance.getOptions().get(OPENEJB_DEPLOYMENT_PARALLELISM, 1);
+        if (parallelism <= 1 || containerSystemInfo.applications.size() <= 1) {
+            for (final AppInfo appInfo : containerSystemInfo.applications) {
+                deployAtStartup(appInfo);
+            }
+        } else {
+            final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+            final ExecutorService es = Executors.newFixedThreadPool(parallelism, new DaemonThreadFactory("openejb-deployer-"));
             try {
-                createApplication(appInfo, createAppClassLoader(appInfo));
-            } catch (final DuplicateDeploymentIdException e) {
-                // already logged.
-            } catch (final Throwable e) {
-                logger.error("appNotDeployed", e, appInfo.path);
-
-                final DeploymentExceptionManager exceptionManager = systemInstance.getComponent(DeploymentExceptionManager.class);
-                if (exceptionManager != null && e instanceof Exception) {
-                    exceptionManager.saveDeploymentException(appInfo, (Exception) e);
+                for (final List<AppInfo> level : DeploymentLevels.levels(containerSystemInfo.applications)) {
+                    final Collection<Future<?>> deployments = new ArrayList<>(level.size());
+                    for (final AppInfo appInfo : level) {
+                        deployments.add(es.submit(new Runnable() {
+                            @Override
+                            public void run() {
+                                final Thread thread = Thread.currentThread();
+                                final ClassLoader old = thread.getContextClassLoader();
+                                thread.setContextClassLoader(loader);
+                                try {
+                                    deployAtStartup(appInfo);
+                                } finally {
+                                    thread.setContextClassLoader(old);
+                                }
+                            }
+                        }));
+                    }
+                    for (final Future<?> deployment : deployments) {
+                        try {
+                            deployment.get();
+                        } catch (final InterruptedException e) {
+                            Thread.interrupted();
+                            throw new OpenEJBException("Interrupted while deploying applications", e);
+                        } catch (final ExecutionException e) { // deployAtStartup logs failures, shouldn't happen
+                            logger.error(e.getMessage(), e.getCause());
+                        }
+                    }
                 }
+            } finally {
+                es.shutdownNow();
             }
         }
 
         systemInstance.fireEvent(new ContainerSystemPostCreate());
     }
 
+    private void deployAtStartup(final AppInfo appInfo) {
+        try {
+            createApplication(appInfo, createAppClassLoader(appInfo));
+        } catch (final DuplicateDeploymentIdException e) {
+            // already logged.
+        } catch (final Throwable e) {
+            logger.error("appNotDeployed", e, appInfo.path);
+
+            final DeploymentExceptionManager exceptionManager = SystemInstance.get().getComponent(DeploymentExceptionManager.class);
+            if (exceptionManager != null && e instanceof Exception) {
+                exceptionManager.saveDeploymentException(appInfo, (Exception) e);
+            }
+        }
+    }
+
     private static boolean hasBatchEE() {
         try {
             Class.forName("org.apache.batchee.container.services.ServicesManager", true, Assembler.class.getClassLoader());
@@ -859,20 +903,30 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
                 // JPA - Persistence Units MUST be processed first since they will add ClassFileTransformers
                 // to the class loader which must be added before any classes are loaded
                 final Map<String, String> units = new HashMap<String, String>();
+                final Collection<ReloadableEntityManagerFactory> bootstrappingUnits = new ArrayList<ReloadableEntityManagerFactory>();
                 final PersistenceBuilder persistenceBuilder = new PersistenceBuilder(persistenceClassLoaderHandler);
                 for (final PersistenceUnitInfo info : appInfo.persistenceUnits) {
                     final ReloadableEntityManagerFactory factory;
                     try {
                         factory = persistenceBuilder.createEntityManagerFactory(info, classLoader, validatorFactoriesByConfig, cdiActive);
+                    } catch (final Exception e) {
+                        throw new OpenEJBException(e);
+                    }
+                    try {
                         containerSystem.getJNDIContext().bind(PERSISTENCE_UNIT_NAMING_CONTEXT + info.id, factory);
                         units.put(info.name, PERSISTENCE_UNIT_NAMING_CONTEXT + info.id);
                     } catch (final NameAlreadyBoundException e) {
+                        factory.cancelCreation(); // not bound so not destroyed with the application
                         throw new OpenEJBException("PersistenceUnit already deployed: " + info.persistenceUnitRootUrl);
                     } catch (final Exception e) {
+                        factory.cancelCreation();
                         throw new OpenEJBException(e);
                     }
 
                     factory.register();
+                    if (factory.isCreating()) {
+                        bootstrappingUnits.add(factory);
+                    }
                 }
 
                 logger.debug("Loaded peristence units: " + units);
@@ -944,6 +998,11 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
                     }
                 }
 
+                // units bootstrapped in background while beans were built need to be there for startup beans
+                for (final ReloadableEntityManagerFactory factory : bootstrappingUnits) {
+                    factory.awaitCreation();
+                }
+
                 startEjbs(start, allDeployments);
 
                 // App Client
@@ -1402,13 +1461,15 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
         final String globalTimersOn = SystemInstance.get().getProperty(OPENEJB_TIMERS_ON, "true");
 
         final EjbJarBuilder ejbJarBuilder = new EjbJarBuilder(props, appContext);
+        final Map<EjbJarInfo, Future<HashMap<String, BeanContext>>> prebuilt = buildEjbJarsConcurrently(ejbJarBuilder, appInfo, webappId, injections, classLoader);
         for (final EjbJarInfo ejbJar : appInfo.ejbJars) {
 
             if (isSkip(appInfo, webappId, ejbJar)) {
                 continue;
             }
 
-            final HashMap<String, BeanContext> deployments = ejbJarBuilder.build(ejbJar, injections, classLoader);
+            final HashMap<String, BeanContext> deployments = prebuilt == null ?
+                    ejbJarBuilder.build(ejbJar, injections, classLoader) : getBuiltEjbJar(prebuilt.get(ejbJar));
 
             final JaccPermissionsBuilder jaccPermissionsBuilder = new JaccPermissionsBuilder();
             final PolicyContext policyContext = jaccPermissionsBuilder.build(ejbJar, deployments);
@@ -1532,6 +1593,58 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
         return ejbs;
     }
 
+    // building bean contexts (class loading, reflection, module jndi trees) doesn't touch shared state
+    // so modules are built concurrently, registration stays in the module order
+    private Map<EjbJarInfo, Future<HashMap<String, BeanContext>>> buildEjbJarsConcurrently(final EjbJarBuilder ejbJarBuilder, final AppInfo appInfo,
+                                                                                         final String webappId, final Set<Injection> injections,
+                                                                                         final ClassLoader classLoader) {
+        final int parallelism = SystemInstance.get().getOptions().get(OPENEJB_DEPLOYMENT_PARALLELISM, 1);
+        if (parallelism <= 1) {
+            return null;
+        }
+
+        final List<EjbJarInfo> modules = new ArrayList<EjbJarInfo>(appInfo.ejbJars.size());
+        for (final EjbJarInfo ejbJar : appInfo.ejbJars) {
+            if (!isSkip(appInfo, webappId, ejbJar)) {
+                modules.add(ejbJar);
+            }
+        }
+        if (modules.size() <= 1) {
+            return null;
+        }
+
+        final ExecutorService es = Executors.newFixedThreadPool(Math.min(parallelism, modules.size()), new DaemonThreadFactory("openejb-module-builder-"));
+        try {
+            final Map<EjbJarInfo, Future<HashMap<String, BeanContext>>> futures = new HashMap<EjbJarInfo, Future<HashMap<String, BeanContext>>>();
+            for (final EjbJarInfo ejbJar : modules) {
+                futures.put(ejbJar, es.submit(new Callable<HashMap<String, BeanContext>>() {
+                    @Override
+                    public HashMap<String, BeanContext> call() throws Exception {
+                        return ejbJarBuilder.build(ejbJar, injections, classLoader);
+                    }
+                }));
+            }
+            return futures;
+        } finally {
+            es.shutdown(); // submitted tasks still run
+        }
+    }
+
+    private static HashMap<String, BeanContext> getBuiltEjbJar(final Future<HashMap<String, BeanContext>> future) throws OpenEJBException {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.interrupted();
+            throw new OpenEJBException(e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (OpenEJBException.class.isInstance(cause)) {
+                throw OpenEJBException.class.cast(cause);
+            }
+            throw new OpenEJBException(cause);
+        }
+    }
+
     private boolean isSkip(final AppInfo appInfo, final String webappId, final EjbJarInfo ejbJar) {
         boolean skip = false;
         if (!appInfo.webAppAlone) {
@@ -2012,6 +2125,13 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
             }
         } else if (object instanceof ConnectorReference) {
             final ConnectorReference cr = (ConnectorReference) object;
+            if (DestroyableResource.class.isInstance(cr.getManagedConnectionFactory())) {
+                try {
+                    DestroyableResource.class.cast(cr.getManagedConnectionFactory()).destroyResource();
+                } catch (final RuntimeException e) {
+                    logger.error(e.getMessage(), e);
+                }
+            }
             try {
                 final ConnectionManager cm = cr.getConnectionManager();
                 if (cm != null && cm instanceof AbstractConnectionManager) {
@@ -2074,7 +2194,7 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
         l.lock();
 
         try {
-            final AppInfo appInfo = deployedApplications.remove(filePath);
+            final AppInfo appInfo = filePath == null ? null : deployedApplications.remove(filePath);
             if (appInfo == null) {
                 throw new NoSuchApplicationException(filePath);
             }
@@ -2335,7 +2455,11 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
 
                     // close EMF so all resources are released
                     final ReloadableEntityManagerFactory remf = (ReloadableEntityManagerFactory) object;
-                    remf.close();
+                    if (remf.isCreating()) { // the deployment failed before waiting for the background bootstrap
+                        remf.cancelCreation();
+                    } else {
+                        remf.close();
+                    }
                     persistenceClassLoaderHandler.destroy(unitInfo.id);
                     remf.unregister();
                 } catch (final Throwable t) {
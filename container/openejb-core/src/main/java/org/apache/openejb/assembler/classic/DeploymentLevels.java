@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.openejb.assembler.classic;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Groups applications in levels which can be deployed concurrently:
+ * an application is in a level after all applications owning an ejb it depends on
+ * (@DependsOn or ejb reference). Applications sharing a deployment id are kept ordered
+ * to let the second one fail as in a serial deployment.
+ *
+ * Order of the configuration is kept inside a level and cycles end up deployed one by one.
+ */
+public final class DeploymentLevels {
+    private DeploymentLevels() {
+        // no-op
+    }
+
+    public static List<List<AppInfo>> levels(final List<AppInfo> apps) {
+        final Map<String, AppInfo> owners = new HashMap<>();
+        final Map<AppInfo, Set<AppInfo>> dependencies = new HashMap<>();
+        for (final AppInfo app : apps) {
+            final Set<AppInfo> appDependencies = new HashSet<>();
+            dependencies.put(app, appDependencies);
+            for (final EjbJarInfo ejbJar : app.ejbJars) {
+                for (final EnterpriseBeanInfo bean : ejbJar.enterpriseBeans) {
+                    final AppInfo previous = owners.put(bean.ejbDeploymentId, app);
+                    if (previous != null && previous != app) {
+                        appDependencies.add(previous);
+                    }
+                }
+            }
+        }
+
+        for (final AppInfo app : apps) {
+            final Set<AppInfo> appDependencies = dependencies.get(app);
+            for (final String id : references(app)) {
+                final AppInfo owner = owners.get(id);
+                if (owner != null && owner != app) {
+                    appDependencies.add(owner);
+                }
+            }
+        }
+
+        final List<List<AppInfo>> levels = new ArrayList<>();
+        final Set<AppInfo> deployed = new HashSet<>();
+        final List<AppInfo> remaining = new ArrayList<>(apps);
+        while (!remaining.isEmpty()) {
+            final List<AppInfo> level = new ArrayList<>();
+            for (final AppInfo app : remaining) {
+                if (deployed.containsAll(dependencies.get(app))) {
+                    level.add(app);
+                }
+            }
+
+            if (level.isEmpty()) { // cycle, no way to guess so keep the configuration order
+                for (final AppInfo app : remaining) {
+                    final List<AppInfo> single = new ArrayList<>(1);
+                    single.add(app);
+                    levels.add(single);
+                }
+                break;
+            }
+
+            remaining.removeAll(level);
+            deployed.addAll(level);
+            levels.add(level);
+        }
+        return levels;
+    }
+
+    private static Collection<String> references(final AppInfo app) {
+        final Collection<String> ids = new LinkedHashSet<>();
+        for (final EjbJarInfo ejbJar : app.ejbJars) {
+            addReferences(ejbJar.moduleJndiEnc, ids);
+            for (final EnterpriseBeanInfo bean : ejbJar.enterpriseBeans) {
+                ids.addAll(bean.dependsOn);
+                addReferences(bean.jndiEnc, ids);
+            }
+        }
+        for (final WebAppInfo webApp : app.webApps) {
+            addReferences(webApp.jndiEnc, ids);
+        }
+        addReferences(app.appJndiEnc, ids);
+        addReferences(app.globalJndiEnc, ids);
+        return ids;
+    }
+
+    private static void addReferences(final JndiEncInfo jndiEnc, final Collection<String> ids) {
+        if (jndiEnc == null) {
+            return;
+        }
+        for (final EjbReferenceInfo ref : jndiEnc.ejbReferences) {
+            if (ref.ejbDeploymentId != null) {
+                ids.add(ref.ejbDeploymentId);
+            }
+        }
+        for (final EjbLocalReferenceInfo ref : jndiEnc.ejbLocalReferences) {
+            if (ref.ejbDeploymentId != null) {
+                ids.add(ref.ejbDeploymentId);
+            }
+        }
+    }
+}
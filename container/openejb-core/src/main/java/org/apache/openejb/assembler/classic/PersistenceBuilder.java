@@ -71,6 +71,8 @@ public class PersistenceBuilder {
 
         unitInfo.setLazilyInitialized(info.webappName != null || "true".equalsIgnoreCase(info.properties.getProperty("tomee.jpa.factory.lazy",
                 SystemInstance.get().getProperty("tomee.jpa.factory.lazy", "false"))));
+        unitInfo.setAsynchronouslyInitialized("true".equalsIgnoreCase(info.properties.getProperty("tomee.jpa.factory.async",
+                SystemInstance.get().getProperty("tomee.jpa.factory.async", "false"))));
 
         final Context context = SystemInstance.get().getComponent(ContainerSystem.class).getJNDIContext();
 
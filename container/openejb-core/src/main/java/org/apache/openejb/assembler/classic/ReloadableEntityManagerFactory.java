@@ -69,6 +69,9 @@ import java.net.URL;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 
 import static org.apache.openejb.monitoring.LocalMBeanServer.tabularData;
@@ -87,6 +90,8 @@ public class ReloadableEntityManagerFactory implements EntityManagerFactory, Ser
     private final PersistenceUnitInfoImpl unitInfoImpl;
     private ClassLoader classLoader;
     private volatile EntityManagerFactory delegate;
+    private volatile Future<Void> creation;
+    private boolean creationCancelled;
     private final EntityManagerFactoryCallable entityManagerFactoryCallable;
     private ObjectName objectName;
 
@@ -102,7 +107,78 @@ public class ReloadableEntityManagerFactory implements EntityManagerFactory, Ser
         logCriteriaJpqlLevel = logCriteriaQueryJpqlLevel(properties);
 
         if (!callable.getUnitInfo().isLazilyInitialized()) {
-            createDelegate();
+            if (callable.getUnitInfo().isAsynchronouslyInitialized()) {
+                final FutureTask<Void> task = new FutureTask<>(new Runnable() {
+                    @Override
+                    public void run() {
+                        createDelegate();
+                        synchronized (ReloadableEntityManagerFactory.this) {
+                            if (creationCancelled) {
+                                closeCreated();
+                            }
+                        }
+                    }
+                }, null);
+                creation = task;
+
+                final Thread thread = new Thread(task, "openejb-jpa-bootstrap-" + unitInfo.getPersistenceUnitName());
+                thread.setDaemon(true);
+                thread.start();
+            } else {
+                createDelegate();
+            }
+        }
+    }
+
+    public boolean isCreating() {
+        return creation != null;
+    }
+
+    /**
+     * Waits for the background bootstrap of the unit if any, failures are rethrown once.
+     */
+    public void awaitCreation() {
+        final Future<Void> task = creation;
+        if (task == null) {
+            return;
+        }
+        try {
+            task.get();
+        } catch (final InterruptedException e) {
+            Thread.interrupted();
+            throw new OpenEJBRuntimeException(e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (RuntimeException.class.isInstance(cause)) {
+                throw RuntimeException.class.cast(cause);
+            }
+            throw Error.class.cast(cause); // createDelegate() only throws unchecked exceptions
+        } finally {
+            creation = null;
+        }
+    }
+
+    /**
+     * Stops the background bootstrap of a unit whose deployment failed, a factory created meanwhile is closed.
+     */
+    public void cancelCreation() {
+        final Future<Void> task = creation;
+        if (task == null) {
+            return;
+        }
+        creation = null;
+        synchronized (this) {
+            creationCancelled = true;
+            closeCreated();
+        }
+        task.cancel(true);
+    }
+
+    private void closeCreated() {
+        final EntityManagerFactory emf = delegate;
+        delegate = null;
+        if (emf != null) {
+            emf.close();
         }
     }
 
@@ -118,6 +194,7 @@ public class ReloadableEntityManagerFactory implements EntityManagerFactory, Ser
 
     private EntityManagerFactory delegate() {
         if (delegate == null) {
+            awaitCreation();
             synchronized (this) {
                 if (delegate == null) {
                     createDelegate();
@@ -128,7 +205,7 @@ public class ReloadableEntityManagerFactory implements EntityManagerFactory, Ser
     }
 
     public void createDelegate() {
-        JPAThreadContext.infos.put("properties", entityManagerFactoryCallable.getUnitInfo().getProperties());
+        JPAThreadContext.infos.get().put("properties", entityManagerFactoryCallable.getUnitInfo().getProperties());
         final long start = System.nanoTime();
         try {
             delegate = entityManagerFactoryCallable.call();
@@ -143,7 +220,7 @@ public class ReloadableEntityManagerFactory implements EntityManagerFactory, Ser
                 }
             }
 
-            JPAThreadContext.infos.clear();
+            JPAThreadContext.infos.remove();
         }
     }
 
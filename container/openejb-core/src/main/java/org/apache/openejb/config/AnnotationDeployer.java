@@ -22,6 +22,7 @@ import org.apache.openejb.OpenEJBException;
 import org.apache.openejb.api.LocalClient;
 import org.apache.openejb.api.Proxy;
 import org.apache.openejb.api.RemoteClient;
+import org.apache.openejb.api.jms.MessageBatchListener;
 import org.apache.openejb.cdi.CdiBeanInfo;
 import org.apache.openejb.config.rules.CheckClasses;
 import org.apache.openejb.core.EmptyResourcesClassLoader;
@@ -2931,6 +2932,7 @@ public class AnnotationDeployer implements DynamicDeployer {
                             if (!name.equals("java.io.Serializable") &&
                                 !name.equals("java.io.Externalizable") &&
                                 !name.startsWith("javax.ejb.") &&
+                                !name.equals(MessageBatchListener.class.getName()) &&
                                 !intf.isSynthetic()) {
                                 interfaces.add(intf);
                             }
@@ -21,7 +21,6 @@ import org.apache.openejb.core.EmptyResourcesClassLoader;
 import org.apache.openejb.loader.SystemInstance;
 import org.apache.xbean.finder.archive.Archive;
 import org.apache.xbean.finder.archive.ClassesArchive;
-import org.apache.xbean.finder.archive.ClasspathArchive;
 import org.apache.xbean.finder.archive.CompositeArchive;
 import org.apache.xbean.finder.archive.FilteredArchive;
 import org.apache.xbean.finder.filter.Filter;
@@ -81,7 +80,7 @@ public class ConfigurableClasspathArchive extends CompositeArchive implements Sc
         try {
             final URL scanXml = new URLClassLoader(new URL[]{location}, new EmptyResourcesClassLoader()).getResource(name);
             if (scanXml == null && !forceDescriptor) {
-                return ClasspathArchive.archive(loader, location);
+                return ScanIndex.archive(loader, location);
             } else if (scanXml == null) {
                 return new ClassesArchive();
             }
@@ -101,7 +100,7 @@ public class ConfigurableClasspathArchive extends CompositeArchive implements Sc
             if (forceDescriptor) {
                 return new ClassesArchive();
             }
-            return ClasspathArchive.archive(loader, location);
+            return ScanIndex.archive(loader, location);
         }
     }
 
@@ -111,7 +110,7 @@ public class ConfigurableClasspathArchive extends CompositeArchive implements Sc
 
     public static Archive packageArchive(final Set<String> packageNames, final ClassLoader loader, final URL url) {
         if (!packageNames.isEmpty()) {
-            return new FilteredArchive(ClasspathArchive.archive(loader, url), filters(packageNames));
+            return new FilteredArchive(ScanIndex.archive(loader, url), filters(packageNames));
         }
         return null;
     }
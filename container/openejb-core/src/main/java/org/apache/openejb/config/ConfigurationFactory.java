@@ -440,6 +440,7 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
     }
 
     protected void install(final ContainerInfo serviceInfo) throws OpenEJBException {
+        DeploymentSnapshots.record(serviceInfo);
         if (sys != null) {
             sys.containerSystem.containers.add(serviceInfo);
         } else if (!offline) {
@@ -453,6 +454,7 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
     }
 
     protected void install(final ResourceInfo serviceInfo) throws OpenEJBException {
+        DeploymentSnapshots.record(serviceInfo);
         if (sys != null) {
             sys.facilities.resources.add(serviceInfo);
         } else if (!offline) {
@@ -851,6 +853,21 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
     public AppInfo configureApplication(final File jarFile) throws OpenEJBException {
         logger.debug("Beginning load: " + jarFile.getAbsolutePath());
 
+        String fingerprint = null;
+        if (DeploymentSnapshots.isActive()) {
+            try {
+                fingerprint = DeploymentSnapshots.fingerprint(jarFile, configLocation);
+                final AppInfo snapshot = restoreSnapshot(jarFile, fingerprint);
+                if (snapshot != null) {
+                    return snapshot;
+                }
+            } catch (final IOException e) {
+                logger.warning("Can't use deployment snapshot of " + jarFile.getAbsolutePath() + ": " + e.getMessage());
+                fingerprint = null;
+            }
+        }
+
+        final DeploymentSnapshots.Recorder recorder = fingerprint != null ? DeploymentSnapshots.startRecording() : null;
         try {
             final AppModule appModule = deploymentLoader.load(jarFile, null);
             final AppInfo appInfo = configureApplication(appModule);
@@ -870,6 +887,10 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
             // TODO This is temporary -- we need to do this in AppInfoBuilder
             appInfo.paths.add(appInfo.path);
             appInfo.paths.add(jarFile.getAbsolutePath());
+
+            if (recorder != null) {
+                DeploymentSnapshots.save(jarFile, fingerprint, appInfo, recorder);
+            }
             return appInfo;
         } catch (final ValidationFailedException e) {
             logger.warning("configureApplication.loadFailed", jarFile.getAbsolutePath(), e.getMessage()); // DO not include the stacktrace in the message
@@ -879,7 +900,34 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
             // removing this message causes NO messages to be printed when embedded
             logger.warning("configureApplication.loadFailed", e, jarFile.getAbsolutePath(), e.getMessage());
             throw e;
+        } finally {
+            if (recorder != null) {
+                DeploymentSnapshots.stopRecording(recorder);
+            }
+        }
+    }
+
+    private AppInfo restoreSnapshot(final File jarFile, final String fingerprint) throws OpenEJBException {
+        final DeploymentSnapshots.Snapshot snapshot = DeploymentSnapshots.load(jarFile, fingerprint);
+        if (snapshot == null) {
+            return null;
+        }
+
+        // replay what the configuration auto-created, another deployment can have done it already
+        final List<String> containerIds = getContainerIds();
+        for (final ContainerInfo containerInfo : snapshot.getContainers()) {
+            if (!containerIds.contains(containerInfo.id)) {
+                install(containerInfo);
+            }
+        }
+        for (final ResourceInfo resourceInfo : snapshot.getResources()) {
+            if (getResourceInfo(resourceInfo.id) == null) {
+                install(resourceInfo);
+            }
         }
+
+        logger.info("Using deployment snapshot of " + jarFile.getAbsolutePath());
+        return snapshot.getAppInfo();
     }
 
     /**
@@ -1031,6 +1079,9 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
 
             // add it as early as possible, the ones needing the app classloader will be added later
             Extensions.addExtensions(extensions);
+            if (!extensions.isEmpty() || !notLoaded.isEmpty()) { // can't be replayed without the module
+                DeploymentSnapshots.uncacheable();
+            }
 
             final String location = appModule.getJarLocation();
             logger.info("config.configApp", null != location ? location : appModule.getModuleId());
@@ -0,0 +1,328 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.openejb.config;
+
+import org.apache.openejb.assembler.classic.AppInfo;
+import org.apache.openejb.assembler.classic.ContainerInfo;
+import org.apache.openejb.assembler.classic.ResourceInfo;
+import org.apache.openejb.config.event.BeforeAppInfoBuilderEvent;
+import org.apache.openejb.loader.Files;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.util.HexConverter;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+import org.apache.openejb.util.OpenEjbVersion;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Opt-in cache of the configuration phase: the {@link AppInfo} built for an archive is serialized
+ * with the containers and resources auto-configured while building it. On the next boot, if the
+ * fingerprint of the archive (files, sizes, dates) and of the configuration (config file, openejb.*
+ * and tomee.* properties, version) didn't change the snapshot is used instead of running the deployer chain.
+ *
+ * Anything not replayable (server event extensions, {@link BeforeAppInfoBuilderEvent} observers,
+ * unserializable info) disables the snapshot
+ * of the archive, a missing or stale snapshot always falls back on the full configuration.
+ */
+public final class DeploymentSnapshots {
+    public static final String ACTIVE = "openejb.deployment.snapshot";
+    public static final String DIRECTORY = "openejb.deployment.snapshot.directory";
+
+    private static final Logger LOGGER = Logger.getInstance(LogCategory.OPENEJB_STARTUP_CONFIG, DeploymentSnapshots.class);
+    private static final int VERSION = 1;
+    private static final String EXTENSION = ".snapshot";
+    private static final ThreadLocal<Recorder> RECORDER = new ThreadLocal<>();
+
+    private DeploymentSnapshots() {
+        // no-op
+    }
+
+    public static boolean isActive() {
+        final SystemInstance systemInstance = SystemInstance.get();
+        // these observers work on the AppModule, a snapshot doesn't have it
+        return systemInstance.getOptions().get(ACTIVE, false) && !systemInstance.isObserved(BeforeAppInfoBuilderEvent.class);
+    }
+
+    public static String fingerprint(final File archive, final String configLocation) throws IOException {
+        final MessageDigest digest = sha1();
+        update(digest, "v" + VERSION + '/' + OpenEjbVersion.get().getVersion());
+        stat(digest, archive, "");
+        if (configLocation != null) {
+            stat(digest, new File(configLocation), "configuration");
+        }
+
+        // only the deployment properties, others (ports, pid, dates...) can change on each run
+        final Properties properties = SystemInstance.get().getProperties();
+        final Map<String, String> sorted = new TreeMap<>();
+        for (final Map.Entry<Object, Object> entry : properties.entrySet()) {
+            if (!String.class.isInstance(entry.getKey()) || !String.class.isInstance(entry.getValue())) {
+                continue;
+            }
+
+            final String key = String.class.cast(entry.getKey());
+            if (key.startsWith("openejb.") || key.startsWith("tomee.")) {
+                sorted.put(key, String.class.cast(entry.getValue()));
+            }
+        }
+        for (final Map.Entry<String, String> entry : sorted.entrySet()) {
+            update(digest, entry.getKey() + '=' + entry.getValue());
+        }
+        return HexConverter.bytesToHex(digest.digest());
+    }
+
+    public static Snapshot load(final File archive, final String fingerprint) {
+        final File file = file(archive);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try (final ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != VERSION || !fingerprint.equals(in.readUTF())) {
+                LOGGER.debug("Deployment snapshot of " + archive.getAbsolutePath() + " is outdated");
+                return null;
+            }
+
+            final Snapshot snapshot = Snapshot.class.cast(in.readObject());
+            if (!exists(snapshot.appInfo)) { // unpacked folders were deleted
+                return null;
+            }
+            return snapshot;
+        } catch (final Exception e) {
+            LOGGER.warning("Ignoring deployment snapshot " + file.getAbsolutePath() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    public static void save(final File archive, final String fingerprint, final AppInfo appInfo, final Recorder recorder) {
+        if (!recorder.cacheable) {
+            LOGGER.debug("Deployment of " + archive.getAbsolutePath() + " can't be snapshotted");
+            return;
+        }
+
+        // runtime only entries (finders for the web scanning)
+        final Map<Object, Object> runtime = new HashMap<>();
+        for (final Map.Entry<Object, Object> entry : appInfo.properties.entrySet()) {
+            if (!String.class.isInstance(entry.getKey()) || !String.class.isInstance(entry.getValue())) {
+                runtime.put(entry.getKey(), entry.getValue());
+            }
+        }
+        for (final Object key : runtime.keySet()) {
+            appInfo.properties.remove(key);
+        }
+
+        final File file = file(archive);
+        final File tmp = new File(file.getParentFile(), file.getName() + '.' + Thread.currentThread().getId() + '.' + System.nanoTime());
+        try {
+            Files.mkdirs(file.getParentFile());
+            try (final ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(VERSION);
+                out.writeUTF(fingerprint);
+                out.writeObject(new Snapshot(appInfo, recorder.containers, recorder.resources));
+            }
+            if (!tmp.renameTo(file)) {
+                Files.delete(file);
+                if (!tmp.renameTo(file)) {
+                    throw new IOException("Can't rename " + tmp.getAbsolutePath());
+                }
+            }
+            LOGGER.debug("Saved deployment snapshot of " + archive.getAbsolutePath());
+        } catch (final IOException | RuntimeException e) {
+            LOGGER.warning("Can't save deployment snapshot of " + archive.getAbsolutePath() + ": " + e.getMessage());
+            if (tmp.exists()) {
+                Files.delete(tmp);
+            }
+        } finally {
+            appInfo.properties.putAll(runtime);
+        }
+    }
+
+    public static Recorder startRecording() {
+        final Recorder recorder = new Recorder(RECORDER.get());
+        RECORDER.set(recorder);
+        return recorder;
+    }
+
+    public static void stopRecording(final Recorder recorder) {
+        if (recorder.parent != null) {
+            RECORDER.set(recorder.parent);
+        } else {
+            RECORDER.remove();
+        }
+    }
+
+    static void record(final ContainerInfo info) {
+        final Recorder recorder = RECORDER.get();
+        if (recorder != null && recorder.cacheable) {
+            final ContainerInfo copy = copy(info);
+            if (copy == null) {
+                recorder.cacheable = false;
+            } else {
+                recorder.containers.add(copy);
+            }
+        }
+    }
+
+    static void record(final ResourceInfo info) {
+        final Recorder recorder = RECORDER.get();
+        if (recorder != null && recorder.cacheable) {
+            final ResourceInfo copy = copy(info);
+            if (copy == null) {
+                recorder.cacheable = false;
+            } else {
+                recorder.resources.add(copy);
+            }
+        }
+    }
+
+    static void uncacheable() {
+        final Recorder recorder = RECORDER.get();
+        if (recorder != null) {
+            recorder.cacheable = false;
+        }
+    }
+
+    private static boolean exists(final AppInfo appInfo) {
+        if (appInfo.path != null && !new File(appInfo.path).exists()) {
+            return false;
+        }
+        for (final String lib : appInfo.libs) {
+            if (!new File(lib).exists()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // the installed infos are mutated by the assembler so keep what the configuration produced
+    private static <T extends Serializable> T copy(final T info) {
+        try {
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            try (final ObjectOutputStream out = new ObjectOutputStream(baos)) {
+                out.writeObject(info);
+            }
+            try (final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()))) {
+                return (T) in.readObject();
+            }
+        } catch (final Exception e) {
+            return null;
+        }
+    }
+
+    private static File file(final File archive) {
+        final MessageDigest digest = sha1();
+        update(digest, archive.getAbsolutePath());
+        return new File(directory(), archive.getName() + '-' + HexConverter.bytesToHex(digest.digest()).toLowerCase() + EXTENSION);
+    }
+
+    private static File directory() {
+        final String configured = SystemInstance.get().getOptions().get(DIRECTORY, (String) null);
+        if (configured != null) {
+            return new File(configured);
+        }
+        try {
+            return SystemInstance.get().getBase().getDirectory("work/deployment-snapshots", true);
+        } catch (final IOException e) {
+            return new File(System.getProperty("java.io.tmpdir"), "openejb-deployment-snapshots");
+        }
+    }
+
+    private static void stat(final MessageDigest digest, final File file, final String path) {
+        update(digest, path + '|' + file.length() + '|' + file.lastModified());
+        if (file.isDirectory()) {
+            final String[] children = file.list();
+            if (children != null) {
+                Arrays.sort(children);
+                for (final String child : children) {
+                    stat(digest, new File(file, child), path + '/' + child);
+                }
+            }
+        }
+    }
+
+    private static void update(final MessageDigest digest, final String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static final class Snapshot implements Serializable {
+        private final AppInfo appInfo;
+        private final List<ContainerInfo> containers;
+        private final List<ResourceInfo> resources;
+
+        private Snapshot(final AppInfo appInfo, final List<ContainerInfo> containers, final List<ResourceInfo> resources) {
+            this.appInfo = appInfo;
+            this.containers = containers;
+            this.resources = resources;
+        }
+
+        public AppInfo getAppInfo() {
+            return appInfo;
+        }
+
+        public List<ContainerInfo> getContainers() {
+            return containers;
+        }
+
+        public List<ResourceInfo> getResources() {
+            return resources;
+        }
+    }
+
+    /**
+     * Collects what the configuration of an archive installed outside of its {@link AppInfo}.
+     */
+    public static final class Recorder {
+        private final Recorder parent;
+        private final List<ContainerInfo> containers = new ArrayList<>();
+        private final List<ResourceInfo> resources = new ArrayList<>();
+        private boolean cacheable = true;
+
+        private Recorder(final Recorder parent) {
+            this.parent = parent;
+        }
+    }
+}
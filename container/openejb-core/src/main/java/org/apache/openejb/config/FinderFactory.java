@@ -27,13 +27,14 @@ import org.apache.openejb.jee.Servlet;
 import org.apache.openejb.jee.SessionBean;
 import org.apache.openejb.jee.WebserviceDescription;
 import org.apache.openejb.loader.SystemInstance;
+import org.apache.xbean.asm5.FieldVisitor;
+import org.apache.xbean.asm5.MethodVisitor;
 import org.apache.xbean.finder.Annotated;
 import org.apache.xbean.finder.AnnotationFinder;
 import org.apache.xbean.finder.IAnnotationFinder;
 import org.apache.xbean.finder.UrlSet;
 import org.apache.xbean.finder.archive.Archive;
 import org.apache.xbean.finder.archive.ClassesArchive;
-import org.apache.xbean.finder.archive.ClasspathArchive;
 
 import java.io.File;
 import java.io.IOException;
@@ -70,7 +71,7 @@ public class FinderFactory {
     }
 
     public static AnnotationFinder getFinder(final ClassLoader classLoader, final URL url) {
-        return newFinder(ClasspathArchive.archive(classLoader, url));
+        return newFinder(ScanIndex.archive(classLoader, url));
     }
 
     public IAnnotationFinder create(final DeploymentModule module) throws Exception {
@@ -565,6 +566,94 @@ public class FinderFactory {
         public boolean foundSomething() {
             return !classInfos.isEmpty();
         }
+
+        @Override
+        protected void readClassDef(final InputStream in) throws IOException {
+            if (in instanceof ScanIndex.IndexedBytecode) {
+                try {
+                    replay(ScanIndex.IndexedBytecode.class.cast(in).getRecord());
+                } finally {
+                    in.close();
+                }
+                return;
+            }
+
+            super.readClassDef(in);
+
+            if (in instanceof ScanIndex.RecordingBytecode) {
+                final ScanIndex.RecordingBytecode recording = ScanIndex.RecordingBytecode.class.cast(in);
+                final ClassInfo info = classInfos.get(recording.getName());
+                if (info != null) {
+                    recording.record(record(info));
+                }
+            }
+        }
+
+        // same visits as the ASM ClassReader would do with ASM_FLAGS
+        private void replay(final ScanIndex.ClassRecord record) {
+            final String[] interfaces = new String[record.getInterfaces().length];
+            for (int i = 0; i < interfaces.length; i++) {
+                interfaces[i] = ScanIndex.internalName(record.getInterfaces()[i]);
+            }
+
+            final InfoBuildingVisitor visitor = new InfoBuildingVisitor();
+            visitor.visit(0, 0, ScanIndex.internalName(record.getName()), null, ScanIndex.internalName(record.getSuperType()), interfaces);
+            for (final String annotation : record.getAnnotations()) {
+                visitor.visitAnnotation(ScanIndex.descriptor(annotation), true);
+            }
+            for (final ScanIndex.MemberRecord field : record.getFields()) {
+                final FieldVisitor fieldVisitor = visitor.visitField(0, field.getName(), field.getDescriptor(), null, null);
+                for (final String annotation : field.getAnnotations()) {
+                    fieldVisitor.visitAnnotation(ScanIndex.descriptor(annotation), true);
+                }
+            }
+            for (final ScanIndex.MemberRecord method : record.getMethods()) {
+                final MethodVisitor methodVisitor = visitor.visitMethod(0, method.getName(), method.getDescriptor(), null, null);
+                for (final String annotation : method.getAnnotations()) {
+                    methodVisitor.visitAnnotation(ScanIndex.descriptor(annotation), true);
+                }
+                final String[][] parameters = method.getParameterAnnotations();
+                for (int i = 0; i < parameters.length; i++) {
+                    for (final String annotation : parameters[i]) {
+                        methodVisitor.visitParameterAnnotation(i, ScanIndex.descriptor(annotation), true);
+                    }
+                }
+            }
+        }
+
+        private static ScanIndex.ClassRecord record(final ClassInfo info) {
+            final ScanIndex.MemberRecord[] fields = new ScanIndex.MemberRecord[info.getFields().size()];
+            int i = 0;
+            for (final FieldInfo field : info.getFields()) {
+                fields[i++] = new ScanIndex.MemberRecord(field.getName(), ScanIndex.descriptor(field.getType()), names(field.getAnnotations()), null);
+            }
+
+            final ScanIndex.MemberRecord[] methods = new ScanIndex.MemberRecord[info.getMethods().size()];
+            i = 0;
+            for (final MethodInfo method : info.getMethods()) {
+                final List<List<AnnotationInfo>> parameterAnnotations = method.getParameterAnnotations();
+                final String[][] parameters = new String[parameterAnnotations.size()][];
+                int p = 0;
+                for (final List<AnnotationInfo> annotations : parameterAnnotations) {
+                    parameters[p++] = names(annotations);
+                }
+                methods[i++] = new ScanIndex.MemberRecord(method.getName(), method.getDescriptor(), names(method.getAnnotations()), parameters);
+            }
+
+            return new ScanIndex.ClassRecord(
+                info.getName(), info.getSuperType(),
+                info.getInterfaces().toArray(new String[info.getInterfaces().size()]),
+                names(info.getAnnotations()), fields, methods);
+        }
+
+        private static String[] names(final List<AnnotationInfo> annotations) {
+            final String[] names = new String[annotations.size()];
+            int i = 0;
+            for (final AnnotationInfo annotation : annotations) {
+                names[i++] = annotation.getName();
+            }
+            return names;
+        }
     }
 
     public static class DoLoadClassesArchive extends ClassesArchive {
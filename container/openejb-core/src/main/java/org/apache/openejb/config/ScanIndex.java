@@ -0,0 +1,642 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.openejb.config;
+
+import org.apache.openejb.loader.Files;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.util.HexConverter;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.ClasspathArchive;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Persistent scanning index: for each scanned jar it stores what the annotation finder
+ * extracted from the bytecode (class hierarchy, annotations and member signatures) in a compact
+ * binary file. On the next boot an unchanged jar is replayed from its index instead of being
+ * decompressed and parsed again.
+ *
+ * Index files are keyed by the jar content and not by its location, either by name, size and
+ * last modified date (default) or by a SHA-1 of the bytes (openejb.scanning.index.key=hash),
+ * the last one allowing to generate them at build time (see tomee-maven-plugin scan-index goal).
+ */
+public final class ScanIndex {
+    public static final String ACTIVE = "openejb.scanning.index";
+    public static final String DIRECTORY = "openejb.scanning.index.directory";
+    public static final String KEY = "openejb.scanning.index.key";
+    public static final String KEY_TIMESTAMP = "timestamp";
+    public static final String KEY_HASH = "hash";
+
+    private static final Logger LOGGER = Logger.getInstance(LogCategory.OPENEJB_STARTUP_CONFIG, ScanIndex.class);
+
+    private static final int MAGIC = 0x4f534958; // OSIX
+    private static final int VERSION = 1;
+    private static final String EXTENSION = ".idx";
+    private static final String[] NO_STRING = new String[0];
+    private static final String[][] NO_PARAMETER = new String[0][];
+
+    private ScanIndex() {
+        // no-op
+    }
+
+    public static boolean isActive() {
+        return SystemInstance.get().getOptions().get(ACTIVE, false);
+    }
+
+    /**
+     * Same as {@link ClasspathArchive#archive(ClassLoader, URL)} but backed by the persistent index when active.
+     */
+    public static Archive archive(final ClassLoader loader, final URL location) {
+        final Archive archive = ClasspathArchive.archive(loader, location);
+        if (!isActive()) {
+            return archive;
+        }
+
+        final File jar = jar(location);
+        if (jar == null) { // folders change too often to be indexed
+            return archive;
+        }
+        return new IndexedArchive(archive, jar, directory(), KEY_HASH.equalsIgnoreCase(SystemInstance.get().getOptions().get(KEY, KEY_TIMESTAMP)));
+    }
+
+    /**
+     * Scans the whole jar and writes its index in the given directory.
+     *
+     * @param loader    loader used to resolve the jar classes
+     * @param jar       the jar to index
+     * @param directory the index directory
+     * @param hash      true to key the index by content hash (portable), false to use name, size and timestamp
+     * @return the index file
+     * @throws IOException if the index can't be written
+     */
+    public static File generate(final ClassLoader loader, final File jar, final File directory, final boolean hash) throws IOException {
+        final IndexedArchive archive = new IndexedArchive(ClasspathArchive.archive(loader, jar.toURI().toURL()), jar, directory, hash);
+        new FinderFactory.OpenEJBAnnotationFinder(archive); // recording is done by the finder
+        final File index = archive.indexFile();
+        if (!index.isFile()) {
+            throw new IOException("Can't write scanning index of " + jar.getAbsolutePath());
+        }
+        return index;
+    }
+
+    public static String key(final File jar, final boolean hash) throws IOException {
+        if (!hash) {
+            return jar.getName() + '-' + jar.length() + '-' + jar.lastModified();
+        }
+
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        final byte[] buffer = new byte[8192];
+        try (final InputStream is = new FileInputStream(jar)) {
+            int read;
+            while ((read = is.read(buffer)) >= 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexConverter.bytesToHex(digest.digest()).toLowerCase();
+    }
+
+    // ASM uses descriptors, finder infos use class names so convert back when replaying
+    public static String descriptor(final String className) {
+        int dimensions = 0;
+        String name = className;
+        while (name.endsWith("[]")) {
+            name = name.substring(0, name.length() - 2);
+            dimensions++;
+        }
+
+        final StringBuilder builder = new StringBuilder(name.length() + dimensions + 2);
+        for (int i = 0; i < dimensions; i++) {
+            builder.append('[');
+        }
+        switch (name) {
+            case "void":
+                return builder.append('V').toString();
+            case "boolean":
+                return builder.append('Z').toString();
+            case "char":
+                return builder.append('C').toString();
+            case "byte":
+                return builder.append('B').toString();
+            case "short":
+                return builder.append('S').toString();
+            case "int":
+                return builder.append('I').toString();
+            case "float":
+                return builder.append('F').toString();
+            case "long":
+                return builder.append('J').toString();
+            case "double":
+                return builder.append('D').toString();
+            default:
+                return builder.append('L').append(name.replace('.', '/')).append(';').toString();
+        }
+    }
+
+    public static String internalName(final String className) {
+        return className == null ? null : className.replace('.', '/');
+    }
+
+    private static File jar(final URL location) {
+        try {
+            final File file = Files.toFile(location);
+            return file.isFile() ? file : null;
+        } catch (final RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static File directory() {
+        final String configured = SystemInstance.get().getOptions().get(DIRECTORY, (String) null);
+        if (configured != null) {
+            return new File(configured);
+        }
+        try {
+            return SystemInstance.get().getBase().getDirectory("work/scan-index", true);
+        } catch (final IOException e) {
+            return new File(System.getProperty("java.io.tmpdir"), "openejb-scan-index");
+        }
+    }
+
+    static Map<String, ClassRecord> read(final File index, final Collection<String> names) throws IOException {
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(index)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+
+            final String[] strings = new String[in.readInt()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = in.readUTF();
+            }
+
+            final int count = in.readInt();
+            final Map<String, ClassRecord> records = new LinkedHashMap<>(count);
+            for (int i = 0; i < count; i++) {
+                final String name = strings[in.readInt()];
+                names.add(name);
+                if (!in.readBoolean()) {
+                    continue;
+                }
+
+                final int superType = in.readInt();
+                final String[] interfaces = readStrings(in, strings);
+                final String[] annotations = readStrings(in, strings);
+                final MemberRecord[] fields = readMembers(in, strings);
+                final MemberRecord[] methods = readMembers(in, strings);
+                records.put(name, new ClassRecord(name, superType < 0 ? null : strings[superType], interfaces, annotations, fields, methods));
+            }
+            return records;
+        }
+    }
+
+    static void write(final File index, final Collection<String> names, final Map<String, ClassRecord> records) throws IOException {
+        final Map<String, Integer> strings = new LinkedHashMap<>();
+        for (final String name : names) {
+            index(strings, name);
+            final ClassRecord record = records.get(name);
+            if (record == null) {
+                continue;
+            }
+            index(strings, record.superType);
+            index(strings, record.interfaces);
+            index(strings, record.annotations);
+            for (final MemberRecord member : record.fields) {
+                index(strings, member);
+            }
+            for (final MemberRecord member : record.methods) {
+                index(strings, member);
+            }
+        }
+
+        final File parent = index.getParentFile();
+        Files.mkdirs(parent);
+
+        // write aside and rename to never expose a partial index to a concurrent reader
+        final File tmp = new File(parent, index.getName() + '.' + Thread.currentThread().getId() + '.' + System.nanoTime());
+        try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            out.writeInt(strings.size());
+            for (final String string : strings.keySet()) {
+                out.writeUTF(string);
+            }
+
+            out.writeInt(names.size());
+            for (final String name : names) {
+                out.writeInt(strings.get(name));
+
+                final ClassRecord record = records.get(name);
+                out.writeBoolean(record != null);
+                if (record == null) {
+                    continue;
+                }
+
+                out.writeInt(record.superType == null ? -1 : strings.get(record.superType));
+                writeStrings(out, strings, record.interfaces);
+                writeStrings(out, strings, record.annotations);
+                writeMembers(out, strings, record.fields);
+                writeMembers(out, strings, record.methods);
+            }
+        }
+
+        if (!tmp.renameTo(index)) {
+            Files.delete(index);
+            if (!tmp.renameTo(index)) {
+                Files.delete(tmp);
+                throw new IOException("Can't rename " + tmp.getAbsolutePath() + " to " + index.getAbsolutePath());
+            }
+        }
+    }
+
+    private static void index(final Map<String, Integer> strings, final MemberRecord member) {
+        index(strings, member.name);
+        index(strings, member.descriptor);
+        index(strings, member.annotations);
+        for (final String[] parameter : member.parameterAnnotations) {
+            index(strings, parameter);
+        }
+    }
+
+    private static void index(final Map<String, Integer> strings, final String... values) {
+        for (final String value : values) {
+            if (value != null && !strings.containsKey(value)) {
+                strings.put(value, strings.size());
+            }
+        }
+    }
+
+    private static void writeStrings(final DataOutputStream out, final Map<String, Integer> strings, final String[] values) throws IOException {
+        out.writeInt(values.length);
+        for (final String value : values) {
+            out.writeInt(strings.get(value));
+        }
+    }
+
+    private static String[] readStrings(final DataInputStream in, final String[] strings) throws IOException {
+        final int length = in.readInt();
+        if (length == 0) {
+            return NO_STRING;
+        }
+        final String[] values = new String[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = strings[in.readInt()];
+        }
+        return values;
+    }
+
+    private static void writeMembers(final DataOutputStream out, final Map<String, Integer> strings, final MemberRecord[] members) throws IOException {
+        out.writeInt(members.length);
+        for (final MemberRecord member : members) {
+            out.writeInt(strings.get(member.name));
+            out.writeInt(strings.get(member.descriptor));
+            writeStrings(out, strings, member.annotations);
+            out.writeInt(member.parameterAnnotations.length);
+            for (final String[] parameter : member.parameterAnnotations) {
+                writeStrings(out, strings, parameter);
+            }
+        }
+    }
+
+    private static MemberRecord[] readMembers(final DataInputStream in, final String[] strings) throws IOException {
+        final MemberRecord[] members = new MemberRecord[in.readInt()];
+        for (int i = 0; i < members.length; i++) {
+            final String name = strings[in.readInt()];
+            final String descriptor = strings[in.readInt()];
+            final String[] annotations = readStrings(in, strings);
+            final int parameters = in.readInt();
+            final String[][] parameterAnnotations = parameters == 0 ? NO_PARAMETER : new String[parameters][];
+            for (int p = 0; p < parameters; p++) {
+                parameterAnnotations[p] = readStrings(in, strings);
+            }
+            members[i] = new MemberRecord(name, descriptor, annotations, parameterAnnotations);
+        }
+        return members;
+    }
+
+    /**
+     * What the finder needs from a class, annotations are stored by class name.
+     */
+    public static final class ClassRecord {
+        private final String name;
+        private final String superType;
+        private final String[] interfaces;
+        private final String[] annotations;
+        private final MemberRecord[] fields;
+        private final MemberRecord[] methods;
+
+        public ClassRecord(final String name, final String superType, final String[] interfaces, final String[] annotations,
+                           final MemberRecord[] fields, final MemberRecord[] methods) {
+            this.name = name;
+            this.superType = superType;
+            this.interfaces = interfaces;
+            this.annotations = annotations;
+            this.fields = fields;
+            this.methods = methods;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getSuperType() {
+            return superType;
+        }
+
+        public String[] getInterfaces() {
+            return interfaces;
+        }
+
+        public String[] getAnnotations() {
+            return annotations;
+        }
+
+        public MemberRecord[] getFields() {
+            return fields;
+        }
+
+        public MemberRecord[] getMethods() {
+            return methods;
+        }
+    }
+
+    public static final class MemberRecord {
+        private final String name;
+        private final String descriptor;
+        private final String[] annotations;
+        private final String[][] parameterAnnotations;
+
+        public MemberRecord(final String name, final String descriptor, final String[] annotations, final String[][] parameterAnnotations) {
+            this.name = name;
+            this.descriptor = descriptor;
+            this.annotations = annotations;
+            this.parameterAnnotations = parameterAnnotations == null ? NO_PARAMETER : parameterAnnotations;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDescriptor() {
+            return descriptor;
+        }
+
+        public String[] getAnnotations() {
+            return annotations;
+        }
+
+        public String[][] getParameterAnnotations() {
+            return parameterAnnotations;
+        }
+    }
+
+    /**
+     * Bytecode of an indexed class: the finder replays the record instead of reading it,
+     * any other reader gets the real bytecode lazily.
+     */
+    public static final class IndexedBytecode extends InputStream {
+        private final IndexedArchive archive;
+        private final ClassRecord record;
+        private InputStream delegate;
+
+        private IndexedBytecode(final IndexedArchive archive, final ClassRecord record) {
+            this.archive = archive;
+            this.record = record;
+        }
+
+        public ClassRecord getRecord() {
+            return record;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return delegate().read();
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            return delegate().read(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (delegate != null) {
+                delegate.close();
+            }
+        }
+
+        private InputStream delegate() throws IOException {
+            if (delegate == null) {
+                delegate = archive.bytecode(record.getName());
+            }
+            return delegate;
+        }
+    }
+
+    /**
+     * Bytecode of a class not yet indexed, the finder hands back what it read through {@link #record(ClassRecord)}.
+     */
+    public static final class RecordingBytecode extends FilterInputStream {
+        private final IndexedArchive archive;
+        private final String name;
+
+        private RecordingBytecode(final IndexedArchive archive, final String name, final InputStream delegate) {
+            super(delegate);
+            this.archive = archive;
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void record(final ClassRecord record) {
+            archive.records.put(name, record);
+            archive.dirty = true;
+        }
+    }
+
+    private static final class IndexedArchive implements Archive {
+        private final Archive delegate;
+        private final File jar;
+        private final File directory;
+        private final boolean hash;
+        private final ConcurrentMap<String, ClassRecord> records = new ConcurrentHashMap<>();
+        private volatile File index;
+        private volatile boolean dirty;
+
+        private IndexedArchive(final Archive delegate, final File jar, final File directory, final boolean hash) {
+            this.delegate = delegate;
+            this.jar = jar;
+            this.directory = directory;
+            this.hash = hash;
+        }
+
+        @Override
+        public InputStream getBytecode(final String className) throws IOException, ClassNotFoundException {
+            final ClassRecord record = records.get(className);
+            if (record != null) {
+                return new IndexedBytecode(this, record);
+            }
+            return delegate.getBytecode(className);
+        }
+
+        @Override
+        public Class<?> loadClass(final String className) throws ClassNotFoundException {
+            return delegate.loadClass(className);
+        }
+
+        @Override
+        public Iterator<Entry> iterator() {
+            final File file = indexFile();
+            if (file != null && file.isFile()) {
+                final List<String> names = new ArrayList<>();
+                try {
+                    final Map<String, ClassRecord> indexed = read(file, names);
+                    if (indexed != null) {
+                        records.putAll(indexed);
+                        return new IndexIterator(names.iterator());
+                    }
+                } catch (final IOException e) {
+                    LOGGER.warning("Ignoring corrupted scanning index " + file.getAbsolutePath() + ": " + e.getMessage());
+                }
+                records.clear();
+            }
+            dirty = true;
+            return new IndexIterator(delegate.iterator());
+        }
+
+        private InputStream bytecode(final String name) throws IOException {
+            try {
+                return delegate.getBytecode(name);
+            } catch (final ClassNotFoundException e) {
+                throw new IOException(e);
+            }
+        }
+
+        private File indexFile() {
+            if (index == null) {
+                try {
+                    index = new File(directory, key(jar, hash) + EXTENSION);
+                } catch (final IOException e) {
+                    LOGGER.warning("Can't compute scanning index key of " + jar.getAbsolutePath() + ": " + e.getMessage());
+                }
+            }
+            return index;
+        }
+
+        private void save(final Collection<String> names) {
+            final File file = indexFile();
+            if (!dirty || file == null) {
+                return;
+            }
+            try {
+                write(file, names, records);
+                dirty = false;
+                LOGGER.debug("Wrote scanning index " + file.getAbsolutePath() + " for " + jar.getAbsolutePath());
+            } catch (final IOException | RuntimeException e) {
+                LOGGER.warning("Can't write scanning index of " + jar.getAbsolutePath() + ": " + e.getMessage());
+            }
+        }
+
+        // iterates either the index names or the real archive and saves the index once done if something changed
+        private class IndexIterator implements Iterator<Entry> {
+            private final Iterator<?> names;
+            private final List<String> seen = new ArrayList<>();
+            private boolean done;
+
+            private IndexIterator(final Iterator<?> names) {
+                this.names = names;
+            }
+
+            @Override
+            public boolean hasNext() {
+                final boolean hasNext = names.hasNext();
+                if (!hasNext && !done) {
+                    done = true;
+                    save(seen);
+                }
+                return hasNext;
+            }
+
+            @Override
+            public Entry next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                final Object next = names.next();
+                final Entry raw = Entry.class.isInstance(next) ? Entry.class.cast(next) : null;
+                final String name = raw != null ? raw.getName() : String.class.cast(next);
+                seen.add(name);
+                return new Entry() {
+                    @Override
+                    public String getName() {
+                        return name;
+                    }
+
+                    @Override
+                    public InputStream getBytecode() throws IOException {
+                        final ClassRecord record = records.get(name);
+                        if (record != null) {
+                            return new IndexedBytecode(IndexedArchive.this, record);
+                        }
+
+                        final InputStream bytecode = raw != null ? raw.getBytecode() : bytecode(name);
+                        if (name.endsWith("package-info")) { // not a class, not worth indexing
+                            return bytecode;
+                        }
+                        return new RecordingBytecode(IndexedArchive.this, name, bytecode);
+                    }
+                };
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        }
+    }
+}
@@ -57,4 +57,8 @@ public class ConnectorReference extends Reference {
     public ConnectionManager getConnectionManager() {
         return conMngr;
     }
+
+    public ManagedConnectionFactory getManagedConnectionFactory() {
+        return mngedConFactory;
+    }
 }
\ No newline at end of file
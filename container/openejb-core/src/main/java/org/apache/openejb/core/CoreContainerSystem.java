@@ -32,6 +32,8 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * @org.apache.xbean.XBean element="containerSystem"
@@ -41,7 +43,7 @@ public class CoreContainerSystem implements ContainerSystem {
     private final Map<Object, AppContext> apps = new ConcurrentHashMap<Object, AppContext>();
     private final Map<Object, BeanContext> deployments = new ConcurrentHashMap<Object, BeanContext>();
     private final Map<Object, Container> containers = new ConcurrentHashMap<Object, Container>();
-    private final Map<String, List<WebContext>> webDeployments = new ConcurrentHashMap<String, List<WebContext>>();
+    private final ConcurrentMap<String, List<WebContext>> webDeployments = new ConcurrentHashMap<String, List<WebContext>>();
     private final Context jndiContext;
 
     /**
@@ -151,9 +153,12 @@ public class CoreContainerSystem implements ContainerSystem {
     public void addWebContext(final WebContext webDeployment) {
         final String id = webDeployment.getId();
         List<WebContext> list = this.webDeployments.get(id);
-        if (list == null) {
-            list = new ArrayList<WebContext>();
-            this.webDeployments.put(id, list);
+        if (list == null) { // webapps can be deployed in parallel
+            list = new CopyOnWriteArrayList<WebContext>();
+            final List<WebContext> existing = this.webDeployments.putIfAbsent(id, list);
+            if (existing != null) {
+                list = existing;
+            }
         }
         list.add(webDeployment);
     }
@@ -56,6 +56,8 @@ import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.Vector;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /*
 * This class wrappers a specific NameNode which is the data model for the JNDI
@@ -68,6 +70,7 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class IvmContext implements Context, Serializable {
     private static final long serialVersionUID = -626353930051783641L;
+    private static final ReentrantReadWriteLock LOCK = new ReentrantReadWriteLock(); // name trees are not thread safe, applications can be deployed concurrently
     Hashtable<String, Object> myEnv;
     boolean readOnly;
     Map<String, Object> fastCache = new ConcurrentHashMap<String, Object>();
@@ -146,7 +149,7 @@ public class IvmContext implements Context, Serializable {
         Object obj = fastCache.get(compoundName);
         if (obj == null) {
             try {
-                obj = mynode.resolve(new ParsedName(compoundName));
+                obj = resolve(new ParsedName(compoundName));
             } catch (final NameNotFoundException nnfe) {
                 obj = federate(compositName);
             }
@@ -179,6 +182,20 @@ public class IvmContext implements Context, Serializable {
         return obj;
     }
 
+    private Object resolve(final ParsedName name) throws NameNotFoundException {
+        LOCK.readLock().lock();
+        try {
+            return mynode.resolve(name);
+        } finally {
+            LOCK.readLock().unlock();
+        }
+    }
+
+    private static Lock writeLock() {
+        // a read lock can't be upgraded, a binding made while a federated lookup is resolved keeps the lock of the lookup
+        return LOCK.getReadHoldCount() > 0 ? LOCK.readLock() : LOCK.writeLock();
+    }
+
     protected Object federate(final String compositName) throws NamingException {
         final ObjectFactory[] factories = getFederatedFactories();
         for (final ObjectFactory factory : factories) {
@@ -305,7 +322,13 @@ public class IvmContext implements Context, Serializable {
             throw new NameAlreadyBoundException();
         } else {
             final ParsedName parsedName = new ParsedName(name);
-            mynode.bind(parsedName, obj);
+            final Lock lock = writeLock();
+            lock.lock();
+            try {
+                mynode.bind(parsedName, obj);
+            } finally {
+                lock.unlock();
+            }
         }
     }
 
@@ -337,9 +360,15 @@ public class IvmContext implements Context, Serializable {
             name = name.substring(indx + 1);
         }
         fastCache.clear();
-        mynode.clearCache();
 
-        mynode.unbind(new ParsedName(name));
+        final Lock lock = writeLock();
+        lock.lock();
+        try {
+            mynode.clearCache();
+            mynode.unbind(new ParsedName(name));
+        } finally {
+            lock.unlock();
+        }
     }
 
     public void unbind(final Name name) throws NamingException {
@@ -352,7 +381,13 @@ public class IvmContext implements Context, Serializable {
     }
 
     public void prune() throws NamingException {
-        mynode.prune();
+        final Lock lock = writeLock();
+        lock.lock();
+        try {
+            mynode.prune();
+        } finally {
+            lock.unlock();
+        }
     }
 
     public void rename(final String oldname, final String newname) throws NamingException {
@@ -410,7 +445,13 @@ public class IvmContext implements Context, Serializable {
         if (fastCache.containsKey(name)) {
             throw new NameAlreadyBoundException();
         } else {
-            return mynode.createSubcontext(new ParsedName(name));
+            final Lock lock = writeLock();
+            lock.lock();
+            try {
+                return mynode.createSubcontext(new ParsedName(name));
+            } finally {
+                lock.unlock();
+            }
         }
     }
 
@@ -523,16 +564,21 @@ public class IvmContext implements Context, Serializable {
         public MyNamingEnumeration(final NameNode parentNode) {
             final Vector vect = new Vector();
 
-            NameNode node = parentNode.getSubTree();
+            LOCK.readLock().lock();
+            try {
+                NameNode node = parentNode.getSubTree();
+
+                if (node == null) {
+                    node = parentNode;
+                } else {
+                    vect.addElement(node);
+                }
 
-            if (node == null) {
-                node = parentNode;
-            } else {
-                vect.addElement(node);
+                gatherNodes(node, vect);
+            } finally {
+                LOCK.readLock().unlock();
             }
 
-            gatherNodes(node, vect);
-
             buildEnumeration(vect);
         }
 
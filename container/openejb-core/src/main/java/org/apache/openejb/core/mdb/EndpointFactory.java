@@ -18,6 +18,7 @@
 package org.apache.openejb.core.mdb;
 
 import org.apache.openejb.BeanContext;
+import org.apache.openejb.api.jms.MessageBatchListener;
 import org.apache.openejb.core.transaction.TransactionType;
 import org.apache.openejb.resource.XAResourceWrapper;
 import org.apache.openejb.util.proxy.LocalBeanProxyFactory;
@@ -43,8 +44,22 @@ public class EndpointFactory implements MessageEndpointFactory {
     private final XAResourceWrapper xaResourceWrapper;
     protected final List<ObjectName> jmxNames = new ArrayList<ObjectName>();
     private final Class<?> proxy;
+    private final Method batchMethod;
+    private final int batchSize;
+    private final long batchTimeout;
+    private final MdbAutoScaler scaler;
 
     public EndpointFactory(final ActivationSpec activationSpec, final MdbContainer container, final BeanContext beanContext, final MdbInstanceFactory instanceFactory, final XAResourceWrapper xaResourceWrapper) {
+        this(activationSpec, container, beanContext, instanceFactory, xaResourceWrapper, 1, 0);
+    }
+
+    public EndpointFactory(final ActivationSpec activationSpec, final MdbContainer container, final BeanContext beanContext, final MdbInstanceFactory instanceFactory, final XAResourceWrapper xaResourceWrapper,
+                           final int batchSize, final long batchTimeout) {
+        this(activationSpec, container, beanContext, instanceFactory, xaResourceWrapper, batchSize, batchTimeout, null);
+    }
+
+    public EndpointFactory(final ActivationSpec activationSpec, final MdbContainer container, final BeanContext beanContext, final MdbInstanceFactory instanceFactory, final XAResourceWrapper xaResourceWrapper,
+                           final int batchSize, final long batchTimeout, final MdbAutoScaler scaler) {
         this.activationSpec = activationSpec;
         this.container = container;
         this.beanContext = beanContext;
@@ -60,6 +75,19 @@ public class EndpointFactory implements MessageEndpointFactory {
         } else {
             proxy = proxyClass.getProxy();
         }
+
+        this.batchSize = batchSize;
+        this.batchTimeout = batchTimeout;
+        this.scaler = scaler;
+        if (batchSize > 1 && MessageBatchListener.class.isAssignableFrom(beanContext.getBeanClass())) {
+            try {
+                batchMethod = beanContext.getBeanClass().getMethod("onMessages", List.class);
+            } catch (final NoSuchMethodException e) {
+                throw new IllegalStateException(e);
+            }
+        } else {
+            batchMethod = null;
+        }
     }
 
     public ActivationSpec getActivationSpec() {
@@ -70,12 +98,19 @@ public class EndpointFactory implements MessageEndpointFactory {
         return instanceFactory;
     }
 
+    /**
+     * @return the auto-scaler of the bean or null if its concurrency is fixed
+     */
+    public MdbAutoScaler getAutoScaler() {
+        return scaler;
+    }
+
     @Override
     public MessageEndpoint createEndpoint(XAResource xaResource) throws UnavailableException {
         if (xaResource != null && xaResourceWrapper != null) {
             xaResource = xaResourceWrapper.wrap(xaResource, container.getContainerID().toString());
         }
-        final EndpointHandler endpointHandler = new EndpointHandler(container, beanContext, instanceFactory, xaResource);
+        final EndpointHandler endpointHandler = new EndpointHandler(container, beanContext, instanceFactory, xaResource, batchMethod, batchSize, batchTimeout, scaler);
         try {
             return (MessageEndpoint) LocalBeanProxyFactory.constructProxy(proxy, endpointHandler);
         } catch (final InternalError e) { // should be useless
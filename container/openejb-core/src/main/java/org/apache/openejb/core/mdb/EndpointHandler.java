@@ -22,6 +22,8 @@ import org.apache.openejb.BeanContext;
 import org.apache.openejb.SystemException;
 import org.apache.openejb.resource.activemq.jms2.DelegateMessage;
 import org.apache.openejb.resource.activemq.jms2.JMS2;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
 
 import javax.ejb.EJBException;
 import javax.jms.Message;
@@ -31,9 +33,13 @@ import javax.resource.spi.endpoint.MessageEndpoint;
 import javax.transaction.xa.XAResource;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 public class EndpointHandler implements InvocationHandler, MessageEndpoint {
+    private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB, "org.apache.openejb.util.resources");
+
     private volatile Boolean isAmq;
 
     private static enum State {
@@ -72,14 +78,44 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
     private final MdbInstanceFactory instanceFactory;
     private final XAResource xaResource;
 
+    /**
+     * The MessageBatchListener.onMessages method of the bean when messages are delivered in batches, otherwise null.
+     */
+    private final Method batchMethod;
+    private final int batchSize;
+    private final long batchTimeout;
+
+    /**
+     * Gate of the concurrent deliveries when the bean is auto-scaled, otherwise null.
+     */
+    private final MdbAutoScaler scaler;
+
     private State state = State.NONE;
     private Object instance;
+    private final List<Message> batch;
+    private long batchStart;
+    private boolean permit;
 
     public EndpointHandler(final MdbContainer container, final BeanContext deployment, final MdbInstanceFactory instanceFactory, final XAResource xaResource) throws UnavailableException {
+        this(container, deployment, instanceFactory, xaResource, null, 1, 0);
+    }
+
+    public EndpointHandler(final MdbContainer container, final BeanContext deployment, final MdbInstanceFactory instanceFactory, final XAResource xaResource,
+                           final Method batchMethod, final int batchSize, final long batchTimeout) throws UnavailableException {
+        this(container, deployment, instanceFactory, xaResource, batchMethod, batchSize, batchTimeout, null);
+    }
+
+    public EndpointHandler(final MdbContainer container, final BeanContext deployment, final MdbInstanceFactory instanceFactory, final XAResource xaResource,
+                           final Method batchMethod, final int batchSize, final long batchTimeout, final MdbAutoScaler scaler) throws UnavailableException {
         this.container = container;
         this.deployment = deployment;
         this.instanceFactory = instanceFactory;
         this.xaResource = xaResource;
+        this.batchMethod = batchMethod;
+        this.batchSize = batchSize;
+        this.batchTimeout = batchTimeout;
+        this.scaler = scaler;
+        this.batch = batchMethod == null ? null : new ArrayList<Message>(batchSize);
         instance = instanceFactory.createInstance(false);
     }
 
@@ -189,10 +225,14 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
                 throw new IllegalStateException("The last message delivery must be completed with an afterDeliver before beforeDeliver can be called again");
         }
 
+        // wait for the auto-scaler to let this endpoint deliver
+        acquirePermit();
+
         // call beforeDelivery on the container
         try {
             container.beforeDelivery(deployment, instance, method, xaResource);
         } catch (final SystemException se) {
+            releasePermit();
             final Throwable throwable = se.getRootCause() != null ? se.getRootCause() : se;
             throw new ApplicationServerInternalException(throwable);
         }
@@ -201,6 +241,26 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
         state = State.BEFORE_CALLED;
     }
 
+    private void acquirePermit() throws ApplicationServerInternalException {
+        if (scaler == null || permit) {
+            return;
+        }
+        try {
+            scaler.acquire();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApplicationServerInternalException(e);
+        }
+        permit = true;
+    }
+
+    private void releasePermit() {
+        if (permit) {
+            permit = false;
+            scaler.release();
+        }
+    }
+
     public Object deliverMessage(final Method method, final Object[] args) throws Throwable {
 
         boolean callBeforeAfter = false;
@@ -219,9 +279,11 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
             case BEFORE_CALLED:
                 state = State.METHOD_CALLED;
                 break;
+            case METHOD_CALLED:
+                // another message in the same transaction
+                break;
             case RELEASED:
                 throw new IllegalStateException("Message endpoint factory has been released");
-            case METHOD_CALLED:
             case SYSTEM_EXCEPTION:
                 throw new IllegalStateException("The last message delivery must be completed with an afterDeliver before another message can be delivered");
         }
@@ -229,8 +291,16 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
         Throwable throwable = null;
         Object value = null;
         try {
-            // deliver the message
-            value = container.invoke(instance, method, null, wrapMessageForAmq5(args));
+            if (isBatched(args)) {
+                // buffered until the batch is full, late or the delivery ends
+                addToBatch((Message) wrapMessageForAmq5(args)[0]);
+                if (callBeforeAfter || isBatchReady()) {
+                    flushBatch();
+                }
+            } else {
+                // deliver the message
+                value = container.invoke(instance, method, null, wrapMessageForAmq5(args));
+            }
         } catch (final SystemException se) {
             throwable = se.getRootCause() != null ? se.getRootCause() : se;
             state = State.SYSTEM_EXCEPTION;
@@ -260,6 +330,44 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
         return value;
     }
 
+    private boolean isBatched(final Object[] args) {
+        return batchMethod != null && args != null && args.length == 1 && args[0] instanceof Message;
+    }
+
+    private void addToBatch(final Message message) {
+        if (batch.isEmpty()) {
+            batchStart = System.currentTimeMillis();
+        }
+        batch.add(message);
+    }
+
+    private boolean isBatchReady() {
+        return batch.size() >= batchSize || batchTimeout > 0 && System.currentTimeMillis() - batchStart >= batchTimeout;
+    }
+
+    private void flushBatch() throws SystemException, ApplicationException {
+        if (batch == null || batch.isEmpty()) {
+            return;
+        }
+
+        // the bean may keep the list
+        final List<Message> messages = new ArrayList<Message>(batch);
+        batch.clear();
+        container.invoke(instance, batchMethod, null, messages);
+    }
+
+    private Throwable flushBatchInTransaction() {
+        try {
+            flushBatch();
+            return null;
+        } catch (final SystemException se) {
+            state = State.SYSTEM_EXCEPTION;
+            return se.getRootCause() != null ? se.getRootCause() : se;
+        } catch (final ApplicationException ae) {
+            return ae.getRootCause() != null ? ae.getRootCause() : ae;
+        }
+    }
+
     // workaround for AMQ 5/JMS 2 support
     private Object[] wrapMessageForAmq5(final Object[] args) {
         if (args == null || args.length != 1 || DelegateMessage.class.isInstance(args[0])) {
@@ -291,6 +399,15 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
         }
 
 
+        // deliver what is left of the batch in the transaction
+        if (state == State.METHOD_CALLED) {
+            final Throwable failure = flushBatchInTransaction();
+            if (failure != null) {
+                // only logged, the transaction completes according to the failure
+                logger.warning("Delivery of a message batch to " + deployment.getDeploymentID() + " failed: " + failure, failure);
+            }
+        }
+
         // call afterDelivery on the container
         boolean exceptionThrown = false;
         try {
@@ -302,6 +419,7 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
             throwable.printStackTrace();
             throw new ApplicationServerInternalException(throwable);
         } finally {
+            releasePermit();
             if (state == State.SYSTEM_EXCEPTION) {
                 recreateInstance(exceptionThrown);
             }
@@ -329,12 +447,23 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
         if (state == State.RELEASED) {
             return;
         }
+        // the container completes the transaction so the messages of the batch have to be delivered first
+        if (state == State.METHOD_CALLED) {
+            final Throwable failure = flushBatchInTransaction();
+            if (failure != null) {
+                logger.warning("Delivery of a message batch to " + deployment.getDeploymentID() + " failed: " + failure, failure);
+            }
+        }
+        if (batch != null) {
+            batch.clear();
+        }
         state = State.RELEASED;
 
         // notify the container
         try {
             container.release(deployment, instance);
         } finally {
+            releasePermit();
             instanceFactory.freeInstance((Instance) instance, false);
             instance = null;
         }
@@ -0,0 +1,236 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.openejb.core.mdb;
+
+import org.apache.openejb.monitoring.Managed;
+import org.apache.openejb.util.DaemonThreadFactory;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Number of endpoints of a message driven bean allowed to deliver at the same time, driven by the backlog
+ * of its destination. The resource adapter keeps its sessions, the ones over the limit wait in beforeDelivery.
+ * <p/>
+ * Every interval the backlog is sampled and the limit moves towards one endpoint per "backlog per endpoint" messages,
+ * between the min and max limits: it jumps up at once but only goes down one endpoint per interval.
+ */
+public class MdbAutoScaler {
+    private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB, "org.apache.openejb.util.resources");
+
+    /**
+     * Source of the number of messages waiting for the bean.
+     */
+    public interface Backlog {
+        /**
+         * @return the number of pending messages, negative if unknown
+         */
+        long size();
+    }
+
+    private final String name;
+    private final Backlog backlog;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long interval;
+    private final long backlogPerEndpoint;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private int limit;
+    private int active;
+    private boolean stopped;
+
+    private final AtomicLong increases = new AtomicLong();
+    private final AtomicLong decreases = new AtomicLong();
+    private volatile long lastBacklog = -1;
+    private volatile String lastDecision = "none";
+
+    private ScheduledExecutorService scheduler;
+
+    public MdbAutoScaler(final String name, final Backlog backlog, final int minLimit, final int maxLimit,
+                         final long interval, final long backlogPerEndpoint) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Invalid limits [" + minLimit + ", " + maxLimit + "] for " + name);
+        }
+        if (backlogPerEndpoint < 1) {
+            throw new IllegalArgumentException("backlog per endpoint must be positive: " + backlogPerEndpoint);
+        }
+        this.name = name;
+        this.backlog = backlog;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.interval = interval;
+        this.backlogPerEndpoint = backlogPerEndpoint;
+        this.limit = minLimit;
+    }
+
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("openejb-mdb-autoscaler", name));
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    adjust(backlog.size());
+                } catch (final Throwable e) {
+                    logger.debug("Unable to get the backlog of " + name + ": " + e.getMessage());
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the sampling and lets all the endpoints deliver so the deactivation doesn't wait on them.
+     */
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        lock.lock();
+        try {
+            stopped = true;
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until an endpoint is allowed to deliver, {@link #release()} has to follow.
+     */
+    public void acquire() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (!stopped && active >= limit) {
+                available.await();
+            }
+            active++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void release() {
+        lock.lock();
+        try {
+            active--;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void adjust(final long pending) {
+        lastBacklog = pending;
+        if (pending < 0) {
+            return;
+        }
+
+        final long wanted = (pending + backlogPerEndpoint - 1) / backlogPerEndpoint;
+        final int target = (int) Math.max(minLimit, Math.min(maxLimit, wanted));
+
+        lock.lock();
+        try {
+            if (target > limit) {
+                limit = target;
+                increases.incrementAndGet();
+                available.signalAll();
+            } else if (target < limit) {
+                limit--;
+                decreases.incrementAndGet();
+            } else {
+                return;
+            }
+            lastDecision = "limit " + limit + " for a backlog of " + pending;
+        } finally {
+            lock.unlock();
+        }
+        logger.debug("MDB " + name + ": " + lastDecision);
+    }
+
+    @Managed
+    public int getLimit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Managed
+    public int getActive() {
+        lock.lock();
+        try {
+            return active;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Managed
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    @Managed
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    @Managed
+    public long getInterval() {
+        return interval;
+    }
+
+    @Managed
+    public long getBacklogPerEndpoint() {
+        return backlogPerEndpoint;
+    }
+
+    @Managed
+    public long getBacklog() {
+        return lastBacklog;
+    }
+
+    @Managed
+    public long getIncreaseCount() {
+        return increases.get();
+    }
+
+    @Managed
+    public long getDecreaseCount() {
+        return decreases.get();
+    }
+
+    @Managed
+    public String getLastDecision() {
+        return lastDecision;
+    }
+
+    @Override
+    public String toString() {
+        return "MdbAutoScaler{" + name + ", limit=" + getLimit() + ", active=" + getActive() + '}';
+    }
+}
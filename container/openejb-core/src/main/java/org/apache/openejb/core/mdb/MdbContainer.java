@@ -24,6 +24,7 @@ import org.apache.openejb.InterfaceType;
 import org.apache.openejb.OpenEJBException;
 import org.apache.openejb.RpcContainer;
 import org.apache.openejb.SystemException;
+import org.apache.openejb.api.jms.MessageBatchListener;
 import org.apache.openejb.core.ExceptionType;
 import org.apache.openejb.core.Operation;
 import org.apache.openejb.core.ThreadContext;
@@ -38,6 +39,7 @@ import org.apache.openejb.monitoring.ManagedMBean;
 import org.apache.openejb.monitoring.ObjectNameBuilder;
 import org.apache.openejb.monitoring.StatsInterceptor;
 import org.apache.openejb.resource.XAResourceWrapper;
+import org.apache.openejb.resource.activemq.ActiveMQBacklog;
 import org.apache.openejb.spi.SecurityService;
 import org.apache.openejb.util.LogCategory;
 import org.apache.openejb.util.Logger;
@@ -59,6 +61,7 @@ import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
@@ -73,6 +76,17 @@ public class MdbContainer implements RpcContainer {
     private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB, "org.apache.openejb.util.resources");
     private static final Object[] NO_ARGS = new Object[0];
 
+    // activation properties of the batch delivery, see MessageBatchListener
+    public static final String BATCH_SIZE = "batchSize";
+    public static final String BATCH_TIMEOUT = "batchTimeout";
+
+    // bean properties of the auto-scaling of the concurrent deliveries, see MdbAutoScaler
+    public static final String AUTO_SCALE = "AutoScale";
+    public static final String AUTO_SCALE_MIN = "AutoScaleMin";
+    public static final String AUTO_SCALE_MAX = "AutoScaleMax";
+    public static final String AUTO_SCALE_INTERVAL = "AutoScaleInterval";
+    public static final String AUTO_SCALE_BACKLOG = "AutoScaleBacklog";
+
     private final Object containerID;
     private final SecurityService securityService;
     private final ResourceAdapter resourceAdapter;
@@ -135,18 +149,27 @@ public class MdbContainer implements RpcContainer {
                 messageListenerInterface);
         }
 
-        // create the activation spec
-        final ActivationSpec activationSpec = createActivationSpec(beanContext);
+        final Options options = new Options(beanContext.getProperties());
+        final int instanceLimit = options.get("InstanceLimit", this.instanceLimit);
+        final boolean autoScale = options.get(AUTO_SCALE, false);
+        final int autoScaleMax = options.get(AUTO_SCALE_MAX, instanceLimit > 0 ? instanceLimit : 10);
+
+        // create the activation spec, the one of an auto-scaled bean gets as many sessions as its max limit
+        ActivationSpec activationSpec = createActivationSpec(beanContext, -1);
+        final MdbAutoScaler scaler = autoScale ? createAutoScaler(beanContext, activationSpec, options, autoScaleMax) : null;
+        if (scaler != null) {
+            activationSpec = createActivationSpec(beanContext, autoScaleMax);
+        }
 
         if (inboundRecovery != null) {
             inboundRecovery.recover(resourceAdapter, activationSpec, containerID.toString());
         }
 
-        final Options options = new Options(beanContext.getProperties());
-        final int instanceLimit = options.get("InstanceLimit", this.instanceLimit);
         // create the message endpoint
         final MdbInstanceFactory instanceFactory = new MdbInstanceFactory(beanContext, securityService, instanceLimit);
-        final EndpointFactory endpointFactory = new EndpointFactory(activationSpec, this, beanContext, instanceFactory, xaResourceWrapper);
+        final Options activationOptions = new Options(activationProperties(beanContext));
+        final EndpointFactory endpointFactory = new EndpointFactory(activationSpec, this, beanContext, instanceFactory, xaResourceWrapper,
+            activationOptions.get(BATCH_SIZE, 1), activationOptions.get(BATCH_TIMEOUT, 0L), scaler);
 
         // update the data structures
         // this must be done before activating the endpoint since the ra may immedately begin delivering messages
@@ -182,11 +205,37 @@ public class MdbContainer implements RpcContainer {
             }
         }
 
+        // expose and start the auto-scaling
+        if (scaler != null) {
+            final ObjectNameBuilder jmxName = new ObjectNameBuilder("openejb.management");
+            jmxName.set("J2EEServer", "openejb");
+            jmxName.set("J2EEApplication", null);
+            jmxName.set("EJBModule", beanContext.getModuleID());
+            jmxName.set("MessageDrivenBean", beanContext.getEjbName());
+            jmxName.set("j2eeType", "AutoScaling");
+            jmxName.set("name", beanContext.getEjbName());
+            try {
+                final MBeanServer server = LocalMBeanServer.get();
+                final ObjectName objectName = jmxName.build();
+                if (server.isRegistered(objectName)) {
+                    server.unregisterMBean(objectName);
+                }
+                server.registerMBean(new ManagedMBean(scaler), objectName);
+                endpointFactory.jmxNames.add(objectName);
+            } catch (final Exception e) {
+                logger.error("Unable to register MBean ", e);
+            }
+            scaler.start();
+        }
+
         // activate the endpoint
         try {
             resourceAdapter.endpointActivation(endpointFactory, activationSpec);
         } catch (final ResourceException e) {
             // activation failed... clean up
+            if (scaler != null) {
+                scaler.stop();
+            }
             beanContext.setContainer(null);
             beanContext.setContainerData(null);
             deployments.remove(deploymentId);
@@ -195,7 +244,27 @@ public class MdbContainer implements RpcContainer {
         }
     }
 
-    private ActivationSpec createActivationSpec(final BeanContext beanContext) throws OpenEJBException {
+    private MdbAutoScaler createAutoScaler(final BeanContext beanContext, final ActivationSpec activationSpec, final Options options,
+                                           final int autoScaleMax) throws OpenEJBException {
+        MdbAutoScaler.Backlog backlog = null;
+        if (activationSpec.getClass().getName().startsWith("org.apache.activemq.")) {
+            backlog = ActiveMQBacklog.of(activationSpec);
+        }
+        if (backlog == null) {
+            logger.warning("No backlog available for the destination of " + beanContext.getDeploymentID()
+                + " (only known for the ActiveMQ brokers embedded by the resource adapter), auto-scaling is disabled");
+            return null;
+        }
+
+        try {
+            return new MdbAutoScaler(String.valueOf(beanContext.getDeploymentID()), backlog,
+                options.get(AUTO_SCALE_MIN, 1), autoScaleMax, options.get(AUTO_SCALE_INTERVAL, 1000L), options.get(AUTO_SCALE_BACKLOG, 10L));
+        } catch (final IllegalArgumentException e) {
+            throw new OpenEJBException("Invalid auto-scaling of " + beanContext.getDeploymentID() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private ActivationSpec createActivationSpec(final BeanContext beanContext, final int maxSessions) throws OpenEJBException {
         try {
             // initialize the object recipe
             final ObjectRecipe objectRecipe = new ObjectRecipe(activationSpecClass);
@@ -209,6 +278,26 @@ public class MdbContainer implements RpcContainer {
             }
             objectRecipe.setMethodProperty("beanClass", beanContext.getBeanClass());
 
+            // let a resource adapter able to batch (ActiveMQ) fill a batch within a single beforeDelivery/afterDelivery
+            final Set<String> containerProperties = new TreeSet<String>();
+            if (isBatchDelivery(beanContext)) {
+                final String batchSize = activationProperties.get(BATCH_SIZE);
+                if (!activationProperties.containsKey("enableBatch")) {
+                    objectRecipe.setMethodProperty("enableBatch", "true");
+                    containerProperties.add("enableBatch");
+                }
+                if (!activationProperties.containsKey("maxMessagesPerBatch")) {
+                    objectRecipe.setMethodProperty("maxMessagesPerBatch", batchSize.trim());
+                    containerProperties.add("maxMessagesPerBatch");
+                }
+            }
+
+            // an auto-scaled bean needs as many sessions as its max limit, the auto-scaler gates them
+            if (maxSessions > 0 && !activationProperties.containsKey("maxSessions")) {
+                objectRecipe.setMethodProperty("maxSessions", Integer.toString(maxSessions));
+                containerProperties.add("maxSessions");
+            }
+
             // create the activationSpec
             final ActivationSpec activationSpec = (ActivationSpec) objectRecipe.create(activationSpecClass.getClassLoader());
 
@@ -217,6 +306,9 @@ public class MdbContainer implements RpcContainer {
             unusedProperties.remove("destination");
             unusedProperties.remove("destinationType");
             unusedProperties.remove("beanClass");
+            unusedProperties.remove(BATCH_SIZE);
+            unusedProperties.remove(BATCH_TIMEOUT);
+            unusedProperties.removeAll(containerProperties);
             if (!unusedProperties.isEmpty()) {
                 final String text = "No setter found for the activation spec properties: " + unusedProperties;
                 if (failOnUnknowActivationSpec) {
@@ -274,6 +366,9 @@ public class MdbContainer implements RpcContainer {
         try {
             final EndpointFactory endpointFactory = (EndpointFactory) beanContext.getContainerData();
             if (endpointFactory != null) {
+                if (endpointFactory.getAutoScaler() != null) {
+                    endpointFactory.getAutoScaler().stop();
+                }
                 resourceAdapter.endpointDeactivation(endpointFactory, endpointFactory.getActivationSpec());
 
                 final MBeanServer server = LocalMBeanServer.get();
@@ -360,8 +455,10 @@ public class MdbContainer implements RpcContainer {
         }
 
         // verify the delivery method passed to beforeDeliver is the same method that was invoked
-        if (!mdbCallContext.deliveryMethod.getName().equals(method.getName()) ||
-            !Arrays.deepEquals(mdbCallContext.deliveryMethod.getParameterTypes(), method.getParameterTypes())) {
+        // or a batch of messages delivered by this method
+        if ((!mdbCallContext.deliveryMethod.getName().equals(method.getName()) ||
+            !Arrays.deepEquals(mdbCallContext.deliveryMethod.getParameterTypes(), method.getParameterTypes())) &&
+            !isBatchMethod(deployInfo, method)) {
             throw new IllegalStateException("Delivery method specified in beforeDelivery is not the delivery method called");
         }
 
@@ -479,6 +576,22 @@ public class MdbContainer implements RpcContainer {
         }
     }
 
+    private static Properties activationProperties(final BeanContext beanContext) {
+        final Properties properties = new Properties();
+        properties.putAll(beanContext.getActivationProperties());
+        return properties;
+    }
+
+    static boolean isBatchDelivery(final BeanContext beanContext) {
+        return MessageBatchListener.class.isAssignableFrom(beanContext.getBeanClass())
+            && new Options(activationProperties(beanContext)).get(BATCH_SIZE, 1) > 1;
+    }
+
+    private static boolean isBatchMethod(final BeanContext beanContext, final Method method) {
+        return "onMessages".equals(method.getName()) && Arrays.equals(new Class<?>[]{List.class}, method.getParameterTypes())
+            && MessageBatchListener.class.isAssignableFrom(beanContext.getBeanClass());
+    }
+
     private static class MdbCallContext {
         private Method deliveryMethod;
         private TransactionPolicy txPolicy;
@@ -149,6 +149,7 @@ public class PersistenceUnitInfoImpl implements PersistenceUnitInfo {
      * does it need to be created lazily (not in constructor)
      */
     private boolean lazilyInitialized;
+    private boolean asynchronouslyInitialized;
 
     public PersistenceUnitInfoImpl() {
         this.persistenceClassLoaderHandler = null;
@@ -355,6 +356,15 @@ public class PersistenceUnitInfoImpl implements PersistenceUnitInfo {
         this.lazilyInitialized = lazilyInitialized;
     }
 
+    // bootstrap in background while beans are built, the app should be enhanced at build time
+    public boolean isAsynchronouslyInitialized() {
+        return asynchronouslyInitialized;
+    }
+
+    public void setAsynchronouslyInitialized(final boolean asynchronouslyInitialized) {
+        this.asynchronouslyInitialized = asynchronouslyInitialized;
+    }
+
     public static class PersistenceClassFileTransformer implements ClassFileTransformer {
         private final ClassTransformer classTransformer;
 
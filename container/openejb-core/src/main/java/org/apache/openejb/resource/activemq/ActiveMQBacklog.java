@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.openejb.resource.activemq;
+
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.TransportConnector;
+import org.apache.activemq.broker.region.Destination;
+import org.apache.activemq.broker.region.Subscription;
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.ra.ActiveMQActivationSpec;
+import org.apache.activemq.ra.ActiveMQConnectionSupport;
+import org.apache.openejb.core.mdb.MdbAutoScaler;
+
+import javax.resource.spi.ActivationSpec;
+import javax.resource.spi.ResourceAdapter;
+import java.net.URI;
+
+/**
+ * Backlog of a message driven bean read from the statistics of the brokers embedded by {@link ActiveMQFactory}:
+ * the messages of a queue, the messages pending for the most late subscription of a topic.
+ * Not available when the resource adapter connects to a remote broker.
+ */
+public class ActiveMQBacklog implements MdbAutoScaler.Backlog {
+
+    private final ActiveMQDestination destination;
+
+    public ActiveMQBacklog(final ActiveMQDestination destination) {
+        this.destination = destination;
+    }
+
+    /**
+     * @return the backlog of the destination of the activation spec or null if it is not an ActiveMQ one
+     * or if its resource adapter doesn't connect to an embedded broker
+     */
+    public static ActiveMQBacklog of(final ActivationSpec activationSpec) {
+        if (!ActiveMQActivationSpec.class.isInstance(activationSpec)) {
+            return null;
+        }
+        final ActiveMQDestination destination = ActiveMQActivationSpec.class.cast(activationSpec).createDestination();
+        if (destination == null || !isEmbedded(activationSpec.getResourceAdapter())) {
+            return null;
+        }
+        return new ActiveMQBacklog(destination);
+    }
+
+    /**
+     * @return true if the server url of the resource adapter targets a broker of {@link ActiveMQFactory},
+     * by its name through the vm transport or through one of its transport connectors
+     */
+    private static boolean isEmbedded(final ResourceAdapter resourceAdapter) {
+        if (!ActiveMQConnectionSupport.class.isInstance(resourceAdapter)) {
+            return false;
+        }
+        final String serverUrl = ActiveMQConnectionSupport.class.cast(resourceAdapter).getServerUrl();
+        try {
+            final URI server = new URI(serverUrl);
+            for (final BrokerService broker : ActiveMQFactory.getBrokers()) {
+                if ("vm".equals(server.getScheme()) && broker.getBrokerName().equals(server.getHost())) {
+                    return true;
+                }
+                for (final TransportConnector connector : broker.getTransportConnectors()) {
+                    final URI uri = connector.getUri();
+                    if (uri != null && uri.getScheme().equals(server.getScheme())
+                        && uri.getHost() != null && uri.getHost().equals(server.getHost()) && uri.getPort() == server.getPort()) {
+                        return true;
+                    }
+                }
+            }
+        } catch (final Exception e) {
+            // failover or other composite url, no embedded broker
+        }
+        return false;
+    }
+
+    @Override
+    public long size() {
+        final Iterable<BrokerService> brokers;
+        try {
+            brokers = ActiveMQFactory.getBrokers();
+        } catch (final Exception e) {
+            return -1;
+        }
+
+        long size = -1;
+        for (final BrokerService broker : brokers) {
+            if (!broker.isStarted()) {
+                continue;
+            }
+            for (final Destination found : broker.getRegionBroker().getDestinationMap(destination).values()) {
+                size = Math.max(size, 0) + size(found);
+            }
+        }
+        return size;
+    }
+
+    private long size(final Destination found) {
+        if (!destination.isTopic()) {
+            return found.getDestinationStatistics().getMessages().getCount();
+        }
+        long pending = 0;
+        for (final Subscription subscription : found.getConsumers()) {
+            pending = Math.max(pending, subscription.getPendingQueueSize());
+        }
+        return pending;
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.resource.activemq.jms2;
+
+import javax.jms.CompletionListener;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.TransactionRolledBackException;
+import javax.transaction.RollbackException;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.SystemException;
+import javax.transaction.Transaction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Asynchronous sends of a {@link JMSContextImpl}, see {@link javax.jms.JMSProducer#setAsync(CompletionListener)}.
+ * <p/>
+ * Outside of a transaction the sends are pipelined: the provider confirms each of them later on the listener.
+ * With a session enlisted in the transaction (or a locally transacted one) they are sent with it, without waiting
+ * for the broker, and the transaction outcome confirms or fails all of them at once.
+ * In a JTA transaction the session is not enlisted in, the sends are buffered and flushed as one pipelined batch
+ * before the transaction completes, a rolled back transaction fails them without sending anything.
+ * <p/>
+ * A context closed during a transaction it sent with is only closed once the transaction completes.
+ */
+class AsyncSends {
+    private final List<Deferred> deferred = new ArrayList<>();
+    private final List<Buffered> buffered = new ArrayList<>();
+    private int inFlight;
+    private Transaction synchronizedTransaction;
+    private Runnable closeAfterCompletion;
+
+    /**
+     * @return the listener to give to the provider, confirming the send to the tracker first
+     */
+    synchronized Tracked track(final CompletionListener listener) {
+        inFlight++;
+        return new Tracked(listener);
+    }
+
+    synchronized void defer(final Message message, final CompletionListener listener) {
+        deferred.add(new Deferred(message, listener));
+    }
+
+    /**
+     * Keeps a send for the end of the transaction, the producer settings are the ones of the send call.
+     */
+    synchronized void buffer(final MessageProducer producer, final Destination destination, final Message message,
+                             final CompletionListener listener) throws JMSException {
+        buffered.add(new Buffered(producer, destination, message, producer.getDeliveryMode(), producer.getPriority(),
+            producer.getTimeToLive(), listener));
+    }
+
+    /**
+     * Sends the buffered messages, pipelined, the provider confirms them on their listener.
+     */
+    void flush() {
+        final List<Buffered> sends;
+        synchronized (this) {
+            if (buffered.isEmpty()) {
+                return;
+            }
+            sends = new ArrayList<>(buffered);
+            buffered.clear();
+        }
+        for (final Buffered send : sends) {
+            final Tracked tracked = track(send.listener);
+            try {
+                send.producer.send(send.destination, send.message, send.deliveryMode, send.priority, send.timeToLive, tracked);
+            } catch (final JMSException | RuntimeException e) {
+                tracked.cancel();
+                send.listener.onException(send.message, e);
+            }
+        }
+    }
+
+    /**
+     * @return true if the sends of this transaction are completed with it
+     */
+    synchronized boolean synchronize(final Transaction transaction) {
+        if (transaction == synchronizedTransaction) {
+            return true;
+        }
+        try {
+            transaction.registerSynchronization(new Synchronization() {
+                @Override
+                public void beforeCompletion() {
+                    try {
+                        if (transaction.getStatus() == Status.STATUS_ACTIVE) {
+                            flush();
+                        }
+                    } catch (final SystemException e) {
+                        // rolled back, the buffered sends fail after the completion
+                    }
+                    await();
+                }
+
+                @Override
+                public void afterCompletion(final int status) {
+                    if (status == Status.STATUS_COMMITTED) {
+                        completed();
+                    } else {
+                        failed(new TransactionRolledBackException("Transaction rolled back"));
+                    }
+                    completeTransaction();
+                }
+            });
+        } catch (final RollbackException | IllegalStateException | SystemException e) {
+            return false;
+        }
+        synchronizedTransaction = transaction;
+        return true;
+    }
+
+    /**
+     * @return true if the close is delayed until the synchronized transaction completes
+     */
+    synchronized boolean closeAfterCompletion(final Runnable close) {
+        if (synchronizedTransaction == null) {
+            return false;
+        }
+        closeAfterCompletion = close;
+        return true;
+    }
+
+    private void completeTransaction() {
+        final List<Buffered> unsent;
+        final Runnable close;
+        synchronized (this) {
+            unsent = new ArrayList<>(buffered);
+            buffered.clear();
+            close = closeAfterCompletion;
+            closeAfterCompletion = null;
+            synchronizedTransaction = null;
+        }
+        if (!unsent.isEmpty()) {
+            final TransactionRolledBackException error = new TransactionRolledBackException("Transaction rolled back, message not sent");
+            for (final Buffered send : unsent) {
+                send.listener.onException(send.message, error);
+            }
+        }
+        if (close != null) {
+            close.run();
+        }
+    }
+
+    /**
+     * Waits for the pending confirmations of the provider.
+     */
+    synchronized void await() {
+        boolean interrupted = false;
+        while (inFlight > 0) {
+            try {
+                wait();
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    void completed() {
+        for (final Deferred send : drain()) {
+            send.listener.onCompletion(send.message);
+        }
+    }
+
+    void failed(final JMSException error) {
+        for (final Deferred send : drain()) {
+            send.listener.onException(send.message, error);
+        }
+    }
+
+    private synchronized List<Deferred> drain() {
+        final List<Deferred> sends = new ArrayList<>(deferred);
+        deferred.clear();
+        return sends;
+    }
+
+    private synchronized void done() {
+        inFlight--;
+        notifyAll();
+    }
+
+    private static final class Deferred {
+        private final Message message;
+        private final CompletionListener listener;
+
+        private Deferred(final Message message, final CompletionListener listener) {
+            this.message = message;
+            this.listener = listener;
+        }
+    }
+
+    private static final class Buffered {
+        private final MessageProducer producer;
+        private final Destination destination;
+        private final Message message;
+        private final int deliveryMode;
+        private final int priority;
+        private final long timeToLive;
+        private final CompletionListener listener;
+
+        private Buffered(final MessageProducer producer, final Destination destination, final Message message,
+                         final int deliveryMode, final int priority, final long timeToLive, final CompletionListener listener) {
+            this.producer = producer;
+            this.destination = destination;
+            this.message = message;
+            this.deliveryMode = deliveryMode;
+            this.priority = priority;
+            this.timeToLive = timeToLive;
+            this.listener = listener;
+        }
+    }
+
+    final class Tracked implements CompletionListener {
+        private final CompletionListener delegate;
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        private Tracked(final CompletionListener delegate) {
+            this.delegate = delegate;
+        }
+
+        /**
+         * For a send which failed right away, the listener is not called.
+         */
+        void cancel() {
+            if (done.compareAndSet(false, true)) {
+                done();
+            }
+        }
+
+        @Override
+        public void onCompletion(final Message message) {
+            try {
+                delegate.onCompletion(message);
+            } finally {
+                cancel();
+            }
+        }
+
+        @Override
+        public void onException(final Message message, final Exception exception) {
+            try {
+                delegate.onException(message, exception);
+            } finally {
+                cancel();
+            }
+        }
+    }
+}
@@ -132,6 +132,9 @@ public class JMSConsumerImpl implements JMSConsumer {
 
     private static Message wrap(final Message message) {
         final Message wrapped = JMS2.wrap(message);
+        if (wrapped == null) { // receive timed out
+            return null;
+        }
         try {
             wrapped.setJMSDeliveryTime(System.currentTimeMillis());
         } catch (final JMSException e) {
@@ -16,7 +16,11 @@
  */
 package org.apache.openejb.resource.activemq.jms2;
 
+import org.apache.activemq.ActiveMQSession;
+import org.apache.openejb.OpenEJB;
+
 import javax.jms.BytesMessage;
+import javax.jms.CompletionListener;
 import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
 import javax.jms.ConnectionMetaData;
@@ -41,7 +45,12 @@ import javax.jms.TemporaryQueue;
 import javax.jms.TemporaryTopic;
 import javax.jms.TextMessage;
 import javax.jms.Topic;
+import javax.jms.TransactionRolledBackException;
 import javax.jms.XAConnection;
+import javax.transaction.Status;
+import javax.transaction.SystemException;
+import javax.transaction.Transaction;
+import javax.transaction.TransactionManager;
 import java.io.Serializable;
 
 import static org.apache.openejb.resource.activemq.jms2.JMS2.toRuntimeException;
@@ -52,6 +61,8 @@ public class JMSContextImpl implements JMSContext {
     private final String username;
     private final String password;
     private final ConnectionFactory factory;
+    private final JMSContextPool pool;
+    private final AsyncSends asyncSends = new AsyncSends();
     private Session session;
     private boolean autoStart = true;
     private MessageProducer innerProducer;
@@ -59,10 +70,18 @@ public class JMSContextImpl implements JMSContext {
     private boolean closed;
     private Connection connection;
     private volatile Message lastMessagesWaitingAck;
+    private JMSContextPool.PooledSession pooled;
+    private boolean reusable = true;
 
     public JMSContextImpl(final ConnectionFactory factory, final int sessionMode, final String user, final String pwd,
                           final boolean xa) {
+        this(factory, sessionMode, user, pwd, xa, null);
+    }
+
+    public JMSContextImpl(final ConnectionFactory factory, final int sessionMode, final String user, final String pwd,
+                          final boolean xa, final JMSContextPool pool) {
         this.factory = factory;
+        this.pool = pool;
         this.sessionMode = sessionMode;
         this.username = user;
         this.password = pwd;
@@ -89,6 +108,14 @@ public class JMSContextImpl implements JMSContext {
     }
 
     protected Session session() {
+        reusable = false; // consumers, browsers... live in the session
+        return producerSession();
+    }
+
+    /**
+     * @return the session, only used to produce messages so it can go back to the pool
+     */
+    private Session producerSession() {
         if (session == null) {
             synchronized (this) {
                 if (closed) {
@@ -96,7 +123,13 @@ public class JMSContextImpl implements JMSContext {
                 }
                 if (session == null) {
                     try {
-                        if (xa) {
+                        if (pool != null && !xa && connection == null) {
+                            pooled = pool.borrow(factory, username, password, sessionMode);
+                        }
+                        if (pooled != null) {
+                            connection = pooled.getConnection();
+                            session = pooled.getSession();
+                        } else if (xa) {
                             session = XAConnection.class.cast(connection()).createXASession();
                         } else {
                             session = connection().createSession(sessionMode);
@@ -110,6 +143,15 @@ public class JMSContextImpl implements JMSContext {
         return session;
     }
 
+    /**
+     * The connection of a pooled session is shared with other contexts, its state can't change.
+     */
+    private void checkNotPooled(final String method) {
+        if (pooled != null) {
+            throw new IllegalStateRuntimeException("Illegal call to " + method + " on a pooled context");
+        }
+    }
+
     private synchronized void checkAutoStart() throws JMSException {
         if (closed) {
             throw new IllegalStateRuntimeException("Context is closed");
@@ -121,11 +163,72 @@ public class JMSContextImpl implements JMSContext {
 
     private synchronized MessageProducer getInnerProducer() throws JMSException {
         if (innerProducer == null) {
-            innerProducer = session().createProducer(null);
+            producerSession();
+            innerProducer = pooled != null ? pooled.getProducer() : session.createProducer(null);
         }
         return innerProducer;
     }
 
+    /**
+     * Sends with a completion listener are pipelined. In a transaction the session is enlisted in, they are sent
+     * one way with it and only confirmed once it commits, all at once, so they don't cost a broker round trip each.
+     * In a JTA transaction the session is not part of, they wait for the commit, see {@link AsyncSends}.
+     */
+    void send(final MessageProducer producer, final Destination destination, final Message message,
+              final CompletionListener listener) throws JMSException {
+        if (listener == null) {
+            asyncSends.flush(); // keep the order of the messages
+            producer.send(destination, message);
+            return;
+        }
+
+        if (!xa && sessionMode == SESSION_TRANSACTED) {
+            producer.send(destination, message);
+            asyncSends.defer(message, listener);
+            return;
+        }
+
+        final Transaction transaction = currentTransaction();
+        if (transaction != null && asyncSends.synchronize(transaction)) {
+            if (enlisted()) {
+                producer.send(destination, message);
+                asyncSends.defer(message, listener);
+            } else {
+                asyncSends.buffer(producer, destination, message, listener);
+            }
+            return;
+        }
+
+        final AsyncSends.Tracked tracked = asyncSends.track(listener);
+        try {
+            producer.send(destination, message, tracked);
+        } catch (final JMSException | RuntimeException e) {
+            tracked.cancel();
+            throw e;
+        }
+    }
+
+    /**
+     * @return true if the session is part of the current XA transaction
+     */
+    private boolean enlisted() {
+        final Session current = session;
+        return ActiveMQSession.class.isInstance(current) && ActiveMQSession.class.cast(current).getTransactionContext().isInXATransaction();
+    }
+
+    private static Transaction currentTransaction() {
+        final TransactionManager transactionManager = OpenEJB.getTransactionManager();
+        if (transactionManager == null) {
+            return null;
+        }
+        try {
+            final Transaction transaction = transactionManager.getTransaction();
+            return transaction != null && transaction.getStatus() == Status.STATUS_ACTIVE ? transaction : null;
+        } catch (final SystemException e) {
+            return null;
+        }
+    }
+
     @Override
     public void acknowledge() {
         session();
@@ -140,13 +243,43 @@ public class JMSContextImpl implements JMSContext {
 
     @Override
     public void close() {
+        final Transaction transaction = currentTransaction();
+        if (transaction != null) {
+            asyncSends.synchronize(transaction);
+        }
+        if (asyncSends.closeAfterCompletion(new Runnable() {
+            @Override
+            public void run() {
+                doClose();
+            }
+        })) {
+            synchronized (this) {
+                closed = true; // the session stays open for the sends of the transaction
+            }
+            return;
+        }
+        doClose();
+    }
+
+    private void doClose() {
+        asyncSends.await();
+        if (!xa && sessionMode == SESSION_TRANSACTED) { // closing rolls back
+            asyncSends.failed(new TransactionRolledBackException("Context closed before commit"));
+        }
         try {
             synchronized (this) {
-                if (session != null) {
-                    session.close();
-                }
-                if (connection != null) {
-                    connection.close();
+                if (pooled != null) {
+                    pool.release(pooled, reusable);
+                    pooled = null; // the session is someone else's now
+                    session = null;
+                    connection = null;
+                } else {
+                    if (session != null) {
+                        session.close();
+                    }
+                    if (connection != null) {
+                        connection.close();
+                    }
                 }
                 closed = true;
             }
@@ -157,11 +290,14 @@ public class JMSContextImpl implements JMSContext {
 
     @Override
     public void commit() {
+        asyncSends.await();
         try {
-            session().commit();
+            producerSession().commit();
         } catch (final JMSException e) {
+            asyncSends.failed(e);
             throw toRuntimeException(e);
         }
+        asyncSends.completed();
     }
 
     @Override
@@ -189,7 +325,7 @@ public class JMSContextImpl implements JMSContext {
     @Override
     public BytesMessage createBytesMessage() {
         try {
-            return wrap(session().createBytesMessage());
+            return wrap(producerSession().createBytesMessage());
         } catch (final JMSException e) {
             throw toRuntimeException(e);
         }
@@ -263,7 +399,7 @@ public class JMSContextImpl implements JMSContext {
     @Override
     public MapMessage createMapMessage() {
         try {
-            return wrap(session().createMapMessage());
+            return wrap(producerSession().createMapMessage());
         } catch (final JMSException e) {
             throw toRuntimeException(e);
         }
@@ -272,7 +408,7 @@ public class JMSContextImpl implements JMSContext {
     @Override
     public Message createMessage() {
         try {
-            return wrap(session().createMessage());
+            return wrap(producerSession().createMessage());
         } catch (final JMSException e) {
             throw toRuntimeException(e);
         }
@@ -281,7 +417,7 @@ public class JMSContextImpl implements JMSContext {
     @Override
     public ObjectMessage createObjectMessage() {
         try {
-            return wrap(session().createObjectMessage());
+            return wrap(producerSession().createObjectMessage());
         } catch (final JMSException e) {
             throw toRuntimeException(e);
         }
@@ -290,7 +426,7 @@ public class JMSContextImpl implements JMSContext {
     @Override
     public ObjectMessage createObjectMessage(final Serializable object) {
         try {
-            return wrap(session().createObjectMessage(object));
+            return wrap(producerSession().createObjectMessage(object));
         } catch (final JMSException e) {
             throw toRuntimeException(e);
         }
@@ -308,7 +444,7 @@ public class JMSContextImpl implements JMSContext {
     @Override
     public Queue createQueue(final String queueName) {
         try {
-            return session().createQueue(queueName);
+            return producerSession().createQueue(queueName);
         } catch (final JMSException e) {
             throw toRuntimeException(e);
         }
@@ -361,7 +497,7 @@ public class JMSContextImpl implements JMSContext {
     @Override
     public StreamMessage createStreamMessage() {
         try {
-            return wrap(session().createStreamMessage());
+            return wrap(producerSession().createStreamMessage());
         } catch (final JMSException e) {
             throw toRuntimeException(e);
         }
@@ -388,7 +524,7 @@ public class JMSContextImpl implements JMSContext {
     @Override
     public TextMessage createTextMessage() {
         try {
-            return wrap(session().createTextMessage());
+            return wrap(producerSession().createTextMessage());
         } catch (final JMSException e) {
             throw toRuntimeException(e);
         }
@@ -397,7 +533,7 @@ public class JMSContextImpl implements JMSContext {
     @Override
     public TextMessage createTextMessage(final String text) {
         try {
-            return wrap(session().createTextMessage(text));
+            return wrap(producerSession().createTextMessage(text));
         } catch (final JMSException e) {
             throw toRuntimeException(e);
         }
@@ -406,7 +542,7 @@ public class JMSContextImpl implements JMSContext {
     @Override
     public Topic createTopic(final String topicName) {
         try {
-            return session().createTopic(topicName);
+            return producerSession().createTopic(topicName);
         } catch (final JMSException e) {
             throw toRuntimeException(e);
         }
@@ -452,7 +588,7 @@ public class JMSContextImpl implements JMSContext {
     @Override
     public boolean getTransacted() {
         try {
-            return session().getTransacted();
+            return producerSession().getTransacted();
         } catch (final JMSException e) {
             throw toRuntimeException(e);
         }
@@ -469,11 +605,13 @@ public class JMSContextImpl implements JMSContext {
 
     @Override
     public void rollback() {
-        session();
+        asyncSends.await();
         try {
-            session().rollback();
+            producerSession().rollback();
         } catch (final JMSException e) {
             throw toRuntimeException(e);
+        } finally {
+            asyncSends.failed(new TransactionRolledBackException("Transaction rolled back"));
         }
     }
 
@@ -487,6 +625,7 @@ public class JMSContextImpl implements JMSContext {
         if (xa) {
             throw new JMSRuntimeException("Illegal call to setClientID");
         }
+        checkNotPooled("setClientID");
         try {
             connection().setClientID(clientID);
         } catch (final JMSException e) {
@@ -499,6 +638,7 @@ public class JMSContextImpl implements JMSContext {
         if (xa) {
             throw new JMSRuntimeException("Illegal call to setExceptionListener");
         }
+        checkNotPooled("setExceptionListener");
         try {
             connection().setExceptionListener(listener);
         } catch (final JMSException e) {
@@ -520,6 +660,7 @@ public class JMSContextImpl implements JMSContext {
         if (xa) {
             throw new JMSRuntimeException("Illegal call to stop");
         }
+        checkNotPooled("stop");
         try { // TODO: ref counting
             connection().stop();
         } catch (final JMSException e) {
@@ -0,0 +1,398 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.resource.activemq.jms2;
+
+import org.apache.openejb.OpenEJB;
+import org.apache.openejb.monitoring.Managed;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.transaction.InvalidTransactionException;
+import javax.transaction.SystemException;
+import javax.transaction.Transaction;
+import javax.transaction.TransactionManager;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sessions and their anonymous producer reused by the {@link JMSContextImpl} of a connection factory,
+ * per user and session mode. All the sessions of a user share a single connection.
+ * <p/>
+ * A session comes back to the pool when its context is closed, unless the context used it for something else than
+ * producing messages (consumers, browsers, temporary destinations...), local work of a transacted session is rolled back.
+ * A context closed in a JTA transaction gives its session back once the transaction completed, the pooled sessions
+ * are not enlisted so the sends of the transaction wait for its commit, see {@link AsyncSends}.
+ * The connection of the sessions is created out of any transaction.
+ */
+public class JMSContextPool {
+    private static final Logger LOGGER = Logger.getInstance(LogCategory.OPENEJB_CONNECTOR, JMSContextPool.class);
+
+    private final int maxIdle;
+    private final ConcurrentMap<Credentials, Sessions> sessions = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+    private final AtomicLong returned = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+
+    /**
+     * @param maxIdle idle sessions kept per user and session mode
+     */
+    public JMSContextPool(final int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * @return a session of the pool or null if the context has to create its own
+     */
+    public PooledSession borrow(final ConnectionFactory factory, final String user, final String password, final int sessionMode) throws JMSException {
+        if (closed || maxIdle <= 0) {
+            return null;
+        }
+
+        final Sessions userSessions = sessions(new Credentials(user, password));
+        PooledSession session;
+        while ((session = userSessions.poll(sessionMode)) != null) {
+            if (session.isValid()) {
+                reused.incrementAndGet();
+                return session;
+            }
+            discard(session);
+        }
+
+        final Connection connection = userSessions.connection(factory);
+        try {
+            session = new PooledSession(userSessions, sessionMode, connection, connection.createSession(sessionMode));
+        } catch (final JMSException e) { // broken connection, retry once with a new one
+            userSessions.reset(connection);
+            final Connection retry = userSessions.connection(factory);
+            session = new PooledSession(userSessions, sessionMode, retry, retry.createSession(sessionMode));
+        }
+        created.incrementAndGet();
+        return session;
+    }
+
+    /**
+     * @param reusable false if the session holds more than the producer
+     */
+    public void release(final PooledSession session, final boolean reusable) {
+        if (closed || !reusable || !session.isValid()) {
+            discard(session);
+            return;
+        }
+
+        try {
+            if (session.session.getTransacted()) {
+                session.session.rollback();
+            }
+            session.resetProducer();
+        } catch (final JMSException | RuntimeException e) {
+            discard(session);
+            return;
+        }
+
+        if (session.owner.offer(session, maxIdle)) {
+            returned.incrementAndGet();
+        } else {
+            discard(session);
+        }
+    }
+
+    public void close() {
+        closed = true;
+        for (final Sessions userSessions : sessions.values()) {
+            for (final PooledSession session : userSessions.clear()) {
+                session.close();
+            }
+            userSessions.reset(null);
+        }
+        sessions.clear();
+    }
+
+    private void discard(final PooledSession session) {
+        discarded.incrementAndGet();
+        session.close();
+    }
+
+    private Sessions sessions(final Credentials credentials) {
+        Sessions userSessions = sessions.get(credentials);
+        if (userSessions == null) {
+            userSessions = new Sessions(credentials);
+            final Sessions existing = sessions.putIfAbsent(credentials, userSessions);
+            if (existing != null) {
+                userSessions = existing;
+            }
+        }
+        return userSessions;
+    }
+
+    @Managed
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+    @Managed
+    public int getIdle() {
+        int idle = 0;
+        for (final Sessions userSessions : sessions.values()) {
+            idle += userSessions.size();
+        }
+        return idle;
+    }
+
+    @Managed
+    public long getCreatedCount() {
+        return created.get();
+    }
+
+    @Managed
+    public long getReusedCount() {
+        return reused.get();
+    }
+
+    @Managed
+    public long getReturnedCount() {
+        return returned.get();
+    }
+
+    @Managed
+    public long getDiscardedCount() {
+        return discarded.get();
+    }
+
+    @Override
+    public String toString() {
+        return "JMSContextPool{idle=" + getIdle() + ", created=" + created.get() + ", reused=" + reused.get() + '}';
+    }
+
+    /**
+     * A session of the pool with its lazily created anonymous producer.
+     */
+    public static final class PooledSession {
+        private final Sessions owner;
+        private final int sessionMode;
+        private final Connection connection;
+        private final Session session;
+        private MessageProducer producer;
+
+        private PooledSession(final Sessions owner, final int sessionMode, final Connection connection, final Session session) {
+            this.owner = owner;
+            this.sessionMode = sessionMode;
+            this.connection = connection;
+            this.session = session;
+        }
+
+        public Connection getConnection() {
+            return connection;
+        }
+
+        public Session getSession() {
+            return session;
+        }
+
+        public synchronized MessageProducer getProducer() throws JMSException {
+            if (producer == null) {
+                producer = session.createProducer(null);
+            }
+            return producer;
+        }
+
+        /**
+         * The JMSProducer of a context configures the producer, the next context expects the defaults.
+         */
+        private synchronized void resetProducer() throws JMSException {
+            if (producer == null) {
+                return;
+            }
+            producer.setDisableMessageID(false);
+            producer.setDisableMessageTimestamp(false);
+            producer.setDeliveryMode(Message.DEFAULT_DELIVERY_MODE);
+            producer.setPriority(Message.DEFAULT_PRIORITY);
+            producer.setTimeToLive(Message.DEFAULT_TIME_TO_LIVE);
+            try {
+                if (producer.getDeliveryDelay() != Message.DEFAULT_DELIVERY_DELAY) {
+                    producer.setDeliveryDelay(Message.DEFAULT_DELIVERY_DELAY);
+                }
+            } catch (final AbstractMethodError | UnsupportedOperationException e) {
+                // JMS 1.1 producer
+            }
+        }
+
+        private boolean isValid() {
+            try {
+                session.getAcknowledgeMode(); // fails once the session or its connection is closed
+                return true;
+            } catch (final JMSException | RuntimeException e) {
+                return false;
+            }
+        }
+
+        private void close() {
+            try {
+                session.close();
+            } catch (final JMSException | RuntimeException e) {
+                LOGGER.debug("Can't close a pooled JMS session: " + e.getMessage());
+            }
+        }
+    }
+
+    private static final class Credentials {
+        private final String user;
+        private final String password;
+
+        private Credentials(final String user, final String password) {
+            this.user = user;
+            this.password = password;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Credentials that = Credentials.class.cast(o);
+            return (user != null ? user.equals(that.user) : that.user == null)
+                && (password != null ? password.equals(that.password) : that.password == null);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (user != null ? user.hashCode() : 0) + (password != null ? password.hashCode() : 0);
+        }
+    }
+
+    /**
+     * Connection and idle sessions of a user.
+     */
+    private static final class Sessions {
+        private final Credentials credentials;
+        private final Map<Integer, Deque<PooledSession>> idle = new HashMap<>();
+        private Connection connection;
+
+        private Sessions(final Credentials credentials) {
+            this.credentials = credentials;
+        }
+
+        private synchronized Connection connection(final ConnectionFactory factory) throws JMSException {
+            if (connection == null) {
+                // shared by all the transactions, it must not be tied to the current one
+                final TransactionManager transactionManager = OpenEJB.getTransactionManager();
+                final Transaction transaction = suspend(transactionManager);
+                try {
+                    connection = credentials.user != null ?
+                        factory.createConnection(credentials.user, credentials.password) : factory.createConnection();
+                } finally {
+                    resume(transactionManager, transaction);
+                }
+            }
+            return connection;
+        }
+
+        private static Transaction suspend(final TransactionManager transactionManager) throws JMSException {
+            if (transactionManager == null) {
+                return null;
+            }
+            try {
+                return transactionManager.suspend();
+            } catch (final SystemException e) {
+                throw jmsException(e);
+            }
+        }
+
+        private static void resume(final TransactionManager transactionManager, final Transaction transaction) throws JMSException {
+            if (transaction == null) {
+                return;
+            }
+            try {
+                transactionManager.resume(transaction);
+            } catch (final InvalidTransactionException | SystemException e) {
+                throw jmsException(e);
+            }
+        }
+
+        private static JMSException jmsException(final Exception e) {
+            final JMSException exception = new JMSException(e.getMessage());
+            exception.setLinkedException(e);
+            exception.initCause(e);
+            return exception;
+        }
+
+        private synchronized void reset(final Connection broken) {
+            if (connection == null || broken != null && connection != broken) {
+                return;
+            }
+            try {
+                connection.close();
+            } catch (final JMSException | RuntimeException e) {
+                LOGGER.debug("Can't close a pooled JMS connection: " + e.getMessage());
+            }
+            connection = null;
+        }
+
+        private synchronized PooledSession poll(final int sessionMode) {
+            final Deque<PooledSession> sessions = idle.get(sessionMode);
+            return sessions == null ? null : sessions.pollFirst();
+        }
+
+        private synchronized boolean offer(final PooledSession session, final int max) {
+            Deque<PooledSession> sessions = idle.get(session.sessionMode);
+            if (sessions == null) {
+                sessions = new ArrayDeque<>();
+                idle.put(session.sessionMode, sessions);
+            }
+            if (sessions.size() >= max) {
+                return false;
+            }
+            sessions.addFirst(session);
+            return true;
+        }
+
+        private synchronized int size() {
+            int size = 0;
+            for (final Deque<PooledSession> sessions : idle.values()) {
+                size += sessions.size();
+            }
+            return size;
+        }
+
+        private synchronized Collection<PooledSession> clear() {
+            final Collection<PooledSession> all = new ArrayList<>();
+            for (final Deque<PooledSession> sessions : idle.values()) {
+                all.addAll(sessions);
+            }
+            idle.clear();
+            return all;
+        }
+    }
+}
@@ -91,11 +91,7 @@ class JMSProducerImpl implements JMSProducer {
             }
 
             setProperties(message);
-            if (completionListener != null) {
-                producer.send(destination, message, completionListener);
-            } else {
-                producer.send(destination, message);
-            }
+            context.send(producer, destination, message, completionListener);
         } catch (final JMSException e) {
             throw toRuntimeException(e);
         }
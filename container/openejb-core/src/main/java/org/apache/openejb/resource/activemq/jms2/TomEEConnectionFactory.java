@@ -20,15 +20,40 @@ import org.apache.activemq.ActiveMQConnection;
 import org.apache.activemq.ActiveMQSslConnectionFactory;
 import org.apache.activemq.management.JMSStatsImpl;
 import org.apache.activemq.transport.Transport;
+import org.apache.activemq.transport.vm.VMTransport;
 
 import javax.jms.JMSContext;
+import javax.jms.JMSException;
 
 public class TomEEConnectionFactory extends ActiveMQSslConnectionFactory {
+    private boolean objectMessageByReference;
+
     @Override
     protected ActiveMQConnection createActiveMQConnection(final Transport transport, final JMSStatsImpl stats) throws Exception {
         return new TomEEConnection(transport, getClientIdGenerator(), getConnectionIdGenerator(), stats);
     }
 
+    @Override
+    protected void configureConnection(final ActiveMQConnection connection) throws JMSException {
+        super.configureConnection(connection);
+        if (objectMessageByReference && connection.getTransport().narrow(VMTransport.class) != null) {
+            connection.setObjectMessageSerializationDefered(true);
+        }
+    }
+
+    public boolean isObjectMessageByReference() {
+        return objectMessageByReference;
+    }
+
+    /**
+     * On an in-VM (vm://) connection the payload of an ObjectMessage is handed to the consumers by reference
+     * instead of being serialized on send and deserialized on receive. The payload must not be modified
+     * once sent. It is still serialized when the broker needs it, and for a consumer which can't see its class.
+     */
+    public void setObjectMessageByReference(final boolean objectMessageByReference) {
+        this.objectMessageByReference = objectMessageByReference;
+    }
+
     @Override
     public JMSContext createContext() {
         return new JMSContextImpl(this, -1, null, null, false);
@@ -21,18 +21,110 @@ import org.apache.activemq.ra.ActiveMQConnectionRequestInfo;
 import org.apache.activemq.ra.ActiveMQManagedConnectionFactory;
 import org.apache.activemq.ra.MessageActivationSpec;
 import org.apache.activemq.ra.SimpleConnectionManager;
+import org.apache.openejb.api.resource.DestroyableResource;
+import org.apache.openejb.monitoring.LocalMBeanServer;
+import org.apache.openejb.monitoring.ManagedMBean;
+import org.apache.openejb.monitoring.ObjectNameBuilder;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
 
 import javax.jms.JMSException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import javax.resource.ResourceException;
 import javax.resource.spi.ConnectionManager;
 import javax.resource.spi.ConnectionRequestInfo;
 import javax.resource.spi.ManagedConnection;
 import javax.security.auth.Subject;
 
-public class TomEEManagedConnectionFactory extends ActiveMQManagedConnectionFactory {
+public class TomEEManagedConnectionFactory extends ActiveMQManagedConnectionFactory implements DestroyableResource {
+    private static final Logger LOGGER = Logger.getInstance(LogCategory.OPENEJB_CONNECTOR, TomEEManagedConnectionFactory.class);
+
+    private String serviceId;
+    private int contextPoolSize = 8;
+    private boolean objectMessageByReference;
+    private volatile JMSContextPool contextPool;
+    private ObjectName contextPoolName;
+
+    public void setServiceId(final String serviceId) {
+        this.serviceId = serviceId;
+    }
+
+    public int getContextPoolSize() {
+        return contextPoolSize;
+    }
+
+    /**
+     * @param contextPoolSize idle sessions kept per user and session mode for the JMSContext instances, 0 to disable the pooling
+     */
+    public void setContextPoolSize(final int contextPoolSize) {
+        this.contextPoolSize = contextPoolSize;
+    }
+
+    public boolean isObjectMessageByReference() {
+        return objectMessageByReference;
+    }
+
+    /**
+     * @see TomEEConnectionFactory#setObjectMessageByReference(boolean)
+     */
+    public void setObjectMessageByReference(final boolean objectMessageByReference) {
+        this.objectMessageByReference = objectMessageByReference;
+    }
+
     @Override
     public Object createConnectionFactory(final ConnectionManager manager) throws ResourceException {
-        return new TomEERAConnectionFactory(this, manager, getInfo());
+        return new TomEERAConnectionFactory(this, manager, getInfo(), getContextPool());
+    }
+
+    // the connection factories are created per lookup so they share the pool of the managed connection factory
+    private JMSContextPool getContextPool() {
+        if (contextPoolSize <= 0) {
+            return null;
+        }
+        if (contextPool == null) {
+            synchronized (this) {
+                if (contextPool == null) {
+                    final JMSContextPool pool = new JMSContextPool(contextPoolSize);
+                    if (serviceId != null) {
+                        final ObjectNameBuilder jmxName = new ObjectNameBuilder("openejb.management")
+                            .set("J2EEServer", "openejb")
+                            .set("J2EEApplication", null)
+                            .set("j2eeType", "JMSContextPool")
+                            .set("name", serviceId);
+                        try {
+                            final ObjectName name = jmxName.build();
+                            final MBeanServer server = LocalMBeanServer.get();
+                            if (server.isRegistered(name)) {
+                                server.unregisterMBean(name);
+                            }
+                            server.registerMBean(new ManagedMBean(pool), name);
+                            contextPoolName = name;
+                        } catch (final Exception e) {
+                            LOGGER.error("Unable to register MBean ", e);
+                        }
+                    }
+                    contextPool = pool;
+                }
+            }
+        }
+        return contextPool;
+    }
+
+    @Override
+    public synchronized void destroyResource() {
+        if (contextPool != null) {
+            contextPool.close();
+            contextPool = null;
+        }
+        if (contextPoolName != null) {
+            try {
+                LocalMBeanServer.get().unregisterMBean(contextPoolName);
+            } catch (final Exception e) {
+                LOGGER.debug("Unable to unregister MBean " + contextPoolName);
+            }
+            contextPoolName = null;
+        }
     }
 
     @Override
@@ -44,6 +136,7 @@ public class TomEEManagedConnectionFactory extends ActiveMQManagedConnectionFact
     protected ActiveMQConnectionFactory createConnectionFactory(final ActiveMQConnectionRequestInfo connectionRequestInfo, final MessageActivationSpec activationSpec) {
         final TomEEConnectionFactory connectionFactory = new TomEEConnectionFactory();
         connectionRequestInfo.configure(connectionFactory, activationSpec);
+        connectionFactory.setObjectMessageByReference(objectMessageByReference);
         return connectionFactory;
     }
 
@@ -25,28 +25,36 @@ import javax.jms.Session;
 import javax.resource.spi.ConnectionManager;
 
 public class TomEERAConnectionFactory extends ActiveMQConnectionFactory {
+    private final transient JMSContextPool contextPool;
+
     public TomEERAConnectionFactory(final ActiveMQManagedConnectionFactory factory, final ConnectionManager manager,
                                     final ActiveMQConnectionRequestInfo connectionRequestInfo) {
+        this(factory, manager, connectionRequestInfo, null);
+    }
+
+    public TomEERAConnectionFactory(final ActiveMQManagedConnectionFactory factory, final ConnectionManager manager,
+                                    final ActiveMQConnectionRequestInfo connectionRequestInfo, final JMSContextPool contextPool) {
         super(factory, manager, connectionRequestInfo);
+        this.contextPool = contextPool;
     }
 
     @Override
     public JMSContext createContext() {
-        return new JMSContextImpl(this, Session.AUTO_ACKNOWLEDGE, null, null, false);
+        return new JMSContextImpl(this, Session.AUTO_ACKNOWLEDGE, null, null, false, contextPool);
     }
 
     @Override
     public JMSContext createContext(final int sessionMode) {
-        return new JMSContextImpl(this, sessionMode, null, null, false);
+        return new JMSContextImpl(this, sessionMode, null, null, false, contextPool);
     }
 
     @Override
     public JMSContext createContext(final String userName, final String password) {
-        return new JMSContextImpl(this, Session.AUTO_ACKNOWLEDGE, userName, password, false);
+        return new JMSContextImpl(this, Session.AUTO_ACKNOWLEDGE, userName, password, false, contextPool);
     }
 
     @Override
     public JMSContext createContext(final String userName, final String password, final int sessionMode) {
-        return new JMSContextImpl(this, sessionMode, userName, password, false);
+        return new JMSContextImpl(this, sessionMode, userName, password, false, contextPool);
     }
 }
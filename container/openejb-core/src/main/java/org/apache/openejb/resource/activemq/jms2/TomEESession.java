@@ -17,13 +17,20 @@
 package org.apache.openejb.resource.activemq.jms2;
 
 import org.apache.activemq.ActiveMQConnection;
+import org.apache.activemq.ActiveMQMessageProducer;
 import org.apache.activemq.ActiveMQMessageTransformation;
 import org.apache.activemq.ActiveMQSession;
+import org.apache.activemq.AsyncCallback;
 import org.apache.activemq.CustomDestination;
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.ActiveMQObjectMessage;
 import org.apache.activemq.command.SessionId;
+import org.apache.activemq.usage.MemoryUsage;
 
+import javax.jms.DeliveryMode;
 import javax.jms.Destination;
 import javax.jms.JMSException;
+import javax.jms.Message;
 import javax.jms.MessageConsumer;
 import javax.jms.MessageProducer;
 import javax.jms.Topic;
@@ -44,6 +51,24 @@ public class TomEESession extends ActiveMQSession {
         return new TomEEProducer(this, getNextProducerId(), ActiveMQMessageTransformation.transformDestination(destination), connection.getSendTimeout());
     }
 
+    @Override
+    protected void send(final ActiveMQMessageProducer producer, final ActiveMQDestination destination, final Message message,
+                        final int deliveryMode, final int priority, final long timeToLive, final MemoryUsage producerWindow,
+                        final int sendTimeout, final AsyncCallback onComplete) throws JMSException {
+        Message toSend = message;
+        if (connection.isObjectMessageSerializationDefered()) {
+            // the wrapper would be transformed, serializing the payload
+            if (WrappingObjectMessage.class.isInstance(toSend)) {
+                toSend = WrappingObjectMessage.class.cast(toSend).unwrap();
+            }
+            // the store only keeps the serialized form
+            if (deliveryMode == DeliveryMode.PERSISTENT && ActiveMQObjectMessage.class.isInstance(toSend)) {
+                ActiveMQObjectMessage.class.cast(toSend).storeContent();
+            }
+        }
+        super.send(producer, destination, toSend, deliveryMode, priority, timeToLive, producerWindow, sendTimeout, onComplete);
+    }
+
     @Override
     public MessageConsumer createDurableConsumer(final Topic topic, final String name) throws JMSException {
         return createDurableSubscriber(topic, name);
@@ -16,12 +16,21 @@
  */
 package org.apache.openejb.resource.activemq.jms2;
 
+import org.apache.activemq.command.ActiveMQObjectMessage;
+import org.apache.activemq.util.ClassLoadingAwareObjectInputStream;
+
 import javax.jms.JMSException;
+import javax.jms.MessageFormatException;
 import javax.jms.ObjectMessage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 
 public class WrappingObjectMessage extends DelegateMessage implements ObjectMessage {
     private final ObjectMessage message;
+    private Serializable copy;
 
     public WrappingObjectMessage(final ObjectMessage message) {
         super(message);
@@ -30,21 +39,69 @@ public class WrappingObjectMessage extends DelegateMessage implements ObjectMess
 
     @Override
     public boolean isBodyAssignableTo(final Class c) throws JMSException {
-        return c.isInstance(message.getObject());
+        return c.isInstance(getObject());
     }
 
     @Override
     public <T> T getBody(final Class<T> c) throws JMSException {
-        return c.cast(message.getObject());
+        return c.cast(getObject());
     }
 
     @Override
     public void setObject(final Serializable object) throws JMSException {
         message.setObject(object);
+        copy = null;
     }
 
+    /**
+     * A payload passed by reference in the VM (see {@link TomEEConnectionFactory#setObjectMessageByReference(boolean)})
+     * can come from another application, if the consumer doesn't see its class it gets a deserialized copy instead.
+     */
     @Override
     public Serializable getObject() throws JMSException {
-        return message.getObject();
+        if (copy != null) {
+            return copy;
+        }
+        final Serializable object = message.getObject();
+        if (object == null || !ActiveMQObjectMessage.class.isInstance(message) || isVisible(object.getClass())) {
+            return object;
+        }
+        copy = copy(object, ActiveMQObjectMessage.class.cast(message));
+        return copy;
+    }
+
+    private static boolean isVisible(final Class<?> type) {
+        Class<?> clazz = type;
+        while (clazz.isArray()) {
+            clazz = clazz.getComponentType();
+        }
+        final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        if (clazz.getClassLoader() == null || loader == null || clazz.getClassLoader() == loader) {
+            return true;
+        }
+        try {
+            return Class.forName(clazz.getName(), false, loader) == clazz;
+        } catch (final ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    private static Serializable copy(final Serializable object, final ActiveMQObjectMessage message) throws JMSException {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (final ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(object);
+            }
+            try (final ClassLoadingAwareObjectInputStream in = new ClassLoadingAwareObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                in.setTrustedPackages(message.getTrustedPackages());
+                in.setTrustAllPackages(message.isTrustAllPackages());
+                return Serializable.class.cast(in.readObject());
+            }
+        } catch (final IOException | ClassNotFoundException e) {
+            final MessageFormatException mfe = new MessageFormatException("Failed to copy the object for the consumer: " + e.getMessage());
+            mfe.setLinkedException(e);
+            mfe.initCause(e);
+            throw mfe;
+        }
     }
 }
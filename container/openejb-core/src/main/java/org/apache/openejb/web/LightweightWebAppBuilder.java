@@ -109,10 +109,11 @@ public class LightweightWebAppBuilder implements WebAppBuilder {
         }
     }
 
-    private final Map<WebAppInfo, DeployedWebObjects> servletDeploymentInfo = new HashMap<WebAppInfo, DeployedWebObjects>();
-    private final Map<WebAppInfo, List<Object>> listeners = new HashMap<WebAppInfo, List<Object>>();
-    private final Map<WebAppInfo, ServletContextEvent> servletContextEvents = new HashMap<WebAppInfo, ServletContextEvent>();
-    private final Map<String, ClassLoader> loaderByWebContext = new HashMap<String, ClassLoader>();
+    // applications can be deployed in parallel (openejb.deployment.parallelism)
+    private final Map<WebAppInfo, DeployedWebObjects> servletDeploymentInfo = new ConcurrentHashMap<WebAppInfo, DeployedWebObjects>();
+    private final Map<WebAppInfo, List<Object>> listeners = new ConcurrentHashMap<WebAppInfo, List<Object>>();
+    private final Map<WebAppInfo, ServletContextEvent> servletContextEvents = new ConcurrentHashMap<WebAppInfo, ServletContextEvent>();
+    private final Map<String, ClassLoader> loaderByWebContext = new ConcurrentHashMap<String, ClassLoader>();
 
     public void setClassLoader(final String id, final ClassLoader loader) {
         loaderByWebContext.put(id, loader);
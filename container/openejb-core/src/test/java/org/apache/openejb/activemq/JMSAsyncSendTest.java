@@ -0,0 +1,207 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.activemq;
+
+import org.apache.openejb.junit.ApplicationComposer;
+import org.apache.openejb.testing.Classes;
+import org.apache.openejb.testing.Configuration;
+import org.apache.openejb.testing.SimpleLog;
+import org.apache.openejb.testng.PropertiesBuilder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.annotation.Resource;
+import javax.ejb.EJB;
+import javax.ejb.SessionContext;
+import javax.ejb.Stateless;
+import javax.jms.CompletionListener;
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSConsumer;
+import javax.jms.JMSContext;
+import javax.jms.Message;
+import javax.jms.Queue;
+import javax.jms.TransactionRolledBackException;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@SimpleLog
+@Classes(innerClassesAsBean = true)
+@RunWith(ApplicationComposer.class)
+public class JMSAsyncSendTest {
+    private static final int MESSAGES = 50;
+
+    @Configuration
+    public Properties config() {
+        return new PropertiesBuilder()
+
+            .p("amq", "new://Resource?type=ActiveMQResourceAdapter")
+            .p("amq.DataSource", "")
+            .p("amq.BrokerXmlConfig", "broker:(vm://localhost)?persistent=false")
+
+            .p("async", "new://Resource?type=Queue")
+            .p("committed", "new://Resource?type=Queue")
+            .p("rolledback", "new://Resource?type=Queue")
+            .p("cmtCommitted", "new://Resource?type=Queue")
+            .p("cmtRolledback", "new://Resource?type=Queue")
+
+            .p("cf", "new://Resource?type=" + ConnectionFactory.class.getName())
+            .p("cf.ResourceAdapter", "amq")
+
+            .build();
+    }
+
+    @Resource(name = "cf")
+    private ConnectionFactory cf;
+
+    @Resource(name = "async")
+    private Queue async;
+
+    @Resource(name = "committed")
+    private Queue committed;
+
+    @Resource(name = "rolledback")
+    private Queue rolledback;
+
+    @Resource(name = "cmtCommitted")
+    private Queue cmtCommitted;
+
+    @Resource(name = "cmtRolledback")
+    private Queue cmtRolledback;
+
+    @EJB
+    private Sender sender;
+
+    @Test
+    public void closeWaitsForCompletions() {
+        final Listener listener = new Listener();
+        try (final JMSContext context = cf.createContext()) {
+            for (int i = 0; i < MESSAGES; i++) {
+                context.createProducer().setAsync(listener).send(async, Integer.toString(i));
+            }
+        }
+        assertEquals(MESSAGES, listener.completed.get());
+        assertNull(listener.error.get());
+        assertEquals(MESSAGES, receive(async));
+    }
+
+    @Test
+    public void transactedSendsCompleteOnCommit() {
+        final Listener listener = new Listener();
+        try (final JMSContext context = cf.createContext(JMSContext.SESSION_TRANSACTED)) {
+            for (int i = 0; i < MESSAGES; i++) {
+                context.createProducer().setAsync(listener).send(committed, Integer.toString(i));
+            }
+            assertEquals(0, listener.completed.get());
+
+            context.commit();
+            assertEquals(MESSAGES, listener.completed.get());
+        }
+        assertNull(listener.error.get());
+        assertEquals(MESSAGES, receive(committed));
+    }
+
+    @Test
+    public void transactedSendsFailOnRollback() {
+        final Listener listener = new Listener();
+        try (final JMSContext context = cf.createContext(JMSContext.SESSION_TRANSACTED)) {
+            for (int i = 0; i < MESSAGES; i++) {
+                context.createProducer().setAsync(listener).send(rolledback, Integer.toString(i));
+            }
+            context.rollback();
+        }
+        assertEquals(0, listener.completed.get());
+        assertEquals(MESSAGES, listener.failed.get());
+        assertTrue(TransactionRolledBackException.class.isInstance(listener.error.get()));
+        assertEquals(0, receive(rolledback));
+    }
+
+    @Test
+    public void containerTransactionSendsCompleteOnCommit() {
+        final Listener listener = new Listener();
+        assertEquals(0, sender.send(cmtCommitted, listener, false));
+        assertEquals(MESSAGES, listener.completed.get());
+        assertNull(listener.error.get());
+        assertEquals(MESSAGES, receive(cmtCommitted));
+    }
+
+    @Test
+    public void containerTransactionSendsFailOnRollback() {
+        final Listener listener = new Listener();
+        assertEquals(0, sender.send(cmtRolledback, listener, true));
+        assertEquals(0, listener.completed.get());
+        assertEquals(MESSAGES, listener.failed.get());
+        assertTrue(TransactionRolledBackException.class.isInstance(listener.error.get()));
+        assertEquals(0, receive(cmtRolledback)); // the session is not enlisted, the messages were never sent
+    }
+
+    private int receive(final Queue queue) {
+        int received = 0;
+        try (final JMSContext context = cf.createContext()) {
+            final JMSConsumer consumer = context.createConsumer(queue);
+            while (consumer.receive(500) != null) {
+                received++;
+            }
+        }
+        return received;
+    }
+
+    @Stateless
+    public static class Sender {
+        @Resource(name = "cf")
+        private ConnectionFactory cf;
+
+        @Resource
+        private SessionContext ctx;
+
+        /**
+         * @return the sends completed before the transaction ends
+         */
+        public int send(final Queue queue, final Listener listener, final boolean rollback) {
+            try (final JMSContext context = cf.createContext()) {
+                for (int i = 0; i < MESSAGES; i++) {
+                    context.createProducer().setAsync(listener).send(queue, Integer.toString(i));
+                }
+            }
+            if (rollback) {
+                ctx.setRollbackOnly();
+            }
+            return listener.completed.get() + listener.failed.get();
+        }
+    }
+
+    public static class Listener implements CompletionListener {
+        private final AtomicInteger completed = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicReference<Exception> error = new AtomicReference<>();
+
+        @Override
+        public void onCompletion(final Message message) {
+            completed.incrementAndGet();
+        }
+
+        @Override
+        public void onException(final Message message, final Exception exception) {
+            failed.incrementAndGet();
+            error.set(exception);
+        }
+    }
+}
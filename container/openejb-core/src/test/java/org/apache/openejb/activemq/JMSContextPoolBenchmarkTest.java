@@ -0,0 +1,207 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.activemq;
+
+import org.apache.openejb.junit.ApplicationComposer;
+import org.apache.openejb.monitoring.LocalMBeanServer;
+import org.apache.openejb.testing.Classes;
+import org.apache.openejb.testing.Configuration;
+import org.apache.openejb.testng.PropertiesBuilder;
+import org.apache.webbeans.config.WebBeansContext;
+import org.apache.webbeans.spi.ContextsService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.annotation.Resource;
+import javax.ejb.Stateless;
+import javax.enterprise.context.RequestScoped;
+import javax.inject.Inject;
+import javax.jms.ConnectionFactory;
+import javax.jms.DeliveryMode;
+import javax.jms.JMSConnectionFactory;
+import javax.jms.JMSContext;
+import javax.jms.Queue;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Send throughput of a request scoped bean injecting a JMSContext, with and without the session pool.
+ */
+@Classes(cdi = true, innerClassesAsBean = true)
+@RunWith(ApplicationComposer.class)
+public class JMSContextPoolBenchmarkTest {
+    private static final int REQUESTS = 2000;
+    private static final String POOL = "openejb.management:J2EEServer=openejb,J2EEApplication=<empty>,j2eeType=JMSContextPool,name=pooled";
+
+    @Configuration
+    public Properties config() {
+        return new PropertiesBuilder()
+
+            .p("amq", "new://Resource?type=ActiveMQResourceAdapter")
+            .p("amq.DataSource", "")
+            .p("amq.BrokerXmlConfig", "broker:(vm://localhost)?persistent=false")
+
+            .p("bench", "new://Resource?type=Queue")
+
+            .p("pooled", "new://Resource?type=" + ConnectionFactory.class.getName())
+            .p("pooled.ResourceAdapter", "amq")
+
+            .p("unpooled", "new://Resource?type=" + ConnectionFactory.class.getName())
+            .p("unpooled.ResourceAdapter", "amq")
+            .p("unpooled.ContextPoolSize", "0")
+
+            .build();
+    }
+
+    @Resource(name = "bench")
+    private Queue queue;
+
+    @Inject
+    private PooledSender pooled;
+
+    @Inject
+    private UnpooledSender unpooled;
+
+    @Inject
+    private TransactionalSender transactional;
+
+    @Test
+    public void benchmark() throws Exception {
+        // warm up both paths
+        run(unpooled, 100);
+        run(pooled, 100);
+
+        final long unpooledTime = run(unpooled, REQUESTS);
+        final long pooledTime = run(pooled, REQUESTS);
+
+        Logger.getLogger(JMSContextPoolBenchmarkTest.class.getName()).info(String.format(
+            "JMSContext send from a request scoped bean, %d requests:%n  without pool: %d msg/s%n  with pool:    %d msg/s",
+            REQUESTS, throughput(unpooledTime), throughput(pooledTime)));
+
+        final MBeanServer server = LocalMBeanServer.get();
+        final ObjectName pool = new ObjectName(POOL);
+        assertTrue(server.isRegistered(pool));
+        assertFalse(server.isRegistered(new ObjectName(
+            "openejb.management:J2EEServer=openejb,J2EEApplication=<empty>,j2eeType=JMSContextPool,name=unpooled")));
+
+        final long created = (Long) server.getAttribute(pool, "CreatedCount");
+        final long reused = (Long) server.getAttribute(pool, "ReusedCount");
+        assertEquals(REQUESTS + 100, created + reused);
+        assertTrue("created " + created, created <= 2);
+        assertEquals(0L, server.getAttribute(pool, "DiscardedCount"));
+        assertEquals(1, server.getAttribute(pool, "Idle"));
+    }
+
+    @Test
+    public void transactionsUseThePool() throws Exception {
+        final MBeanServer server = LocalMBeanServer.get();
+        final ObjectName pool = new ObjectName(POOL);
+
+        transactional.send(queue, "first"); // creates the pool
+        final long created = (Long) server.getAttribute(pool, "CreatedCount");
+        final long reused = (Long) server.getAttribute(pool, "ReusedCount");
+        for (int i = 0; i < 100; i++) {
+            transactional.send(queue, Integer.toString(i));
+        }
+
+        // the session of a transaction is back once it completed, ready for the next one
+        assertEquals(created, server.getAttribute(pool, "CreatedCount"));
+        assertEquals(reused + 100, server.getAttribute(pool, "ReusedCount"));
+        assertEquals(1, server.getAttribute(pool, "Idle"));
+    }
+
+    private long run(final Sender sender, final int requests) throws Exception {
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final long[] duration = new long[1];
+        final Thread thread = new Thread(JMSContextPoolBenchmarkTest.class.getSimpleName()) {
+            @Override
+            public void run() {
+                final ContextsService contextsService = WebBeansContext.currentInstance().getContextsService();
+                final long start = System.nanoTime();
+                try {
+                    for (int i = 0; i < requests; i++) {
+                        contextsService.startContext(RequestScoped.class, null);
+                        try {
+                            sender.send(queue, Integer.toString(i));
+                        } finally {
+                            contextsService.endContext(RequestScoped.class, null);
+                        }
+                    }
+                } catch (final Throwable t) {
+                    error.set(t);
+                }
+                duration[0] = System.nanoTime() - start;
+            }
+        };
+        thread.start();
+        thread.join(TimeUnit.MINUTES.toMillis(5));
+        assertNull(error.get());
+        return duration[0];
+    }
+
+    private static long throughput(final long nanos) {
+        return REQUESTS * TimeUnit.SECONDS.toNanos(1) / Math.max(1, nanos);
+    }
+
+    public interface Sender {
+        void send(Queue queue, String text);
+    }
+
+    @RequestScoped
+    public static class PooledSender implements Sender {
+        @Inject
+        @JMSConnectionFactory("pooled")
+        private JMSContext context;
+
+        @Override
+        public void send(final Queue queue, final String text) {
+            context.createProducer().setDeliveryMode(DeliveryMode.NON_PERSISTENT).send(queue, text);
+        }
+    }
+
+    @Stateless
+    public static class TransactionalSender {
+        @Inject
+        @JMSConnectionFactory("pooled")
+        private JMSContext context;
+
+        public void send(final Queue queue, final String text) {
+            context.createProducer().setDeliveryMode(DeliveryMode.NON_PERSISTENT).send(queue, text);
+        }
+    }
+
+    @RequestScoped
+    public static class UnpooledSender implements Sender {
+        @Inject
+        @JMSConnectionFactory("unpooled")
+        private JMSContext context;
+
+        @Override
+        public void send(final Queue queue, final String text) {
+            context.createProducer().setDeliveryMode(DeliveryMode.NON_PERSISTENT).send(queue, text);
+        }
+    }
+}
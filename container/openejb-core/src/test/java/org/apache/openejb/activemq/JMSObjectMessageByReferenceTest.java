@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.activemq;
+
+import org.apache.openejb.junit.ApplicationComposer;
+import org.apache.openejb.testing.Classes;
+import org.apache.openejb.testing.Configuration;
+import org.apache.openejb.testing.SimpleLog;
+import org.apache.openejb.testng.PropertiesBuilder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.annotation.Resource;
+import javax.jms.ConnectionFactory;
+import javax.jms.DeliveryMode;
+import javax.jms.JMSContext;
+import javax.jms.Message;
+import javax.jms.Queue;
+import java.io.Serializable;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+@SimpleLog
+@Classes
+@RunWith(ApplicationComposer.class)
+public class JMSObjectMessageByReferenceTest {
+    @Configuration
+    public Properties config() {
+        return new PropertiesBuilder()
+
+            .p("amq", "new://Resource?type=ActiveMQResourceAdapter")
+            .p("amq.DataSource", "")
+            .p("amq.BrokerXmlConfig", "broker:(vm://localhost)?persistent=false")
+
+            .p("objects", "new://Resource?type=Queue")
+
+            .p("byReference", "new://Resource?type=" + ConnectionFactory.class.getName())
+            .p("byReference.ResourceAdapter", "amq")
+            .p("byReference.ObjectMessageByReference", "true")
+
+            .p("serialized", "new://Resource?type=" + ConnectionFactory.class.getName())
+            .p("serialized.ResourceAdapter", "amq")
+
+            .build();
+    }
+
+    @Resource(name = "byReference")
+    private ConnectionFactory byReference;
+
+    @Resource(name = "serialized")
+    private ConnectionFactory serialized;
+
+    @Resource(name = "objects")
+    private Queue queue;
+
+    @Test
+    public void passedByReference() throws Exception {
+        for (final int mode : new int[]{DeliveryMode.NON_PERSISTENT, DeliveryMode.PERSISTENT}) {
+            final Payload payload = new Payload("in vm");
+            try (final JMSContext context = byReference.createContext()) {
+                context.createProducer().setDeliveryMode(mode).send(queue, payload);
+                assertSame(payload, receive(context).getBody(Payload.class));
+            }
+        }
+    }
+
+    @Test
+    public void serializedByDefault() throws Exception {
+        final Payload payload = new Payload("copied");
+        try (final JMSContext context = serialized.createContext()) {
+            context.createProducer().send(queue, payload);
+            final Payload received = receive(context).getBody(Payload.class);
+            assertNotSame(payload, received);
+            assertEquals(payload.value, received.value);
+        }
+    }
+
+    @Test
+    public void copiedWhenTheConsumerDoesNotSeeTheClass() throws Exception {
+        final Payload payload = new Payload("other loader");
+        try (final JMSContext context = byReference.createContext()) {
+            context.createProducer().send(queue, payload);
+            final Message message = receive(context);
+
+            final URL classes = Payload.class.getProtectionDomain().getCodeSource().getLocation();
+            final Thread thread = Thread.currentThread();
+            final ClassLoader old = thread.getContextClassLoader();
+            try (final URLClassLoader other = new URLClassLoader(new URL[]{classes}, null)) {
+                thread.setContextClassLoader(other);
+                final Object received = message.getBody(Serializable.class);
+                assertSame(other.loadClass(Payload.class.getName()), received.getClass());
+            } finally {
+                thread.setContextClassLoader(old);
+            }
+        }
+    }
+
+    private Message receive(final JMSContext context) {
+        final Message message = context.createConsumer(queue).receive(10000);
+        assertNotNull(message);
+        return message;
+    }
+
+    public static class Payload implements Serializable {
+        private final String value;
+
+        public Payload(final String value) {
+            this.value = value;
+        }
+    }
+}
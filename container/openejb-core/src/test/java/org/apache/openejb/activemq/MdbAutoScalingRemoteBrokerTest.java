@@ -0,0 +1,111 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.activemq;
+
+import org.apache.activemq.ra.ActiveMQActivationSpec;
+import org.apache.openejb.BeanContext;
+import org.apache.openejb.config.EjbModule;
+import org.apache.openejb.core.mdb.EndpointFactory;
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.MessageDrivenBean;
+import org.apache.openejb.jee.oejb3.OpenejbJar;
+import org.apache.openejb.junit.ApplicationComposer;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.monitoring.LocalMBeanServer;
+import org.apache.openejb.spi.ContainerSystem;
+import org.apache.openejb.testing.Configuration;
+import org.apache.openejb.testing.Module;
+import org.apache.openejb.testng.PropertiesBuilder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.ejb.ActivationConfigProperty;
+import javax.ejb.MessageDriven;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+import javax.management.ObjectName;
+import java.net.ServerSocket;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(ApplicationComposer.class)
+public class MdbAutoScalingRemoteBrokerTest {
+
+    @Configuration
+    public Properties config() throws Exception {
+        final int port;
+        final ServerSocket socket = new ServerSocket(0);
+        try {
+            port = socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+
+        // no embedded broker, the backlog of a remote one is not known
+        return new PropertiesBuilder()
+
+            .p("amq", "new://Resource?type=ActiveMQResourceAdapter")
+            .p("amq.DataSource", "")
+            .p("amq.BrokerXmlConfig", "")
+            .p("amq.ServerUrl", "tcp://localhost:" + port)
+
+            .p("mdbs", "new://Container?type=MESSAGE")
+            .p("mdbs.ResourceAdapter", "amq")
+
+            .build();
+    }
+
+    @Module
+    public EjbModule jar() {
+        final EjbModule module = new EjbModule(new EjbJar(), new OpenejbJar());
+        final MessageDrivenBean bean = module.getEjbJar().addEnterpriseBean(new MessageDrivenBean(Listener.class));
+        final Properties properties = module.getOpenejbJar().addEjbDeployment(bean).getProperties();
+        properties.setProperty("AutoScale", "true");
+        properties.setProperty("AutoScaleMax", "4");
+        return module;
+    }
+
+    @Test
+    public void keepsItsFixedConcurrency() throws Exception {
+        EndpointFactory endpointFactory = null;
+        for (final BeanContext beanContext : SystemInstance.get().getComponent(ContainerSystem.class).deployments()) {
+            if (beanContext.getBeanClass() == Listener.class) {
+                endpointFactory = (EndpointFactory) beanContext.getContainerData();
+            }
+        }
+        assertNotNull(endpointFactory);
+
+        assertNull(endpointFactory.getAutoScaler());
+        assertEquals(new ActiveMQActivationSpec().getMaxSessions(), ((ActiveMQActivationSpec) endpointFactory.getActivationSpec()).getMaxSessions());
+        assertTrue(LocalMBeanServer.get().queryNames(new ObjectName("openejb.management:j2eeType=AutoScaling,*"), null).isEmpty());
+    }
+
+    @MessageDriven(activationConfig = {
+        @ActivationConfigProperty(propertyName = "destinationType", propertyValue = "javax.jms.Queue"),
+        @ActivationConfigProperty(propertyName = "destination", propertyValue = "remote")
+    })
+    public static class Listener implements MessageListener {
+        @Override
+        public void onMessage(final Message message) {
+            // no-op
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.activemq;
+
+import org.apache.openejb.config.EjbModule;
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.MessageDrivenBean;
+import org.apache.openejb.jee.oejb3.OpenejbJar;
+import org.apache.openejb.junit.ApplicationComposer;
+import org.apache.openejb.monitoring.LocalMBeanServer;
+import org.apache.openejb.testing.Configuration;
+import org.apache.openejb.testing.Module;
+import org.apache.openejb.testng.PropertiesBuilder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.annotation.Resource;
+import javax.ejb.ActivationConfigProperty;
+import javax.ejb.MessageDriven;
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.Session;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(ApplicationComposer.class)
+public class MdbAutoScalingTest {
+    private static final int MESSAGES = 50;
+
+    @Configuration
+    public Properties config() {
+        return new PropertiesBuilder()
+
+            .p("amq", "new://Resource?type=ActiveMQResourceAdapter")
+            .p("amq.DataSource", "")
+            .p("amq.BrokerXmlConfig", "broker:(vm://localhost)?persistent=false")
+
+            .p("scaled", "new://Resource?type=Queue")
+
+            .p("mdbs", "new://Container?type=MESSAGE")
+            .p("mdbs.ResourceAdapter", "amq")
+
+            .p("cf", "new://Resource?type=" + ConnectionFactory.class.getName())
+            .p("cf.ResourceAdapter", "amq")
+
+            .build();
+    }
+
+    @Module
+    public EjbModule jar() {
+        final EjbModule module = new EjbModule(new EjbJar(), new OpenejbJar());
+        final MessageDrivenBean bean = module.getEjbJar().addEnterpriseBean(new MessageDrivenBean(Listener.class));
+        final Properties properties = module.getOpenejbJar().addEjbDeployment(bean).getProperties();
+        properties.setProperty("AutoScale", "true");
+        properties.setProperty("AutoScaleMax", "4");
+        properties.setProperty("AutoScaleInterval", "100");
+        properties.setProperty("AutoScaleBacklog", "5");
+        return module;
+    }
+
+    @Resource(name = "scaled")
+    private Queue destination;
+
+    @Resource(name = "cf")
+    private ConnectionFactory cf;
+
+    @Test
+    public void followsTheBacklog() throws Exception {
+        final MBeanServer server = LocalMBeanServer.get();
+        final Set<ObjectName> names = server.queryNames(new ObjectName("openejb.management:j2eeType=AutoScaling,*"), null);
+        assertEquals(1, names.size());
+        final ObjectName scaler = names.iterator().next();
+        assertEquals(1, server.getAttribute(scaler, "Limit"));
+
+        final Connection connection = cf.createConnection();
+        try {
+            final Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            final MessageProducer producer = session.createProducer(destination);
+            for (int i = 0; i < MESSAGES; i++) {
+                producer.send(session.createTextMessage(Integer.toString(i)));
+            }
+        } finally {
+            connection.close();
+        }
+
+        // the backlog grows the limit up to the max
+        assertTrue(Listener.busy.await(1, TimeUnit.MINUTES));
+        assertEquals(4, Listener.concurrent.get());
+        assertEquals(4, server.getAttribute(scaler, "Limit"));
+        assertTrue(((Long) server.getAttribute(scaler, "IncreaseCount")) >= 1);
+
+        // then the limit goes back to the min once it is consumed
+        Listener.release.countDown();
+        assertTrue(Listener.done.await(1, TimeUnit.MINUTES));
+        final long end = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1);
+        while (!Integer.valueOf(1).equals(server.getAttribute(scaler, "Limit")) && System.currentTimeMillis() < end) {
+            Thread.sleep(50);
+        }
+        assertEquals(1, server.getAttribute(scaler, "Limit"));
+        assertTrue(((Long) server.getAttribute(scaler, "DecreaseCount")) >= 3);
+        assertEquals(4, Listener.max.get());
+    }
+
+    @MessageDriven(activationConfig = {
+        @ActivationConfigProperty(propertyName = "destinationType", propertyValue = "javax.jms.Queue"),
+        @ActivationConfigProperty(propertyName = "destination", propertyValue = "scaled")
+    })
+    public static class Listener implements MessageListener {
+        private static final CountDownLatch busy = new CountDownLatch(4);
+        private static final CountDownLatch release = new CountDownLatch(1);
+        private static final CountDownLatch done = new CountDownLatch(MESSAGES);
+        private static final AtomicInteger concurrent = new AtomicInteger();
+        private static final AtomicInteger max = new AtomicInteger();
+
+        @Override
+        public void onMessage(final Message message) {
+            final int current = concurrent.incrementAndGet();
+            synchronized (max) {
+                max.set(Math.max(max.get(), current));
+            }
+            busy.countDown();
+            try {
+                release.await(1, TimeUnit.MINUTES);
+            } catch (final InterruptedException e) {
+                Thread.interrupted();
+            } finally {
+                concurrent.decrementAndGet();
+                done.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.activemq;
+
+import org.apache.openejb.api.jms.MessageBatchListener;
+import org.apache.openejb.jee.MessageDrivenBean;
+import org.apache.openejb.junit.ApplicationComposer;
+import org.apache.openejb.testing.Configuration;
+import org.apache.openejb.testing.Module;
+import org.apache.openejb.testng.PropertiesBuilder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.annotation.Resource;
+import javax.ejb.ActivationConfigProperty;
+import javax.ejb.MessageDriven;
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(ApplicationComposer.class)
+public class MessageBatchTest {
+    private static final int MESSAGES = 25;
+
+    @Configuration
+    public Properties config() {
+        return new PropertiesBuilder()
+
+            .p("amq", "new://Resource?type=ActiveMQResourceAdapter")
+            .p("amq.DataSource", "")
+            .p("amq.BrokerXmlConfig", "broker:(vm://localhost)?persistent=false")
+
+            .p("target", "new://Resource?type=Queue")
+
+            .p("mdbs", "new://Container?type=MESSAGE")
+            .p("mdbs.ResourceAdapter", "amq")
+
+            .p("cf", "new://Resource?type=" + ConnectionFactory.class.getName())
+            .p("cf.ResourceAdapter", "amq")
+
+            .build();
+    }
+
+    @Module
+    public MessageDrivenBean jar() {
+        return new MessageDrivenBean(Listener.class);
+    }
+
+    @Resource(name = "target")
+    private Queue destination;
+
+    @Resource(name = "cf")
+    private ConnectionFactory cf;
+
+    @Test
+    public void batches() throws Exception {
+        final Connection connection = cf.createConnection();
+        try {
+            final Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            final MessageProducer producer = session.createProducer(destination);
+            for (int i = 0; i < MESSAGES; i++) {
+                producer.send(session.createTextMessage(Integer.toString(i)));
+            }
+        } finally {
+            connection.close();
+        }
+
+        assertTrue(Listener.latch.await(1, TimeUnit.MINUTES));
+        synchronized (Listener.class) {
+            assertEquals(MESSAGES, Listener.received.size());
+            int total = 0;
+            int largest = 0;
+            for (final Integer size : Listener.sizes) {
+                assertTrue(size <= 10);
+                total += size;
+                largest = Math.max(largest, size);
+            }
+            assertEquals(MESSAGES, total);
+            assertTrue(largest > 1);
+        }
+    }
+
+    @MessageDriven(activationConfig = {
+        @ActivationConfigProperty(propertyName = "destinationType", propertyValue = "javax.jms.Queue"),
+        @ActivationConfigProperty(propertyName = "destination", propertyValue = "target"),
+        @ActivationConfigProperty(propertyName = "batchSize", propertyValue = "10"),
+        @ActivationConfigProperty(propertyName = "batchTimeout", propertyValue = "1000")
+    })
+    public static class Listener implements MessageListener, MessageBatchListener {
+        private static final CountDownLatch latch = new CountDownLatch(MESSAGES);
+        private static final Set<String> received = new TreeSet<String>();
+        private static final List<Integer> sizes = new ArrayList<Integer>();
+        private static boolean first = true;
+
+        @Override
+        public void onMessage(final Message message) {
+            throw new IllegalStateException("messages are delivered in batches");
+        }
+
+        @Override
+        public void onMessages(final List<Message> messages) {
+            synchronized (Listener.class) {
+                if (first) {
+                    first = false;
+                    try { // let the next messages queue up
+                        Thread.sleep(500);
+                    } catch (final InterruptedException e) {
+                        Thread.interrupted();
+                    }
+                }
+
+                sizes.add(messages.size());
+                for (final Message message : messages) {
+                    try {
+                        if (received.add(TextMessage.class.cast(message).getText())) {
+                            latch.countDown();
+                        }
+                    } catch (final JMSException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            }
+        }
+    }
+}
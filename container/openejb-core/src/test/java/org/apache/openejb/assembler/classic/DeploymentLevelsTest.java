@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.assembler.classic;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+
+public class DeploymentLevelsTest {
+    @Test
+    public void independentAppsShareALevel() {
+        final AppInfo a = app("a", "A");
+        final AppInfo b = app("b", "B");
+        final AppInfo c = app("c", "C");
+
+        final List<List<AppInfo>> levels = DeploymentLevels.levels(asList(a, b, c));
+        assertEquals(1, levels.size());
+        assertEquals(asList(a, b, c), levels.get(0));
+    }
+
+    @Test
+    public void dependsOnAndReferences() {
+        final AppInfo a = app("a", "A");
+        final AppInfo b = app("b", "B");
+        final AppInfo c = app("c", "C");
+        final AppInfo d = app("d", "D");
+        a.ejbJars.get(0).enterpriseBeans.get(0).dependsOn.add("B"); // @DependsOn
+        final EjbLocalReferenceInfo ref = new EjbLocalReferenceInfo();
+        ref.ejbDeploymentId = "C";
+        b.ejbJars.get(0).enterpriseBeans.get(0).jndiEnc.ejbLocalReferences.add(ref); // @EJB
+
+        final List<List<AppInfo>> levels = DeploymentLevels.levels(asList(a, b, c, d));
+        assertEquals(3, levels.size());
+        assertEquals(asList(c, d), levels.get(0));
+        assertEquals(Arrays.asList(b), levels.get(1));
+        assertEquals(Arrays.asList(a), levels.get(2));
+    }
+
+    @Test
+    public void cyclesAreSerial() {
+        final AppInfo a = app("a", "A");
+        final AppInfo b = app("b", "B");
+        final AppInfo c = app("c", "C");
+        a.ejbJars.get(0).enterpriseBeans.get(0).dependsOn.add("B");
+        b.ejbJars.get(0).enterpriseBeans.get(0).dependsOn.add("A");
+
+        final List<List<AppInfo>> levels = DeploymentLevels.levels(asList(a, b, c));
+        assertEquals(3, levels.size());
+        assertEquals(Arrays.asList(c), levels.get(0));
+        assertEquals(Arrays.asList(a), levels.get(1));
+        assertEquals(Arrays.asList(b), levels.get(2));
+    }
+
+    @Test
+    public void duplicatedIdsAreSerial() {
+        final AppInfo a = app("a", "A");
+        final AppInfo b = app("b", "A");
+
+        final List<List<AppInfo>> levels = DeploymentLevels.levels(asList(a, b));
+        assertEquals(2, levels.size());
+        assertEquals(Arrays.asList(a), levels.get(0));
+        assertEquals(Arrays.asList(b), levels.get(1));
+    }
+
+    private static AppInfo app(final String id, final String bean) {
+        final SingletonBeanInfo singleton = new SingletonBeanInfo();
+        singleton.ejbDeploymentId = bean;
+        singleton.ejbName = bean;
+
+        final EjbJarInfo ejbJar = new EjbJarInfo();
+        ejbJar.moduleId = id;
+        ejbJar.enterpriseBeans.add(singleton);
+
+        final AppInfo app = new AppInfo();
+        app.appId = id;
+        app.ejbJars.add(ejbJar);
+        return app;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.assembler.classic;
+
+import org.apache.openejb.OpenEJB;
+import org.apache.openejb.config.AppModule;
+import org.apache.openejb.config.ConfigurationFactory;
+import org.apache.openejb.config.DeploymentsResolver;
+import org.apache.openejb.config.EjbModule;
+import org.apache.openejb.config.WebModule;
+import org.apache.openejb.core.CoreContainerSystem;
+import org.apache.openejb.core.WebContext;
+import org.apache.openejb.jee.Beans;
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.StatelessBean;
+import org.apache.openejb.jee.WebApp;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.mbeans.Empty;
+import org.apache.openejb.monitoring.LocalMBeanServer;
+import org.apache.openejb.spi.ContainerSystem;
+import org.apache.openejb.web.LightweightWebAppBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import javax.naming.Context;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelDeploymentTest {
+    private static final int APPS = 8;
+
+    @Before
+    public void init() throws Exception {
+        System.setProperty(LocalMBeanServer.OPENEJB_JMX_ACTIVE, "true");
+        final Properties properties = new Properties();
+        properties.setProperty(Assembler.OPENEJB_DEPLOYMENT_PARALLELISM, "4");
+        properties.setProperty(DeploymentsResolver.SEARCH_CLASSPATH_FOR_DEPLOYMENTS_PROPERTY, "false");
+        SystemInstance.init(properties);
+    }
+
+    @After
+    public void reset() {
+        System.clearProperty(LocalMBeanServer.OPENEJB_JMX_ACTIVE);
+        OpenEJB.destroy();
+    }
+
+    @Test
+    public void deploy() throws Exception {
+        final OpenEjbConfiguration configuration = new ConfigurationFactory().getOpenEjbConfiguration();
+        final ConfigurationFactory config = new ConfigurationFactory(false, configuration); // containers go in the configuration
+        for (int i = 0; i < APPS; i++) {
+            configuration.containerSystem.applications.add(config.configureApplication(app(i)));
+        }
+
+        SystemInstance.get().setComponent(WebAppBuilder.class, new LightweightWebAppBuilder());
+        final Assembler assembler = new Assembler();
+        assembler.buildContainerSystem(configuration);
+
+        final CoreContainerSystem containerSystem = (CoreContainerSystem) SystemInstance.get().getComponent(ContainerSystem.class);
+        final Context context = containerSystem.getJNDIContext();
+        assertEquals(APPS, containerSystem.getAppContexts().size());
+        assertEquals(APPS, containerSystem.WebDeployments().length);
+        for (int i = 0; i < APPS; i++) {
+            final Greeter greeter = (Greeter) context.lookup("global/parallel" + i + "/ejbs" + i + "/Greeter" + i);
+            assertEquals("hello", greeter.hello());
+
+            final WebContext webContext = containerSystem.getWebContext("web" + i);
+            assertNotNull(webContext);
+            assertEquals("parallel" + i, webContext.getAppContext().getId());
+        }
+
+        int mbeans = 0;
+        for (final AppInfo appInfo : configuration.containerSystem.applications) {
+            for (final Object name : appInfo.jmx.values()) {
+                assertTrue(LocalMBeanServer.get().isRegistered(new ObjectName((String) name)));
+                mbeans++;
+            }
+        }
+        assertEquals(APPS, mbeans);
+    }
+
+    private static AppModule app(final int i) {
+        final EjbJar ejbJar = new EjbJar();
+        ejbJar.addEnterpriseBean(new StatelessBean("Greeter" + i, Greeter.class));
+        final EjbModule ejbModule = new EjbModule(ejbJar);
+        ejbModule.setModuleId("ejbs" + i);
+        ejbModule.setBeans(new Beans());
+        ejbModule.getBeans().addManagedClass(Empty.class);
+        ejbModule.getMbeans().add(Empty.class.getName());
+
+        final WebApp webApp = new WebApp();
+        webApp.setMetadataComplete(true);
+
+        final AppModule appModule = new AppModule(ejbModule.getClassLoader(), "parallel" + i);
+        appModule.getEjbModules().add(ejbModule);
+        appModule.getWebModules().add(new WebModule(webApp, "web" + i, ejbModule.getClassLoader(), "web" + i, "web" + i));
+        return appModule;
+    }
+
+    public static class Greeter {
+        public String hello() {
+            return "hello";
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.config;
+
+import org.apache.openejb.OpenEJBException;
+import org.apache.openejb.assembler.classic.AppInfo;
+import org.apache.openejb.assembler.classic.Assembler;
+import org.apache.openejb.config.event.BeforeAppInfoBuilderEvent;
+import org.apache.openejb.loader.Files;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.observer.Observes;
+import org.apache.openejb.util.Archives;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ejb.Singleton;
+import java.io.File;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+public class DeploymentSnapshotsTest {
+    private File snapshots;
+
+    @Before
+    public void activate() {
+        snapshots = Files.mkdir(Files.tmpdir(), "snapshots-" + System.nanoTime());
+        SystemInstance.get().setProperty(DeploymentSnapshots.ACTIVE, "true");
+        SystemInstance.get().setProperty(DeploymentSnapshots.DIRECTORY, snapshots.getAbsolutePath());
+    }
+
+    @After
+    public void reset() {
+        SystemInstance.reset();
+        Files.delete(snapshots);
+    }
+
+    private final AtomicInteger configured = new AtomicInteger();
+
+    @Test
+    public void reuseUntilSomethingChanges() throws Exception {
+        final File file = archive();
+        final ConfigurationFactory factory = factory();
+
+        final AppInfo first = factory.configureApplication(file);
+        assertEquals(1, configured.get());
+
+        final AppInfo second = factory.configureApplication(file);
+        assertEquals(1, configured.get()); // snapshot used
+        assertNotSame(first, second);
+        assertEquals(first.appId, second.appId);
+        assertEquals(first.path, second.path);
+        assertEquals(first.ejbJars.size(), second.ejbJars.size());
+        assertEquals(
+            first.ejbJars.get(0).enterpriseBeans.get(0).ejbDeploymentId,
+            second.ejbJars.get(0).enterpriseBeans.get(0).ejbDeploymentId);
+
+        SystemInstance.get().setProperty("DeploymentSnapshotsTest.port", "1234"); // not a deployment property
+        factory.configureApplication(file);
+        assertEquals(1, configured.get());
+
+        SystemInstance.get().setProperty("openejb.DeploymentSnapshotsTest.changed", "true");
+        factory.configureApplication(file);
+        assertEquals(2, configured.get()); // configuration changed, full pipeline
+    }
+
+    @Test
+    public void notReplayedForBeforeAppInfoBuilderObservers() throws Exception {
+        final File file = archive();
+        final ConfigurationFactory factory = factory();
+        final AppModuleObserver observer = new AppModuleObserver();
+        SystemInstance.get().addObserver(observer);
+
+        factory.configureApplication(file);
+        factory.configureApplication(file);
+        assertEquals(2, configured.get());
+        assertEquals(2, observer.observed.get());
+    }
+
+    private File archive() throws Exception {
+        return Archives.jarArchive(Collections.singletonMap("META-INF/ejb-jar.xml", "<ejb-jar/>"), "snapshot", LemonBean.class);
+    }
+
+    private ConfigurationFactory factory() {
+        new Assembler();
+        return new ConfigurationFactory() {
+            @Override
+            public AppInfo configureApplication(final AppModule appModule) throws OpenEJBException {
+                configured.incrementAndGet();
+                return super.configureApplication(appModule);
+            }
+        };
+    }
+
+    @Singleton
+    public static class LemonBean {
+    }
+
+    public static class AppModuleObserver {
+        private final AtomicInteger observed = new AtomicInteger();
+
+        public void observe(@Observes final BeforeAppInfoBuilderEvent event) {
+            observed.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.config;
+
+import org.apache.openejb.loader.Files;
+import org.apache.openejb.loader.IO;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.xbean.finder.AnnotationFinder;
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.ClasspathArchive;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.ejb.Stateless;
+import javax.inject.Named;
+import javax.sql.DataSource;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ScanIndexTest {
+    private File work;
+    private File jar;
+
+    @Before
+    public void createJar() throws IOException {
+        work = Files.mkdir(Files.tmpdir(), "scan-index-" + System.nanoTime());
+        jar = new File(work, "scanned.jar");
+        try (final JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            for (final Class<?> clazz : new Class<?>[]{Service.class, ServiceBean.class, Helper.class}) {
+                final String name = clazz.getName().replace('.', '/') + ".class";
+                out.putNextEntry(new JarEntry(name));
+                try (final InputStream is = ScanIndexTest.class.getClassLoader().getResourceAsStream(name)) {
+                    IO.copy(is, out);
+                }
+                out.closeEntry();
+            }
+        }
+    }
+
+    @After
+    public void reset() {
+        SystemInstance.reset();
+        Files.delete(work);
+    }
+
+    @Test
+    public void descriptors() {
+        assertEquals("I", ScanIndex.descriptor("int"));
+        assertEquals("[[J", ScanIndex.descriptor("long[][]"));
+        assertEquals("Ljava/lang/String;", ScanIndex.descriptor("java.lang.String"));
+        assertEquals("[Lfoo/Bar$Inner;", ScanIndex.descriptor("foo.Bar$Inner[]"));
+    }
+
+    @Test
+    public void replay() throws Exception {
+        final File directory = new File(work, "index");
+        final ClassLoader loader = new URLClassLoader(new URL[]{jar.toURI().toURL()}, ScanIndexTest.class.getClassLoader());
+
+        final File index = ScanIndex.generate(loader, jar, directory, true);
+        assertTrue(index.isFile());
+        assertEquals(ScanIndex.key(jar, true) + ".idx", index.getName());
+
+        SystemInstance.get().setProperty(ScanIndex.ACTIVE, "true");
+        SystemInstance.get().setProperty(ScanIndex.KEY, ScanIndex.KEY_HASH);
+        SystemInstance.get().setProperty(ScanIndex.DIRECTORY, directory.getAbsolutePath());
+
+        final Archive indexed = ScanIndex.archive(loader, jar.toURI().toURL());
+        for (final Archive.Entry entry : indexed) { // nothing read from the jar
+            final InputStream bytecode = entry.getBytecode();
+            assertTrue(entry.getName(), ScanIndex.IndexedBytecode.class.isInstance(bytecode));
+            bytecode.close();
+        }
+
+        final AnnotationFinder replayed = new FinderFactory.OpenEJBAnnotationFinder(indexed).link();
+        final AnnotationFinder scanned = new AnnotationFinder(ClasspathArchive.archive(loader, jar.toURI().toURL())).link();
+        for (final AnnotationFinder finder : new AnnotationFinder[]{scanned, replayed}) {
+            assertEquals(1, finder.findAnnotatedClasses(Stateless.class).size());
+            assertEquals(ServiceBean.class, finder.findAnnotatedClasses(Stateless.class).iterator().next());
+
+            assertEquals(1, finder.findAnnotatedFields(Resource.class).size());
+            final Field field = finder.findAnnotatedFields(Resource.class).iterator().next();
+            assertEquals("dataSource", field.getName());
+
+            assertEquals(1, finder.findAnnotatedMethods(PostConstruct.class).size());
+            final Method method = finder.findAnnotatedMethods(PostConstruct.class).iterator().next();
+            assertEquals("init", method.getName());
+
+            assertEquals(1, finder.findAnnotatedMethodParameters(Named.class).size());
+            assertEquals(2, finder.findImplementations(Service.class).size());
+            assertEquals(1, finder.findSubclasses(ServiceBean.class).size());
+        }
+    }
+
+    @Test
+    public void indexIsWrittenOnFirstScan() throws Exception {
+        final File directory = new File(work, "lazy");
+        SystemInstance.get().setProperty(ScanIndex.ACTIVE, "true");
+        SystemInstance.get().setProperty(ScanIndex.DIRECTORY, directory.getAbsolutePath());
+
+        final ClassLoader loader = new URLClassLoader(new URL[]{jar.toURI().toURL()}, ScanIndexTest.class.getClassLoader());
+        final File index = new File(directory, ScanIndex.key(jar, false) + ".idx");
+        assertFalse(index.exists());
+
+        new FinderFactory.OpenEJBAnnotationFinder(ScanIndex.archive(loader, jar.toURI().toURL()));
+        assertTrue(index.isFile());
+
+        // a changed jar doesn't reuse the index
+        assertTrue(jar.setLastModified(jar.lastModified() - 60000));
+        assertFalse(new File(directory, ScanIndex.key(jar, false) + ".idx").exists());
+    }
+
+    public interface Service {
+        void execute(String value);
+    }
+
+    @Stateless
+    public static class ServiceBean implements Service {
+        @Resource
+        private DataSource dataSource;
+
+        @PostConstruct
+        public void init() {
+            // no-op
+        }
+
+        @Override
+        public void execute(@Named("value") final String value) {
+            // no-op
+        }
+    }
+
+    public static class Helper extends ServiceBean {
+    }
+}
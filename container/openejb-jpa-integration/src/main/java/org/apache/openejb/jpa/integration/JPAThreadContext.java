@@ -19,7 +19,12 @@ package org.apache.openejb.jpa.integration;
 import java.util.HashMap;
 import java.util.Map;
 
-// use to store info while creating the EMF
+// use to store info while creating the EMF, per thread since units can be bootstrapped concurrently
 public class JPAThreadContext {
-    public static final Map<String, Object> infos = new HashMap<String, Object>();
+    public static final ThreadLocal<Map<String, Object>> infos = new ThreadLocal<Map<String, Object>>() {
+        @Override
+        protected Map<String, Object> initialValue() {
+            return new HashMap<String, Object>();
+        }
+    };
 }
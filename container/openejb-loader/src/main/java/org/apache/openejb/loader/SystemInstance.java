@@ -217,6 +217,10 @@ public final class SystemInstance {
         return observerManager.fireEvent(event);
     }
 
+    public boolean isObserved(final Class<?> eventType) {
+        return observerManager.isObserved(eventType);
+    }
+
     public boolean addObserver(final Object observer) {
         return observerManager.addObserver(observer);
     }
@@ -31,12 +31,12 @@ import java.lang.reflect.Type;
 import java.lang.reflect.WildcardType;
 import java.util.Arrays;
 import java.util.HashSet;
-import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -52,7 +52,7 @@ public class ObserverManager {
 
     // lazy init since it is used in SystemInstance
     private static final AtomicReference<Logger> LOGGER = new AtomicReference<Logger>();
-    private final Set<Observer> observers = new LinkedHashSet<Observer>();
+    private final Set<Observer> observers = new CopyOnWriteArraySet<Observer>(); // ordered and safe for concurrent deployments
     private final Map<Class, Invocation> methods = new ConcurrentHashMap<Class, Invocation>();
 
     public boolean addObserver(final Object observer) {
@@ -91,6 +91,13 @@ public class ObserverManager {
         }
     }
 
+    /**
+     * @return true if an observer gets the events of this type
+     */
+    public boolean isObserved(final Class<?> type) {
+        return getInvocation(type) != IGNORE;
+    }
+
     public <E> E fireEvent(final E event) {
         if (event == null) {
             throw new IllegalArgumentException("event cannot be null");
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.maven.plugin;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.project.MavenProject;
+import org.apache.openejb.config.ScanIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Pre-generates the scanning index of the project dependencies.
+ * The generated files are keyed by content hash so the server needs
+ * openejb.scanning.index=true, openejb.scanning.index.key=hash and
+ * openejb.scanning.index.directory pointing to the output of this goal.
+ */
+@Mojo(name = "scan-index", defaultPhase = LifecyclePhase.PACKAGE, requiresDependencyResolution = ResolutionScope.RUNTIME)
+public class ScanIndexMojo extends AbstractMojo {
+    @Parameter(defaultValue = "${project}", readonly = true, required = true)
+    protected MavenProject project;
+
+    @Parameter(property = "tomee-plugin.scan-index.output", defaultValue = "${project.build.directory}/scan-index")
+    protected File output;
+
+    @Parameter(property = "tomee-plugin.scan-index.skip", defaultValue = "false")
+    protected boolean skip;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (skip) {
+            getLog().info("Skipping scanning index generation");
+            return;
+        }
+
+        final List<File> jars = new ArrayList<>();
+        final List<URL> urls = new ArrayList<>();
+        for (final Artifact artifact : (Collection<Artifact>) project.getArtifacts()) {
+            final File file = artifact.getFile();
+            if (file == null || !file.isFile() || !"jar".equals(artifact.getType())) {
+                continue;
+            }
+            try {
+                urls.add(file.toURI().toURL());
+                jars.add(file);
+            } catch (final MalformedURLException e) {
+                getLog().warn("can't use artifact " + artifact.toString());
+            }
+        }
+
+        final Thread thread = Thread.currentThread();
+        final ClassLoader old = thread.getContextClassLoader();
+        final URLClassLoader loader = new URLClassLoader(urls.toArray(new URL[urls.size()]), old);
+        thread.setContextClassLoader(loader);
+        try {
+            for (final File jar : jars) {
+                final File index = ScanIndex.generate(loader, jar, output, true);
+                getLog().debug("Indexed " + jar.getName() + " in " + index.getName());
+            }
+        } catch (final IOException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        } finally {
+            thread.setContextClassLoader(old);
+        }
+        getLog().info("Generated scanning index of " + jars.size() + " jar(s) in " + output.getAbsolutePath());
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import org.apache.openejb.client.proxy.InvocationHandler;
+import org.apache.openejb.client.proxy.ProxyManager;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Asynchronous view of a remote business interface. The view is an interface declaring the business methods
+ * to call with the same names and parameters but returning a {@link java.util.concurrent.Future}
+ * (or {@link ClientFuture}), completed when the response is read:
+ * <p/>
+ * <pre>
+ * public interface CalculatorAsync {
+ *     ClientFuture&lt;Integer&gt; sum(int a, int b); // int sum(int a, int b) in the business interface
+ * }
+ *
+ * final CalculatorAsync calculator = AsyncView.of(context.lookup("CalculatorBeanRemote"), CalculatorAsync.class);
+ * </pre>
+ * <p/>
+ * At most openejb.client.connection.pool.size (default 5) calls per server are in flight, the others wait for a
+ * connection on the client executor, never on the calling thread.
+ */
+public final class AsyncView {
+
+    private static final Dispatcher INVOKE = new Dispatcher() {
+        @Override
+        public ClientFuture<Object> dispatch(final EJBObjectHandler handler, final Method method, final Object[] args) {
+            return handler.invokeAsync(method, args);
+        }
+    };
+
+    private AsyncView() {
+        // no-op
+    }
+
+    public static <T> T of(final Object proxy, final Class<T> view) {
+        return of(proxy, view, INVOKE);
+    }
+
+    static <T> T of(final Object proxy, final Class<T> view, final Dispatcher dispatcher) {
+        if (!EJBObjectProxy.class.isInstance(proxy)) {
+            throw new IllegalArgumentException("Not a remote EJB proxy: " + proxy);
+        }
+        if (!view.isInterface()) {
+            throw new IllegalArgumentException("View must be an interface: " + view.getName());
+        }
+
+        final EJBObjectHandler handler = EJBObjectProxy.class.cast(proxy).getEJBObjectHandler();
+
+        final List<Class> interfaces = new ArrayList<Class>();
+        if (handler.ejb.remoteClass != null) {
+            interfaces.add(handler.ejb.remoteClass);
+        }
+        interfaces.addAll(handler.ejb.businessClasses);
+
+        final Map<Method, Method> methods = new HashMap<Method, Method>();
+        for (final Method method : view.getMethods()) {
+            if (!method.getReturnType().isAssignableFrom(ClientFuture.class) && method.getReturnType() != void.class) {
+                throw new IllegalArgumentException(method + " must return a Future or nothing");
+            }
+            methods.put(method, find(interfaces, method));
+        }
+
+        try {
+            return view.cast(ProxyManager.newProxyInstance(new Class[]{view}, new Handler(handler, methods, dispatcher)));
+        } catch (final IllegalAccessException e) {
+            throw new IllegalArgumentException("Cannot create the asynchronous view " + view.getName(), e);
+        }
+    }
+
+    private static Method find(final List<Class> interfaces, final Method method) {
+        for (final Class<?> api : interfaces) {
+            try {
+                return api.getMethod(method.getName(), method.getParameterTypes());
+            } catch (final NoSuchMethodException e) {
+                // next
+            }
+        }
+        throw new IllegalArgumentException("No business method " + method.getName() + Arrays.toString(method.getParameterTypes()) + " in " + interfaces);
+    }
+
+    /**
+     * What is done with a call to the view, invoked right away by default or queued by a {@link RemoteBatch}.
+     */
+    interface Dispatcher {
+        ClientFuture<Object> dispatch(EJBObjectHandler handler, Method method, Object[] args);
+    }
+
+    private static final class Handler implements InvocationHandler {
+        private final EJBObjectHandler handler;
+        private final Map<Method, Method> methods;
+        private final Dispatcher dispatcher;
+
+        private Handler(final EJBObjectHandler handler, final Map<Method, Method> methods, final Dispatcher dispatcher) {
+            this.handler = handler;
+            this.methods = methods;
+            this.dispatcher = dispatcher;
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object... args) throws Throwable {
+            final Method business = methods.get(method);
+            if (business != null) {
+                return dispatcher.dispatch(handler, business, args);
+            }
+
+            if (method.getDeclaringClass() == Object.class) {
+                if ("equals".equals(method.getName())) {
+                    return proxy == args[0];
+                } else if ("hashCode".equals(method.getName())) {
+                    return System.identityHashCode(proxy);
+                } else if ("toString".equals(method.getName())) {
+                    return "async proxy=" + handler;
+                }
+            }
+            throw new UnsupportedOperationException("Unkown method: " + method);
+        }
+    }
+}
@@ -26,6 +26,7 @@ public class AuthenticationRequest implements Request {
     private transient String realm;
     private transient String username;
     private transient String credentials;
+    private transient IdentityToken identityToken;
     private transient ProtocolMetaData metaData;
 
     public AuthenticationRequest() {
@@ -63,6 +64,18 @@ public class AuthenticationRequest implements Request {
         return credentials;
     }
 
+    /**
+     * @return a token issued to a previous login with the same credentials, the server grants it again
+     * without a new login while it is valid
+     */
+    public IdentityToken getIdentityToken() {
+        return identityToken;
+    }
+
+    public void setIdentityToken(final IdentityToken identityToken) {
+        this.identityToken = identityToken;
+    }
+
     /**
      * Changes to this method must observe the optional {@link #metaData} version
      */
@@ -73,6 +86,10 @@ public class AuthenticationRequest implements Request {
         realm = (String) in.readObject();
         username = (String) in.readObject();
         credentials = (String) in.readObject();
+
+        if (null == metaData || metaData.isAtLeast(4, 8)) {
+            identityToken = (IdentityToken) in.readObject();
+        }
     }
 
     /**
@@ -86,6 +103,10 @@ public class AuthenticationRequest implements Request {
         out.writeObject(realm);
         out.writeObject(username);
         out.writeObject(credentials);
+
+        if (null == metaData || metaData.isAtLeast(4, 8)) {
+            out.writeObject(identityToken);
+        }
     }
 
     public String toString() {
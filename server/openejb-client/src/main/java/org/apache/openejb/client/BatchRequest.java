@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Several independent {@link EJBRequest}s sent in a single round trip, since protocol 4.8.
+ * <p/>
+ * The requests follow the header on the wire, {@link #readExternal(ObjectInput)} only reads the header
+ * as the server deserializes the body of each request with the classloader of its bean.
+ * Each request is serialized on its own and prefixed with its length so the server can skip one it can't read,
+ * batched requests therefore don't use the connection dictionary nor stream their arguments.
+ */
+public class BatchRequest implements Request {
+
+    private static final long serialVersionUID = -3217853419537120468L;
+
+    private transient List<EJBRequest> requests = new ArrayList<EJBRequest>();
+    private transient boolean parallel;
+    private transient int size;
+    private transient ProtocolMetaData metaData;
+
+    public BatchRequest() {
+        // no-op
+    }
+
+    public BatchRequest(final List<EJBRequest> requests, final boolean parallel) {
+        this.requests = requests;
+        this.parallel = parallel;
+        this.size = requests.size();
+    }
+
+    @Override
+    public RequestType getRequestType() {
+        return RequestType.BATCH_REQUEST;
+    }
+
+    @Override
+    public void setMetaData(final ProtocolMetaData metaData) {
+        this.metaData = metaData;
+    }
+
+    public List<EJBRequest> getRequests() {
+        return requests;
+    }
+
+    /**
+     * @return true if the server can invoke the requests concurrently
+     */
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public void readExternal(final ObjectInput in) throws IOException, ClassNotFoundException {
+        in.readByte(); // version, future use
+        parallel = in.readBoolean();
+        size = in.readInt();
+        if (size < 0) {
+            throw new StreamCorruptedException("Invalid batch size " + size);
+        }
+    }
+
+    @Override
+    public void writeExternal(final ObjectOutput out) throws IOException {
+        // write out the version of the serialized data for future use
+        out.writeByte(1);
+        out.writeBoolean(parallel);
+        out.writeInt(requests.size());
+
+        for (final EJBRequest request : requests) {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final ObjectOutputStream entry = new EjbObjectOutputStream(bytes, null);
+            request.setMetaData(metaData);
+            request.writeExternal(entry);
+            entry.close();
+
+            out.writeInt(bytes.size());
+            out.write(bytes.toByteArray());
+        }
+    }
+
+    /**
+     * @param maxLength the largest request accepted, the length comes from the client
+     * @return the stream of the next request of the batch, read by the server after the header
+     */
+    public static ObjectInputStream readRequest(final ObjectInput in, final int maxLength) throws IOException {
+        final int length = in.readInt();
+        if (length < 0 || length > maxLength) {
+            throw new StreamCorruptedException("Batched request of " + length + " bytes, the limit is " + maxLength);
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new EjbObjectInputStream(new ByteArrayInputStream(bytes));
+    }
+
+    public String toString() {
+        return "BatchRequest{size=" + size + ", parallel=" + parallel + '}';
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@link EJBResponse}s of a {@link BatchRequest}, in the order of the requests.
+ */
+public class BatchResponse implements Response {
+
+    private static final long serialVersionUID = 5731820391745539185L;
+
+    private transient List<EJBResponse> responses = new ArrayList<EJBResponse>();
+    private transient ProtocolMetaData metaData;
+
+    public BatchResponse() {
+        // no-op
+    }
+
+    public BatchResponse(final List<EJBResponse> responses) {
+        this.responses = responses;
+    }
+
+    @Override
+    public void setMetaData(final ProtocolMetaData metaData) {
+        this.metaData = metaData;
+    }
+
+    public List<EJBResponse> getResponses() {
+        return responses;
+    }
+
+    @Override
+    public void readExternal(final ObjectInput in) throws IOException, ClassNotFoundException {
+        in.readByte(); // version, future use
+
+        final int size = in.readInt();
+        responses = new ArrayList<EJBResponse>(size);
+        for (int i = 0; i < size; i++) {
+            final EJBResponse response = new EJBResponse();
+            response.setMetaData(metaData);
+            response.readExternal(in);
+            responses.add(response);
+        }
+    }
+
+    @Override
+    public void writeExternal(final ObjectOutput out) throws IOException {
+        // write out the version of the serialized data for future use
+        out.writeByte(1);
+
+        out.writeInt(responses.size());
+        for (final EJBResponse response : responses) {
+            response.setMetaData(metaData);
+            response.writeExternal(out);
+        }
+    }
+
+    public String toString() {
+        return "BatchResponse" + responses;
+    }
+}
@@ -0,0 +1,615 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import java.io.Closeable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Transfers {@link InputStream} and {@link Iterator} values of a message as chunks following it on the connection,
+ * since protocol 4.8.
+ * <p/>
+ * The writer replaces each value which is not {@link Serializable} by a marker and, once the message is written,
+ * pulls the values one chunk at a time. The reader gets a stream or an iterator reading these chunks on demand,
+ * so neither side holds more than a chunk and a slow reader holds the writer back through the connection itself.
+ * <p/>
+ * Values are read in the order they were written. The connection is busy until all of them are consumed or closed,
+ * closing one skips what is left of it and of the values before it. Streams and iterators read by a client are
+ * {@link Closeable} and should be closed when they are not read to the end. One dropped without being consumed
+ * nor closed has its connection discarded once it is garbage collected.
+ * <p/>
+ * Wire format of a value: chunks of an int size followed by as many bytes or objects, ended by 0,
+ * or by -1 and the {@link ThrowableArtifact} of the failure of the source.
+ */
+public final class ChunkedStreams {
+
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    public static final int DEFAULT_CHUNK_OBJECTS = 128;
+
+    private static final int END = 0;
+    private static final int FAILURE = -1;
+
+    // values read by a client still holding the connection, released by the Reaper if the application drops them
+    private static final ReferenceQueue<Object> DROPPED = new ReferenceQueue<Object>();
+    private static final Set<Reference> TRACKED = Collections.newSetFromMap(new ConcurrentHashMap<Reference, Boolean>());
+
+    private final int chunkSize;
+    private final int chunkObjects;
+
+    // writing
+    private final List<Object> sources = new ArrayList<Object>();
+    private boolean writing;
+
+    // reading
+    private final LinkedList<Chunks> pending = new LinkedList<Chunks>();
+    private Listener listener;
+
+    public ChunkedStreams() {
+        this(DEFAULT_CHUNK_SIZE, DEFAULT_CHUNK_OBJECTS);
+    }
+
+    public ChunkedStreams(final int chunkSize, final int chunkObjects) {
+        this.chunkSize = Math.max(1, chunkSize);
+        this.chunkObjects = Math.max(1, chunkObjects);
+    }
+
+    /**
+     * Notified once all the values read from a message are consumed or closed.
+     */
+    public interface Listener {
+
+        /**
+         * @param clean false if a chunk could not be read, the connection is then in an unknown state
+         */
+        void consumed(boolean clean);
+    }
+
+    Object replace(final Object obj) {
+        if (writing || obj instanceof Serializable) {
+            return obj;
+        }
+        if (obj instanceof InputStream) {
+            sources.add(obj);
+            return new Marker(Marker.BYTES);
+        }
+        if (obj instanceof Iterator) {
+            sources.add(obj);
+            return new Marker(Marker.OBJECTS);
+        }
+        return obj;
+    }
+
+    /**
+     * Writes the chunks of the values replaced while writing the message.
+     */
+    void write(final ObjectOutputStream out) throws IOException {
+        writing = true;
+        try {
+            for (final Object source : sources) {
+                if (source instanceof InputStream) {
+                    writeBytes((InputStream) source, out);
+                } else {
+                    writeObjects((Iterator<?>) source, out);
+                }
+            }
+        } finally {
+            for (final Object source : sources) {
+                if (source instanceof Closeable) {
+                    try {
+                        ((Closeable) source).close();
+                    } catch (final Throwable e) {
+                        //Ignore
+                    }
+                }
+            }
+            sources.clear();
+            writing = false;
+        }
+    }
+
+    private void writeBytes(final InputStream source, final ObjectOutputStream out) throws IOException {
+        final byte[] buffer = new byte[chunkSize];
+        while (true) {
+            int length = 0;
+            int read = 0;
+            Throwable failure = null;
+            try {
+                while (length < buffer.length && (read = source.read(buffer, length, buffer.length - length)) >= 0) {
+                    length += read;
+                    if (source.available() <= 0) {
+                        break; // send what we have rather than waiting for a full chunk
+                    }
+                }
+            } catch (final Throwable e) {
+                failure = e;
+            }
+
+            if (length > 0) {
+                out.writeInt(length);
+                out.write(buffer, 0, length);
+            }
+            if (failure != null) {
+                writeFailure(failure, out);
+                return;
+            }
+            if (read < 0) {
+                out.writeInt(END);
+                out.flush();
+                return;
+            }
+            out.flush();
+        }
+    }
+
+    private void writeObjects(final Iterator<?> source, final ObjectOutputStream out) throws IOException {
+        final List<Object> chunk = new ArrayList<Object>(chunkObjects);
+        while (true) {
+            boolean more = true;
+            Throwable failure = null;
+            try {
+                while (chunk.size() < chunkObjects && (more = source.hasNext())) {
+                    chunk.add(source.next());
+                }
+            } catch (final Throwable e) {
+                failure = e;
+            }
+
+            if (!chunk.isEmpty()) {
+                out.writeInt(chunk.size());
+                for (final Object obj : chunk) {
+                    out.writeObject(obj);
+                }
+                chunk.clear();
+
+                // objects of the next chunks don't refer to these ones, both sides can forget them
+                out.reset();
+            }
+            if (failure != null) {
+                writeFailure(failure, out);
+                return;
+            }
+            if (!more) {
+                out.writeInt(END);
+                out.flush();
+                return;
+            }
+            out.flush();
+        }
+    }
+
+    private static void writeFailure(final Throwable failure, final ObjectOutputStream out) throws IOException {
+        out.writeInt(FAILURE);
+        out.writeObject(new ThrowableArtifact(failure));
+        out.flush();
+    }
+
+    Object resolve(final Object obj, final ObjectInput in) {
+        if (!(obj instanceof Marker)) {
+            return obj;
+        }
+
+        final Chunks chunks = new Chunks(((Marker) obj).kind);
+        final Object value = chunks.kind == Marker.BYTES ? new ChunkedInputStream(chunks, in) : new ChunkedIterator(chunks, in);
+        chunks.reference = new Reference(value, chunks); // only tracked once a listener releases the connection
+        synchronized (this) {
+            pending.add(chunks);
+        }
+        return value;
+    }
+
+    /**
+     * @return true if values read from the message still have chunks on the connection
+     */
+    public synchronized boolean isPending() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * @param listener notified once nothing is pending anymore, right away if it is already the case
+     */
+    public void setListener(final Listener listener) {
+        synchronized (this) {
+            if (!pending.isEmpty()) {
+                this.listener = listener;
+                for (final Chunks chunks : pending) {
+                    TRACKED.add(chunks.reference);
+                }
+                Reaper.start();
+                return;
+            }
+        }
+        listener.consumed(true);
+    }
+
+    /**
+     * Skips the chunks of all the values not consumed yet, they can't be read anymore.
+     *
+     * @param in the stream the message was read from
+     */
+    public void skip(final ObjectInput in) throws IOException {
+        final Chunks last;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            last = pending.getLast();
+        }
+        last.close(in);
+    }
+
+    private void done(final Chunks chunks, final boolean clean) {
+        final Listener notified;
+        final Chunks next;
+        synchronized (this) {
+            TRACKED.remove(chunks.reference);
+            if (!pending.remove(chunks)) {
+                return;
+            }
+            if (!clean) {
+                for (final Chunks other : pending) {
+                    TRACKED.remove(other.reference);
+                }
+                pending.clear();
+            }
+            next = pending.peek();
+            if (next != null) {
+                if (!next.dropped) {
+                    return;
+                }
+                notified = null;
+            } else {
+                if (listener == null) {
+                    return;
+                }
+                notified = listener;
+                listener = null;
+            }
+        }
+        if (next != null) {
+            next.end(false); // dropped by the application, discards the connection
+        } else {
+            notified.consumed(clean);
+        }
+    }
+
+    /**
+     * A value dropped by the application: its chunks would hold the connection forever, it is discarded instead
+     * once the values before it are done.
+     */
+    private void dropped(final Chunks chunks) {
+        synchronized (this) {
+            if (chunks.ended) {
+                return;
+            }
+            chunks.dropped = true;
+            if (pending.peek() != chunks) {
+                return;
+            }
+        }
+        chunks.end(false);
+    }
+
+    private static final class Reference extends PhantomReference<Object> {
+        private final Chunks chunks;
+
+        private Reference(final Object value, final Chunks chunks) {
+            super(value, DROPPED);
+            this.chunks = chunks;
+        }
+    }
+
+    private static final class Reaper implements Runnable {
+        private static Thread thread;
+
+        private static synchronized void start() {
+            if (thread == null) {
+                thread = new Thread(new Reaper(), "OpenEJB.Client.StreamReaper");
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    final Reference reference = (Reference) DROPPED.remove();
+                    if (TRACKED.remove(reference)) {
+                        reference.chunks.owner().dropped(reference.chunks);
+                    }
+                } catch (final InterruptedException e) {
+                    Thread.interrupted();
+                } catch (final Throwable e) {
+                    // the connection is discarded anyway
+                }
+            }
+        }
+    }
+
+    /**
+     * Written in place of a streamed value.
+     */
+    public static class Marker implements Externalizable {
+
+        private static final long serialVersionUID = -1563871346213957621L;
+
+        private static final byte BYTES = 1;
+        private static final byte OBJECTS = 2;
+
+        private transient byte kind;
+
+        public Marker() {
+            // no-op
+        }
+
+        private Marker(final byte kind) {
+            this.kind = kind;
+        }
+
+        @Override
+        public void writeExternal(final ObjectOutput out) throws IOException {
+            out.writeByte(kind);
+        }
+
+        @Override
+        public void readExternal(final ObjectInput in) throws IOException, ClassNotFoundException {
+            kind = in.readByte();
+        }
+    }
+
+    /**
+     * The chunks of a value, one at a time. The stream they are read from is only held by the value itself:
+     * the stream references every object of the message, the value included, which would then never be dropped.
+     */
+    private final class Chunks {
+        private final byte kind;
+
+        private byte[] bytes;
+        private Object[] objects;
+        private int position;
+        private int size;
+
+        private boolean ended;
+        private boolean closed;
+        private boolean dropped;
+        private Reference reference;
+
+        private Chunks(final byte kind) {
+            this.kind = kind;
+        }
+
+        private ChunkedStreams owner() {
+            return ChunkedStreams.this;
+        }
+
+        /**
+         * @return false at the end of the value
+         */
+        private boolean fill(final ObjectInput in) throws IOException {
+            synchronized (ChunkedStreams.this) {
+                if (closed) {
+                    throw new IOException("Stream closed");
+                }
+                if (position < size) {
+                    return true;
+                }
+                if (ended) {
+                    return false;
+                }
+                if (pending.peek() != this) {
+                    throw new IOException("Streamed values have to be read in the order they were sent");
+                }
+                return read(in);
+            }
+        }
+
+        private boolean read(final ObjectInput in) throws IOException {
+            position = 0;
+            size = 0;
+            try {
+                final int length = in.readInt();
+                if (length == END) {
+                    end(true);
+                    return false;
+                }
+                if (length == FAILURE) {
+                    final ThrowableArtifact artifact = (ThrowableArtifact) in.readObject();
+                    end(true);
+                    final Throwable failure = artifact.getThrowable();
+                    throw failure instanceof IOException ? (IOException) failure : new IOException("Streamed value failed: " + failure, failure);
+                }
+                if (length < 0) {
+                    throw new IOException("Unexpected chunk size " + length);
+                }
+
+                if (kind == Marker.BYTES) {
+                    if (bytes == null || bytes.length < length) {
+                        bytes = new byte[length];
+                    }
+                    in.readFully(bytes, 0, length);
+                } else {
+                    if (objects == null || objects.length < length) {
+                        objects = new Object[length];
+                    }
+                    for (int i = 0; i < length; i++) {
+                        objects[i] = in.readObject();
+                    }
+                }
+                size = length;
+                return true;
+            } catch (final ClassNotFoundException e) {
+                end(false);
+                throw new IOException("Cannot read a streamed object: " + e.getMessage(), e);
+            } catch (final IOException e) {
+                if (!ended) {
+                    end(false);
+                }
+                throw e;
+            } catch (final RuntimeException e) {
+                end(false);
+                throw e;
+            }
+        }
+
+        private void end(final boolean clean) {
+            ended = true;
+            bytes = null;
+            objects = null;
+            done(this, clean);
+        }
+
+        private void close(final ObjectInput in) throws IOException {
+            synchronized (ChunkedStreams.this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                if (ended) {
+                    return;
+                }
+
+                // the chunks of the values before this one come first on the connection
+                while (!pending.isEmpty()) {
+                    final Chunks first = pending.peek();
+                    first.closed = true;
+                    try {
+                        while (!first.ended) {
+                            first.read(in);
+                        }
+                    } catch (final IOException e) {
+                        if (!first.ended) {
+                            throw e;
+                        }
+                        // failure of the source, skipped as the rest of it
+                    }
+                    if (first == this) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private final class ChunkedInputStream extends InputStream {
+        private final Chunks chunks;
+        private final ObjectInput in;
+
+        private ChunkedInputStream(final Chunks chunks, final ObjectInput in) {
+            this.chunks = chunks;
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            synchronized (ChunkedStreams.this) {
+                if (!chunks.fill(in)) {
+                    return -1;
+                }
+                return chunks.bytes[chunks.position++] & 0xff;
+            }
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            synchronized (ChunkedStreams.this) {
+                if (!chunks.fill(in)) {
+                    return -1;
+                }
+                final int read = Math.min(len, chunks.size - chunks.position);
+                System.arraycopy(chunks.bytes, chunks.position, b, off, read);
+                chunks.position += read;
+                return read;
+            }
+        }
+
+        @Override
+        public int available() {
+            synchronized (ChunkedStreams.this) {
+                return chunks.closed ? 0 : chunks.size - chunks.position;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            chunks.close(in);
+        }
+    }
+
+    private final class ChunkedIterator implements Iterator<Object>, Closeable {
+        private final Chunks chunks;
+        private final ObjectInput in;
+
+        private ChunkedIterator(final Chunks chunks, final ObjectInput in) {
+            this.chunks = chunks;
+            this.in = in;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                return chunks.fill(in);
+            } catch (final IOException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause; // failure of the remote iterator
+                }
+                throw new IllegalStateException("Cannot read the next streamed object: " + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public Object next() {
+            synchronized (ChunkedStreams.this) {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final Object next = chunks.objects[chunks.position];
+                chunks.objects[chunks.position++] = null;
+                return next;
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("remove");
+        }
+
+        @Override
+        public void close() throws IOException {
+            chunks.close(in);
+        }
+    }
+}
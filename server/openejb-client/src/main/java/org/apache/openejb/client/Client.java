@@ -29,20 +29,23 @@ import org.apache.openejb.client.event.ServerRemoved;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.ObjectInput;
-import java.io.ObjectOutput;
-import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.net.URI;
+import java.nio.channels.SocketChannel;
 import java.rmi.RemoteException;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -51,6 +54,10 @@ import static org.apache.openejb.client.Exceptions.newIOException;
 public class Client {
 
     private static final String OPENEJB_CLIENT_COMPATIBILITY_VERSION = "openejb.client.protocol.version";
+    private static final String OPENEJB_CLIENT_CONNECTION_DICTIONARY = "openejb.client.connection.dictionary";
+    private static final String OPENEJB_CLIENT_STREAM_CHUNK_SIZE = "openejb.client.stream.chunk.size";
+    private static final String OPENEJB_CLIENT_COMPRESSION = "openejb.client.compression";
+    private static final String OPENEJB_CLIENT_COMPRESSION_THRESHOLD = "openejb.client.compression.threshold";
 
     private static final Logger logger = Logger.getLogger("OpenEJB.client");
     private boolean FINEST = logger.isLoggable(Level.FINEST);
@@ -58,6 +65,8 @@ public class Client {
 
     public static final ThreadLocal<Set<URI>> failed = new ThreadLocal<>();
     private static final ProtocolMetaData PROTOCOL_META_DATA = new ProtocolMetaData();
+    // understood by all servers, the framing of the requests to a server which didn't tell its version yet
+    private static final ProtocolMetaData FALLBACK_META_DATA = new ProtocolMetaData("4.6");
 
     private static Client client = new Client();
     private static final ProtocolMetaData COMPATIBLE_META_DATA;
@@ -143,6 +152,130 @@ public class Client {
     }
 
     protected Response processRequest(final Request req, final Response res, final ServerMetaData server) throws RemoteException {
+        return process(open(req, res, server), false);
+    }
+
+    /**
+     * Writes the request on the executor and reads the response on a shared pool once the server answers,
+     * nothing waits in between. At most openejb.client.connection.pool.size requests to a server are in flight,
+     * the others are queued and handed to their executor when one completes so a larger fan out never waits
+     * for a pooled connection nor fills the executor. Connections without a channel to watch (http, ssl and
+     * plain sockets unless openejb.client.connection.socket.channel is set) run the whole request on the executor.
+     */
+    public static <T extends Response> ClientFuture<T> requestAsync(final Request req, final T res, final ServerMetaData server, final Executor executor) {
+        return client.processRequestAsync(req, res, server, executor);
+    }
+
+    protected <T extends Response> ClientFuture<T> processRequestAsync(final Request req, final T res, final ServerMetaData server, final Executor executor) {
+        final ClientFuture<T> future = new ClientFuture<>();
+        // responses are read with the classes of the caller
+        final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        final Executor target = executor != null ? executor : JNDIContext.globalExecutor();
+        final Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                final Thread thread = Thread.currentThread();
+                final ClassLoader old = thread.getContextClassLoader();
+                thread.setContextClassLoader(loader);
+                try {
+                    send(req, res, server, loader, future);
+                } finally {
+                    failed.remove();
+                    thread.setContextClassLoader(old);
+                }
+            }
+        };
+
+        final Context context = getContext(server);
+        // the connection is back in the pool when the future completes
+        future.whenComplete(new ClientFuture.Callback<T>() {
+            @Override
+            public void completed(final T result) {
+                context.dispatchNext();
+            }
+
+            @Override
+            public void failed(final Throwable error) {
+                context.dispatchNext();
+            }
+        });
+        context.dispatch(new AsyncTask(target, task, future));
+        return future;
+    }
+
+    private <T extends Response> void send(final Request req, final T res, final ServerMetaData server, final ClassLoader loader, final ClientFuture<T> future) {
+        try {
+            final ResponseSelector selector = ResponseSelector.get();
+            final Exchange exchange = open(req, res, server); // waits for a pooled connection
+
+            final SocketConnectionFactory.SocketConnection socket = socket(exchange.conn);
+            final SocketChannel channel = socket != null ? socket.getChannel() : null;
+            if (channel == null) { // nothing to watch, read it on this thread
+                process(exchange, false);
+                future.complete(res);
+                return;
+            }
+
+            if (process(exchange, true) != null) { // failed and retried
+                future.complete(res);
+                return;
+            }
+
+            final int timeout = socket.getReadTimeout();
+            selector.await(channel, timeout, new ResponseSelector.Listener() {
+                @Override
+                public void read(final IOException failure) {
+                    final Thread thread = Thread.currentThread();
+                    final ClassLoader old = thread.getContextClassLoader();
+                    thread.setContextClassLoader(loader);
+                    exchange.failure = failure;
+                    try {
+                        process(exchange, false);
+                        future.complete(res);
+                    } catch (final Throwable e) {
+                        future.fail(e);
+                    } finally {
+                        failed.remove();
+                        thread.setContextClassLoader(old);
+                    }
+                }
+            });
+        } catch (final RemoteException e) {
+            future.fail(e);
+        } catch (final IOException e) {
+            future.fail(new RemoteException("Cannot wait for the response asynchronously", e));
+        } catch (final Throwable e) {
+            future.fail(e);
+        }
+    }
+
+    /**
+     * @return the protocol requests to this server are written with
+     */
+    static ProtocolMetaData getProtocol(final ServerMetaData server) {
+        if (null != COMPATIBLE_META_DATA) {
+            return COMPATIBLE_META_DATA;
+        }
+        final ProtocolMetaData negotiated = getContext(server).getProtocol();
+        return null != negotiated ? negotiated : FALLBACK_META_DATA;
+    }
+
+    /**
+     * Remembers the version of the server answering a request, a new server tells its own.
+     *
+     * @return the protocol the messages of the response are written with, the lowest of both
+     */
+    private static ProtocolMetaData negotiate(final ServerMetaData server, final ProtocolMetaData request, final ProtocolMetaData response) {
+        if (null == COMPATIBLE_META_DATA) {
+            final Context context = getContext(server);
+            if (null == context.getProtocol()) {
+                context.setProtocol(response.isAtLeast(PROTOCOL_META_DATA.getMajor(), PROTOCOL_META_DATA.getMinor()) ? PROTOCOL_META_DATA : response);
+            }
+        }
+        return response.isAtLeast(request.getMajor(), request.getMinor()) ? request : response;
+    }
+
+    private Exchange open(final Request req, final Response res, final ServerMetaData server) throws RemoteException {
 
         if (server == null) {
             throw new IllegalArgumentException("Server instance cannot be null");
@@ -152,7 +285,7 @@ public class Client {
         final ClusterMetaData cluster = getClusterMetaData(server);
 
         //Determine which protocol to use for request writes
-        final ProtocolMetaData protocolRequest = (null != COMPATIBLE_META_DATA ? COMPATIBLE_META_DATA : PROTOCOL_META_DATA);
+        final ProtocolMetaData protocolRequest = getProtocol(server);
 
         /*----------------------------*/
         /* Get a connection to server */
@@ -165,92 +298,37 @@ public class Client {
             throw new RemoteException("Unable to connect", e);
         }
 
-        OutputStream out = null;
-        InputStream in = null;
+        return new Exchange(req, res, server, cluster, protocolRequest, conn, start);
+    }
 
+    /**
+     * @param sendOnly only write the request, the exchange is then left open for a second call reading the response
+     * @return the response or null when only the request was sent
+     */
+    private Response process(final Exchange exchange, final boolean sendOnly) throws RemoteException {
+        final Request req = exchange.req;
+        final Response res = exchange.res;
+        final ServerMetaData server = exchange.server;
+        final ProtocolMetaData protocolRequest = exchange.protocol;
+        final Connection conn = exchange.conn;
+        final ConnectionDictionary dictionary = exchange.dictionary;
+        final long start = exchange.start;
+
+        boolean pending = false;
         try {
 
-
-            /*----------------------------------*/
-            /* Get output streams */
-            /*----------------------------------*/
-            try {
-
-                out = conn.getOutputStream();
-
-            } catch (final IOException e) {
-                throw newIOException("Cannot open output stream to server: ", e);
-            }
-
-            /*----------------------------------*/
-            /* Write the protocol magic         */
-            /*----------------------------------*/
-            try {
-                protocolRequest.writeExternal(out);
-                out.flush();
-            } catch (final IOException e) {
-                throw newIOException("Cannot write the protocol metadata to the server: ", e);
-            }
-
-            /*----------------------------------*/
-            /* Get output streams */
-            /*----------------------------------*/
-            final ObjectOutput objectOut;
-            try {
-                objectOut = new ObjectOutputStream(out);
-            } catch (final IOException e) {
-                throw newIOException("Cannot open object output stream to server: ", e);
+            if (!exchange.sent) {
+                exchange.sent = true;
+                send(exchange);
             }
 
-            /*----------------------------------*/
-            /* Write ServerMetaData */
-            /*----------------------------------*/
-            try {
-                server.setMetaData(protocolRequest);
-                server.writeExternal(objectOut);
-            } catch (final IOException e) {
-                throw newIOException("Cannot write the ServerMetaData to the server: ", e);
+            if (sendOnly) {
+                pending = true;
+                return null;
             }
 
-            /*----------------------------------*/
-            /* Write ClusterMetaData */
-            /*----------------------------------*/
-            try {
-
-                final ClusterRequest clusterRequest = new ClusterRequest(cluster);
-                clusterRequest.setMetaData(protocolRequest);
-                objectOut.write(clusterRequest.getRequestType().getCode());
-                clusterRequest.writeExternal(objectOut);
-            } catch (final Throwable e) {
-                throw newIOException("Cannot write the ClusterMetaData to the server: ", e);
-            }
-
-            /*----------------------------------*/
-            /* Write request type */
-            /*----------------------------------*/
-            try {
-                objectOut.write(req.getRequestType().getCode());
-            } catch (final IOException e) {
-                throw newIOException("Cannot write the request type to the server: ", e);
-            }
-
-            /*----------------------------------*/
-            /* Write request */
-            /*----------------------------------*/
-            try {
-
-                req.setMetaData(protocolRequest);
-                req.writeExternal(objectOut);
-                objectOut.flush();
-                out.flush();
-
-            } catch (final java.io.NotSerializableException e) {
-
-                throw new IllegalArgumentException("Object is not serializable: " + e.getMessage());
-
-            } catch (final IOException e) {
-
-                throw newIOException("Cannot write the request to the server: " + e.getMessage(), e);
+            if (exchange.failure != null) {
+                throw exchange.failure;
             }
 
             /*----------------------------------*/
@@ -259,11 +337,12 @@ public class Client {
 
             try {
 
-                in = conn.getInputStream();
+                exchange.in = conn.getInputStream();
 
             } catch (final IOException e) {
                 throw newIOException("Cannot open input stream to server: ", e);
             }
+            final InputStream in = exchange.in;
 
             //Determine the server response protocol for reading
             final ProtocolMetaData protocolResponse = new ProtocolMetaData();
@@ -279,11 +358,21 @@ public class Client {
 
                 throw newIOException("Cannot determine server protocol version: Received " + protocolResponse.getSpec() + " : " + e.getMessage(), e);
             }
+            final ProtocolMetaData protocol = negotiate(server, protocolRequest, protocolResponse);
+
+            if (protocolRequest.isAtLeast(4, 8)) {
+                final int flags = in.read();
+                if (flags == -1) {
+                    throw new EOFException("Prematurely reached the end of the stream.  " + protocolResponse.getSpec());
+                }
+                // the server could not read the request, the dictionaries of both ends don't agree anymore
+                exchange.closing = (flags & ConnectionDictionary.CLOSE) != 0;
+            }
 
-            final ObjectInput objectIn;
+            final EjbObjectInputStream objectIn;
             try {
 
-                objectIn = new EjbObjectInputStream(in);
+                objectIn = new EjbObjectInputStream(exchange.codec != MessageCodec.NONE ? new FramedInputStream(in) : in, dictionary);
 
             } catch (final IOException e) {
                 throw newIOException("Cannot open object input stream to server (" + protocolResponse.getSpec() + ") : " + e.getMessage(), e);
@@ -294,8 +383,11 @@ public class Client {
             /*----------------------------------*/
             try {
                 final ClusterResponse clusterResponse = new ClusterResponse();
-                clusterResponse.setMetaData(protocolResponse);
+                clusterResponse.setMetaData(protocol);
                 clusterResponse.readExternal(objectIn);
+                if (clusterResponse.getResponseCode() != ClusterResponse.Code.FAILURE && protocol.isAtLeast(4, 8)) {
+                    getContext(server).getLookupCache().deployed(clusterResponse.getDeployments());
+                }
                 switch (clusterResponse.getResponseCode()) {
                     case UPDATE: {
                         setClusterMetaData(server, clusterResponse.getUpdatedMetaData());
@@ -319,7 +411,8 @@ public class Client {
             /* Read response */
             /*----------------------------------*/
             try {
-                res.setMetaData(protocolResponse);
+                objectIn.enableStreams(streams(exchange.protocol));
+                res.setMetaData(protocol);
                 res.readExternal(objectIn);
             } catch (final ClassNotFoundException e) {
                 throw new RemoteException("Cannot read the response from the server.  The class for an object being returned is not located in this system:", e);
@@ -353,12 +446,29 @@ public class Client {
                 }
             }
 
+            exchange.discard = exchange.closing;
+
             if (FINEST) {
                 final long time = System.nanoTime() - start;
                 final String message = String.format("Invocation %sns - %s - Request(%s) - Response(%s)", time, conn.getURI(), req, res);
                 logger.log(Level.FINEST, message);
             }
 
+            final ChunkedStreams streams = objectIn.getStreams();
+            if (streams != null && streams.isPending()) {
+                // the chunks of the streamed values follow on the connection, it is released once they are read.
+                // The listener doesn't hold the exchange, its response would keep dropped values reachable
+                pending = true;
+                final OutputStream out = exchange.out;
+                final boolean closing = exchange.closing;
+                streams.setListener(new ChunkedStreams.Listener() {
+                    @Override
+                    public void consumed(final boolean clean) {
+                        close(out, in, conn, !clean || closing);
+                    }
+                });
+            }
+
         } catch (final RemoteException e) {
             throw e;
         } catch (final IOException e) {
@@ -372,6 +482,9 @@ public class Client {
             }
             failed.add(uri);
             conn.discard();
+            exchange.discard = false;
+            // the server may have been replaced by an other version
+            getContext(server).setProtocol(null);
 
             if (e instanceof RetryException || getRetry()) {
                 try {
@@ -395,33 +508,140 @@ public class Client {
             throw new RemoteException("Error while communicating with server: ", error);
 
         } finally {
-
-            if (null != out) {
-                try {
-                    out.close();
-                } catch (final Throwable e) {
-                    //Ignore
-                }
+            if (!pending) {
+                exchange.close();
             }
+        }
+        return res;
+    }
 
-            if (null != in) {
-                try {
-                    in.close();
-                } catch (final Throwable e) {
-                    //Ignore
-                }
-            }
+    private void send(final Exchange exchange) throws IOException {
+        final Request req = exchange.req;
+        final ServerMetaData server = exchange.server;
+        final ClusterMetaData cluster = exchange.cluster;
+        final ProtocolMetaData protocolRequest = exchange.protocol;
+        final Connection conn = exchange.conn;
+        final ConnectionDictionary dictionary = exchange.dictionary;
+
+        /*----------------------------------*/
+        /* Get output streams */
+        /*----------------------------------*/
+        try {
 
-            if (null != conn) {
-                try {
-                    conn.close();
-                } catch (final Throwable t) {
-                    logger.log(Level.WARNING, "Error closing connection with server: " + t.getMessage(), t);
-                }
+            exchange.out = conn.getOutputStream();
+
+        } catch (final IOException e) {
+            throw newIOException("Cannot open output stream to server: ", e);
+        }
+        final OutputStream out = exchange.out;
+
+        /*----------------------------------*/
+        /* Write the protocol magic         */
+        /*----------------------------------*/
+        try {
+            protocolRequest.writeExternal(out);
+            if (protocolRequest.isAtLeast(4, 7)) {
+                // since 4.8 the codec of the messages follows the dictionary bit
+                out.write((dictionary != null ? ConnectionDictionary.USED : ConnectionDictionary.UNUSED) | exchange.codec.getId() << 1);
             }
+            out.flush();
+        } catch (final IOException e) {
+            throw newIOException("Cannot write the protocol metadata to the server: ", e);
+        }
 
+        /*----------------------------------*/
+        /* Get output streams */
+        /*----------------------------------*/
+        final EjbObjectOutputStream objectOut;
+        try {
+            objectOut = new EjbObjectOutputStream(exchange.codec != MessageCodec.NONE
+                ? new FramedOutputStream(out, exchange.codec, Integer.getInteger(OPENEJB_CLIENT_COMPRESSION_THRESHOLD, 1024)) : out, dictionary);
+            objectOut.enableStreams(streams(protocolRequest));
+        } catch (final IOException e) {
+            throw newIOException("Cannot open object output stream to server: ", e);
         }
-        return res;
+
+        /*----------------------------------*/
+        /* Write ServerMetaData */
+        /*----------------------------------*/
+        try {
+            server.setMetaData(protocolRequest);
+            server.writeExternal(objectOut);
+        } catch (final IOException e) {
+            throw newIOException("Cannot write the ServerMetaData to the server: ", e);
+        }
+
+        /*----------------------------------*/
+        /* Write ClusterMetaData */
+        /*----------------------------------*/
+        try {
+
+            final ClusterRequest clusterRequest = new ClusterRequest(cluster);
+            clusterRequest.setMetaData(protocolRequest);
+            objectOut.write(clusterRequest.getRequestType().getCode());
+            clusterRequest.writeExternal(objectOut);
+        } catch (final Throwable e) {
+            throw newIOException("Cannot write the ClusterMetaData to the server: ", e);
+        }
+
+        /*----------------------------------*/
+        /* Write request type */
+        /*----------------------------------*/
+        try {
+            objectOut.write(req.getRequestType().getCode());
+        } catch (final IOException e) {
+            throw newIOException("Cannot write the request type to the server: ", e);
+        }
+
+        /*----------------------------------*/
+        /* Write request */
+        /*----------------------------------*/
+        try {
+
+            req.setMetaData(protocolRequest);
+            req.writeExternal(objectOut);
+            objectOut.writeStreams();
+            objectOut.flush();
+            out.flush();
+
+        } catch (final java.io.NotSerializableException e) {
+
+            throw new IllegalArgumentException("Object is not serializable: " + e.getMessage());
+
+        } catch (final IOException e) {
+
+            throw newIOException("Cannot write the request to the server: " + e.getMessage(), e);
+        }
+    }
+
+    private static ConnectionDictionary getDictionary(final Connection conn, final ProtocolMetaData protocol) {
+        final SocketConnectionFactory.SocketConnection socket = socket(conn);
+        if (!protocol.isAtLeast(4, 7) || socket == null
+            || !Boolean.parseBoolean(System.getProperty(OPENEJB_CLIENT_CONNECTION_DICTIONARY, "true"))) {
+            return null;
+        }
+        return socket.getDictionary();
+    }
+
+    private static MessageCodec getCodec(final ProtocolMetaData protocol) {
+        if (!protocol.isAtLeast(4, 8)) {
+            return MessageCodec.NONE;
+        }
+        return MessageCodec.of(System.getProperty(OPENEJB_CLIENT_COMPRESSION));
+    }
+
+    private static ChunkedStreams streams(final ProtocolMetaData protocol) {
+        if (!protocol.isAtLeast(4, 8)) {
+            return null;
+        }
+        return new ChunkedStreams(Integer.getInteger(OPENEJB_CLIENT_STREAM_CHUNK_SIZE, ChunkedStreams.DEFAULT_CHUNK_SIZE),
+            ChunkedStreams.DEFAULT_CHUNK_OBJECTS);
+    }
+
+    private static SocketConnectionFactory.SocketConnection socket(final Connection conn) {
+        final Connection raw = conn instanceof LatencyAwareConnectionStrategy.TrackedConnection
+            ? ((LatencyAwareConnectionStrategy.TrackedConnection) conn).getDelegate() : conn;
+        return raw instanceof SocketConnectionFactory.SocketConnection ? (SocketConnectionFactory.SocketConnection) raw : null;
     }
 
     public static Set<URI> getFailed() {
@@ -459,20 +679,189 @@ public class Client {
         return context;
     }
 
+    /**
+     * Asynchronous request task, queued by its {@link Context} while the connections of the server are in use.
+     */
+    private static final class AsyncTask implements Runnable {
+        // set while an executor thread runs tasks, a request completed there hands the next one over to it
+        private static final ThreadLocal<AsyncTask[]> HANDOFF = new ThreadLocal<AsyncTask[]>();
+
+        private final Executor executor;
+        private final Runnable task;
+        private final ClientFuture<?> future;
+
+        private AsyncTask(final Executor executor, final Runnable task, final ClientFuture<?> future) {
+            this.executor = executor;
+            this.task = task;
+            this.future = future;
+        }
+
+        /**
+         * @return the number of tasks the executor takes without blocking the caller in its rejection handler
+         */
+        private int capacity() {
+            if (executor instanceof ThreadPoolExecutor) {
+                final ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+                return pool.getMaximumPoolSize() + pool.getQueue().size() + pool.getQueue().remainingCapacity();
+            }
+            return Integer.MAX_VALUE;
+        }
+
+        private void submit() {
+            final AsyncTask[] handoff = HANDOFF.get();
+            if (handoff != null && handoff[0] == null) {
+                // the thread of the completed request is still busy, submitting would count it twice
+                handoff[0] = this;
+                return;
+            }
+            try {
+                executor.execute(this);
+            } catch (final RejectedExecutionException e) {
+                future.fail(new RemoteException("Cannot send the request asynchronously", e));
+            }
+        }
+
+        @Override
+        public void run() {
+            final AsyncTask[] handoff = new AsyncTask[1];
+            final AsyncTask[] outer = HANDOFF.get();
+            HANDOFF.set(handoff);
+            try {
+                AsyncTask current = this;
+                while (current != null) {
+                    current.task.run();
+                    current = handoff[0];
+                    handoff[0] = null;
+                }
+            } finally {
+                if (outer == null) {
+                    HANDOFF.remove();
+                } else {
+                    HANDOFF.set(outer);
+                }
+            }
+        }
+    }
+
+    /**
+     * State of a request between writing it and reading its response.
+     */
+    private static final class Exchange {
+        private final Request req;
+        private final Response res;
+        private final ServerMetaData server;
+        private final ClusterMetaData cluster;
+        private final ProtocolMetaData protocol;
+        private final Connection conn;
+        private final ConnectionDictionary dictionary;
+        private final MessageCodec codec;
+        private final long start;
+
+        private OutputStream out;
+        private InputStream in;
+        private boolean sent;
+        private IOException failure;
+
+        // a failed request can leave both ends with different dictionaries so the connection is not reused
+        private boolean discard;
+        private boolean closing;
+
+        private Exchange(final Request req, final Response res, final ServerMetaData server, final ClusterMetaData cluster,
+                         final ProtocolMetaData protocol, final Connection conn, final long start) {
+            this.req = req;
+            this.res = res;
+            this.server = server;
+            this.cluster = cluster;
+            this.protocol = protocol;
+            this.conn = conn;
+            this.start = start;
+            this.dictionary = getDictionary(conn, protocol);
+            this.codec = getCodec(protocol);
+            this.discard = dictionary != null;
+        }
+
+        private void close() {
+            Client.close(out, in, conn, discard);
+        }
+    }
+
+    private static void close(final OutputStream out, final InputStream in, final Connection conn, final boolean discard) {
+        if (null != out) {
+            try {
+                out.close();
+            } catch (final Throwable e) {
+                //Ignore
+            }
+        }
+
+        if (null != in) {
+            try {
+                in.close();
+            } catch (final Throwable e) {
+                //Ignore
+            }
+        }
+
+        if (discard) {
+            conn.discard();
+        }
+
+        if (null != conn) {
+            try {
+                conn.close();
+            } catch (final Throwable t) {
+                logger.log(Level.WARNING, "Error closing connection with server: " + t.getMessage(), t);
+            }
+        }
+    }
+
     public static class Context {
 
         private final Properties properties = new Properties();
         private final ServerMetaData serverMetaData;
         private ClusterMetaData clusterMetaData;
         private Options options;
+        private final JNDILookupCache lookupCache;
+        private volatile ProtocolMetaData protocol;
+        private final Queue<AsyncTask> pendingAsync = new LinkedList<AsyncTask>();
+        private int inFlightAsync;
 
         private Context(final ServerMetaData serverMetaData) {
             this.serverMetaData = serverMetaData;
             this.clusterMetaData = new ClusterMetaData(0, serverMetaData.getLocation());
+            this.lookupCache = new JNDILookupCache(serverMetaData.getLocation());
 
             options = new Options(properties, new Options(System.getProperties()));
         }
 
+        /**
+         * Submits an asynchronous request right away while there are pooled connections and executor
+         * slots left for it, queues it otherwise until {@link #dispatchNext()} is called by a completed request.
+         */
+        private void dispatch(final AsyncTask task) {
+            final int limit = Math.max(1, Math.min(SocketConnectionFactory.getPoolSize(), task.capacity()));
+            synchronized (pendingAsync) {
+                if (inFlightAsync >= limit) {
+                    pendingAsync.add(task);
+                    return;
+                }
+                inFlightAsync++;
+            }
+            task.submit();
+        }
+
+        private void dispatchNext() {
+            final AsyncTask next;
+            synchronized (pendingAsync) {
+                next = pendingAsync.poll();
+                if (next == null) {
+                    inFlightAsync--;
+                    return;
+                }
+            }
+            next.submit();
+        }
+
         public ServerMetaData getServerMetaData() {
             return serverMetaData;
         }
@@ -481,6 +870,21 @@ public class Client {
             return clusterMetaData;
         }
 
+        JNDILookupCache getLookupCache() {
+            return lookupCache;
+        }
+
+        /**
+         * @return the protocol the server told it speaks, null until it answered a request
+         */
+        ProtocolMetaData getProtocol() {
+            return protocol;
+        }
+
+        void setProtocol(final ProtocolMetaData protocol) {
+            this.protocol = protocol;
+        }
+
         public void setClusterMetaData(final ClusterMetaData updated) {
             if (updated == null) {
                 throw new IllegalArgumentException("clusterMetaData cannot be null");
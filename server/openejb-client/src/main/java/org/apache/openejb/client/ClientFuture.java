@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Result of a remote call completed when the server response is read, no thread waits for it in between.
+ * <p/>
+ * Callbacks are invoked by the thread reading the response (or the caller when already done),
+ * they must not block, hand the work over to an executor otherwise.
+ *
+ * @param <T> the result type
+ */
+public class ClientFuture<T> implements Future<T> {
+
+    public interface Callback<T> {
+
+        void completed(T result);
+
+        void failed(Throwable error);
+    }
+
+    private final CountDownLatch latch = new CountDownLatch(1);
+    private final List<Callback<? super T>> callbacks = new ArrayList<>();
+
+    private boolean done;
+    private volatile boolean cancelled;
+    private T result;
+    private Throwable error;
+
+    /**
+     * Registers a callback, run right away if the call is already done.
+     */
+    public ClientFuture<T> whenComplete(final Callback<? super T> callback) {
+        if (callback == null) {
+            throw new IllegalArgumentException("callback cannot be null");
+        }
+
+        synchronized (this) {
+            if (!done) {
+                callbacks.add(callback);
+                return this;
+            }
+        }
+        notify(callback);
+        return this;
+    }
+
+    public boolean complete(final T value) {
+        return finish(value, null);
+    }
+
+    public boolean fail(final Throwable throwable) {
+        return finish(null, throwable);
+    }
+
+    private boolean finish(final T value, final Throwable throwable) {
+        final List<Callback<? super T>> toNotify;
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            done = true;
+            result = value;
+            error = throwable;
+            toNotify = new ArrayList<>(callbacks);
+            callbacks.clear();
+        }
+        latch.countDown();
+
+        for (final Callback<? super T> callback : toNotify) {
+            notify(callback);
+        }
+        return true;
+    }
+
+    private void notify(final Callback<? super T> callback) {
+        try {
+            if (error == null) {
+                callback.completed(result);
+            } else {
+                callback.failed(error);
+            }
+        } catch (final Throwable e) {
+            Logger.getLogger(ClientFuture.class.getName()).log(Level.WARNING, "Callback failed: " + callback, e);
+        }
+    }
+
+    /**
+     * The request is already on its way when this future is handed out so it can't be taken back.
+     * Subclasses can still notify the server, see {@link #onCancel(boolean)}.
+     *
+     * @return false unless the future was cancelled before
+     */
+    @Override
+    public boolean cancel(final boolean mayInterruptIfRunning) {
+        if (cancelled) {
+            return true;
+        }
+        if (isDone()) {
+            return false;
+        }
+        if (onCancel(mayInterruptIfRunning)) {
+            cancelled = true;
+            fail(new CancellationException());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the call will never complete, it is then failed with a {@link CancellationException}
+     */
+    protected boolean onCancel(final boolean mayInterruptIfRunning) {
+        return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public boolean isDone() {
+        return latch.getCount() == 0;
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        latch.await();
+        return report();
+    }
+
+    @Override
+    public T get(final long timeout, final TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!latch.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return report();
+    }
+
+    private T report() throws ExecutionException {
+        if (cancelled) {
+            throw new CancellationException();
+        }
+        if (error != null) {
+            throw new ExecutionException(error);
+        }
+        return result;
+    }
+}
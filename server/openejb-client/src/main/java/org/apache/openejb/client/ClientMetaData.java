@@ -22,14 +22,20 @@ import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.rmi.RemoteException;
 
 public class ClientMetaData implements Externalizable {
 
     private static final long serialVersionUID = -8769170505291957783L;
-    transient Object clientIdentity;
+    transient volatile Object clientIdentity;
     private transient EJBDSerializer serializer;
     private transient ProtocolMetaData metaData;
 
+    // the login an identity token was issued for, to log in again once the server refuses it
+    private transient JNDIContext.AuthenticationInfo login;
+    private transient String identityTokenKey;
+    private transient int contexts;
+
     public ClientMetaData() {
     }
 
@@ -49,6 +55,78 @@ public class ClientMetaData implements Externalizable {
         this.clientIdentity = clientIdentity;
     }
 
+    /**
+     * Keeps the login of the identity token of this client, shared through the {@link IdentityTokenCache}
+     * under this key unless it is null.
+     */
+    synchronized void useIdentityToken(final JNDIContext.AuthenticationInfo login, final String key) {
+        this.login = login;
+        this.identityTokenKey = key;
+        if (key != null) {
+            IdentityTokenCache.acquire(key, IdentityToken.class.cast(clientIdentity));
+            contexts = 1;
+        }
+    }
+
+    /**
+     * An other context uses the cached identity token of this client.
+     */
+    synchronized void retain() {
+        contexts++;
+    }
+
+    /**
+     * A context using the cached identity token of this client is closed.
+     *
+     * @return true if it was the last context of this JVM using the token so it can be logged out
+     */
+    synchronized boolean release() {
+        if (contexts == 0 || --contexts > 0 || !IdentityToken.class.isInstance(clientIdentity)) {
+            return false;
+        }
+        return IdentityTokenCache.release(identityTokenKey, IdentityToken.class.cast(clientIdentity));
+    }
+
+    /**
+     * Logs in again with the credentials of the refused identity token, expired or not known by the server anymore.
+     *
+     * @return true if the requests can be sent again with the new identity of this client
+     */
+    synchronized boolean renewIdentityToken(final Object refused, final ServerMetaData server) {
+        if (login == null || !IdentityToken.class.isInstance(refused)) {
+            return false;
+        }
+        if (!refused.equals(clientIdentity)) { // renewed by a concurrent request
+            return clientIdentity != null;
+        }
+
+        final AuthenticationRequest req = new AuthenticationRequest(login.getRealm(), login.getUser(), new String(login.getPassword()));
+        if (identityTokenKey != null) {
+            final IdentityToken cached = IdentityTokenCache.get(identityTokenKey);
+            if (cached != null && !cached.equals(refused)) { // renewed by an other context
+                req.setIdentityToken(cached);
+            }
+        }
+
+        final AuthenticationResponse res;
+        try {
+            res = AuthenticationResponse.class.cast(Client.request(req, new AuthenticationResponse(), server));
+        } catch (final RemoteException e) {
+            return false;
+        }
+        if (res.getResponseCode() != ResponseCodes.AUTH_GRANTED || !IdentityToken.class.isInstance(res.getIdentity().getClientIdentity())) {
+            return false;
+        }
+
+        final IdentityToken token = IdentityToken.class.cast(res.getIdentity().getClientIdentity());
+        if (identityTokenKey != null && contexts > 0) {
+            IdentityTokenCache.release(identityTokenKey, IdentityToken.class.cast(refused));
+            IdentityTokenCache.acquire(identityTokenKey, token);
+        }
+        clientIdentity = token;
+        return true;
+    }
+
     public EJBDSerializer getSerializer() {
         return serializer;
     }
@@ -36,6 +36,7 @@ public class ClusterResponse implements Response {
     private Code responseCode;
     private ClusterMetaData updatedMetaData;
     private Throwable failure;
+    private long deployments;
     private transient ProtocolMetaData metaData;
 
     public ClusterResponse(final Code responseCode) {
@@ -67,6 +68,17 @@ public class ClusterResponse implements Response {
         return updatedMetaData;
     }
 
+    /**
+     * @return when the server last deployed or undeployed an application, only sent since protocol 4.8
+     */
+    public long getDeployments() {
+        return deployments;
+    }
+
+    public void setDeployments(final long deployments) {
+        this.deployments = deployments;
+    }
+
     public Throwable getFailure() {
         return failure;
     }
@@ -80,6 +92,9 @@ public class ClusterResponse implements Response {
     public void readExternal(final ObjectInput in) throws IOException, ClassNotFoundException {
         final byte i = in.readByte();
         responseCode = Code.values()[i];
+        if (metaData != null && metaData.isAtLeast(4, 8)) {
+            deployments = in.readLong();
+        }
 
         switch (responseCode) {
             case CURRENT:
@@ -99,6 +114,9 @@ public class ClusterResponse implements Response {
     @Override
     public void writeExternal(final ObjectOutput out) throws IOException {
         out.writeByte(responseCode.ordinal());
+        if (metaData != null && metaData.isAtLeast(4, 8)) {
+            out.writeLong(deployments);
+        }
 
         switch (responseCode) {
             case CURRENT:
@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import java.io.ObjectStreamClass;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Class descriptors and methods already exchanged on a kept alive connection (protocol 4.7).
+ * <p/>
+ * Each end of the connection owns one: the first time a class descriptor or a method is written
+ * it is sent with an id the other end records, then only the id goes on the wire.
+ * Ids are only assigned by the writing side so tables of both directions are independent.
+ * <p/>
+ * Not thread safe, a connection serves a single request at a time.
+ *
+ * @see EjbObjectOutputStream
+ * @see EjbObjectInputStream
+ */
+public class ConnectionDictionary {
+
+    /**
+     * Written after the protocol version by 4.7 clients: does the request (and its response) use the dictionary.
+     */
+    public static final int UNUSED = 0;
+    public static final int USED = 1;
+
+    /**
+     * Written after the protocol version of the responses to 4.8 requests: is the connection closed after the response.
+     */
+    public static final int KEEP = 0;
+    public static final int CLOSE = 1;
+
+    // entry prefixes
+    static final byte INLINE = 0;
+    static final byte DEFINE = 1;
+    static final byte REFERENCE = 2;
+
+    private static final int MAX_ENTRIES = Short.MAX_VALUE;
+
+    // descriptors are cached by the JVM so identity is fine, weak to not hold classes of undeployed applications
+    private final Map<ObjectStreamClass, Integer> writtenDescriptors = new WeakHashMap<>();
+    private int nextDescriptor;
+    private final List<ObjectStreamClass> readDescriptors = new ArrayList<>();
+
+    // names only, classes are resolved for each request as they would be without the dictionary
+    private final Map<String, Integer> writtenMethods = new HashMap<>();
+    private final List<MethodEntry> readMethods = new ArrayList<>();
+
+    private boolean valid = true;
+
+    /**
+     * @return the id of an already written descriptor or -1.
+     */
+    public int descriptorId(final ObjectStreamClass descriptor) {
+        final Integer id = writtenDescriptors.get(descriptor);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @return the id of the new entry or -1 when the dictionary is full.
+     */
+    public int defineDescriptor(final ObjectStreamClass descriptor) {
+        if (nextDescriptor >= MAX_ENTRIES) {
+            return -1;
+        }
+        final int id = nextDescriptor++;
+        writtenDescriptors.put(descriptor, id);
+        return id;
+    }
+
+    public ObjectStreamClass descriptor(final int id) throws StreamCorruptedException {
+        if (id < 0 || id >= readDescriptors.size()) {
+            throw new StreamCorruptedException("Unknown class descriptor " + id + " in the connection dictionary");
+        }
+        return readDescriptors.get(id);
+    }
+
+    public void descriptor(final int id, final ObjectStreamClass descriptor) throws StreamCorruptedException {
+        add(readDescriptors, id, descriptor);
+    }
+
+    public int methodId(final String key) {
+        final Integer id = writtenMethods.get(key);
+        return id == null ? -1 : id;
+    }
+
+    public int defineMethod(final String key) {
+        if (writtenMethods.size() >= MAX_ENTRIES) {
+            return -1;
+        }
+        final int id = writtenMethods.size();
+        writtenMethods.put(key, id);
+        return id;
+    }
+
+    public MethodEntry method(final int id) throws StreamCorruptedException {
+        if (id < 0 || id >= readMethods.size()) {
+            throw new StreamCorruptedException("Unknown method " + id + " in the connection dictionary");
+        }
+        return readMethods.get(id);
+    }
+
+    public void method(final int id, final MethodEntry method) throws StreamCorruptedException {
+        add(readMethods, id, method);
+    }
+
+    /**
+     * A message failed to be read, the entries it defined after the failure are missing so the connection
+     * must not carry other messages.
+     */
+    public void invalidate() {
+        valid = false;
+    }
+
+    public boolean isValid() {
+        return valid;
+    }
+
+    private static <T> void add(final List<T> entries, final int id, final T value) throws StreamCorruptedException {
+        if (id != entries.size()) { // both ends don't see the same requests anymore
+            throw new StreamCorruptedException("Unexpected connection dictionary id " + id + ", next one is " + entries.size());
+        }
+        entries.add(value);
+    }
+
+    public static class MethodEntry {
+        private final String interfaceName;
+        private final String methodName;
+        private final String[] parameterTypes;
+
+        public MethodEntry(final String interfaceName, final String methodName, final String[] parameterTypes) {
+            this.interfaceName = interfaceName;
+            this.methodName = methodName;
+            this.parameterTypes = parameterTypes;
+        }
+
+        public String getInterfaceName() {
+            return interfaceName;
+        }
+
+        public String getMethodName() {
+            return methodName;
+        }
+
+        public String[] getParameterTypes() {
+            return parameterTypes;
+        }
+    }
+}
@@ -55,6 +55,7 @@ public class ConnectionManager {
         registerStrategy("sticky+round", new StickyConnectionStrategy(new RoundRobinConnectionStrategy()));
         registerStrategy("random", new RandomConnectionStrategy());
         registerStrategy("roundrobin", new RoundRobinConnectionStrategy());
+        registerStrategy("latency", new LatencyAwareConnectionStrategy());
         registerStrategy("round-robin", strategies.get("roundrobin"));
         registerStrategy("default", strategies.get("sticky"));
     }
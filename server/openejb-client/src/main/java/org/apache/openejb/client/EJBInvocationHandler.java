@@ -40,6 +40,7 @@ import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -139,26 +140,88 @@ public abstract class EJBInvocationHandler implements InvocationHandler, Seriali
     protected abstract Object _invoke(Object proxy, Method method, Object[] args) throws Throwable;
 
     protected EJBResponse request(final EJBRequest req) throws Exception {
+        return request(req, new EJBResponse());
+    }
+
+    protected EJBResponse request(final EJBRequest req, final EJBResponse res) throws Exception {
         req.setClientIdentity(getClientIdentity());
 
         req.setServerHash(server.buildHash());
 
-        final EJBResponse response = new EJBResponse();
-        Client.request(req, response, server);
-        if (null != response.getServer()) {
-            server.merge(response.getServer());
+        send(req, res);
+        return renewIdentity(req, res);
+    }
+
+    private void send(final EJBRequest req, final EJBResponse res) throws RemoteException {
+        Client.request(req, res, server);
+        if (null != res.getServer()) {
+            server.merge(res.getServer());
         }
-        return response;
     }
 
-    protected EJBResponse request(final EJBRequest req, final EJBResponse res) throws Exception {
+    /**
+     * Same as {@link #request(EJBRequest)} but completed once the response is read, no thread waits for it.
+     */
+    protected ClientFuture<EJBResponse> requestAsync(final EJBRequest req, final Executor executor) {
         req.setClientIdentity(getClientIdentity());
 
         req.setServerHash(server.buildHash());
 
-        Client.request(req, res, server);
-        if (null != res.getServer()) {
-            server.merge(res.getServer());
+        final ClientFuture<EJBResponse> future = new ClientFuture<EJBResponse>();
+        sendAsync(req, executor, future, true);
+        return future;
+    }
+
+    private void sendAsync(final EJBRequest req, final Executor executor, final ClientFuture<EJBResponse> future, final boolean renew) {
+        Client.requestAsync(req, new EJBResponse(), server, executor).whenComplete(new ClientFuture.Callback<EJBResponse>() {
+            @Override
+            public void completed(final EJBResponse response) {
+                if (null != response.getServer()) {
+                    server.merge(response.getServer());
+                }
+                if (renew && isRefusedIdentity(req, response) && renewToken(req)) {
+                    sendAsync(req, executor, future, false);
+                } else {
+                    future.complete(checkIdentity(req, response));
+                }
+            }
+
+            @Override
+            public void failed(final Throwable error) {
+                future.fail(error);
+            }
+        });
+    }
+
+    /**
+     * The server refuses an identity token once it expired or was evicted from its sessions, the client logs in
+     * again with the credentials the token was issued for and sends the request once more.
+     */
+    protected EJBResponse renewIdentity(final EJBRequest req, final EJBResponse res) throws RemoteException {
+        if (isRefusedIdentity(req, res) && renewToken(req)) {
+            send(req, res);
+        }
+        return checkIdentity(req, res);
+    }
+
+    private static boolean isRefusedIdentity(final EJBRequest req, final EJBResponse res) {
+        return res.getResponseCode() == ResponseCodes.AUTH_DENIED && IdentityToken.class.isInstance(req.getClientIdentity());
+    }
+
+    private boolean renewToken(final EJBRequest req) {
+        if (client == null || !client.renewIdentityToken(req.getClientIdentity(), server)) {
+            return false;
+        }
+        req.setClientIdentity(getClientIdentity());
+        return true;
+    }
+
+    /**
+     * A token which can't be renewed is reported as the error of an invalid identity.
+     */
+    private static EJBResponse checkIdentity(final EJBRequest req, final EJBResponse res) {
+        if (isRefusedIdentity(req, res)) {
+            res.setResponse(req.getVersion(), ResponseCodes.EJB_ERROR, res.getResult());
         }
         return res;
     }
@@ -143,6 +143,26 @@ public class EJBMetaDataImpl implements javax.ejb.EJBMetaData, java.io.Externali
         this.deploymentCode = deploymentCode;
     }
 
+    /**
+     * A copy of metadata shared by several lookups, each one sets its own home proxy.
+     */
+    public EJBMetaDataImpl(final EJBMetaDataImpl ejb) {
+        this.type = ejb.type;
+        this.deploymentID = ejb.deploymentID;
+        this.deploymentCode = ejb.deploymentCode;
+        this.homeClass = ejb.homeClass;
+        this.remoteClass = ejb.remoteClass;
+        this.businessClasses.addAll(ejb.businessClasses);
+        this.mainInterface = ejb.mainInterface;
+        this.asynchronousMethods.addAll(ejb.asynchronousMethods);
+        this.properties.putAll(ejb.properties);
+        this.keyClass = ejb.keyClass;
+        this.ejbHomeProxy = ejb.ejbHomeProxy;
+        this.interfaceType = ejb.interfaceType;
+        this.primaryKey = ejb.primaryKey;
+        this.metaData = ejb.metaData;
+    }
+
     public void setMetaData(final ProtocolMetaData metaData) {
         this.metaData = metaData;
     }
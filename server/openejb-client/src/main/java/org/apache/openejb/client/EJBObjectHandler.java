@@ -22,19 +22,15 @@ import org.apache.openejb.client.util.ClassLoaderUtil;
 
 import javax.ejb.EJBException;
 import javax.ejb.EJBObject;
+import javax.ejb.NoSuchEJBException;
 import java.lang.reflect.Method;
+import java.rmi.NoSuchObjectException;
 import java.rmi.RemoteException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.Callable;
-import java.util.concurrent.CancellationException;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
-import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -203,38 +199,42 @@ public abstract class EJBObjectHandler extends EJBInvocationHandler {
 
             }
 
-        } catch (SystemException e) {
+        } catch (Throwable throwable) {
+            throw toClientException(throwable, m);
+        }
+    }
+
+    private Throwable toClientException(final Throwable throwable, final Method m) {
+        if (throwable instanceof SystemException) {
             invalidateAllHandlers(getRegistryId());
-            throw convertException(getCause(e), m);
+            return convertException(getCause(throwable), m);
             /*
             * Application exceptions must be reported dirctly to the client. They
             * do not impact the viability of the proxy.
             */
-        } catch (ApplicationException ae) {
-            throw convertException(getCause(ae), m);
+        } else if (throwable instanceof ApplicationException) {
+            return convertException(getCause(throwable), m);
             /*
             * A system exception would be highly unusual and would indicate a sever
             * problem with the container system.
             */
-        } catch (SystemError se) {
+        } else if (throwable instanceof SystemError) {
             invalidateReference();
             if (remote) {
-                throw new RemoteException("Container has suffered a SystemException", getCause(se));
+                return new RemoteException("Container has suffered a SystemException", getCause(throwable));
             } else {
-                throw new EJBException("Container has suffered a SystemException").initCause(getCause(se));
+                return new EJBException("Container has suffered a SystemException").initCause(getCause(throwable));
             }
-        } catch (Throwable throwable) {
-            if (remote) {
-                if (throwable instanceof RemoteException) {
-                    throw throwable;
-                }
-                throw new RemoteException("Unknown Container Exception: " + throwable.getClass().getName() + ": " + throwable.getMessage(), getCause(throwable));
-            } else {
-                if (throwable instanceof EJBException) {
-                    throw throwable;
-                }
-                throw new EJBException("Unknown Container Exception: " + throwable.getClass().getName() + ": " + throwable.getMessage()).initCause(getCause(throwable));
+        } else if (remote) {
+            if (throwable instanceof RemoteException) {
+                return throwable;
+            }
+            return new RemoteException("Unknown Container Exception: " + throwable.getClass().getName() + ": " + throwable.getMessage(), getCause(throwable));
+        } else {
+            if (throwable instanceof EJBException) {
+                return throwable;
             }
+            return new EJBException("Unknown Container Exception: " + throwable.getClass().getName() + ": " + throwable.getMessage()).initCause(getCause(throwable));
         }
     }
 
@@ -257,43 +257,147 @@ public abstract class EJBObjectHandler extends EJBInvocationHandler {
 
     protected abstract Object remove(Method method, Object[] args, Object proxy) throws Throwable;
 
-    @SuppressWarnings("unchecked")
     protected Object businessMethod(final Method method, final Object[] args, final Object proxy) throws Throwable {
 
         if (ejb.isAsynchronousMethod(method)) {
-            try {
-                final String requestId = UUID.randomUUID().toString();
-                final EJBResponse response = new EJBResponse();
-                final AsynchronousCall asynchronousCall = new AsynchronousCall(method, args, proxy, requestId, response);
-                if (executor == null) {
-                    executor = JNDIContext.newExecutor(-1, null);
-                }
-                return new FutureAdapter(executor.submit(asynchronousCall), response, requestId);
-            } catch (RejectedExecutionException e) {
-                throw new EJBException("failed to allocate internal resource to execute the target task", e);
-            }
+            return invokeAsync(method, args);
         } else {
             return _businessMethod(method, args, proxy, null);
         }
     }
 
-    private Object _businessMethod(final Method method, final Object[] args, final Object proxy, final String requestId) throws Throwable {
-        final EJBRequest req = new EJBRequest(RequestMethodCode.EJB_OBJECT_BUSINESS_METHOD, ejb, method, args, primaryKey, client.getSerializer());
+    /**
+     * Sends a business method invocation without waiting for the response,
+     * used for {@link javax.ejb.Asynchronous} methods and by {@link AsyncView}.
+     */
+    public ClientFuture<Object> invokeAsync(final Method method, final Object[] args) {
+        final String requestId = UUID.randomUUID().toString();
+        final boolean asynchronous = ejb.isAsynchronousMethod(method);
+        final ClientFuture<Object> future = new ClientFuture<Object>() {
+            private final AtomicBoolean lastMayInterruptIfRunningValue = new AtomicBoolean(false);
+
+            @Override
+            protected boolean onCancel(final boolean mayInterruptIfRunning) {
+                /* In EJB 3.1 spec 3.4.8.1.1
+                 * a. If a client calls cancel on its Future object, the container will attempt to cancel
+                 *    the associated asynchronous invocation only if that invocation has not already been dispatched.
+                 *    If the asynchronous invocation can not be cancelled, the method must return false.
+                 *
+                 * b. The meaning of parameter mayInterruptIfRunning is changed.
+                 *
+                 * The request is written before the future is returned so it is always dispatched,
+                 * the server is only told about the cancellation for SessionContext.wasCancelCalled().
+                 */
+                if (asynchronous && lastMayInterruptIfRunningValue.getAndSet(mayInterruptIfRunning) != mayInterruptIfRunning) {
+                    sendCancel(requestId, mayInterruptIfRunning);
+                }
+                return false;
+            }
+        };
 
-        //Currently, we only set the requestId while the asynchronous invocation is called
+        if (isInvalidReference.get()) {
+            future.fail(invalidReference(method));
+            return future;
+        }
+
+        final EJBRequest req = new EJBRequest(RequestMethodCode.EJB_OBJECT_BUSINESS_METHOD, ejb, method, args, primaryKey, client.getSerializer());
         final EJBRequest.Body body = req.getBody();
         body.setRequestId(requestId);
         body.setAuthentication(this.authenticationInfo);
-        final EJBResponse res = request(req);
-        return _handleBusinessMethodResponse(res);
+
+        if (executor == null) {
+            executor = JNDIContext.newExecutor(-1, null);
+        }
+        requestAsync(req, executor).whenComplete(new ClientFuture.Callback<EJBResponse>() {
+            @Override
+            public void completed(final EJBResponse response) {
+                try {
+                    future.complete(_handleBusinessMethodResponse(response));
+                } catch (final Throwable e) {
+                    future.fail(toClientException(e, method));
+                }
+            }
+
+            @Override
+            public void failed(final Throwable error) {
+                future.fail(toClientException(error, method));
+            }
+        });
+        return future;
     }
 
-    private Object _businessMethod(final Method method, final Object[] args, final Object proxy, final String requestId, final EJBResponse response) throws Throwable {
+    private Exception invalidReference(final Method method) {
+        if (remote || java.rmi.Remote.class.isAssignableFrom(method.getDeclaringClass())) {
+            return new NoSuchObjectException("reference is invalid");
+        }
+        return new NoSuchEJBException("reference is invalid");
+    }
+
+    /**
+     * Prepares a business method invocation sent later with others by {@link RemoteBatch}.
+     *
+     * @return the request or null when the reference is invalid, the future is then failed
+     */
+    EJBRequest createBatchedRequest(final Method method, final Object[] args, final ClientFuture<Object> future) {
+        if (isInvalidReference.get()) {
+            future.fail(invalidReference(method));
+            return null;
+        }
+
         final EJBRequest req = new EJBRequest(RequestMethodCode.EJB_OBJECT_BUSINESS_METHOD, ejb, method, args, primaryKey, client.getSerializer());
+        req.getBody().setAuthentication(this.authenticationInfo);
+        req.setClientIdentity(getClientIdentity());
+        req.setServerHash(server.buildHash());
+        return req;
+    }
 
-        //Currently, we only set the request while the asynchronous invocation is called
+    /**
+     * Completes the future of a request created by {@link #createBatchedRequest} with its response or failure.
+     */
+    void completeBatched(final EJBRequest request, final Method method, final EJBResponse response, final Throwable failure, final ClientFuture<Object> future) {
+        if (failure != null) {
+            future.fail(toClientException(failure, method));
+            return;
+        }
+
+        if (null != response.getServer()) {
+            server.merge(response.getServer());
+        }
+        try {
+            future.complete(_handleBusinessMethodResponse(renewIdentity(request, response)));
+        } catch (final Throwable e) {
+            future.fail(toClientException(e, method));
+        }
+    }
+
+    private void sendCancel(final String requestId, final boolean mayInterruptIfRunning) {
+        final EJBRequest req = new EJBRequest(RequestMethodCode.FUTURE_CANCEL,
+            ejb,
+            CANCEL,
+            new Object[]{mayInterruptIfRunning},
+            primaryKey,
+            client.getSerializer());
         req.getBody().setRequestId(requestId);
-        final EJBResponse res = request(req, response);
+        try {
+            final EJBResponse res = request(req);
+            if (res.getResponseCode() != ResponseCodes.EJB_OK) {
+                //TODO how do we notify the user that we fail to configure the value ?
+                Logger.getLogger(this.getClass().getName()).info("Unexpected response on cancel: " + res);
+            }
+        } catch (Exception e) {
+            //TODO how to handle
+            Logger.getLogger(this.getClass().getName()).log(Level.INFO, "Unexpected error on cancel", e);
+        }
+    }
+
+    private Object _businessMethod(final Method method, final Object[] args, final Object proxy, final String requestId) throws Throwable {
+        final EJBRequest req = new EJBRequest(RequestMethodCode.EJB_OBJECT_BUSINESS_METHOD, ejb, method, args, primaryKey, client.getSerializer());
+
+        //Currently, we only set the requestId while the asynchronous invocation is called
+        final EJBRequest.Body body = req.getBody();
+        body.setRequestId(requestId);
+        body.setAuthentication(this.authenticationInfo);
+        final EJBResponse res = request(req);
         return _handleBusinessMethodResponse(res);
     }
 
@@ -325,142 +429,4 @@ public abstract class EJBObjectHandler extends EJBInvocationHandler {
         }
         return res.getResult();
     }
-
-    private class AsynchronousCall implements Callable {
-
-        private Method method;
-
-        private Object[] args;
-
-        private Object proxy;
-
-        private String requestId;
-
-        private EJBResponse response;
-
-        public AsynchronousCall(final Method method, final Object[] args, final Object proxy, final String requestId, final EJBResponse response) {
-            this.method = method;
-            this.args = args;
-            this.proxy = proxy;
-            this.requestId = requestId;
-            this.response = response;
-        }
-
-        @Override
-        public Object call() throws Exception {
-            try {
-                return _businessMethod(method, args, proxy, requestId, response);
-            } catch (Exception e) {
-                throw e;
-            } catch (Throwable error) {
-                throw new SystemException(error);
-            }
-        }
-    }
-
-    private class FutureAdapter<T> implements Future<T> {
-
-        private Future<T> target;
-
-        private String requestId;
-
-        private EJBResponse response;
-
-        private volatile boolean canceled;
-
-        private AtomicBoolean lastMayInterruptIfRunningValue = new AtomicBoolean(false);
-
-        public FutureAdapter(final Future<T> target, final EJBResponse response, final String requestId) {
-            this.target = target;
-            this.requestId = requestId;
-            this.response = response;
-        }
-
-        @SuppressWarnings({"SuspiciousMethodCalls", "UnnecessaryBoxing"})
-        @Override
-        public boolean cancel(final boolean mayInterruptIfRunning) {
-            /* In EJB 3.1 spec 3.4.8.1.1
-             * a. If a client calls cancel on its Future object, the container will attempt to cancel 
-             *    the associated asynchronous invocation only if that invocation has not already been dispatched.
-             *    There is no guarantee that an asynchronous invocation can be cancelled, regardless of how quickly 
-             *    cancel is called after the client receives its Future object.
-             *    If the asynchronous invocation can not be cancelled, the method must return false.
-             *    If the asynchronous invocation is successfully cancelled, the method must return true.
-             *
-             * b. The meaning of parameter mayInterruptIfRunning is changed.
-             *
-             *  So, we should never call cancel(true), or the underlying Future object will try to interrupt the target thread.
-            */
-
-            /**
-             * We use our own flag canceled to identify whether the task is canceled successfully.
-             */
-            if (canceled) {
-                return true;
-            }
-            if (executor.getQueue().remove(target)) {
-                // We successfully remove the task from the queue
-                canceled = true;
-                return true;
-            } else {
-                // Did not find the task in the queue, the status might be ran/canceled or running
-                // Future.isDone() will return true when the task has been ran or canceled,
-                // Since we never call the Future.cancel method, the isDone method will only return true when the task has ran
-                if (!target.isDone()) {
-                    //The task is in the running state
-                    if (lastMayInterruptIfRunningValue.getAndSet(mayInterruptIfRunning) == mayInterruptIfRunning) {
-                        return false;
-                    }
-                    final EJBRequest req = new EJBRequest(RequestMethodCode.FUTURE_CANCEL,
-                        ejb,
-                        CANCEL,
-                        new Object[]{Boolean.valueOf(mayInterruptIfRunning)},
-                        primaryKey,
-                        client.getSerializer());
-                    req.getBody().setRequestId(requestId);
-                    try {
-                        final EJBResponse res = request(req);
-                        if (res.getResponseCode() != ResponseCodes.EJB_OK) {
-                            //TODO how do we notify the user that we fail to configure the value ?
-                            Logger.getLogger(this.getClass().getName()).info("Unexpected response on cancel: " + res);
-                        }
-                    } catch (Exception e) {
-                        //TODO how to handle
-                        Logger.getLogger(this.getClass().getName()).log(Level.INFO, "Unexpected error on cancel", e);
-                        return false;
-                    }
-                }
-                return false;
-            }
-        }
-
-        @Override
-        public T get() throws InterruptedException, ExecutionException {
-            if (canceled) {
-                throw new CancellationException();
-            }
-            return target.get();
-        }
-
-        @Override
-        public T get(final long timeout, final TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
-            if (canceled) {
-                throw new CancellationException();
-            }
-            return target.get(timeout, unit);
-        }
-
-        @Override
-        public boolean isCancelled() {
-            return canceled;
-        }
-
-        @Override
-        public boolean isDone() {
-            if (canceled) {
-                return false;
-            }
-            return target.isDone();
-        }
-    }
-}
\ No newline at end of file
+}
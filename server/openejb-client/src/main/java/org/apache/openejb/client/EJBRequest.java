@@ -321,6 +321,7 @@ public class EJBRequest implements ClusterableRequest {
         private transient Object primaryKey;
 
         private transient String requestId;
+        private transient String methodKey;
         private byte version = EJBResponse.VERSION;
 
         private transient JNDIContext.AuthenticationInfo authentication;
@@ -379,6 +380,7 @@ public class EJBRequest implements ClusterableRequest {
                 throw new NullPointerException("methodInstance input parameter is null");
             }
             this.methodInstance = methodInstance;
+            this.methodKey = null;
             this.methodName = methodInstance.getName();
             this.methodParamTypes = methodInstance.getParameterTypes();
             final Class methodClass = methodInstance.getDeclaringClass();
@@ -438,18 +440,67 @@ public class EJBRequest implements ClusterableRequest {
             try {
                 requestId = (String) in.readObject();
                 primaryKey = in.readObject();
-                interfaceClass = (Class) in.readObject();
             } catch (ClassNotFoundException cnfe) {
                 result = cnfe;
             }
 
-            methodName = in.readUTF();
+            final ConnectionDictionary dictionary = getDictionary(in);
+            final byte mode = dictionary == null ? ConnectionDictionary.INLINE : in.readByte();
+            if (mode == ConnectionDictionary.REFERENCE) {
+                final ConnectionDictionary.MethodEntry entry = dictionary.method(in.readUnsignedShort());
+                final EjbObjectInputStream resolver = EjbObjectInputStream.class.cast(in);
+                interfaceClass = null;
+                methodName = entry.getMethodName();
+                final Class[] types = new Class[entry.getParameterTypes().length];
+                try {
+                    if (entry.getInterfaceName() == null) {
+                        throw new ClassNotFoundException("Interface of " + methodName + " was not found when the method was first sent");
+                    }
+                    interfaceClass = resolver.resolve(entry.getInterfaceName());
+                    for (int i = 0; i < types.length; i++) {
+                        types[i] = resolver.resolve(entry.getParameterTypes()[i]);
+                    }
+                } catch (ClassNotFoundException cnfe) {
+                    if (result == null) {
+                        result = cnfe;
+                    }
+                }
 
-            try {
-                readMethodParameters(in);
-            } catch (ClassNotFoundException cnfe) {
-                if (result == null) {
-                    result = cnfe;
+                try {
+                    readMethodParameters(in, types);
+                } catch (ClassNotFoundException cnfe) {
+                    if (result == null) {
+                        result = cnfe;
+                    }
+                }
+            } else {
+                final int id = mode == ConnectionDictionary.DEFINE ? in.readUnsignedShort() : -1;
+                if (mode != ConnectionDictionary.DEFINE && mode != ConnectionDictionary.INLINE) {
+                    throw new IOException("Unknown method mode " + mode);
+                }
+
+                try {
+                    interfaceClass = (Class) in.readObject();
+                } catch (ClassNotFoundException cnfe) {
+                    if (result == null) {
+                        result = cnfe;
+                    }
+                }
+
+                methodName = in.readUTF();
+
+                boolean parameters = false;
+                try {
+                    readMethodParameters(in);
+                    parameters = true;
+                } catch (ClassNotFoundException cnfe) {
+                    if (result == null) {
+                        result = cnfe;
+                    }
+                }
+
+                if (id >= 0) {
+                    dictionary.method(id, parameters ? newMethodEntry() : new ConnectionDictionary.MethodEntry(null, methodName, new String[0]));
                 }
             }
 
@@ -487,11 +538,14 @@ public class EJBRequest implements ClusterableRequest {
 
             out.writeObject(primaryKey);
 
-            out.writeObject(interfaceClass);
-
-            out.writeUTF(methodName);
-
-            writeMethodParameters(out, methodParamTypes, methodParameters);
+            final ConnectionDictionary dictionary = getDictionary(out);
+            if (dictionary == null) {
+                out.writeObject(interfaceClass);
+                out.writeUTF(methodName);
+                writeMethodParameters(out, methodParamTypes, methodParameters);
+            } else {
+                writeMethod(out, dictionary);
+            }
 
             if (null == metaData || metaData.isAtLeast(4, 6)) {
                 out.writeObject(authentication);
@@ -500,10 +554,73 @@ public class EJBRequest implements ClusterableRequest {
             out.flush();
         }
 
+        /**
+         * Once sent on a connection the interface, name and parameter types of the method are only referenced.
+         */
+        private void writeMethod(final ObjectOutput out, final ConnectionDictionary dictionary) throws IOException {
+            final String key = getMethodKey();
+            final int known = dictionary.methodId(key);
+            if (known >= 0) {
+                out.writeByte(ConnectionDictionary.REFERENCE);
+                out.writeShort(known);
+                writeMethodParameters(out, methodParamTypes, methodParameters, false);
+                return;
+            }
+
+            final int id = dictionary.defineMethod(key);
+            if (id >= 0) {
+                out.writeByte(ConnectionDictionary.DEFINE);
+                out.writeShort(id);
+            } else {
+                out.writeByte(ConnectionDictionary.INLINE);
+            }
+            out.writeObject(interfaceClass);
+            out.writeUTF(methodName);
+            writeMethodParameters(out, methodParamTypes, methodParameters);
+        }
+
+        private String getMethodKey() {
+            if (methodKey == null) {
+                final StringBuilder key = new StringBuilder(interfaceClass == null ? "" : interfaceClass.getName()).append('#').append(methodName);
+                for (final Class type : methodParamTypes) {
+                    key.append(',').append(type.getName());
+                }
+                methodKey = key.toString();
+            }
+            return methodKey;
+        }
+
+        private ConnectionDictionary.MethodEntry newMethodEntry() {
+            final String[] types = new String[methodParamTypes.length];
+            for (int i = 0; i < types.length; i++) {
+                types[i] = methodParamTypes[i] == null ? null : methodParamTypes[i].getName();
+            }
+            return new ConnectionDictionary.MethodEntry(interfaceClass == null ? null : interfaceClass.getName(), methodName, types);
+        }
+
+        private ConnectionDictionary getDictionary(final ObjectOutput out) {
+            if (metaData != null && !metaData.isAtLeast(4, 7) || !EjbObjectOutputStream.class.isInstance(out)) {
+                return null;
+            }
+            return EjbObjectOutputStream.class.cast(out).getDictionary();
+        }
+
+        private ConnectionDictionary getDictionary(final ObjectInput in) {
+            if (metaData != null && !metaData.isAtLeast(4, 7) || !EjbObjectInputStream.class.isInstance(in)) {
+                return null;
+            }
+            return EjbObjectInputStream.class.cast(in).getDictionary();
+        }
+
         /**
          * Changes to this method must observe the optional {@link #metaData} version
          */
         protected void writeMethodParameters(final ObjectOutput out, final Class[] types, final Object[] args) throws IOException {
+            writeMethodParameters(out, types, args, true);
+        }
+
+        // without types the reader already knows the parameter classes (connection dictionary)
+        private void writeMethodParameters(final ObjectOutput out, final Class[] types, final Object[] args, final boolean withTypes) throws IOException {
 
             out.writeByte(types.length);
 
@@ -566,7 +683,9 @@ public class EJBRequest implements ClusterableRequest {
                         obj = PortableRemoteObject.toStub((Remote) obj);
                     }
                     out.write(OBJECT);
-                    out.writeObject(clazz);
+                    if (withTypes) {
+                        out.writeObject(clazz);
+                    }
                     out.writeObject(obj);
                 }
             }
@@ -604,6 +723,10 @@ public class EJBRequest implements ClusterableRequest {
          * Changes to this method must observe the optional {@link #metaData} version
          */
         protected void readMethodParameters(final ObjectInput in) throws IOException, ClassNotFoundException {
+            readMethodParameters(in, null);
+        }
+
+        private void readMethodParameters(final ObjectInput in, final Class[] knownTypes) throws IOException, ClassNotFoundException {
             final int length = in.read();
 
             if (length < 1) {
@@ -663,7 +786,7 @@ public class EJBRequest implements ClusterableRequest {
                         break;
 
                     case OBJECT:
-                        clazz = (Class) in.readObject();
+                        clazz = knownTypes == null ? (Class) in.readObject() : (i < knownTypes.length ? knownTypes[i] : null);
                         obj = in.readObject();
                         if (obj instanceof Stub) {
                             final Stub stub = (Stub) obj;
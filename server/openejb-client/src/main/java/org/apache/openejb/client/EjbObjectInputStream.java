@@ -20,7 +20,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectStreamClass;
+import java.io.StreamCorruptedException;
 import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Pattern;
 
@@ -35,43 +38,88 @@ public class EjbObjectInputStream extends ObjectInputStream {
         RESOLVER_ATOMIC_REFERENCE.set(new BlacklistClassResolver());
     }
 
+    private static final Map<String, Class<?>> PRIMITIVES = new HashMap<>();
+
+    static {
+        for (final Class<?> primitive : new Class<?>[]{boolean.class, byte.class, char.class, short.class, int.class, long.class, float.class, double.class}) {
+            PRIMITIVES.put(primitive.getName(), primitive);
+        }
+    }
+
+    private final ConnectionDictionary dictionary;
+    private ChunkedStreams streams;
+
     public EjbObjectInputStream(final InputStream in) throws IOException {
+        this(in, null);
+    }
+
+    public EjbObjectInputStream(final InputStream in, final ConnectionDictionary dictionary) throws IOException {
         super(in);
+        this.dictionary = dictionary;
+    }
+
+    public ConnectionDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Streamed values are then read as the chunks following the message, see {@link EjbObjectOutputStream#writeStreams()}.
+     */
+    public void enableStreams(final ChunkedStreams streams) {
+        this.streams = streams;
+        enableResolveObject(streams != null);
+    }
+
+    public ChunkedStreams getStreams() {
+        return streams;
+    }
+
+    @Override
+    protected Object resolveObject(final Object obj) throws IOException {
+        return streams != null ? streams.resolve(obj, this) : obj;
+    }
+
+    @Override
+    protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+        if (dictionary == null) {
+            return super.readClassDescriptor();
+        }
+
+        final byte mode = readByte();
+        switch (mode) {
+            case ConnectionDictionary.REFERENCE:
+                return dictionary.descriptor(readUnsignedShort());
+            case ConnectionDictionary.DEFINE:
+                final int id = readUnsignedShort();
+                final ObjectStreamClass descriptor = super.readClassDescriptor();
+                dictionary.descriptor(id, descriptor);
+                return descriptor;
+            case ConnectionDictionary.INLINE:
+                return super.readClassDescriptor();
+            default:
+                throw new StreamCorruptedException("Unknown class descriptor mode " + mode);
+        }
     }
 
     @Override
     protected Class<?> resolveClass(final ObjectStreamClass classDesc) throws IOException, ClassNotFoundException {
-        final String n = RESOLVER_ATOMIC_REFERENCE.get().check(classDesc.getName());
+        return resolve(classDesc.getName());
+    }
+
+    /**
+     * Same resolution as for classes read from the stream, used for names sent through the connection dictionary.
+     */
+    public Class<?> resolve(final String name) throws ClassNotFoundException {
+        final String n = RESOLVER_ATOMIC_REFERENCE.get().check(name);
+        final Class<?> primitive = PRIMITIVES.get(n);
+        if (primitive != null) {
+            return primitive;
+        }
+
         final ClassLoader classloader = getClassloader();
         try {
             return Class.forName(n, false, classloader);
         } catch (ClassNotFoundException e) {
-
-            if (n.equals("boolean")) {
-                return boolean.class;
-            }
-            if (n.equals("byte")) {
-                return byte.class;
-            }
-            if (n.equals("char")) {
-                return char.class;
-            }
-            if (n.equals("short")) {
-                return short.class;
-            }
-            if (n.equals("int")) {
-                return int.class;
-            }
-            if (n.equals("long")) {
-                return long.class;
-            }
-            if (n.equals("float")) {
-                return float.class;
-            }
-            if (n.equals("double")) {
-                return double.class;
-            }
-
             //Last try - Let runtime try and find it.
             return Class.forName(n, false, null);
         }
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+
+/**
+ * Writes class descriptors through the connection dictionary when there is one,
+ * read back by {@link EjbObjectInputStream}.
+ */
+public class EjbObjectOutputStream extends ObjectOutputStream {
+    private final ConnectionDictionary dictionary;
+    private ChunkedStreams streams;
+
+    public EjbObjectOutputStream(final OutputStream out, final ConnectionDictionary dictionary) throws IOException {
+        super(out);
+        this.dictionary = dictionary;
+    }
+
+    public ConnectionDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Values which can't be serialized but can be streamed are written by {@link #writeStreams()}
+     * once the message is written, otherwise they fail as usual.
+     */
+    public void enableStreams(final ChunkedStreams streams) {
+        this.streams = streams;
+        enableReplaceObject(streams != null);
+    }
+
+    public void writeStreams() throws IOException {
+        if (streams != null) {
+            streams.write(this);
+        }
+    }
+
+    @Override
+    protected Object replaceObject(final Object obj) throws IOException {
+        return streams != null ? streams.replace(obj) : obj;
+    }
+
+    @Override
+    protected void writeClassDescriptor(final ObjectStreamClass desc) throws IOException {
+        if (dictionary == null) {
+            super.writeClassDescriptor(desc);
+            return;
+        }
+
+        final int known = dictionary.descriptorId(desc);
+        if (known >= 0) {
+            writeByte(ConnectionDictionary.REFERENCE);
+            writeShort(known);
+            return;
+        }
+
+        final int id = dictionary.defineDescriptor(desc);
+        if (id >= 0) {
+            writeByte(ConnectionDictionary.DEFINE);
+            writeShort(id);
+        } else {
+            writeByte(ConnectionDictionary.INLINE);
+        }
+        super.writeClassDescriptor(desc);
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the frames written by {@link FramedOutputStream}, one at a time when the previous one is consumed
+ * so nothing after the message is read.
+ */
+public class FramedInputStream extends InputStream {
+
+    private final InputStream in;
+
+    private byte[] buffer;
+    private int position;
+    private int limit;
+
+    public FramedInputStream(final InputStream in) {
+        this.in = in;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        final int b = buffer[position++] & 0xff;
+        consumed();
+        return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        final int read = Math.min(len, limit - position);
+        System.arraycopy(buffer, position, b, off, read);
+        position += read;
+        consumed();
+        return read;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return limit - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        MessageCodec.release(buffer);
+        buffer = null;
+        position = limit = 0;
+        in.close();
+    }
+
+    private void consumed() {
+        if (position == limit) { // the buffer goes back to the pool between frames
+            MessageCodec.release(buffer);
+            buffer = null;
+        }
+    }
+
+    private boolean fill() throws IOException {
+        while (position == limit) {
+            final int id = in.read();
+            if (id < 0) {
+                return false;
+            }
+
+            final MessageCodec codec = MessageCodec.valueOf(id);
+            final int rawLength = readLength();
+            buffer = MessageCodec.buffer();
+            if (codec == MessageCodec.NONE) {
+                readFully(buffer, rawLength);
+            } else {
+                final int length = readLength();
+                final byte[] compressed = MessageCodec.buffer();
+                try {
+                    readFully(compressed, length);
+                    codec.decompress(compressed, length, buffer, rawLength);
+                } finally {
+                    MessageCodec.release(compressed);
+                }
+            }
+            position = 0;
+            limit = rawLength;
+        }
+        return true;
+    }
+
+    private int readLength() throws IOException {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            final int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Truncated frame header");
+            }
+            value = (value << 8) | b;
+        }
+        if (value < 0 || value > MessageCodec.FRAME_SIZE) {
+            throw new IOException("Invalid frame length " + value);
+        }
+        return value;
+    }
+
+    private void readFully(final byte[] b, final int length) throws IOException {
+        int read = 0;
+        while (read < length) {
+            final int n = in.read(b, read, length - read);
+            if (n < 0) {
+                throw new EOFException("Truncated frame");
+            }
+            read += n;
+        }
+    }
+}
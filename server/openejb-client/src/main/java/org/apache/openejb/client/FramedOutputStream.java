@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes a message as frames of at most {@link MessageCodec#FRAME_SIZE} bytes, a frame ends when it is full
+ * or on flush, so a message ends with a frame. Frames of at least the threshold are compressed when it makes
+ * them smaller, read back by {@link FramedInputStream}.
+ * <p/>
+ * Frame: the codec id byte, the int length of the data then for a compressed frame the int length
+ * of the compressed data, then the data.
+ */
+public class FramedOutputStream extends OutputStream {
+
+    private final OutputStream out;
+    private final MessageCodec codec;
+    private final int threshold;
+    private final byte[] header = new byte[9];
+
+    private byte[] buffer;
+    private int count;
+
+    public FramedOutputStream(final OutputStream out, final MessageCodec codec, final int threshold) {
+        this.out = out;
+        this.codec = codec;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        if (buffer == null) {
+            buffer = MessageCodec.buffer();
+        } else if (count == buffer.length) {
+            frame();
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(final byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (buffer == null) {
+                buffer = MessageCodec.buffer();
+            } else if (count == buffer.length) {
+                frame();
+            }
+            final int copied = Math.min(len, buffer.length - count);
+            System.arraycopy(b, off, buffer, count, copied);
+            count += copied;
+            off += copied;
+            len -= copied;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        frame();
+        MessageCodec.release(buffer);
+        buffer = null;
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void frame() throws IOException {
+        if (count == 0) {
+            return;
+        }
+
+        if (codec != MessageCodec.NONE && count >= threshold) {
+            final byte[] compressed = MessageCodec.buffer();
+            try {
+                final int length = codec.compress(buffer, count, compressed);
+                if (length > 0 && length < count) {
+                    header[0] = (byte) codec.getId();
+                    writeInt(count, 1);
+                    writeInt(length, 5);
+                    out.write(header, 0, 9);
+                    out.write(compressed, 0, length);
+                    count = 0;
+                    return;
+                }
+            } finally {
+                MessageCodec.release(compressed);
+            }
+        }
+
+        header[0] = (byte) MessageCodec.NONE.getId();
+        writeInt(count, 1);
+        out.write(header, 0, 5);
+        out.write(buffer, 0, count);
+        count = 0;
+    }
+
+    private void writeInt(final int value, final int offset) {
+        header[offset] = (byte) (value >>> 24);
+        header[offset + 1] = (byte) (value >>> 16);
+        header[offset + 2] = (byte) (value >>> 8);
+        header[offset + 3] = (byte) value;
+    }
+}
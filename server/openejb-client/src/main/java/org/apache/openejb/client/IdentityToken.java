@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * Client identity issued by the server after a login when it signs identities, it is presented in place of the
+ * identity of the login until it expires so the server does not run the login modules again.
+ * <p/>
+ * The fields are signed by the server, the client only reads them to know how long the token can be reused.
+ */
+public class IdentityToken implements Externalizable {
+
+    private static final long serialVersionUID = 2816419312651064315L;
+
+    private String id;
+    private String user;
+    private long issued;
+    private long expiry;
+    private byte[] signature;
+
+    public IdentityToken() {
+    }
+
+    public IdentityToken(final String id, final String user, final long issued, final long expiry, final byte[] signature) {
+        this.id = id;
+        this.user = user;
+        this.issued = issued;
+        this.expiry = expiry;
+        this.signature = signature;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    /**
+     * @return when the server issued the token, in milliseconds on the server clock
+     */
+    public long getIssued() {
+        return issued;
+    }
+
+    /**
+     * @return when the token expires, in milliseconds on the server clock
+     */
+    public long getExpiry() {
+        return expiry;
+    }
+
+    public byte[] getSignature() {
+        return signature;
+    }
+
+    @Override
+    public void writeExternal(final ObjectOutput out) throws IOException {
+        out.writeByte(1);
+        out.writeUTF(id);
+        out.writeUTF(user);
+        out.writeLong(issued);
+        out.writeLong(expiry);
+        out.writeShort(signature.length);
+        out.write(signature);
+    }
+
+    @Override
+    public void readExternal(final ObjectInput in) throws IOException, ClassNotFoundException {
+        final byte version = in.readByte(); // future use
+        id = in.readUTF();
+        user = in.readUTF();
+        issued = in.readLong();
+        expiry = in.readLong();
+        signature = new byte[in.readUnsignedShort()];
+        in.readFully(signature);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        return this == o || o instanceof IdentityToken && id.equals(((IdentityToken) o).id);
+    }
+
+    @Override
+    public int hashCode() {
+        return id.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "IdentityToken{user='" + user + "', id=" + id + '}';
+    }
+}
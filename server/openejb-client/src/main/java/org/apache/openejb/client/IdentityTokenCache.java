@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The identity tokens of the logins of this JVM, by server and credentials, so a new {@link JNDIContext}
+ * presents the token of a previous login with the same credentials instead of having the server log in again.
+ * <p/>
+ * Credentials are only kept as a digest. A token is dropped a bit before its expiry, computed from its lifetime
+ * so the clocks of the client and the server don't need to agree, or once the last client using it released it
+ * so it can be logged out.
+ */
+final class IdentityTokenCache {
+
+    private static final int SIZE = 64;
+
+    private static final Map<String, Entry> TOKENS = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+            return size() > SIZE;
+        }
+    };
+
+    // clients of this JVM using a token, by token
+    private static final Map<IdentityToken, Integer> USERS = new HashMap<IdentityToken, Integer>();
+
+    private IdentityTokenCache() {
+        // no-op
+    }
+
+    /**
+     * @return the key of these credentials on this server, null if it can't be computed
+     */
+    static String key(final ServerMetaData server, final String realm, final String user, final String password) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(Arrays.toString(server.getLocations()).getBytes(StandardCharsets.UTF_8));
+            for (final String value : new String[]{realm, user, password}) {
+                digest.update((byte) 0);
+                if (value != null) {
+                    digest.update(value.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+
+            final StringBuilder key = new StringBuilder(64);
+            for (final byte b : digest.digest()) {
+                key.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return key.toString();
+        } catch (final NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    static IdentityToken get(final String key) {
+        synchronized (TOKENS) {
+            final Entry entry = TOKENS.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.deadline <= System.currentTimeMillis()) {
+                TOKENS.remove(key);
+                return null;
+            }
+            return entry.token;
+        }
+    }
+
+    /**
+     * Caches the token of these credentials for a new client using it.
+     */
+    static void acquire(final String key, final IdentityToken token) {
+        final long lifetime = token.getExpiry() - token.getIssued();
+        final Entry entry = new Entry(token, System.currentTimeMillis() + lifetime - lifetime / 10);
+        synchronized (TOKENS) {
+            TOKENS.put(key, entry);
+            final Integer users = USERS.get(token);
+            USERS.put(token, users == null ? 1 : users + 1);
+        }
+    }
+
+    /**
+     * @return true if no other client uses this token, it is not cached anymore then
+     */
+    static boolean release(final String key, final IdentityToken token) {
+        synchronized (TOKENS) {
+            final Integer users = USERS.remove(token);
+            if (users == null) {
+                return false;
+            }
+            if (users > 1) {
+                USERS.put(token, users - 1);
+                return false;
+            }
+
+            final Entry entry = TOKENS.get(key);
+            if (entry != null && entry.token.equals(token)) {
+                TOKENS.remove(key);
+            }
+            return true;
+        }
+    }
+
+    static void remove(final String key) {
+        synchronized (TOKENS) {
+            TOKENS.remove(key);
+        }
+    }
+
+    private static final class Entry {
+        private final IdentityToken token;
+        private final long deadline;
+
+        private Entry(final IdentityToken token, final long deadline) {
+            this.token = token;
+            this.deadline = deadline;
+        }
+    }
+}
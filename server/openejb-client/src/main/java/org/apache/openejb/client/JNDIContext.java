@@ -72,6 +72,7 @@ public class JNDIContext implements InitialContextFactory, Context {
     public static final String AUTHENTICATE_WITH_THE_REQUEST = "openejb.ejbd.authenticate-with-request";
     public static final String POOL_QUEUE_SIZE = "openejb.client.invoker.queue";
     public static final String POOL_THREAD_NUMBER = "openejb.client.invoker.threads";
+    public static final String IDENTITY_TOKEN_CACHE = "openejb.client.identity.token.cache";
 
     private String tail = "/";
     private ServerMetaData server;
@@ -102,6 +103,7 @@ public class JNDIContext implements InitialContextFactory, Context {
     }
 
     private AuthenticationInfo authenticationInfo = null;
+    private String identityTokenKey;
 
     //TODO figure out how to configure and manage the thread pool on the client side, this will do for now...
     private transient int threads;
@@ -202,6 +204,10 @@ public class JNDIContext implements InitialContextFactory, Context {
         this.moduleId = that.moduleId;
         this.env = (Hashtable) that.env.clone();
         this.clientIdentity = that.clientIdentity;
+        this.identityTokenKey = that.identityTokenKey;
+        if (identityTokenKey != null) {
+            client.retain();
+        }
     }
 
     private JNDIResponse request(final JNDIRequest req) throws Exception {
@@ -327,7 +333,14 @@ public class JNDIContext implements InitialContextFactory, Context {
 
     public void authenticate(final String userID, final String psswrd) throws AuthenticationException {
 
-        final AuthenticationRequest req = new AuthenticationRequest(String.class.cast(env.get("openejb.authentication.realmName")), userID, psswrd);
+        final String realm = String.class.cast(env.get("openejb.authentication.realmName"));
+        final AuthenticationRequest req = new AuthenticationRequest(realm, userID, psswrd);
+
+        final String tokenKey = Boolean.parseBoolean(getProperty(env, IDENTITY_TOKEN_CACHE, "true")) ?
+            IdentityTokenCache.key(server, realm, userID, psswrd) : null;
+        if (tokenKey != null) {
+            req.setIdentityToken(IdentityTokenCache.get(tokenKey));
+        }
 
         final AuthenticationResponse res;
         try {
@@ -339,12 +352,21 @@ public class JNDIContext implements InitialContextFactory, Context {
         switch (res.getResponseCode()) {
             case ResponseCodes.AUTH_GRANTED:
                 client = res.getIdentity();
+                if (IdentityToken.class.isInstance(client.getClientIdentity())) {
+                    client.useIdentityToken(new AuthenticationInfo(realm, userID, psswrd.toCharArray()), tokenKey);
+                    identityTokenKey = tokenKey;
+                } else if (tokenKey != null) {
+                    IdentityTokenCache.remove(tokenKey);
+                }
                 break;
             case ResponseCodes.AUTH_REDIRECT:
                 client = res.getIdentity();
                 server = res.getServer();
                 break;
             case ResponseCodes.AUTH_DENIED:
+                if (tokenKey != null) {
+                    IdentityTokenCache.remove(tokenKey);
+                }
                 throw (AuthenticationException) new AuthenticationException("This principle is not authorized.").initCause(res.getDeniedCause());
         }
     }
@@ -366,6 +388,30 @@ public class JNDIContext implements InitialContextFactory, Context {
         return handler.createEJBObjectProxy();
     }
 
+    /**
+     * Only metadata only changing with a redeployment is cached, other values are read from the server each time.
+     * A business object with a primary key is an instance created by the lookup (stateful bean), never cached.
+     */
+    private static boolean isCacheable(final JNDIResponse res) {
+        switch (res.getResponseCode()) {
+            case ResponseCodes.JNDI_EJBHOME:
+            case ResponseCodes.JNDI_CONTEXT:
+                return true;
+            case ResponseCodes.JNDI_BUSINESS_OBJECT:
+                return ((EJBMetaDataImpl) res.getResult()).getPrimaryKey() == null;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * A cached response is shared by all the contexts, the proxies are built on a copy of its metadata.
+     */
+    private static EJBMetaDataImpl ejbMetaData(final JNDILookupCache cache, final JNDIResponse res) {
+        final EJBMetaDataImpl ejb = (EJBMetaDataImpl) res.getResult();
+        return cache.isEnabled() && isCacheable(res) ? new EJBMetaDataImpl(ejb) : ejb;
+    }
+
     @Override
     public Object lookup(String name) throws NamingException {
 
@@ -389,28 +435,37 @@ public class JNDIContext implements InitialContextFactory, Context {
             return getDefaultOrb();
         }
 
-        final JNDIRequest req = new JNDIRequest();
-        req.setRequestMethod(RequestMethodCode.JNDI_LOOKUP);
-        req.setRequestString(name);
-        req.setModuleId(moduleId);
+        final JNDILookupCache cache = Client.getContext(server).getLookupCache();
+        JNDIResponse res = cache.isEnabled() ? cache.get(moduleId, name) : null;
+        if (res == null) {
+            final long deployments = cache.getDeployments();
 
-        final JNDIResponse res;
-        try {
-            res = request(req);
-        } catch (Exception e) {
-            if (e instanceof RemoteException && e.getCause() instanceof ConnectException) {
-                e = (Exception) e.getCause();
-                throw (ServiceUnavailableException) new ServiceUnavailableException("Cannot lookup '" + name + "'.").initCause(e);
+            final JNDIRequest req = new JNDIRequest();
+            req.setRequestMethod(RequestMethodCode.JNDI_LOOKUP);
+            req.setRequestString(name);
+            req.setModuleId(moduleId);
+
+            try {
+                res = request(req);
+            } catch (Exception e) {
+                if (e instanceof RemoteException && e.getCause() instanceof ConnectException) {
+                    e = (Exception) e.getCause();
+                    throw (ServiceUnavailableException) new ServiceUnavailableException("Cannot lookup '" + name + "'.").initCause(e);
+                }
+                throw (NamingException) new NamingException("Cannot lookup '" + name + "'.").initCause(e);
+            }
+
+            if (cache.isEnabled() && isCacheable(res)) {
+                cache.put(moduleId, name, deployments, res);
             }
-            throw (NamingException) new NamingException("Cannot lookup '" + name + "'.").initCause(e);
         }
 
         switch (res.getResponseCode()) {
             case ResponseCodes.JNDI_EJBHOME:
-                return createEJBHomeProxy((EJBMetaDataImpl) res.getResult());
+                return createEJBHomeProxy(ejbMetaData(cache, res));
 
             case ResponseCodes.JNDI_BUSINESS_OBJECT:
-                return createBusinessObject(res.getResult());
+                return createBusinessObject(ejbMetaData(cache, res));
 
             case ResponseCodes.JNDI_OK:
                 return res.getResult();
@@ -718,8 +773,13 @@ public class JNDIContext implements InitialContextFactory, Context {
     public void close() throws NamingException {
         waitEndOfTasks(executorService);
         if (authenticationInfo == null && client != null && client.getClientIdentity() != null) {
-            logout();
-            client.setClientIdentity(null);
+            // a cached identity token is shared by the contexts logged in with the same credentials, the last one logs out
+            final boolean shared = identityTokenKey != null;
+            identityTokenKey = null;
+            if (!shared || client.release()) {
+                logout();
+                client.setClientIdentity(null);
+            }
         }
     }
 
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import org.apache.openejb.client.event.JNDILookupCacheInvalidated;
+import org.apache.openejb.client.event.JNDILookupCacheStatistics;
+
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lookup responses of one provider, kept until the server reports another deployment version
+ * (see {@link ClusterResponse#getDeployments()}) so redeployed applications are looked up again.
+ * <p/>
+ * Only the metadata is kept, proxies are created by each {@link JNDIContext} with its own identity.
+ */
+class JNDILookupCache {
+
+    public static final String SIZE = "openejb.client.jndi.cache.size";
+    public static final String REPORT = "openejb.client.jndi.cache.report";
+
+    private static final long UNKNOWN = -1;
+
+    private final URI server;
+    private final int size;
+    private final long report;
+    private final Map<String, Entry> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    // guarded by entries
+    private long deployments = UNKNOWN;
+
+    JNDILookupCache(final URI server) {
+        this(server, Integer.getInteger(SIZE, 512), Long.getLong(REPORT, 1000));
+    }
+
+    JNDILookupCache(final URI server, final int size, final long report) {
+        this.server = server;
+        this.size = size;
+        this.report = report;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+                return size() > JNDILookupCache.this.size;
+            }
+        };
+    }
+
+    boolean isEnabled() {
+        return size > 0;
+    }
+
+    /**
+     * @return the deployment version to give to {@link #put(String, String, long, JNDIResponse)} once the lookup is done
+     */
+    long getDeployments() {
+        synchronized (entries) {
+            return deployments;
+        }
+    }
+
+    JNDIResponse get(final String moduleId, final String name) {
+        final Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key(moduleId, name));
+        }
+
+        final long count;
+        if (entry != null) {
+            hits.incrementAndGet();
+            count = misses.get() + hits.get();
+        } else {
+            count = misses.incrementAndGet() + hits.get();
+        }
+        if (report > 0 && count % report == 0) {
+            Client.fireEvent(statistics());
+        }
+        return entry != null ? entry.response : null;
+    }
+
+    /**
+     * @param deployments the version known before the lookup was sent, the response is dropped if a newer one came in between
+     */
+    void put(final String moduleId, final String name, final long deployments, final JNDIResponse response) {
+        synchronized (entries) {
+            if (deployments != UNKNOWN && deployments == this.deployments) {
+                entries.put(key(moduleId, name), new Entry(response));
+            }
+        }
+    }
+
+    /**
+     * Called for each response of the server. Versions are only compared for equality, a server restarted
+     * with its clock behind still flushes the cache. Members of a cluster have their own version so switching
+     * from one to another flushes it as well.
+     */
+    void deployed(final long version) {
+        final int dropped;
+        final long previous;
+        synchronized (entries) {
+            if (version == deployments) {
+                return;
+            }
+            previous = deployments;
+            deployments = version;
+            dropped = entries.size();
+            entries.clear();
+        }
+        if (previous != UNKNOWN) {
+            Client.fireEvent(new JNDILookupCacheInvalidated(server, previous, version, dropped));
+        }
+    }
+
+    JNDILookupCacheStatistics statistics() {
+        final int entryCount;
+        synchronized (entries) {
+            entryCount = entries.size();
+        }
+        return new JNDILookupCacheStatistics(server, hits.get(), misses.get(), entryCount);
+    }
+
+    private static String key(final String moduleId, final String name) {
+        return moduleId == null ? name : moduleId + '#' + name;
+    }
+
+    private static final class Entry {
+        private final JNDIResponse response;
+
+        private Entry(final JNDIResponse response) {
+            this.response = response;
+        }
+    }
+}
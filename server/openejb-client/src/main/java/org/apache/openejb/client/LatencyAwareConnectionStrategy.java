@@ -0,0 +1,356 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import org.apache.openejb.client.event.FailoverSelection;
+import org.apache.openejb.client.event.LatencyAwareFailoverSelection;
+import org.apache.openejb.client.event.ServerEjected;
+import org.apache.openejb.client.event.ServerReinstated;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends requests to the best of two randomly chosen servers, the cost of a server being its
+ * average (EWMA) latency times its number of requests in flight.
+ * <p/>
+ * A server failing several times in a row or much slower than the others is ejected for a while,
+ * then gets a single probe request deciding if it is reinstated, see {@link ServerEjected} and {@link ServerReinstated}.
+ * The latency of a request is measured from the connection to the end of the response.
+ */
+public class LatencyAwareConnectionStrategy extends AbstractConnectionStrategy {
+
+    public static final String DECAY = "openejb.client.connection.strategy.latency.decay";
+    public static final String SAMPLES = "openejb.client.connection.strategy.latency.samples";
+    public static final String EJECTION_FACTOR = "openejb.client.connection.strategy.latency.ejection.factor";
+    public static final String EJECTION_FAILURES = "openejb.client.connection.strategy.latency.ejection.failures";
+    public static final String EJECTION_TIME = "openejb.client.connection.strategy.latency.ejection.time";
+
+    private final ConcurrentMap<URI, Stats> stats = new ConcurrentHashMap<>();
+    private final Random random = new Random();
+
+    private final double decay;
+    private final int samples;
+    private final double ejectionFactor;
+    private final int ejectionFailures;
+    private final long ejectionTime;
+
+    public LatencyAwareConnectionStrategy() {
+        this(Double.parseDouble(System.getProperty(DECAY, "0.2")),
+            Integer.getInteger(SAMPLES, 10),
+            Double.parseDouble(System.getProperty(EJECTION_FACTOR, "3")),
+            Integer.getInteger(EJECTION_FAILURES, 3),
+            Long.getLong(EJECTION_TIME, 10000));
+    }
+
+    /**
+     * @param decay            weight of a new latency in the average, between 0 and 1
+     * @param samples          latencies needed before a server can be ejected for being slow
+     * @param ejectionFactor   how many times slower than the median of the other servers a server is ejected
+     * @param ejectionFailures consecutive failures ejecting a server
+     * @param ejectionTime     milliseconds an ejected server waits for its probe, also the time left to the probe to complete
+     */
+    public LatencyAwareConnectionStrategy(final double decay, final int samples, final double ejectionFactor, final int ejectionFailures, final long ejectionTime) {
+        this.decay = decay;
+        this.samples = samples;
+        this.ejectionFactor = ejectionFactor;
+        this.ejectionFailures = ejectionFailures;
+        this.ejectionTime = ejectionTime;
+    }
+
+    @Override
+    protected FailoverSelection createFailureEvent(final Set<URI> remaining, final Set<URI> failed, final URI uri) {
+        return new LatencyAwareFailoverSelection(remaining, failed, uri);
+    }
+
+    @Override
+    protected Iterable<URI> createIterable(final ClusterMetaData cluster) {
+        return new LatencyAwareIterable(cluster);
+    }
+
+    @Override
+    protected Connection connect(final ClusterMetaData cluster, final URI uri) throws IOException {
+        final Stats server = stats(uri);
+        final long start = System.nanoTime();
+
+        final Connection connection;
+        try {
+            connection = super.connect(cluster, uri);
+        } catch (final IOException e) {
+            record(uri, System.nanoTime() - start, false);
+            throw e;
+        }
+
+        server.inFlight.incrementAndGet();
+        return new TrackedConnection(connection, uri, start);
+    }
+
+    /**
+     * @param latency in nanoseconds
+     */
+    void record(final URI uri, final long latency, final boolean success) {
+        final Stats server = stats(uri);
+        final Object event;
+        synchronized (server) {
+            event = success ? succeeded(uri, server, latency) : failed(uri, server);
+        }
+        if (event != null) {
+            Client.fireEvent(event);
+        }
+    }
+
+    private Object succeeded(final URI uri, final Stats server, final long latency) {
+        server.failures = 0;
+
+        if (server.probing != 0) {
+            server.probing = 0;
+            final double median = median(uri);
+            if (median > 0 && latency > ejectionFactor * median) {
+                return eject(uri, server, "slow probe");
+            }
+            server.latency = latency;
+            server.samples = 1;
+            server.ejectedUntil = 0;
+            return new ServerReinstated(uri, latency);
+        }
+
+        server.latency = server.samples == 0 ? latency : decay * latency + (1 - decay) * server.latency;
+        server.samples++;
+
+        if (server.samples >= samples && !server.isEjected()) {
+            final double median = median(uri);
+            if (median > 0 && server.latency > ejectionFactor * median) {
+                return eject(uri, server, "slow");
+            }
+        }
+        return null;
+    }
+
+    private Object failed(final URI uri, final Stats server) {
+        server.failures++;
+
+        if (server.probing != 0) {
+            server.probing = 0;
+            return eject(uri, server, "failed probe");
+        }
+        if (server.failures >= ejectionFailures && !server.isEjected()) {
+            return eject(uri, server, server.failures + " failures");
+        }
+        return null;
+    }
+
+    private Object eject(final URI uri, final Stats server, final String reason) {
+        server.ejectedUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ejectionTime);
+        return new ServerEjected(uri, reason, (long) server.latency, ejectionTime);
+    }
+
+    /**
+     * @return median latency of the other measured servers still in use, 0 if there is none
+     */
+    private double median(final URI excluded) {
+        final List<Double> latencies = new ArrayList<>();
+        for (final Map.Entry<URI, Stats> entry : stats.entrySet()) {
+            final Stats other = entry.getValue();
+            if (!entry.getKey().equals(excluded) && other.samples > 0 && !other.isEjected()) {
+                latencies.add(other.latency);
+            }
+        }
+        if (latencies.isEmpty()) {
+            return 0;
+        }
+        Collections.sort(latencies);
+        return latencies.get(latencies.size() / 2);
+    }
+
+    private Stats stats(final URI uri) {
+        Stats server = stats.get(uri);
+        if (server == null) {
+            server = new Stats();
+            final Stats existing = stats.putIfAbsent(uri, server);
+            if (existing != null) {
+                server = existing;
+            }
+        }
+        return server;
+    }
+
+    // guarded by the server stats
+    private static class Stats {
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private double latency;
+        private long samples;
+        private int failures;
+        private long ejectedUntil;
+        // deadline of the probe, 0 if none. A probe can be skipped (server in the failed list of the request)
+        // or never complete, another one is then sent once the deadline passed
+        private long probing;
+
+        private boolean isEjected() {
+            return ejectedUntil != 0;
+        }
+
+        private boolean isProbing(final long now) {
+            return probing != 0 && probing - now > 0;
+        }
+
+        private double cost() {
+            return latency * (inFlight.get() + 1);
+        }
+    }
+
+    public class LatencyAwareIterable implements Iterable<URI> {
+
+        private final ClusterMetaData cluster;
+
+        public LatencyAwareIterable(final ClusterMetaData cluster) {
+            this.cluster = cluster;
+        }
+
+        /**
+         * Order of the servers for one request: a server due for its probe, the best of two random ones,
+         * the others by cost then the ejected ones as a last resort.
+         */
+        @Override
+        public Iterator<URI> iterator() {
+            final List<URI> healthy = new ArrayList<>();
+            final List<URI> ejected = new ArrayList<>();
+            URI probe = null;
+
+            final long now = System.nanoTime();
+            for (final URI uri : cluster.getLocations()) {
+                final Stats server = stats(uri);
+                synchronized (server) {
+                    if (!server.isEjected()) {
+                        healthy.add(uri);
+                    } else if (probe == null && !server.isProbing(now) && server.ejectedUntil - now <= 0) {
+                        server.probing = now + TimeUnit.MILLISECONDS.toNanos(ejectionTime);
+                        probe = uri;
+                    } else {
+                        ejected.add(uri);
+                    }
+                }
+            }
+
+            final List<URI> ordered = new ArrayList<>(cluster.getLocations().length);
+            if (probe != null) {
+                ordered.add(probe);
+            }
+
+            if (healthy.size() > 1) {
+                final int first = random.nextInt(healthy.size());
+                int second = random.nextInt(healthy.size() - 1);
+                if (second >= first) {
+                    second++;
+                }
+                final URI a = healthy.get(first);
+                final URI b = healthy.get(second);
+                final URI best = stats(a).cost() <= stats(b).cost() ? a : b;
+                healthy.remove(best);
+                ordered.add(best);
+            }
+
+            final ByCost byCost = new ByCost();
+            Collections.sort(healthy, byCost);
+            ordered.addAll(healthy);
+            Collections.sort(ejected, byCost);
+            ordered.addAll(ejected);
+            return ordered.iterator();
+        }
+
+        @Override
+        public String toString() {
+            return "LatencyAwareIterable" + Arrays.toString(cluster.getLocations());
+        }
+    }
+
+    private class ByCost implements Comparator<URI> {
+        @Override
+        public int compare(final URI o1, final URI o2) {
+            return Double.compare(stats(o1).cost(), stats(o2).cost());
+        }
+    }
+
+    /**
+     * Reports the latency of the request when the connection is released.
+     */
+    class TrackedConnection implements Connection {
+        private final Connection delegate;
+        private final URI location;
+        private final long start;
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        private TrackedConnection(final Connection delegate, final URI location, final long start) {
+            this.delegate = delegate;
+            this.location = location;
+            this.start = start;
+        }
+
+        Connection getDelegate() {
+            return delegate;
+        }
+
+        private void done(final boolean success) {
+            if (done.compareAndSet(false, true)) {
+                stats(location).inFlight.decrementAndGet();
+                record(location, System.nanoTime() - start, success);
+            }
+        }
+
+        @Override
+        public URI getURI() {
+            return delegate.getURI();
+        }
+
+        @Override
+        public void discard() {
+            done(false);
+            delegate.discard();
+        }
+
+        @Override
+        public void close() throws IOException {
+            done(true);
+            delegate.close();
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return delegate.getInputStream();
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            return delegate.getOutputStream();
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * LZ4 block format, trading ratio for speed: a single pass with a small hash table of the last positions
+ * of 4 byte sequences, no entropy coding.
+ * <p/>
+ * A block is a list of sequences: a token (literal length, match length - 4), the extra length bytes,
+ * the literals, the little endian offset of the match and its extra length bytes. The last sequence only has literals.
+ */
+final class Lz4Block {
+
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5;
+    private static final int MF_LIMIT = 12;
+    private static final int MAX_OFFSET = 65535;
+    private static final int HASH_LOG = 12;
+
+    private static final ThreadLocal<int[]> TABLES = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1 << HASH_LOG];
+        }
+    };
+
+    private Lz4Block() {
+        // no-op
+    }
+
+    /**
+     * @return the compressed length or -1 if it doesn't fit in the destination
+     */
+    static int compress(final byte[] src, final int length, final byte[] dst) {
+        final int[] table = TABLES.get();
+        Arrays.fill(table, -1);
+
+        final int limit = length - MF_LIMIT;
+        final int matchLimit = length - LAST_LITERALS;
+
+        int d = 0;
+        int anchor = 0;
+        int i = 0;
+        while (i < limit) {
+            final int sequence = readInt(src, i);
+            final int hash = (sequence * -1640531535) >>> (32 - HASH_LOG);
+            int ref = table[hash];
+            table[hash] = i;
+
+            if (ref < 0 || i - ref > MAX_OFFSET || readInt(src, ref) != sequence) {
+                i += 1 + ((i - anchor) >>> 6); // skip faster in data which doesn't compress
+                continue;
+            }
+
+            while (i > anchor && ref > 0 && src[i - 1] == src[ref - 1]) {
+                i--;
+                ref--;
+            }
+
+            int match = MIN_MATCH;
+            while (i + match < matchLimit && src[i + match] == src[ref + match]) {
+                match++;
+            }
+
+            d = sequence(src, anchor, i - anchor, i - ref, match, dst, d);
+            if (d < 0) {
+                return -1;
+            }
+
+            i += match;
+            anchor = i;
+        }
+
+        return sequence(src, anchor, length - anchor, 0, 0, dst, d);
+    }
+
+    private static int sequence(final byte[] src, final int literalsStart, final int literals, final int offset, final int match,
+                                final byte[] dst, int d) {
+        // token, length bytes, literals, offset
+        if (d + 1 + literals / 255 + 1 + literals + 2 + match / 255 + 1 > dst.length) {
+            return -1;
+        }
+
+        final int matchCode = match == 0 ? 0 : match - MIN_MATCH;
+        final int token = d++;
+        dst[token] = (byte) ((Math.min(literals, 15) << 4) | Math.min(matchCode, 15));
+        d = length(literals, dst, d);
+        System.arraycopy(src, literalsStart, dst, d, literals);
+        d += literals;
+
+        if (match == 0) { // last sequence
+            return d;
+        }
+
+        dst[d++] = (byte) offset;
+        dst[d++] = (byte) (offset >>> 8);
+        return length(matchCode, dst, d);
+    }
+
+    private static int length(int length, final byte[] dst, int d) {
+        if (length < 15) {
+            return d;
+        }
+        length -= 15;
+        while (length >= 255) {
+            dst[d++] = (byte) 255;
+            length -= 255;
+        }
+        dst[d++] = (byte) length;
+        return d;
+    }
+
+    static void decompress(final byte[] src, final int length, final byte[] dst, final int rawLength) throws IOException {
+        int s = 0;
+        int d = 0;
+        while (s < length) {
+            final int token = src[s++] & 0xff;
+
+            int literals = token >>> 4;
+            if (literals == 15) {
+                int b;
+                do {
+                    if (s >= length) {
+                        throw corrupted();
+                    }
+                    b = src[s++] & 0xff;
+                    literals += b;
+                } while (b == 255);
+            }
+            if (s + literals > length || d + literals > rawLength) {
+                throw corrupted();
+            }
+            System.arraycopy(src, s, dst, d, literals);
+            s += literals;
+            d += literals;
+
+            if (s == length) { // last sequence
+                break;
+            }
+
+            if (s + 2 > length) {
+                throw corrupted();
+            }
+            final int offset = (src[s] & 0xff) | ((src[s + 1] & 0xff) << 8);
+            s += 2;
+            if (offset == 0 || offset > d) {
+                throw corrupted();
+            }
+
+            int match = token & 0x0f;
+            if (match == 15) {
+                int b;
+                do {
+                    if (s >= length) {
+                        throw corrupted();
+                    }
+                    b = src[s++] & 0xff;
+                    match += b;
+                } while (b == 255);
+            }
+            match += MIN_MATCH;
+            if (d + match > rawLength) {
+                throw corrupted();
+            }
+
+            // may overlap, byte by byte
+            for (int ref = d - offset, end = d + match; d < end; ) {
+                dst[d++] = dst[ref++];
+            }
+        }
+
+        if (d != rawLength) {
+            throw corrupted();
+        }
+    }
+
+    private static int readInt(final byte[] b, final int i) {
+        return (b[i] & 0xff) | ((b[i + 1] & 0xff) << 8) | ((b[i + 2] & 0xff) << 16) | ((b[i + 3] & 0xff) << 24);
+    }
+
+    private static IOException corrupted() {
+        return new IOException("Corrupted LZ4 block");
+    }
+}
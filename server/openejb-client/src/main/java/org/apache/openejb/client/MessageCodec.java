@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compression of the frames of a message, see {@link FramedOutputStream}. The id is what is written on the wire.
+ * <p/>
+ * Deflaters, inflaters and frame buffers are pooled so a message doesn't allocate them nor their native state.
+ */
+public enum MessageCodec {
+
+    NONE(0) {
+        @Override
+        int compress(final byte[] src, final int length, final byte[] dst) {
+            return -1;
+        }
+
+        @Override
+        void decompress(final byte[] src, final int length, final byte[] dst, final int rawLength) throws IOException {
+            throw new IOException("Not a compressed frame");
+        }
+    },
+
+    DEFLATE(1) {
+        @Override
+        int compress(final byte[] src, final int length, final byte[] dst) {
+            Deflater deflater = DEFLATERS.poll();
+            if (deflater == null) {
+                deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+            }
+            try {
+                deflater.setInput(src, 0, length);
+                deflater.finish();
+                final int compressed = deflater.deflate(dst, 0, dst.length);
+                return deflater.finished() ? compressed : -1;
+            } finally {
+                deflater.reset();
+                if (!DEFLATERS.offer(deflater)) {
+                    deflater.end();
+                }
+            }
+        }
+
+        @Override
+        void decompress(final byte[] src, final int length, final byte[] dst, final int rawLength) throws IOException {
+            Inflater inflater = INFLATERS.poll();
+            if (inflater == null) {
+                inflater = new Inflater();
+            }
+            try {
+                inflater.setInput(src, 0, length);
+                final int inflated = inflater.inflate(dst, 0, rawLength);
+                if (inflated != rawLength || !inflater.finished()) {
+                    throw new IOException("Corrupted deflate frame");
+                }
+            } catch (final DataFormatException e) {
+                throw new IOException("Corrupted deflate frame: " + e.getMessage(), e);
+            } finally {
+                inflater.reset();
+                if (!INFLATERS.offer(inflater)) {
+                    inflater.end();
+                }
+            }
+        }
+    },
+
+    /**
+     * Much faster than {@link #DEFLATE} for a lower ratio.
+     */
+    LZ4(2) {
+        @Override
+        int compress(final byte[] src, final int length, final byte[] dst) {
+            return Lz4Block.compress(src, length, dst);
+        }
+
+        @Override
+        void decompress(final byte[] src, final int length, final byte[] dst, final int rawLength) throws IOException {
+            Lz4Block.decompress(src, length, dst, rawLength);
+        }
+    };
+
+    /**
+     * Largest frame, in bytes before compression.
+     */
+    public static final int FRAME_SIZE = 64 * 1024;
+
+    private static final int POOL_SIZE = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+    private static final BlockingQueue<Deflater> DEFLATERS = new ArrayBlockingQueue<Deflater>(POOL_SIZE);
+    private static final BlockingQueue<Inflater> INFLATERS = new ArrayBlockingQueue<Inflater>(POOL_SIZE);
+    private static final BlockingQueue<byte[]> BUFFERS = new ArrayBlockingQueue<byte[]>(POOL_SIZE * 2);
+
+    private final int id;
+
+    MessageCodec(final int id) {
+        this.id = id;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return the compressed length, -1 if it is not smaller than the destination
+     */
+    abstract int compress(byte[] src, int length, byte[] dst);
+
+    abstract void decompress(byte[] src, int length, byte[] dst, int rawLength) throws IOException;
+
+    public static MessageCodec valueOf(final int id) throws IOException {
+        for (final MessageCodec codec : values()) {
+            if (codec.id == id) {
+                return codec;
+            }
+        }
+        throw new IOException("Unknown message codec " + id);
+    }
+
+    /**
+     * @param name a codec name, case insensitive, or null
+     * @return the codec or {@link #NONE}
+     */
+    public static MessageCodec of(final String name) {
+        if (name == null || name.trim().isEmpty() || "false".equalsIgnoreCase(name.trim())) {
+            return NONE;
+        }
+        return valueOf(name.trim().toUpperCase());
+    }
+
+    static byte[] buffer() {
+        final byte[] buffer = BUFFERS.poll();
+        return buffer != null ? buffer : new byte[FRAME_SIZE];
+    }
+
+    static void release(final byte[] buffer) {
+        if (buffer != null && buffer.length == FRAME_SIZE) {
+            BUFFERS.offer(buffer);
+        }
+    }
+}
@@ -31,13 +31,25 @@ import java.util.Arrays;
  * Protocol-Version   = "OEJP" "/" 1*DIGIT "." 1*DIGIT
  * <p/>
  * Some compatability is guaranteed with the major part of the version number.
+ * <p/>
+ * 4.7 adds a byte after the version telling if the request uses the {@link ConnectionDictionary} of the connection.
+ * <p/>
+ * 4.8 adds the deployment version of the server to the {@link ClusterResponse}, the {@link BatchRequest},
+ * whose entries are each prefixed by their length, and the {@link ChunkedStreams} of arguments and results.
+ * The {@link AuthenticationRequest} ends with the {@link IdentityToken} of a previous login, possibly null.
+ * The byte after the version also carries the {@link MessageCodec} id of the messages, shifted by one bit,
+ * which are then written as frames. The responses to 4.8 requests have a byte after the version telling if the
+ * server closes the connection after the response.
+ * <p/>
+ * A client only writes a version above 4.6 once the server told its own: the {@link ServerMetaData} of the request
+ * asks for it and newer servers answer it as the version of the response, older ones echo the version of the request.
  *
  * @version $Revision$ $Date$
  */
 @SuppressWarnings("UnusedDeclaration")
 public class ProtocolMetaData {
 
-    public static final String VERSION = "4.6";
+    public static final String VERSION = "4.8";
 
     private static final String OEJB = "OEJP";
     private transient String id;
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import java.lang.reflect.Method;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects independent business method calls to the same server and sends them in a single round trip.
+ * Calls go through an asynchronous view (see {@link AsyncView}) and their futures are completed by {@link #send()}:
+ * <p/>
+ * <pre>
+ * final RemoteBatch batch = new RemoteBatch();
+ * final ClientFuture&lt;Integer&gt; sum = batch.view(calculator, CalculatorAsync.class).sum(1, 2);
+ * final ClientFuture&lt;Order&gt; order = batch.view(orders, OrdersAsync.class).find(id);
+ * batch.send();
+ * </pre>
+ * <p/>
+ * A parallel batch lets the server invoke the calls concurrently, their order is then not guaranteed.
+ */
+public class RemoteBatch {
+
+    private final boolean parallel;
+    private final List<Call> calls = new ArrayList<Call>();
+    private ServerMetaData server;
+
+    public RemoteBatch() {
+        this(false);
+    }
+
+    public RemoteBatch(final boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * @param proxy a remote business proxy
+     * @param view  an interface with the business methods to call returning a future, see {@link AsyncView}
+     * @return a view queuing the calls in this batch
+     */
+    public <T> T view(final Object proxy, final Class<T> view) {
+        return AsyncView.of(proxy, view, new AsyncView.Dispatcher() {
+            @Override
+            public ClientFuture<Object> dispatch(final EJBObjectHandler handler, final Method method, final Object[] args) {
+                return add(handler, method, args);
+            }
+        });
+    }
+
+    public synchronized int size() {
+        return calls.size();
+    }
+
+    private synchronized ClientFuture<Object> add(final EJBObjectHandler handler, final Method method, final Object[] args) {
+        if (server == null) {
+            server = handler.getServer();
+        } else if (!server.equals(handler.getServer())) {
+            throw new IllegalArgumentException("A batch only contains calls to " + server + ", not " + handler.getServer());
+        }
+
+        final ClientFuture<Object> future = new ClientFuture<Object>();
+        final EJBRequest request = handler.createBatchedRequest(method, args, future);
+        if (request != null) {
+            calls.add(new Call(handler, method, request, future));
+        }
+        return future;
+    }
+
+    /**
+     * Sends the queued calls and completes their futures, the batch is then empty and can be reused.
+     *
+     * @throws RemoteException if the batch could not be sent, all its futures are failed too
+     */
+    public void send() throws RemoteException {
+        final List<Call> sent;
+        final ServerMetaData target;
+        synchronized (this) {
+            sent = new ArrayList<Call>(calls);
+            target = server;
+            calls.clear();
+            server = null;
+        }
+
+        if (sent.isEmpty()) {
+            return;
+        }
+
+        if (!Client.getProtocol(target).isAtLeast(4, 8)) { // server may not understand batches
+            for (final Call call : sent) {
+                final EJBResponse response = new EJBResponse();
+                try {
+                    Client.request(call.request, response, target);
+                    call.handler.completeBatched(call.request, call.method, response, null, call.future);
+                } catch (final RemoteException e) {
+                    call.handler.completeBatched(call.request, call.method, null, e, call.future);
+                }
+            }
+            return;
+        }
+
+        final List<EJBRequest> requests = new ArrayList<EJBRequest>(sent.size());
+        for (final Call call : sent) {
+            requests.add(call.request);
+        }
+
+        final BatchResponse response = new BatchResponse();
+        try {
+            Client.request(new BatchRequest(requests, parallel), response, target);
+        } catch (final RemoteException e) {
+            for (final Call call : sent) {
+                call.handler.completeBatched(call.request, call.method, null, e, call.future);
+            }
+            throw e;
+        }
+
+        final List<EJBResponse> responses = response.getResponses();
+        if (responses.size() != sent.size()) {
+            final RemoteException e = new RemoteException("Received " + responses.size() + " responses for " + sent.size() + " requests");
+            for (final Call call : sent) {
+                call.handler.completeBatched(call.request, call.method, null, e, call.future);
+            }
+            throw e;
+        }
+
+        for (int i = 0; i < sent.size(); i++) {
+            final Call call = sent.get(i);
+            call.handler.completeBatched(call.request, call.method, responses.get(i), null, call.future);
+        }
+    }
+
+    private static final class Call {
+        private final EJBObjectHandler handler;
+        private final Method method;
+        private final EJBRequest request;
+        private final ClientFuture<Object> future;
+
+        private Call(final EJBObjectHandler handler, final Method method, final EJBRequest request, final ClientFuture<Object> future) {
+            this.handler = handler;
+            this.method = method;
+            this.request = request;
+            this.future = future;
+        }
+    }
+}
@@ -30,6 +30,7 @@ public enum RequestType {
     AUTH_REQUEST((byte) 2),
     CLUSTER_REQUEST((byte) 3),
     LOGOUT_REQUEST((byte) 4),
+    BATCH_REQUEST((byte) 5),
     STOP_REQUEST_Quit((byte) 'Q'),
     STOP_REQUEST_quit((byte) 'q'),
     STOP_REQUEST_Stop((byte) 'S'),
@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Waits for the responses of asynchronous requests on a single thread and reads them on a small pool
+ * once the server started to answer, so no thread is parked while the server processes a request.
+ * <p/>
+ * Channels are only non blocking while registered, the response itself is read with the usual blocking streams.
+ * <p/>
+ * openejb.client.async.threads sizes the reader pool. A request in flight still holds its pooled connection, so
+ * openejb.client.connection.pool.size (or openejb.client.connectionpool.size, default 5) bounds the concurrent
+ * asynchronous calls per server, the extra ones wait for a connection on the client executor.
+ */
+class ResponseSelector implements Runnable {
+
+    public static final String THREADS = "openejb.client.async.threads";
+
+    private static final Logger LOGGER = Logger.getLogger("OpenEJB.client");
+    private static ResponseSelector instance;
+
+    private final Selector selector;
+    private final Queue<Waiter> registrations = new ConcurrentLinkedQueue<>();
+    private final ExecutorService readers;
+
+    private ResponseSelector() throws IOException {
+        selector = Selector.open();
+
+        final int threads = Integer.getInteger(THREADS, Math.max(2, Runtime.getRuntime().availableProcessors()));
+        readers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger i = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread t = new Thread(r, "OpenEJB.Client.Response." + i.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        final Thread thread = new Thread(this, "OpenEJB.Client.ResponseSelector");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    static synchronized ResponseSelector get() throws IOException {
+        if (instance == null) {
+            instance = new ResponseSelector();
+        }
+        return instance;
+    }
+
+    /**
+     * @param channel  the connection the request was written to
+     * @param timeout  read timeout in milliseconds, 0 for none
+     * @param listener called on a reader thread with null once there is something to read or with the failure
+     */
+    void await(final SocketChannel channel, final int timeout, final Listener listener) {
+        final long deadline = timeout > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout) : Long.MAX_VALUE;
+        registrations.add(new Waiter(channel, deadline, listener));
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        final List<Waiter> ready = new ArrayList<>();
+        while (true) {
+            try {
+                Waiter waiter;
+                while ((waiter = registrations.poll()) != null) {
+                    try {
+                        waiter.channel.configureBlocking(false);
+                        waiter.channel.register(selector, SelectionKey.OP_READ, waiter);
+                    } catch (final Exception e) {
+                        dispatch(waiter, e instanceof IOException ? (IOException) e : new IOException(e));
+                    }
+                }
+
+                selector.select(1000);
+
+                final Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                while (selected.hasNext()) {
+                    final SelectionKey key = selected.next();
+                    selected.remove();
+                    key.cancel();
+                    ready.add((Waiter) key.attachment());
+                }
+
+                final long now = System.nanoTime();
+                final List<Waiter> expired = new ArrayList<>();
+                for (final SelectionKey key : selector.keys()) {
+                    final Waiter registered = (Waiter) key.attachment();
+                    if (key.isValid() && registered.deadline - now < 0) {
+                        key.cancel();
+                        expired.add(registered);
+                    }
+                }
+
+                if (ready.isEmpty() && expired.isEmpty()) {
+                    continue;
+                }
+
+                // deregisters cancelled keys, channels can't go back to blocking mode before
+                selector.selectNow();
+
+                for (final Waiter done : ready) {
+                    try {
+                        done.channel.configureBlocking(true);
+                        dispatch(done, null);
+                    } catch (final Exception e) {
+                        dispatch(done, e instanceof IOException ? (IOException) e : new IOException(e));
+                    }
+                }
+                ready.clear();
+
+                for (final Waiter timedOut : expired) {
+                    dispatch(timedOut, new SocketTimeoutException("No response received in time"));
+                }
+            } catch (final Throwable e) {
+                LOGGER.log(Level.WARNING, "Error waiting for asynchronous responses: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private void dispatch(final Waiter waiter, final IOException failure) {
+        readers.execute(new Runnable() {
+            @Override
+            public void run() {
+                waiter.listener.read(failure);
+            }
+        });
+    }
+
+    interface Listener {
+
+        /**
+         * @param failure why the response can't be read or null
+         */
+        void read(IOException failure);
+    }
+
+    private static final class Waiter {
+        private final SocketChannel channel;
+        private final long deadline;
+        private final Listener listener;
+
+        private Waiter(final SocketChannel channel, final long deadline, final Listener listener) {
+            this.channel = channel;
+            this.deadline = deadline;
+            this.listener = listener;
+        }
+    }
+}
@@ -29,6 +29,7 @@ public class ServerMetaData implements Externalizable {
     private transient URI[] locations;
     private transient URI location;
     private transient ProtocolMetaData metaData;
+    private transient boolean protocolRequested;
 
     public ServerMetaData() {
     }
@@ -46,6 +47,13 @@ public class ServerMetaData implements Externalizable {
         locations = toMerge.locations;
     }
 
+    /**
+     * @return true if the client wants the protocol version of the server in the response, older servers ignore it
+     */
+    public boolean isProtocolRequested() {
+        return protocolRequested;
+    }
+
     public URI getLocation() {
         return location;
     }
@@ -65,6 +73,7 @@ public class ServerMetaData implements Externalizable {
     @Override
     public void readExternal(final ObjectInput in) throws IOException, ClassNotFoundException {
         final byte version = in.readByte();
+        protocolRequested = version >= 2;
 
         locations = (URI[]) in.readObject();
         location = locations[0];
@@ -72,8 +81,8 @@ public class ServerMetaData implements Externalizable {
 
     @Override
     public void writeExternal(final ObjectOutput out) throws IOException {
-        // write out the version of the serialized data for future use
-        out.writeByte(1);
+        // write out the version of the serialized data, since 2 the client asks the server for its protocol version
+        out.writeByte(2);
 
         out.writeObject(locations);
     }
@@ -32,14 +32,13 @@ import java.net.ConnectException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.URI;
+import java.nio.channels.SocketChannel;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Stack;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 import java.util.zip.GZIPInputStream;
 
 public class SocketConnectionFactory implements ConnectionFactory {
@@ -54,6 +53,7 @@ public class SocketConnectionFactory implements ConnectionFactory {
     private static final String PROPERTY_POOL_SIZE2 = "openejb.client.connectionpool.size";
     public static final String PROPERTY_KEEPALIVE = "openejb.client.keepalive";
     public static final String ENABLED_CIPHER_SUITES = "openejb.client.enabledCipherSuites";
+    public static final String PROPERTY_SOCKET_CHANNEL = "openejb.client.connection.socket.channel";
 
     private static final Map<URI, Pool> connections = new ConcurrentHashMap<URI, Pool>();
     private int size = 5;
@@ -62,6 +62,7 @@ public class SocketConnectionFactory implements ConnectionFactory {
     private int timeoutRead = 14400000;
     private int timeoutLinger;
     private String[] enabledCipherSuites;
+    private boolean channel;
 
     public SocketConnectionFactory() {
 
@@ -71,6 +72,7 @@ public class SocketConnectionFactory implements ConnectionFactory {
         this.timeoutLinger = this.getTimeoutLinger();
         this.timeoutRead = this.getTimeoutRead();
         this.enabledCipherSuites = this.getEnabledCipherSuites();
+        this.channel = Boolean.parseBoolean(System.getProperty(PROPERTY_SOCKET_CHANNEL, "false"));
 
         try {
             String property = System.getProperty(PROPERTY_KEEPALIVE);
@@ -119,8 +121,15 @@ public class SocketConnectionFactory implements ConnectionFactory {
     }
 
     private int getSize() {
+        return getPoolSize();
+    }
+
+    /**
+     * @return the number of pooled connections per server
+     */
+    public static int getPoolSize() {
         final Properties p = System.getProperties();
-        int size = getInt(p, SocketConnectionFactory.PROPERTY_POOL_SIZE, this.size);
+        int size = getInt(p, SocketConnectionFactory.PROPERTY_POOL_SIZE, 5);
         size = getInt(p, SocketConnectionFactory.PROPERTY_POOL_SIZE2, size);
         return size;
     }
@@ -170,7 +179,7 @@ public class SocketConnectionFactory implements ConnectionFactory {
         }
 
         try {
-            if (!conn.lock.tryLock(2, TimeUnit.SECONDS)) {
+            if (!conn.lock.tryAcquire(2, TimeUnit.SECONDS)) {
                 throw new InterruptedException();
             }
         } catch (InterruptedException e) {
@@ -225,10 +234,12 @@ public class SocketConnectionFactory implements ConnectionFactory {
 
         private boolean discarded;
         private final Pool pool;
-        private final Lock lock = new ReentrantLock();
+        // not owned by a thread, asynchronous requests release the connection from the thread reading the response
+        private final Semaphore lock = new Semaphore(1);
         private OutputStream out;
         private InputStream in;
         private boolean gzip = false;
+        private final ConnectionDictionary dictionary = new ConnectionDictionary();
 
         public SocketConnection(final URI uri, final Pool pool) {
             this.uri = uri;
@@ -287,6 +298,9 @@ public class SocketConnectionFactory implements ConnectionFactory {
                     this.socket = sslSocket;
                     sslSocket.setEnabledCipherSuites(SocketConnectionFactory.this.enabledCipherSuites);
 
+                } else if (SocketConnectionFactory.this.channel) {
+                    // lets asynchronous requests wait for the response without a thread, opt-in as every request then uses it
+                    this.socket = SocketChannel.open().socket();
                 } else {
                     this.socket = new Socket();
                 }
@@ -352,6 +366,21 @@ public class SocketConnectionFactory implements ConnectionFactory {
             return this.uri;
         }
 
+        public ConnectionDictionary getDictionary() {
+            return this.dictionary;
+        }
+
+        /**
+         * @return the channel of plain sockets or null
+         */
+        public SocketChannel getChannel() {
+            return this.socket == null ? null : this.socket.getChannel();
+        }
+
+        public int getReadTimeout() {
+            return SocketConnectionFactory.this.timeoutRead;
+        }
+
         @Override
         public void close() throws IOException {
             if (this.discarded) {
@@ -359,11 +388,7 @@ public class SocketConnectionFactory implements ConnectionFactory {
             }
 
             this.pool.put(this);
-            try {
-                this.lock.unlock();
-            } catch (IllegalMonitorStateException e) {
-                //Ignore
-            }
+            this.lock.release();
         }
 
         @Override
@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client.event;
+
+import java.net.URI;
+
+/**
+ * The server deployed or undeployed an application, the cached lookups are dropped.
+ *
+ * @version $Rev$ $Date$
+ */
+@Log
+public class JNDILookupCacheInvalidated {
+
+    private final URI server;
+    private final long previous;
+    private final long deployments;
+    private final int dropped;
+
+    public JNDILookupCacheInvalidated(final URI server, final long previous, final long deployments, final int dropped) {
+        this.server = server;
+        this.previous = previous;
+        this.deployments = deployments;
+        this.dropped = dropped;
+    }
+
+    public URI getServer() {
+        return server;
+    }
+
+    public long getPrevious() {
+        return previous;
+    }
+
+    public long getDeployments() {
+        return deployments;
+    }
+
+    public int getDropped() {
+        return dropped;
+    }
+
+    @Override
+    public String toString() {
+        return "JNDILookupCacheInvalidated{" +
+            "server=" + server +
+            ", previous=" + previous +
+            ", deployments=" + deployments +
+            ", dropped=" + dropped +
+            '}';
+    }
+}
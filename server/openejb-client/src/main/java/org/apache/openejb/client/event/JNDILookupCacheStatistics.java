@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client.event;
+
+import java.net.URI;
+
+/**
+ * Periodic report of the lookups answered by the client cache of a server.
+ *
+ * @version $Rev$ $Date$
+ */
+@Log
+public class JNDILookupCacheStatistics {
+
+    private final URI server;
+    private final long hits;
+    private final long misses;
+    private final int size;
+
+    public JNDILookupCacheStatistics(final URI server, final long hits, final long misses, final int size) {
+        this.server = server;
+        this.hits = hits;
+        this.misses = misses;
+        this.size = size;
+    }
+
+    public URI getServer() {
+        return server;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public double getHitRatio() {
+        final long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return "JNDILookupCacheStatistics{" +
+            "server=" + server +
+            ", hits=" + hits +
+            ", misses=" + misses +
+            ", ratio=" + String.format("%.2f", getHitRatio()) +
+            ", size=" + size +
+            '}';
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.client.event;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A server answering too slowly or failing no longer gets requests until it is probed again.
+ *
+ * @version $Rev$ $Date$
+ */
+@Log(Log.Level.WARNING)
+public class ServerEjected {
+
+    private final URI server;
+    private final String reason;
+    private final long latency;
+    private final long duration;
+
+    public ServerEjected(final URI server, final String reason, final long latency, final long duration) {
+        this.server = server;
+        this.reason = reason;
+        this.latency = latency;
+        this.duration = duration;
+    }
+
+    public URI getServer() {
+        return server;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * @return the average latency of the server in nanoseconds
+     */
+    public long getLatency() {
+        return latency;
+    }
+
+    /**
+     * @return milliseconds before the server is probed
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    @Override
+    public String toString() {
+        return "ServerEjected{" +
+            "server=" + server +
+            ", reason=" + reason +
+            ", latency=" + TimeUnit.NANOSECONDS.toMillis(latency) + "ms" +
+            ", duration=" + duration + "ms" +
+            '}';
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.client.event;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An ejected server answered its probe request in time and gets requests again.
+ *
+ * @version $Rev$ $Date$
+ */
+@Log
+public class ServerReinstated {
+
+    private final URI server;
+    private final long latency;
+
+    public ServerReinstated(final URI server, final long latency) {
+        this.server = server;
+        this.latency = latency;
+    }
+
+    public URI getServer() {
+        return server;
+    }
+
+    /**
+     * @return the latency of the probe in nanoseconds
+     */
+    public long getLatency() {
+        return latency;
+    }
+
+    @Override
+    public String toString() {
+        return "ServerReinstated{" +
+            "server=" + server +
+            ", latency=" + TimeUnit.NANOSECONDS.toMillis(latency) + "ms" +
+            '}';
+    }
+}
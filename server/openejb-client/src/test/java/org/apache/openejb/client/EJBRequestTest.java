@@ -146,6 +146,41 @@ public class EJBRequestTest extends TestCase {
         invoke(requestMethod, method, args);
     }
 
+    public void testConnectionDictionary() throws Exception {
+        final Method method = FooObject.class.getMethod("businessMethod", new Class[]{String.class});
+        final ConnectionDictionary client = new ConnectionDictionary();
+        final ConnectionDictionary server = new ConnectionDictionary();
+
+        final int first = invoke(method, "hola mundo", client, server);
+        final int second = invoke(method, "hello world", client, server);
+        assertTrue(first + " > " + second, second < first / 2);
+
+        // without dictionary on the other side the request is still readable
+        final int inline = invoke(method, "bonjour", null, null);
+        assertTrue(inline + " > " + second, second < inline / 2);
+    }
+
+    private int invoke(final Method method, final String arg, final ConnectionDictionary client, final ConnectionDictionary server) throws Exception {
+        final EJBRequest expected = new EJBRequest(RequestMethodCode.EJB_OBJECT_BUSINESS_METHOD, ejb, method, new Object[]{arg}, null, null);
+        expected.setMetaData(new ProtocolMetaData());
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new EjbObjectOutputStream(baos, client);
+        expected.writeExternal(out);
+        out.close();
+
+        final EJBRequest actual = new EJBRequest();
+        actual.setMetaData(new ProtocolMetaData());
+        final ObjectInputStream in = new EjbObjectInputStream(new ByteArrayInputStream(baos.toByteArray()), server);
+        actual.readExternal(in);
+        actual.getBody().readExternal(in);
+
+        assertEquals("InterfaceClass", expected.getInterfaceClass(), actual.getInterfaceClass());
+        assertEquals("MethodInstance", expected.getMethodInstance(), actual.getMethodInstance());
+        assertEquals("MethodParameters", arg, actual.getMethodParameters()[0]);
+        return baos.size();
+    }
+
     private void invoke(final RequestMethodCode requestMethod, final Method method, final Object[] args) throws IOException, ClassNotFoundException {
 
         final EJBRequest expected = new EJBRequest(requestMethod, ejb, method, args, null, null);
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FramedStreamTest {
+
+    @Test
+    public void roundTrip() throws Exception {
+        final Random random = new Random(42);
+        for (final MessageCodec codec : MessageCodec.values()) {
+            for (final int size : new int[]{0, 1, 11, 13, 100, 5000, MessageCodec.FRAME_SIZE, 3 * MessageCodec.FRAME_SIZE + 17}) {
+                assertRoundTrip(codec, text(size));
+                assertRoundTrip(codec, noise(random, size));
+            }
+        }
+    }
+
+    @Test
+    public void compressesOverTheThreshold() throws Exception {
+        final byte[] text = text(10000);
+        for (final MessageCodec codec : new MessageCodec[]{MessageCodec.DEFLATE, MessageCodec.LZ4}) {
+            assertTrue(codec.name(), frame(codec, 1024, text).length < text.length / 2);
+            assertEquals(text.length + 5, frame(codec, 20000, text).length);
+        }
+
+        // no gain, sent as is
+        final byte[] noise = noise(new Random(1), 10000);
+        assertEquals(noise.length + 5, frame(MessageCodec.LZ4, 0, noise).length);
+    }
+
+    @Test
+    public void messagesEndWithAFrame() throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final FramedOutputStream out = new FramedOutputStream(bytes, MessageCodec.LZ4, 0);
+        out.write(text(3000));
+        out.flush();
+        out.write(text(10));
+        out.flush();
+
+        final FramedInputStream in = new FramedInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertArrayEquals(text(3000), read(in, 3000));
+        assertEquals(10, read(in, 10).length);
+        assertEquals(-1, in.read());
+    }
+
+    @Test(expected = IOException.class)
+    public void corrupted() throws Exception {
+        final byte[] frame = frame(MessageCodec.LZ4, 0, text(5000));
+        Arrays.fill(frame, 9, 20, (byte) 0xff);
+        read(new FramedInputStream(new ByteArrayInputStream(frame)), 5000);
+    }
+
+    private static void assertRoundTrip(final MessageCodec codec, final byte[] data) throws IOException {
+        final byte[] framed = frame(codec, 0, data);
+        final FramedInputStream in = new FramedInputStream(new ByteArrayInputStream(framed));
+        assertArrayEquals(codec + " " + data.length, data, read(in, data.length));
+        assertEquals(-1, in.read());
+    }
+
+    private static byte[] frame(final MessageCodec codec, final int threshold, final byte[] data) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final FramedOutputStream out = new FramedOutputStream(bytes, codec, threshold);
+        out.write(data);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] read(final FramedInputStream in, final int length) throws IOException {
+        final byte[] data = new byte[length];
+        int read = 0;
+        while (read < length) {
+            final int n = in.read(data, read, length - read);
+            if (n < 0) {
+                throw new IOException("Truncated");
+            }
+            read += n;
+        }
+        return data;
+    }
+
+    private static byte[] text(final int size) {
+        final byte[] sentence = "The quick brown fox jumps over the lazy dog, again and again. ".getBytes();
+        final byte[] text = new byte[size];
+        for (int i = 0; i < size; i++) {
+            text[i] = sentence[(i * 7 / 5) % sentence.length];
+        }
+        return text;
+    }
+
+    private static byte[] noise(final Random random, final int size) {
+        final byte[] noise = new byte[size];
+        random.nextBytes(noise);
+        return noise;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import org.apache.openejb.client.event.Observes;
+import org.apache.openejb.client.event.ServerEjected;
+import org.apache.openejb.client.event.ServerReinstated;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class LatencyAwareConnectionStrategyTest {
+
+    private static final URI ONE = URI.create("one://localhost:1243");
+    private static final URI TWO = URI.create("two://localhost:1243");
+    private static final URI THREE = URI.create("three://localhost:1243");
+
+    private final Events events = new Events();
+
+    @Before
+    public void observe() {
+        Client.addEventObserver(events);
+    }
+
+    @After
+    public void forget() {
+        Client.removeEventObserver(events);
+    }
+
+    @Test
+    public void slowServerIsEjectedThenReinstated() throws Exception {
+        final LatencyAwareConnectionStrategy strategy = new LatencyAwareConnectionStrategy(0.5, 5, 3, 3, 200);
+        final Iterable<URI> iterable = strategy.createIterable(new ClusterMetaData(System.currentTimeMillis(), ONE, TWO, THREE));
+
+        for (int i = 0; i < 5; i++) {
+            strategy.record(ONE, millis(1), true);
+            strategy.record(TWO, millis(1), true);
+            strategy.record(THREE, millis(50), true);
+        }
+
+        Assert.assertEquals(1, events.ejected.size());
+        Assert.assertEquals(THREE, events.ejected.get(0).getServer());
+
+        for (int i = 0; i < 20; i++) {
+            final List<URI> order = list(iterable);
+            Assert.assertEquals(3, order.size());
+            Assert.assertEquals(THREE, order.get(2));
+        }
+
+        Thread.sleep(300);
+
+        // the probe goes first, once
+        Assert.assertEquals(THREE, list(iterable).get(0));
+        Assert.assertEquals(THREE, list(iterable).get(2));
+
+        strategy.record(THREE, millis(1), true);
+        Assert.assertEquals(1, events.reinstated.size());
+        Assert.assertEquals(THREE, events.reinstated.get(0).getServer());
+        Assert.assertTrue(list(iterable).contains(THREE));
+    }
+
+    @Test
+    public void failingServerIsEjected() throws Exception {
+        final LatencyAwareConnectionStrategy strategy = new LatencyAwareConnectionStrategy(0.5, 5, 3, 3, 200);
+        final Iterable<URI> iterable = strategy.createIterable(new ClusterMetaData(System.currentTimeMillis(), ONE, TWO));
+
+        strategy.record(ONE, millis(1), true);
+        strategy.record(TWO, millis(1), false);
+        strategy.record(TWO, millis(1), false);
+        Assert.assertTrue(events.ejected.isEmpty());
+
+        strategy.record(TWO, millis(1), false);
+        Assert.assertEquals(1, events.ejected.size());
+        Assert.assertEquals(TWO, events.ejected.get(0).getServer());
+        Assert.assertEquals(ONE, list(iterable).get(0));
+
+        Thread.sleep(300);
+
+        // a failed probe ejects the server again
+        Assert.assertEquals(TWO, list(iterable).get(0));
+        strategy.record(TWO, millis(1), false);
+        Assert.assertEquals(2, events.ejected.size());
+        Assert.assertEquals(ONE, list(iterable).get(0));
+        Assert.assertTrue(events.reinstated.isEmpty());
+    }
+
+    @Test
+    public void skippedProbeIsRetried() throws Exception {
+        final LatencyAwareConnectionStrategy strategy = new LatencyAwareConnectionStrategy(0.5, 5, 3, 1, 200);
+        final Iterable<URI> iterable = strategy.createIterable(new ClusterMetaData(System.currentTimeMillis(), ONE, TWO));
+
+        strategy.record(ONE, millis(1), true);
+        strategy.record(TWO, millis(1), false);
+        Assert.assertEquals(1, events.ejected.size());
+
+        Thread.sleep(300);
+
+        // the probe is never attempted, e.g. the server is in the failed list of the request
+        Assert.assertEquals(TWO, list(iterable).get(0));
+        Assert.assertEquals(ONE, list(iterable).get(0));
+
+        Thread.sleep(300);
+
+        // the server is probed again and reinstated
+        Assert.assertEquals(TWO, list(iterable).get(0));
+        strategy.record(TWO, millis(1), true);
+        Assert.assertEquals(1, events.reinstated.size());
+    }
+
+    @Test
+    public void leastLoaded() throws Exception {
+        final LatencyAwareConnectionStrategy strategy = new LatencyAwareConnectionStrategy(0.5, 5, 3, 3, 200);
+        final Iterable<URI> iterable = strategy.createIterable(new ClusterMetaData(System.currentTimeMillis(), ONE, TWO));
+
+        strategy.record(ONE, millis(10), true);
+        strategy.record(TWO, millis(1), true);
+
+        // with two servers both are always compared
+        for (int i = 0; i < 20; i++) {
+            Assert.assertEquals(TWO, list(iterable).get(0));
+        }
+    }
+
+    private static long millis(final long value) {
+        return TimeUnit.MILLISECONDS.toNanos(value);
+    }
+
+    private static List<URI> list(final Iterable<URI> iterable) {
+        final List<URI> found = new ArrayList<URI>();
+        for (final URI uri : iterable) {
+            found.add(uri);
+        }
+        return found;
+    }
+
+    public static class Events {
+        private final List<ServerEjected> ejected = new ArrayList<ServerEjected>();
+        private final List<ServerReinstated> reinstated = new ArrayList<ServerReinstated>();
+
+        public void ejected(@Observes final ServerEjected event) {
+            ejected.add(event);
+        }
+
+        public void reinstated(@Observes final ServerReinstated event) {
+            reinstated.add(event);
+        }
+    }
+}
@@ -70,10 +70,16 @@ public class OverlyStickyConnectionTest extends TestCase {
 
                 {
                     connection.set(this);
-                    new ProtocolMetaData().writeExternal(out);
+                    // answers as a server of the version of the request, the client starts with the 4.6 framing
+                    final ProtocolMetaData protocol = new ProtocolMetaData("4.6");
+                    protocol.writeExternal(out);
                     final ObjectOutputStream oos = new ObjectOutputStream(out);
-                    new ClusterResponse(ClusterResponse.Code.CURRENT).writeExternal(oos);
-                    new JNDIResponse(ResponseCodes.JNDI_CONTEXT, null).writeExternal(oos);
+                    final ClusterResponse clusterResponse = new ClusterResponse(ClusterResponse.Code.CURRENT);
+                    clusterResponse.setMetaData(protocol);
+                    clusterResponse.writeExternal(oos);
+                    final JNDIResponse jndiResponse = new JNDIResponse(ResponseCodes.JNDI_CONTEXT, null);
+                    jndiResponse.setMetaData(protocol);
+                    jndiResponse.writeExternal(oos);
                     oos.close();
 
                     in = new ByteArrayInputStream(out.toByteArray());
@@ -19,14 +19,17 @@ package org.apache.openejb.server.ejbd;
 import org.apache.openejb.client.AuthenticationRequest;
 import org.apache.openejb.client.AuthenticationResponse;
 import org.apache.openejb.client.ClientMetaData;
+import org.apache.openejb.client.IdentityToken;
 import org.apache.openejb.client.ProtocolMetaData;
 import org.apache.openejb.client.Response;
 import org.apache.openejb.client.ResponseCodes;
+import org.apache.openejb.client.ServerMetaData;
 import org.apache.openejb.loader.SystemInstance;
 import org.apache.openejb.spi.SecurityService;
 import org.apache.openejb.util.LogCategory;
 import org.apache.openejb.util.Logger;
 
+import javax.security.auth.login.LoginException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 
@@ -64,12 +67,18 @@ class AuthRequestHandler extends RequestHandler {
             final String username = req.getUsername();
             final String password = req.getCredentials();
 
-            final SecurityService securityService = SystemInstance.get().getComponent(SecurityService.class);
-            final Object token = securityService.login(securityRealm, username, password);
+            final IdentityTokens identityTokens = daemon.getIdentityTokens();
 
             final ClientMetaData client = new ClientMetaData();
             client.setMetaData(metaData);
-            client.setClientIdentity(token);
+            // a client asking for the protocol of the server knows the tokens, even before it writes 4.8 requests
+            final ServerMetaData server = ClientObjectFactory.serverMetaData.get();
+            if (identityTokens != null && (metaData.isAtLeast(4, 8) || server != null && server.isProtocolRequested())) {
+                client.setClientIdentity(identityToken(identityTokens, req));
+            } else {
+                final SecurityService securityService = SystemInstance.get().getComponent(SecurityService.class);
+                client.setClientIdentity(securityService.login(securityRealm, username, password));
+            }
 
             res.setIdentity(client);
             res.setResponseCode(ResponseCodes.AUTH_GRANTED);
@@ -89,6 +98,27 @@ class AuthRequestHandler extends RequestHandler {
         return res;
     }
 
+    /**
+     * @return the token the client presents if it is still valid for this user, otherwise a token for a new login
+     */
+    private static IdentityToken identityToken(final IdentityTokens identityTokens, final AuthenticationRequest req) throws LoginException {
+        final IdentityToken presented = req.getIdentityToken();
+        if (presented != null && presented.getUser().equals(req.getUsername() == null ? "" : req.getUsername())) {
+            try {
+                identityTokens.validate(presented);
+                return presented;
+            } catch (final LoginException e) {
+                if (debug) {
+                    logger.debug("Login again: " + e.getMessage());
+                }
+            }
+        }
+
+        final SecurityService securityService = SystemInstance.get().getComponent(SecurityService.class);
+        final Object identity = securityService.login(req.getRealm(), req.getUsername(), req.getCredentials());
+        return identityTokens.issue(req.getUsername(), identity);
+    }
+
     @Override
     public void processResponse(final Response response, final ObjectOutputStream out, final ProtocolMetaData metaData) throws Exception {
 
@@ -16,11 +16,14 @@
  */
 package org.apache.openejb.server.ejbd;
 
+import org.apache.openejb.assembler.classic.event.AssemblerAfterApplicationCreated;
+import org.apache.openejb.assembler.classic.event.AssemblerBeforeApplicationDestroyed;
 import org.apache.openejb.client.ClusterMetaData;
 import org.apache.openejb.client.ClusterRequest;
 import org.apache.openejb.client.ClusterResponse;
 import org.apache.openejb.client.ProtocolMetaData;
 import org.apache.openejb.client.Response;
+import org.apache.openejb.observer.Observes;
 import org.apache.openejb.server.DiscoveryListener;
 import org.apache.openejb.util.Join;
 import org.apache.openejb.util.LogCategory;
@@ -33,6 +36,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
@@ -47,6 +51,10 @@ public class ClusterRequestHandler extends RequestHandler implements DiscoveryLi
 
     private final Data data = new Data();
 
+    // lets clients drop the lookups they cached when it changes, seeded with the start time so a restarted
+    // server doesn't send back a version its clients already know
+    private final AtomicLong deployments = new AtomicLong(System.currentTimeMillis());
+
     public ClusterRequestHandler(final EjbDaemon daemon) {
         super(daemon);
     }
@@ -64,6 +72,7 @@ public class ClusterRequestHandler extends RequestHandler implements DiscoveryLi
 
         final ClusterResponse res = new ClusterResponse();
         res.setMetaData(metaData);
+        res.setDeployments(deployments.get());
 
         try {
             req.readExternal(in);
@@ -120,6 +129,18 @@ public class ClusterRequestHandler extends RequestHandler implements DiscoveryLi
         }
     }
 
+    public void afterApplicationCreated(@Observes final AssemblerAfterApplicationCreated event) {
+        deployed();
+    }
+
+    public void beforeApplicationDestroyed(@Observes final AssemblerBeforeApplicationDestroyed event) {
+        deployed();
+    }
+
+    private void deployed() {
+        deployments.incrementAndGet();
+    }
+
     @Override
     public void serviceAdded(final URI uri) {
         try {
@@ -19,10 +19,17 @@ package org.apache.openejb.server.ejbd;
 import org.apache.openejb.BeanContext;
 import org.apache.openejb.OpenEJBRuntimeException;
 import org.apache.openejb.ProxyInfo;
+import org.apache.openejb.client.ChunkedStreams;
 import org.apache.openejb.client.ClusterResponse;
+import org.apache.openejb.client.ConnectionDictionary;
 import org.apache.openejb.client.EJBRequest;
 import org.apache.openejb.client.EjbObjectInputStream;
+import org.apache.openejb.client.EjbObjectOutputStream;
 import org.apache.openejb.client.FlushableGZIPOutputStream;
+import org.apache.openejb.client.FramedInputStream;
+import org.apache.openejb.client.FramedOutputStream;
+import org.apache.openejb.client.IdentityToken;
+import org.apache.openejb.client.MessageCodec;
 import org.apache.openejb.client.ProtocolMetaData;
 import org.apache.openejb.client.RequestType;
 import org.apache.openejb.client.Response;
@@ -31,14 +38,18 @@ import org.apache.openejb.client.serializer.EJBDSerializer;
 import org.apache.openejb.loader.SystemInstance;
 import org.apache.openejb.server.DiscoveryAgent;
 import org.apache.openejb.server.context.RequestInfos;
+import org.apache.openejb.server.context.RequestMetrics;
+import org.apache.openejb.server.context.RequestPhase;
 import org.apache.openejb.server.stream.CountingInputStream;
 import org.apache.openejb.server.stream.CountingOutputStream;
 import org.apache.openejb.spi.ContainerSystem;
 import org.apache.openejb.spi.SecurityService;
+import org.apache.openejb.util.DaemonThreadFactory;
 import org.apache.openejb.util.Exceptions;
 import org.apache.openejb.util.LogCategory;
 import org.apache.openejb.util.Logger;
 
+import javax.security.auth.login.LoginException;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.IOException;
@@ -47,18 +58,26 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.io.StreamCorruptedException;
 import java.net.Socket;
 import java.rmi.RemoteException;
 import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.GZIPInputStream;
 
 public class EjbDaemon implements org.apache.openejb.spi.ApplicationServer {
 
     static final Logger logger = Logger.getInstance(LogCategory.OPENEJB_SERVER_REMOTE, "org.apache.openejb.server.util.resources");
+    private static final Logger accessLogger = Logger.getInstance(LogCategory.OPENEJB_SERVER_REMOTE.createChild("access"), "org.apache.openejb.server.util.resources");
+    private static final ProtocolMetaData SERVER_PROTOCOL = new ProtocolMetaData();
 
     private ClientObjectFactory clientObjectFactory;
     //    DeploymentIndex deploymentIndex;
-    private RequestHandler ejbHandler;
+    private EjbRequestHandler ejbHandler;
     private JndiRequestHandler jndiHandler;
     private RequestHandler authHandler;
     private RequestHandler logoutHandler;
@@ -73,6 +92,17 @@ public class EjbDaemon implements org.apache.openejb.spi.ApplicationServer {
     private boolean countStreams;
     private SecurityService securityService;
 
+    private int batchThreads;
+    private int batchQueue;
+    private int batchMaxSize;
+    private int batchMaxRequestSize;
+    private int streamChunkSize;
+    private int compressionThreshold;
+    private volatile ExecutorService batchExecutor;
+    private RequestMetrics metrics;
+    private boolean accessLog;
+    private IdentityTokens identityTokens;
+
     public void init(final Properties props) throws Exception {
         containerSystem = SystemInstance.get().getComponent(ContainerSystem.class);
         //        deploymentIndex = new DeploymentIndex(containerSystem.deployments());
@@ -84,6 +114,7 @@ public class EjbDaemon implements org.apache.openejb.spi.ApplicationServer {
         authHandler = new AuthRequestHandler(this);
         logoutHandler = new LogoutRequestHandler(this);
         clusterHandler = new ClusterRequestHandler(this);
+        SystemInstance.get().addObserver(clusterHandler);
         gzip = "true".equalsIgnoreCase(props.getProperty("gzip", "false"));
 
         try {
@@ -108,7 +139,25 @@ public class EjbDaemon implements org.apache.openejb.spi.ApplicationServer {
 
         countStreams = Boolean.parseBoolean(props.getProperty("stream.count", Boolean.toString(jndiHandler.isDebug())));
 
+        batchThreads = Integer.parseInt(props.getProperty("batch.threads", Integer.toString(Runtime.getRuntime().availableProcessors())));
+        batchQueue = Integer.parseInt(props.getProperty("batch.queue", "1024"));
+        batchMaxSize = Integer.parseInt(props.getProperty("batch.max.size", "1024"));
+        batchMaxRequestSize = Integer.parseInt(props.getProperty("batch.max.request.size", Integer.toString(16 * 1024 * 1024)));
+        streamChunkSize = Integer.parseInt(props.getProperty("stream.chunk.size", Integer.toString(ChunkedStreams.DEFAULT_CHUNK_SIZE)));
+        compressionThreshold = Integer.parseInt(props.getProperty("compression.threshold", "1024"));
+
+        if (Boolean.parseBoolean(props.getProperty("metrics", "false"))) {
+            metrics = RequestMetrics.of(props.getProperty("name", "ejbd"));
+            accessLog = Boolean.parseBoolean(props.getProperty("metrics.log", "false"));
+        }
+
         securityService = SystemInstance.get().getComponent(SecurityService.class);
+
+        if (Boolean.parseBoolean(props.getProperty("identity.token", "false"))) {
+            identityTokens = new IdentityTokens(securityService, props.getProperty("identity.token.secret"),
+                Long.parseLong(props.getProperty("identity.token.ttl", "1800000")),
+                Integer.parseInt(props.getProperty("identity.token.cache", "10000")));
+        }
     }
 
     public void service(final Socket socket) throws IOException {
@@ -176,20 +225,27 @@ public class EjbDaemon implements org.apache.openejb.spi.ApplicationServer {
 
         final ProtocolMetaData clientProtocol = new ProtocolMetaData();
 
-        ObjectInputStream ois = null;
-        ObjectOutputStream oos = null;
+        EjbObjectInputStream ois = null;
+        EjbObjectOutputStream oos = null;
         RequestType requestType = null;
         byte requestTypeByte = RequestType.NOP_REQUEST.getCode();
 
         try {
 
             final RequestInfos.RequestInfo info = RequestInfos.info();
-            info.setInputStream(countStreams ? new CountingInputStream(rawIn) : rawIn);
+            info.setInputStream(countStreams || metrics != null ? new CountingInputStream(rawIn, metrics != null) : rawIn);
+            if (metrics != null) {
+                info.begin();
+            }
 
             // Read client Protocol Version
             final InputStream cis = info.getInputStream();
             clientProtocol.readExternal(cis);
-            ois = new EjbObjectInputStream(cis);
+            final int flags = readFlags(cis, clientProtocol);
+            final ConnectionDictionary dictionary = readDictionary(flags, info);
+            final MessageCodec codec = MessageCodec.valueOf(flags >> 1);
+            ois = new EjbObjectInputStream(codec != MessageCodec.NONE ? new FramedInputStream(cis) : cis, dictionary);
+            ois.enableStreams(streams(clientProtocol));
 
             // Read ServerMetaData
             final ServerMetaData serverMetaData = new ServerMetaData();
@@ -216,8 +272,8 @@ public class EjbDaemon implements org.apache.openejb.spi.ApplicationServer {
                     clusterHandler.getLogger().debug("Failed to write to ClusterResponse", failure);
 
                     try {
-                        info.setOutputStream(countStreams ? new CountingOutputStream(rawOut) : rawOut);
-                        oos = new ObjectOutputStream(info.getOutputStream());
+                        info.setOutputStream(countStreams || metrics != null ? new CountingOutputStream(rawOut, metrics != null) : rawOut);
+                        oos = new EjbObjectOutputStream(framed(info.getOutputStream(), codec), dictionary);
                         clusterResponse.setMetaData(clientProtocol);
                         clusterResponse.writeExternal(oos);
                         oos.flush();
@@ -237,6 +293,7 @@ public class EjbDaemon implements org.apache.openejb.spi.ApplicationServer {
             if (requestType == RequestType.NOP_REQUEST) {
                 return;
             }
+            info.lap(RequestPhase.DESERIALIZATION);
 
             // Exceptions should not be thrown from these methods
             // They should handle their own exceptions and clean
@@ -255,27 +312,43 @@ public class EjbDaemon implements org.apache.openejb.spi.ApplicationServer {
                 case LOGOUT_REQUEST:
                     response = processLogoutRequest(ois, clientProtocol);
                     break;
+                case BATCH_REQUEST:
+                    response = processBatchRequest(ois, clientProtocol);
+                    break;
                 default:
                     logger.error("\"" + requestType + " " + clientProtocol.getSpec() + "\" FAIL \"Unknown request type " + requestType);
                     return;
             }
 
+            info.lap(RequestPhase.INVOCATION);
+
+            // chunks of streamed arguments the invocation did not read
+            final ChunkedStreams streams = ois.getStreams();
+            if (null != streams) {
+                streams.skip(ois);
+            }
+
             try {
-                info.setOutputStream(countStreams ? new CountingOutputStream(rawOut) : rawOut);
+                info.setOutputStream(countStreams || metrics != null ? new CountingOutputStream(rawOut, metrics != null) : rawOut);
 
                 final OutputStream cos = info.getOutputStream();
 
-                //Let client know we are using the requested protocol to respond
-                clientProtocol.writeExternal(cos);
+                //Let client know we are using the requested protocol to respond, or our own one if it asks for it
+                (serverMetaData.isProtocolRequested() ? SERVER_PROTOCOL : clientProtocol).writeExternal(cos);
+                if (clientProtocol.isAtLeast(4, 8)) {
+                    cos.write(dictionary != null && !dictionary.isValid() ? ConnectionDictionary.CLOSE : ConnectionDictionary.KEEP);
+                }
                 cos.flush();
 
-                oos = new ObjectOutputStream(cos);
+                oos = new EjbObjectOutputStream(framed(cos, codec), dictionary);
+                oos.enableStreams(streams(clientProtocol));
                 clusterHandler.processResponse(clusterResponse, oos, clientProtocol);
                 oos.flush();
 
             } finally {
                 switch (requestType) {
                     case EJB_REQUEST:
+                    case BATCH_REQUEST:
                         processEjbResponse(response, oos, clientProtocol);
                         break;
                     case JNDI_REQUEST:
@@ -292,6 +365,11 @@ public class EjbDaemon implements org.apache.openejb.spi.ApplicationServer {
                         logger.error("\"" + requestType + " " + clientProtocol.getSpec() + "\" FAIL \"Unknown response type " + requestType);
                 }
             }
+            info.lap(RequestPhase.SERIALIZATION);
+
+            if (dictionary != null && !dictionary.isValid()) {
+                throw new StreamCorruptedException("The connection dictionary is incomplete after a request failed to be read");
+            }
 
         } catch (IllegalArgumentException iae) {
             final String msg = "\"" + clientProtocol.getSpec() + "\" FAIL \"Unknown request type " + requestTypeByte;
@@ -300,6 +378,10 @@ public class EjbDaemon implements org.apache.openejb.spi.ApplicationServer {
             } else {
                 logger.warning(msg + " - Debug for StackTrace");
             }
+        } catch (StreamCorruptedException e) {
+            // what follows on the connection can't be read anymore
+            logger.warning("\"" + requestType + " " + clientProtocol.getSpec() + "\" FAIL \"" + e.getMessage() + "\", closing the connection");
+            throw e;
         } catch (SecurityException e) {
             final String msg = "\"" + requestType + " " + clientProtocol.getSpec() + "\" FAIL \"Security error - " + e.getMessage() + "\"";
             if (logger.isDebugEnabled()) {
@@ -333,6 +415,10 @@ public class EjbDaemon implements org.apache.openejb.spi.ApplicationServer {
                     }
                 }
 
+                if (metrics != null && requestType != null && requestType != RequestType.NOP_REQUEST) {
+                    record(RequestInfos.info(), requestType);
+                }
+
                 if (null != ois) {
                     try {
                         ois.close();
@@ -347,6 +433,87 @@ public class EjbDaemon implements org.apache.openejb.spi.ApplicationServer {
         }
     }
 
+    private void record(final RequestInfos.RequestInfo info, final RequestType requestType) {
+        info.lap(RequestPhase.WRITE);
+        metrics.record(info);
+
+        if (accessLog && accessLogger.isInfoEnabled()) {
+            final StringBuilder line = new StringBuilder(info.ip).append(' ').append(requestType);
+            if (info.getDeploymentId() != null) {
+                line.append(' ').append(info.getDeploymentId());
+            }
+            line.append(" total=").append(TimeUnit.NANOSECONDS.toMicros(info.getElapsed())).append("us");
+            for (final RequestPhase phase : RequestPhase.values()) {
+                line.append(' ').append(phase.name().toLowerCase()).append('=')
+                    .append(TimeUnit.NANOSECONDS.toMicros(info.getPhase(phase))).append("us");
+            }
+            line.append(" in=").append(info.getRequestSize()).append("b out=").append(info.getResponseSize()).append('b');
+            accessLogger.info(line.toString());
+        }
+    }
+
+    /**
+     * @return the phase timings of the requests when the metrics property is set, null otherwise
+     */
+    public RequestMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void stop() {
+        if (metrics != null) {
+            metrics.unregister();
+        }
+    }
+
+    private ChunkedStreams streams(final ProtocolMetaData clientProtocol) {
+        return clientProtocol.isAtLeast(4, 8) ? new ChunkedStreams(streamChunkSize, ChunkedStreams.DEFAULT_CHUNK_OBJECTS) : null;
+    }
+
+    /**
+     * @return the byte following the protocol version since 4.7: the dictionary bit and since 4.8 the codec of the messages
+     */
+    private static int readFlags(final InputStream in, final ProtocolMetaData clientProtocol) throws IOException {
+        if (!clientProtocol.isAtLeast(4, 7)) {
+            return ConnectionDictionary.UNUSED;
+        }
+
+        final int flags = in.read();
+        if (flags < 0 || (!clientProtocol.isAtLeast(4, 8) && flags > ConnectionDictionary.USED)) {
+            throw new IOException("Unexpected connection dictionary flag " + flags);
+        }
+        return flags;
+    }
+
+    private static ConnectionDictionary readDictionary(final int flags, final RequestInfos.RequestInfo info) throws IOException {
+        if ((flags & ConnectionDictionary.USED) == 0) {
+            return null;
+        }
+        if (info.getDictionary() == null) {
+            throw new IOException("Connection dictionary requested on a connection which is not kept alive");
+        }
+        return info.getDictionary();
+    }
+
+    /**
+     * A request failed to be read, what it defined in the dictionary of the connection after the failure is lost
+     * so the connection is closed once the error is answered.
+     */
+    static void readFailed(final ObjectInputStream in) {
+        if (in instanceof EjbObjectInputStream) {
+            final ConnectionDictionary dictionary = ((EjbObjectInputStream) in).getDictionary();
+            if (dictionary != null) {
+                dictionary.invalidate();
+            }
+        }
+    }
+
+    /**
+     * Responses are framed and compressed with the codec of the request.
+     */
+    private OutputStream framed(final OutputStream out, final MessageCodec codec) {
+        return codec != MessageCodec.NONE ? new FramedOutputStream(out, codec, compressionThreshold) : out;
+    }
+
     protected BeanContext getDeployment(final EJBRequest req) throws RemoteException {
         final String deploymentId = req.getDeploymentId();
         final BeanContext beanContext = containerSystem.getBeanContext(deploymentId);
@@ -356,10 +523,68 @@ public class EjbDaemon implements org.apache.openejb.spi.ApplicationServer {
         return beanContext;
     }
 
+    /**
+     * @return the tokens issued after a login when the identity.token property is set, null otherwise
+     */
+    IdentityTokens getIdentityTokens() {
+        return identityTokens;
+    }
+
+    /**
+     * @param clientIdentity what a request carries as client identity
+     * @return the identity to associate, the one of the login when the client presents a token
+     */
+    Object resolveIdentity(final Object clientIdentity) throws LoginException {
+        if (!IdentityToken.class.isInstance(clientIdentity)) {
+            return clientIdentity;
+        }
+        if (identityTokens == null) {
+            throw new LoginException("Identity tokens are not enabled");
+        }
+        return identityTokens.validate(IdentityToken.class.cast(clientIdentity));
+    }
+
     public Response processEjbRequest(final ObjectInputStream in, final ProtocolMetaData metaData) throws Exception {
         return ejbHandler.processRequest(in, metaData);
     }
 
+    public Response processBatchRequest(final ObjectInputStream in, final ProtocolMetaData metaData) throws Exception {
+        return ejbHandler.processBatchRequest(in, metaData);
+    }
+
+    /**
+     * Threads invoking the requests of parallel batches, they go away when idle.
+     * Once batch.queue requests are waiting the thread reading a batch invokes the others itself.
+     */
+    Executor getBatchExecutor() {
+        if (batchExecutor == null) {
+            synchronized (this) {
+                if (batchExecutor == null) {
+                    final int threads = Math.max(1, batchThreads);
+                    final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES,
+                        new LinkedBlockingQueue<Runnable>(Math.max(1, batchQueue)), new DaemonThreadFactory("ejbd-batch-"));
+                    executor.allowCoreThreadTimeOut(true);
+                    batchExecutor = executor;
+                }
+            }
+        }
+        return batchExecutor;
+    }
+
+    /**
+     * @return the most requests a batch can hold, a bigger one closes the connection
+     */
+    int getBatchMaxSize() {
+        return batchMaxSize;
+    }
+
+    /**
+     * @return the most bytes a request of a batch can take, a bigger one closes the connection
+     */
+    int getBatchMaxRequestSize() {
+        return batchMaxRequestSize;
+    }
+
     public Response processJndiRequest(final ObjectInputStream in, final ProtocolMetaData metaData) throws Exception {
         return jndiHandler.processRequest(in, metaData);
     }
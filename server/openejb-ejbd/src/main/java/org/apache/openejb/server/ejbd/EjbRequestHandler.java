@@ -20,10 +20,14 @@ import org.apache.openejb.BeanContext;
 import org.apache.openejb.InterfaceType;
 import org.apache.openejb.ProxyInfo;
 import org.apache.openejb.RpcContainer;
+import org.apache.openejb.client.BatchRequest;
+import org.apache.openejb.client.BatchResponse;
 import org.apache.openejb.client.EJBHomeProxyHandle;
 import org.apache.openejb.client.EJBObjectProxyHandle;
 import org.apache.openejb.client.EJBRequest;
 import org.apache.openejb.client.EJBResponse;
+import org.apache.openejb.client.EjbObjectOutputStream;
+import org.apache.openejb.client.IdentityToken;
 import org.apache.openejb.client.JNDIContext;
 import org.apache.openejb.client.ProtocolMetaData;
 import org.apache.openejb.client.Response;
@@ -33,6 +37,8 @@ import org.apache.openejb.client.serializer.EJBDSerializer;
 import org.apache.openejb.client.serializer.SerializationWrapper;
 import org.apache.openejb.core.ThreadContext;
 import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.server.context.RequestInfos;
+import org.apache.openejb.server.context.RequestPhase;
 import org.apache.openejb.spi.SecurityService;
 import org.apache.openejb.util.LogCategory;
 import org.apache.openejb.util.Logger;
@@ -40,12 +46,17 @@ import org.apache.openejb.util.Logger;
 import javax.security.auth.login.LoginException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
 import java.rmi.RemoteException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 class EjbRequestHandler extends RequestHandler {
@@ -86,10 +97,24 @@ class EjbRequestHandler extends RequestHandler {
         EJBObjectProxyHandle.resolver.set(SERVER_SIDE_RESOLVER);
 
         final EJBRequest req = new EJBRequest();
+        final EJBResponse res = new EJBResponse();
+
+        final BeanContext di = readRequest(in, metaData, req, res);
+        if (di == null) {
+            return res;
+        }
+        return invoke(req, res, di);
+    }
+
+    /**
+     * Reads a request, its body is deserialized with the classloader of the bean which is left as context classloader.
+     *
+     * @return the bean to invoke or null when the response already holds the error
+     */
+    private BeanContext readRequest(final ObjectInputStream in, final ProtocolMetaData metaData, final EJBRequest req, final EJBResponse res) {
         req.setMetaData(metaData);
-        byte version = req.getVersion();
+        final byte version = req.getVersion();
 
-        final EJBResponse res = new EJBResponse();
         res.setMetaData(metaData);
         res.start(EJBResponse.Time.TOTAL);
         res.setRequest(req);
@@ -97,58 +122,76 @@ class EjbRequestHandler extends RequestHandler {
         try {
             req.readExternal(in);
         } catch (Throwable t) {
-            return setResponseError(res, version, t, "Bad request");
+            EjbDaemon.readFailed(in);
+            setResponseError(res, version, t, "Bad request");
+            return null;
         }
 
-        final SecurityService securityService = SystemInstance.get().getComponent(SecurityService.class);
-        boolean failed = false;
-        final CallContext call;
+        final BeanContext di;
 
-        Object clientIdentity = null;
         try {
-            try {
-                clientIdentity = req.getClientIdentity();
-                if (clientIdentity != null) {//noinspection unchecked
-                    securityService.associate(clientIdentity);
-                }
-            } catch (LoginException t) {
-                failed = true;
-                return setResponseError(res, version, t, "Client identity is not valid - " + req);
-            }
+            di = this.daemon.getDeployment(req);
+        } catch (RemoteException e) {
+            setResponseError(res, version, e, "No such deployment");
+            return null;
+        } catch (Throwable t) {
+            setResponseError(res, version, t, "Unkown error occured while retrieving deployment: " + req);
+            return null;
+        }
 
-            final BeanContext di;
+        try {
 
-            try {
-                di = this.daemon.getDeployment(req);
-            } catch (RemoteException e) {
-                failed = true;
-                return setResponseError(res, version, e, "No such deployment");
-            } catch (Throwable t) {
-                failed = true;
-                return setResponseError(res, version, t, "Unkown error occured while retrieving deployment: " + req);
-            }
+            //Need to set this for deserialization of the body - Will always be reset by EjbDaemon
+            final ClassLoader classLoader = di.getBeanClass().getClassLoader();
+            Thread.currentThread().setContextClassLoader(classLoader);
 
-            try {
+            res.start(EJBResponse.Time.DESERIALIZATION);
+
+            req.getBody().readExternal(in);
+
+            res.stop(EJBResponse.Time.DESERIALIZATION);
+        } catch (Throwable t) {
+            EjbDaemon.readFailed(in);
+            setResponseError(res, version, t, "Error caught during request body deserialization: " + req);
+            return null;
+        }
 
-                //Need to set this for deserialization of the body - Will always be reset by EjbDaemon
-                final ClassLoader classLoader = di.getBeanClass().getClassLoader();
-                Thread.currentThread().setContextClassLoader(classLoader);
+        final RequestInfos.RequestInfo info = RequestInfos.info();
+        if (info != null) {
+            info.setDeploymentId(req.getDeploymentId());
+            info.lap(RequestPhase.DESERIALIZATION);
+        }
+        return di;
+    }
 
-                res.start(EJBResponse.Time.DESERIALIZATION);
+    /**
+     * Invokes a request read by {@link #readRequest} on the current thread, the security and call contexts
+     * associated here are released by {@link #processResponse} or {@link #release()}.
+     */
+    private EJBResponse invoke(final EJBRequest req, final EJBResponse res, final BeanContext di) {
 
-                req.getBody().readExternal(in);
+        //Client version retrieved from body
+        final byte version = req.getVersion();
 
-                //Client version retrieved from body
-                version = req.getVersion();
+        final SecurityService securityService = SystemInstance.get().getComponent(SecurityService.class);
+        boolean failed = false;
 
-                res.stop(EJBResponse.Time.DESERIALIZATION);
-            } catch (Throwable t) {
+        Object clientIdentity = null;
+        try {
+            try {
+                clientIdentity = req.getClientIdentity();
+                if (clientIdentity != null) {//noinspection unchecked
+                    securityService.associate(daemon.resolveIdentity(clientIdentity));
+                }
+            } catch (LoginException t) {
                 failed = true;
-                return setResponseError(res, version, t, "Error caught during request body deserialization: " + req);
+                // a client refused its identity token logs in again
+                final int code = IdentityToken.class.isInstance(clientIdentity) ? ResponseCodes.AUTH_DENIED : ResponseCodes.EJB_ERROR;
+                return setResponseError(res, version, code, t, "Client identity is not valid - " + req);
             }
 
             try {
-                call = CallContext.getCallContext();
+                final CallContext call = CallContext.getCallContext();
                 call.setEJBRequest(req);
                 call.setBeanContext(di);
             } catch (Throwable t) {
@@ -175,6 +218,8 @@ class EjbRequestHandler extends RequestHandler {
                 }
             }
 
+            lap(RequestPhase.LOGIN);
+
             if (res.getResponseCode() != ResponseCodes.AUTH_DENIED) {
                 switch (req.getRequestMethod()) {
                     // Remote interface methods
@@ -279,6 +324,7 @@ class EjbRequestHandler extends RequestHandler {
             } catch (Throwable e) {
                 //Ignore
             }
+            lap(RequestPhase.INVOCATION);
 
             if (logger.isDebugEnabled()) {
                 //The req and res toString overrides are volatile
@@ -293,15 +339,106 @@ class EjbRequestHandler extends RequestHandler {
         return res;
     }
 
+    /**
+     * Reads all the requests of a batch then invokes them one after the other or concurrently
+     * when the client allows it, the responses are sent back together.
+     */
+    public Response processBatchRequest(final ObjectInputStream in, final ProtocolMetaData metaData) throws Exception {
+        EJBHomeProxyHandle.resolver.set(SERVER_SIDE_RESOLVER);
+        EJBObjectProxyHandle.resolver.set(SERVER_SIDE_RESOLVER);
+
+        final BatchRequest batch = new BatchRequest();
+        batch.setMetaData(metaData);
+        batch.readExternal(in);
+        if (batch.getSize() > daemon.getBatchMaxSize()) {
+            throw new StreamCorruptedException("Batch of " + batch.getSize() + " requests, the limit is " + daemon.getBatchMaxSize());
+        }
+
+        final List<Invocation> invocations = new ArrayList<Invocation>(batch.getSize());
+        final List<EJBResponse> responses = new ArrayList<EJBResponse>(batch.getSize());
+        for (int i = 0; i < batch.getSize(); i++) {
+            final EJBRequest req = new EJBRequest();
+            final EJBResponse res = new EJBResponse();
+            // length prefixed, a request failing to be read only fails its own response
+            final BeanContext di = readRequest(BatchRequest.readRequest(in, daemon.getBatchMaxRequestSize()), metaData, req, res);
+            if (di != null) {
+                invocations.add(new Invocation(req, res, di));
+            }
+            responses.add(res);
+        }
+
+        final RequestInfos.RequestInfo info = RequestInfos.info();
+        if (info != null) {
+            info.setDeploymentId(null); // only the service records a batch
+        }
+
+        if (batch.isParallel() && invocations.size() > 1) {
+            final CountDownLatch done = new CountDownLatch(invocations.size() - 1);
+            final Executor executor = daemon.getBatchExecutor();
+            for (final Invocation invocation : invocations.subList(1, invocations.size())) {
+                final Runnable task = new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            invocation.run();
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                };
+                try {
+                    executor.execute(task);
+                } catch (final RejectedExecutionException e) {
+                    task.run();
+                }
+            }
+            invocations.get(0).run();
+            done.await();
+            lap(RequestPhase.INVOCATION);
+        } else {
+            for (final Invocation invocation : invocations) {
+                invocation.run();
+            }
+        }
+
+        return new BatchResponse(responses);
+    }
+
+    private final class Invocation implements Runnable {
+        private final EJBRequest req;
+        private final EJBResponse res;
+        private final BeanContext di;
+
+        private Invocation(final EJBRequest req, final EJBResponse res, final BeanContext di) {
+            this.req = req;
+            this.res = res;
+            this.di = di;
+        }
+
+        @Override
+        public void run() {
+            final Thread thread = Thread.currentThread();
+            final ClassLoader old = thread.getContextClassLoader();
+            thread.setContextClassLoader(di.getBeanClass().getClassLoader());
+            try {
+                invoke(req, res, di);
+            } finally {
+                release();
+                thread.setContextClassLoader(old);
+            }
+        }
+    }
+
     @Override
     public void processResponse(final Response response, final ObjectOutputStream out, final ProtocolMetaData metaData) throws Exception {
-        if (EJBResponse.class.isInstance(response)) {
-
-            final EJBResponse res = (EJBResponse) response;
+        if (EJBResponse.class.isInstance(response) || BatchResponse.class.isInstance(response)) {
 
             try {
-                res.setMetaData(metaData);
-                res.writeExternal(out);
+                response.setMetaData(metaData);
+                response.writeExternal(out);
+                if (out instanceof EjbObjectOutputStream) {
+                    ((EjbObjectOutputStream) out).writeStreams();
+                }
             } catch (Throwable t) {
                 if (logger.isDebugEnabled()) {
                     logger.debug("Failed to write EjbResponse", t);
@@ -309,16 +446,7 @@ class EjbRequestHandler extends RequestHandler {
                     logger.info("Failed to write EjbResponse - Debug for stacktrace: " + t);
                 }
             } finally {
-                try {
-                    SystemInstance.get().getComponent(SecurityService.class).disassociate();
-                } catch (Throwable t) {
-                    logger.warning("Failed to disassociate security", t);
-                }
-
-                final CallContext call = CallContext.getCallContext();
-                if (null != call) {
-                    call.reset();
-                }
+                release();
 
                 EJBHomeProxyHandle.resolver.set(null);
                 EJBObjectProxyHandle.resolver.set(null);
@@ -328,6 +456,32 @@ class EjbRequestHandler extends RequestHandler {
         }
     }
 
+    /**
+     * Ends a phase of the request read on this thread, a no-op on the threads of a parallel batch.
+     */
+    private static void lap(final RequestPhase phase) {
+        final RequestInfos.RequestInfo info = RequestInfos.info();
+        if (info != null) {
+            info.lap(phase);
+        }
+    }
+
+    /**
+     * Clears what {@link #invoke} associated with the current thread.
+     */
+    private void release() {
+        try {
+            SystemInstance.get().getComponent(SecurityService.class).disassociate();
+        } catch (Throwable t) {
+            logger.warning("Failed to disassociate security", t);
+        }
+
+        final CallContext call = CallContext.getCallContext();
+        if (null != call) {
+            call.reset();
+        }
+    }
+
     protected void updateServer(final EJBRequest req, final EJBResponse res) {
         final CallContext callContext = CallContext.getCallContext();
         final BeanContext beanContext = callContext.getBeanContext();
@@ -581,6 +735,10 @@ class EjbRequestHandler extends RequestHandler {
     }
 
     private EJBResponse setResponseError(final EJBResponse res, final byte version, final Throwable error, final String message) {
+        return setResponseError(res, version, ResponseCodes.EJB_ERROR, error, message);
+    }
+
+    private EJBResponse setResponseError(final EJBResponse res, final byte version, final int code, final Throwable error, final String message) {
 
         //This is fatal for the client, but not the server.
         if (logger.isInfoEnabled()) {
@@ -590,7 +748,7 @@ class EjbRequestHandler extends RequestHandler {
         }
 
         final RemoteException re = new RemoteException(message, error);
-        res.setResponse(version, ResponseCodes.EJB_ERROR, new ThrowableArtifact(re));
+        res.setResponse(version, code, new ThrowableArtifact(re));
         return res;
     }
 }
@@ -69,6 +69,7 @@ public class EjbServer implements org.apache.openejb.server.ServerService, org.a
     public void stop() throws ServiceException {
         if (null != keepAlive) {
             keepAlive.stop();
+            server.stop();
         } else {
             logNotInitialized();
         }
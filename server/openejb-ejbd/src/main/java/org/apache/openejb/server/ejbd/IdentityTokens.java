@@ -0,0 +1,242 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.ejbd;
+
+import org.apache.openejb.client.IdentityToken;
+import org.apache.openejb.spi.SecurityService;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.security.auth.login.LoginException;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Signed and expiring tokens standing for the identity of a login, presented by the clients on their next requests
+ * and connections so the login modules run once per token instead of once per connection.
+ * <p/>
+ * A token is checked by its HMAC then mapped to the identity of its login. Both the live identities and
+ * the revoked tokens are bounded caches, an identity evicted from the cache is logged out and its token refused,
+ * so the client logs in again.
+ */
+class IdentityTokens {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final SecurityService securityService;
+    private final SecretKeySpec key;
+    private final long ttl;
+    private final int size;
+
+    private final Map<String, Session> sessions;
+    private final Map<String, Long> revoked;
+
+    private final ThreadLocal<Mac> macs = new ThreadLocal<Mac>() {
+        @Override
+        protected Mac initialValue() {
+            try {
+                final Mac mac = Mac.getInstance(ALGORITHM);
+                mac.init(key);
+                return mac;
+            } catch (final GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    /**
+     * @param secret shared by the servers accepting the same tokens, random if null
+     * @param ttl    lifetime of a token in milliseconds
+     * @param size   max number of live identities and of revoked tokens remembered
+     */
+    IdentityTokens(final SecurityService securityService, final String secret, final long ttl, final int size) {
+        this.securityService = securityService;
+        this.ttl = ttl;
+        this.size = size;
+
+        final byte[] bytes;
+        if (secret != null) {
+            bytes = secret.getBytes(StandardCharsets.UTF_8);
+        } else {
+            bytes = new byte[32];
+            new SecureRandom().nextBytes(bytes);
+        }
+        key = new SecretKeySpec(bytes, ALGORITHM);
+        macs.get(); // fail fast if the algorithm is missing
+
+        sessions = new LinkedHashMap<String, Session>() {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Session> eldest) {
+                if (size() > IdentityTokens.this.size) {
+                    logout(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+        revoked = new LinkedHashMap<String, Long>() {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Long> eldest) {
+                return size() > IdentityTokens.this.size;
+            }
+        };
+    }
+
+    /**
+     * @param identity what the login of this user returned
+     */
+    IdentityToken issue(final String user, final Object identity) {
+        return issue(user, identity, System.currentTimeMillis());
+    }
+
+    IdentityToken issue(final String user, final Object identity, final long now) {
+        final String id = UUID.randomUUID().toString();
+        final String name = user == null ? "" : user;
+        final IdentityToken token = new IdentityToken(id, name, now, now + ttl, sign(id, name, now, now + ttl));
+
+        synchronized (sessions) {
+            expire(now);
+            sessions.put(id, new Session(identity, token.getExpiry()));
+        }
+        return token;
+    }
+
+    /**
+     * @return the identity of the login the token was issued for
+     */
+    Object validate(final IdentityToken token) throws LoginException {
+        return validate(token, System.currentTimeMillis());
+    }
+
+    Object validate(final IdentityToken token, final long now) throws LoginException {
+        verify(token);
+        if (token.getExpiry() <= now) {
+            throw new LoginException("Identity token expired: " + token);
+        }
+
+        synchronized (sessions) {
+            if (revoked.containsKey(token.getId())) {
+                throw new LoginException("Identity token revoked: " + token);
+            }
+
+            final Session session = sessions.get(token.getId());
+            if (session == null) {
+                throw new LoginException("Identity token is not known by this server: " + token);
+            }
+            return session.identity;
+        }
+    }
+
+    /**
+     * Refuses the token until it expires and logs out its identity.
+     */
+    void revoke(final IdentityToken token) throws LoginException {
+        verify(token);
+
+        final Session session;
+        synchronized (sessions) {
+            revoked.put(token.getId(), token.getExpiry());
+            session = sessions.remove(token.getId());
+        }
+        if (session != null) {
+            logout(session);
+        }
+    }
+
+    int getSessionCount() {
+        synchronized (sessions) {
+            return sessions.size();
+        }
+    }
+
+    int getRevokedCount() {
+        synchronized (sessions) {
+            return revoked.size();
+        }
+    }
+
+    private void verify(final IdentityToken token) throws LoginException {
+        final byte[] expected = sign(token.getId(), token.getUser(), token.getIssued(), token.getExpiry());
+        if (!MessageDigest.isEqual(expected, token.getSignature())) {
+            throw new LoginException("Invalid identity token signature: " + token);
+        }
+    }
+
+    /**
+     * Tokens share the same lifetime so the eldest entries expire first.
+     */
+    private void expire(final long now) {
+        final Iterator<Session> sessionIterator = sessions.values().iterator();
+        while (sessionIterator.hasNext()) {
+            final Session session = sessionIterator.next();
+            if (session.expiry > now) {
+                break;
+            }
+            sessionIterator.remove();
+            logout(session);
+        }
+
+        final Iterator<Long> revokedIterator = revoked.values().iterator();
+        while (revokedIterator.hasNext() && revokedIterator.next() <= now) {
+            revokedIterator.remove();
+        }
+    }
+
+    private byte[] sign(final String id, final String user, final long issued, final long expiry) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try {
+            final DataOutputStream out = new DataOutputStream(bytes);
+            out.writeUTF(id);
+            out.writeUTF(user);
+            out.writeLong(issued);
+            out.writeLong(expiry);
+        } catch (final IOException e) {
+            throw new IllegalStateException(e); // in memory
+        }
+        return macs.get().doFinal(bytes.toByteArray());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void logout(final Session session) {
+        try {
+            securityService.logout(session.identity);
+        } catch (final LoginException e) {
+            // already logged out
+        } catch (final RuntimeException e) {
+            EjbDaemon.logger.debug("Can't logout an expired identity token", e);
+        }
+    }
+
+    private static final class Session {
+        private final Object identity;
+        private final long expiry;
+
+        private Session(final Object identity, final long expiry) {
+            this.identity = identity;
+            this.expiry = expiry;
+        }
+    }
+}
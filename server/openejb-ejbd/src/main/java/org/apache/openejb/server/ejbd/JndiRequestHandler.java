@@ -134,6 +134,7 @@ class JndiRequestHandler extends RequestHandler {
             req.setMetaData(metaData);
             req.readExternal(in);
         } catch (Throwable e) {
+            EjbDaemon.readFailed(in);
             res.setResponseCode(ResponseCodes.JNDI_NAMING_EXCEPTION);
             final NamingException namingException = new NamingException("Could not read jndi request");
             namingException.setRootCause(e);
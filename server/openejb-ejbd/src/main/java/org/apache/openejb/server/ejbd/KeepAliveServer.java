@@ -16,6 +16,7 @@
  */
 package org.apache.openejb.server.ejbd;
 
+import org.apache.openejb.client.ConnectionDictionary;
 import org.apache.openejb.client.FlushableGZIPOutputStream;
 import org.apache.openejb.client.KeepAliveStyle;
 import org.apache.openejb.loader.SystemInstance;
@@ -204,6 +205,7 @@ public class KeepAliveServer implements ServerService {
         private final Socket socket;
         private InputStream in = null;
         private OutputStream out = null;
+        private final ConnectionDictionary dictionary = new ConnectionDictionary();
 
         private Session(final KeepAliveServer kas, final Socket socket) {
             this.kas = kas;
@@ -223,6 +225,7 @@ public class KeepAliveServer implements ServerService {
 
         private void service() throws ServiceException, IOException {
             this.kas.addSession(this);
+            RequestInfos.info().setDictionary(this.dictionary);
 
             int i = -1;
 
@@ -256,6 +259,16 @@ public class KeepAliveServer implements ServerService {
                     }
                     final KeepAliveStyle style = KeepAliveStyle.values()[i];
 
+                    if (!ServicePool.acquireRequest()) {
+                        // the server is busy, resets the connection without reading the request
+                        try {
+                            socket.setSoLinger(true, 0);
+                        } catch (SocketException e) {
+                            //ignore
+                        }
+                        break;
+                    }
+
                     final Lock l2 = this.lock;
                     l2.lock();
 
@@ -283,6 +296,7 @@ public class KeepAliveServer implements ServerService {
                     } finally {
                         this.lastRequest.set(System.currentTimeMillis());
                         l2.unlock();
+                        ServicePool.releaseRequest();
                     }
                 }
             } catch (ArrayIndexOutOfBoundsException e) {
@@ -17,6 +17,7 @@
 package org.apache.openejb.server.ejbd;
 
 import org.apache.openejb.client.AuthenticationResponse;
+import org.apache.openejb.client.IdentityToken;
 import org.apache.openejb.client.LogoutRequest;
 import org.apache.openejb.client.LogoutResponse;
 import org.apache.openejb.client.ProtocolMetaData;
@@ -59,7 +60,12 @@ class LogoutRequestHandler extends RequestHandler {
         try {
             req.readExternal(in);
 
-            SystemInstance.get().getComponent(SecurityService.class).logout(req.getSecurityIdentity());
+            final Object identity = req.getSecurityIdentity();
+            if (IdentityToken.class.isInstance(identity) && daemon.getIdentityTokens() != null) {
+                daemon.getIdentityTokens().revoke(IdentityToken.class.cast(identity));
+            } else {
+                SystemInstance.get().getComponent(SecurityService.class).logout(identity);
+            }
 
             res.setResponseCode(ResponseCodes.LOGOUT_SUCCESS);
         } catch (final Throwable t) {
@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.ejbd;
+
+import org.apache.openejb.OpenEJB;
+import org.apache.openejb.assembler.classic.Assembler;
+import org.apache.openejb.client.AsyncView;
+import org.apache.openejb.client.ClientFuture;
+import org.apache.openejb.config.ConfigurationFactory;
+import org.apache.openejb.core.ServerFederation;
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.StatelessBean;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.server.ServiceDaemon;
+import org.apache.openejb.server.ServicePool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ejb.AsyncResult;
+import javax.ejb.Asynchronous;
+import javax.ejb.EJBException;
+import javax.ejb.Remote;
+import javax.naming.Context;
+import javax.naming.InitialContext;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsynchronousRemoteTest {
+    private static final int CALLS = 5;
+    private static final long DELAY = 500;
+
+    private ServiceDaemon serviceDaemon;
+    private Object proxy;
+
+    @Before
+    public void start() throws Exception {
+        final EjbServer ejbServer = new EjbServer();
+        final KeepAliveServer keepAliveServer = new KeepAliveServer(ejbServer, false);
+
+        final Properties initProps = new Properties();
+        initProps.setProperty("openejb.deployments.classpath.include", "");
+        initProps.setProperty("openejb.deployments.classpath.filter.descriptors", "true");
+        OpenEJB.init(initProps, new ServerFederation());
+        ejbServer.init(new Properties());
+
+        final ServicePool pool = new ServicePool(keepAliveServer, 10, 5000, true);
+        serviceDaemon = new ServiceDaemon(pool, 0, "localhost");
+        serviceDaemon.start();
+
+        final Assembler assembler = SystemInstance.get().getComponent(Assembler.class);
+        final ConfigurationFactory config = new ConfigurationFactory();
+
+        final EjbJar ejbJar = new EjbJar();
+        ejbJar.addEnterpriseBean(new StatelessBean(SlowBean.class));
+        assembler.createApplication(config.configureApplication(ejbJar));
+
+        final Properties props = new Properties();
+        props.put(Context.INITIAL_CONTEXT_FACTORY, "org.apache.openejb.client.RemoteInitialContextFactory");
+        props.put(Context.PROVIDER_URL, "ejbd://127.0.0.1:" + serviceDaemon.getPort());
+        proxy = new InitialContext(props).lookup("SlowBeanRemote");
+    }
+
+    @After
+    public void stop() throws Exception {
+        serviceDaemon.stop();
+        OpenEJB.destroy();
+    }
+
+    @Test
+    public void asynchronousMethods() throws Exception {
+        final Slow slow = (Slow) proxy;
+
+        final long start = System.nanoTime();
+        final List<Future<String>> futures = new ArrayList<Future<String>>();
+        for (int i = 0; i < CALLS; i++) {
+            futures.add(slow.echo("call " + i));
+        }
+        for (int i = 0; i < CALLS; i++) {
+            assertEquals("call " + i, futures.get(i).get(10, TimeUnit.SECONDS));
+        }
+        assertTrue("calls ran concurrently", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < CALLS * DELAY);
+
+        // completion callback, no get()
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<Object> result = new AtomicReference<Object>();
+        ClientFuture.class.cast(slow.echo("callback")).whenComplete(new ClientFuture.Callback<String>() {
+            @Override
+            public void completed(final String value) {
+                result.set(value);
+                latch.countDown();
+            }
+
+            @Override
+            public void failed(final Throwable error) {
+                result.set(error);
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals("callback", result.get());
+
+        try {
+            slow.echo(null).get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof EJBException);
+        }
+    }
+
+    @Test
+    public void asyncView() throws Exception {
+        final SlowAsync slow = AsyncView.of(proxy, SlowAsync.class);
+
+        final long start = System.nanoTime();
+        final List<ClientFuture<Integer>> futures = new ArrayList<ClientFuture<Integer>>();
+        for (int i = 0; i < CALLS; i++) {
+            futures.add(slow.twice(i));
+        }
+        for (int i = 0; i < CALLS; i++) {
+            assertEquals(2 * i, futures.get(i).get(10, TimeUnit.SECONDS).intValue());
+        }
+        assertTrue("calls ran concurrently", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < CALLS * DELAY);
+
+        // the blocking interface still works on the same connections
+        assertEquals(4, ((Slow) proxy).twice(2));
+    }
+
+    @Test
+    public void fanOutLargerThanThePool() throws Exception {
+        final SlowAsync slow = AsyncView.of(proxy, SlowAsync.class);
+
+        final int calls = 4 * CALLS; // default pool size is 5, the extra calls wait for a connection to be released
+        final List<ClientFuture<Integer>> futures = new ArrayList<ClientFuture<Integer>>();
+        for (int i = 0; i < calls; i++) {
+            futures.add(slow.twice(i));
+        }
+        assertFalse("the caller didn't wait for a pooled connection", futures.get(0).isDone());
+        for (int i = 0; i < calls; i++) {
+            assertEquals(2 * i, futures.get(i).get(10, TimeUnit.SECONDS).intValue());
+        }
+    }
+
+    @Remote
+    public interface Slow {
+        Future<String> echo(String value);
+
+        int twice(int value);
+    }
+
+    public interface SlowAsync {
+        ClientFuture<Integer> twice(int value);
+    }
+
+    public static class SlowBean implements Slow {
+        @Override
+        @Asynchronous
+        public Future<String> echo(final String value) {
+            if (value == null) {
+                throw new IllegalArgumentException("null");
+            }
+            pause();
+            return new AsyncResult<String>(value);
+        }
+
+        @Override
+        public int twice(final int value) {
+            pause();
+            return 2 * value;
+        }
+
+        private static void pause() {
+            try {
+                Thread.sleep(DELAY);
+            } catch (final InterruptedException e) {
+                Thread.interrupted();
+            }
+        }
+    }
+}
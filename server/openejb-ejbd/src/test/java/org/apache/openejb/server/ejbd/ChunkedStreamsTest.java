@@ -0,0 +1,287 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.ejbd;
+
+import org.apache.openejb.OpenEJB;
+import org.apache.openejb.assembler.classic.Assembler;
+import org.apache.openejb.config.ConfigurationFactory;
+import org.apache.openejb.core.ServerFederation;
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.StatelessBean;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.server.ServiceDaemon;
+import org.apache.openejb.server.ServicePool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ejb.Remote;
+import javax.naming.Context;
+import javax.naming.InitialContext;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ChunkedStreamsTest {
+    private static final int SIZE = 16 * 1024 * 1024;
+
+    private ServiceDaemon serviceDaemon;
+    private Reports reports;
+
+    @Before
+    public void start() throws Exception {
+        final EjbServer ejbServer = new EjbServer();
+        final KeepAliveServer keepAliveServer = new KeepAliveServer(ejbServer, false);
+
+        final Properties initProps = new Properties();
+        initProps.setProperty("openejb.deployments.classpath.include", "");
+        initProps.setProperty("openejb.deployments.classpath.filter.descriptors", "true");
+        OpenEJB.init(initProps, new ServerFederation());
+        ejbServer.init(new Properties());
+
+        final ServicePool pool = new ServicePool(keepAliveServer, 10, 5000, true);
+        serviceDaemon = new ServiceDaemon(pool, 0, "localhost");
+        serviceDaemon.start();
+
+        final Assembler assembler = SystemInstance.get().getComponent(Assembler.class);
+        final ConfigurationFactory config = new ConfigurationFactory();
+
+        final EjbJar ejbJar = new EjbJar();
+        ejbJar.addEnterpriseBean(new StatelessBean(ReportsBean.class));
+        assembler.createApplication(config.configureApplication(ejbJar));
+
+        final Properties props = new Properties();
+        props.put(Context.INITIAL_CONTEXT_FACTORY, "org.apache.openejb.client.RemoteInitialContextFactory");
+        props.put(Context.PROVIDER_URL, "ejbd://127.0.0.1:" + serviceDaemon.getPort());
+        reports = (Reports) new InitialContext(props).lookup("ReportsBeanRemote");
+    }
+
+    @After
+    public void stop() throws Exception {
+        serviceDaemon.stop();
+        OpenEJB.destroy();
+    }
+
+    @Test
+    public void streamedResult() throws Exception {
+        final InputStream report = reports.report(SIZE);
+        final byte[] buffer = new byte[8192];
+        long position = 0;
+        int read;
+        while ((read = report.read(buffer)) >= 0) {
+            for (int i = 0; i < read; i++) {
+                assertEquals(Generated.at(position++), buffer[i]);
+            }
+        }
+        report.close();
+        assertEquals(SIZE, position);
+
+        // the connection is usable again
+        assertEquals("ok", reports.echo("ok"));
+    }
+
+    @Test
+    public void closedBeforeTheEnd() throws Exception {
+        final InputStream report = reports.report(SIZE);
+        assertEquals(Generated.at(0), (byte) report.read());
+        report.close();
+
+        try {
+            report.read();
+            fail();
+        } catch (final IOException e) {
+            // closed
+        }
+        assertEquals("ok", reports.echo("ok"));
+    }
+
+    @Test
+    public void streamedArgument() throws Exception {
+        assertEquals(SIZE, reports.count(new Generated(SIZE)));
+        assertEquals(1, reports.countFirst(new Generated(SIZE))); // rest skipped by the server
+        assertEquals("ok", reports.echo("ok"));
+    }
+
+    @Test
+    public void streamedObjects() throws Exception {
+        final Iterator<String> lines = reports.lines(1000);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(lines.hasNext());
+            assertEquals("line " + i, lines.next());
+        }
+        assertFalse(lines.hasNext());
+        try {
+            lines.next();
+            fail();
+        } catch (final NoSuchElementException e) {
+            // ended
+        }
+
+        final Iterator<String> failing = reports.failing(300);
+        int count = 0;
+        try {
+            while (failing.hasNext()) {
+                failing.next();
+                count++;
+            }
+            fail();
+        } catch (final IllegalStateException e) {
+            assertEquals("failed after 300", e.getMessage());
+        }
+        assertEquals(300, count);
+        assertEquals("ok", reports.echo("ok"));
+    }
+
+    @Test
+    public void droppedIterator() throws Exception {
+        final Reports single;
+        System.setProperty("openejb.client.connection.pool.size", "1");
+        try {
+            final Properties props = new Properties();
+            props.put(Context.INITIAL_CONTEXT_FACTORY, "org.apache.openejb.client.RemoteInitialContextFactory");
+            props.put(Context.PROVIDER_URL, "ejbd://localhost:" + serviceDaemon.getPort()); // a pool of its own
+            single = (Reports) new InitialContext(props).lookup("ReportsBeanRemote");
+        } finally {
+            System.clearProperty("openejb.client.connection.pool.size");
+        }
+
+        Iterator<String> lines = single.lines(Integer.MAX_VALUE);
+        assertEquals("line 0", lines.next());
+        lines = null; // neither read to the end nor closed
+
+        // the only connection of the pool is discarded once the iterator is collected
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        assertEquals("ok", single.echo("ok"));
+    }
+
+    @Remote
+    public interface Reports {
+        InputStream report(int size);
+
+        long count(InputStream in) throws IOException;
+
+        long countFirst(InputStream in) throws IOException;
+
+        Iterator<String> lines(int count);
+
+        Iterator<String> failing(int before);
+
+        String echo(String value);
+    }
+
+    public static class ReportsBean implements Reports {
+        @Override
+        public InputStream report(final int size) {
+            return new Generated(size);
+        }
+
+        @Override
+        public long count(final InputStream in) throws IOException {
+            final byte[] buffer = new byte[8192];
+            long count = 0;
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] != Generated.at(count++)) {
+                        throw new IOException("Unexpected byte at " + (count - 1));
+                    }
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public long countFirst(final InputStream in) throws IOException {
+            return in.read() >= 0 ? 1 : 0;
+        }
+
+        @Override
+        public Iterator<String> lines(final int count) {
+            return new Lines(count, -1);
+        }
+
+        @Override
+        public Iterator<String> failing(final int before) {
+            return new Lines(Integer.MAX_VALUE, before);
+        }
+
+        @Override
+        public String echo(final String value) {
+            return value;
+        }
+    }
+
+    /**
+     * Bytes computed on the fly, never held in memory.
+     */
+    public static class Generated extends InputStream {
+        private final long size;
+        private long position;
+
+        public Generated(final long size) {
+            this.size = size;
+        }
+
+        public static byte at(final long position) {
+            return (byte) (position % 251);
+        }
+
+        @Override
+        public int read() {
+            return position < size ? at(position++) & 0xff : -1;
+        }
+    }
+
+    public static class Lines implements Iterator<String> {
+        private final int count;
+        private final int failure;
+        private int next;
+
+        public Lines(final int count, final int failure) {
+            this.count = count;
+            this.failure = failure;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == failure) {
+                throw new IllegalStateException("failed after " + failure);
+            }
+            return next < count;
+        }
+
+        @Override
+        public String next() {
+            return "line " + next++;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
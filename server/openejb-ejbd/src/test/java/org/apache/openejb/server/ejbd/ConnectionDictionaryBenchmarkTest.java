@@ -0,0 +1,304 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.ejbd;
+
+import org.apache.openejb.OpenEJB;
+import org.apache.openejb.assembler.classic.Assembler;
+import org.apache.openejb.config.ConfigurationFactory;
+import org.apache.openejb.core.ServerFederation;
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.StatelessBean;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.server.ServerService;
+import org.apache.openejb.server.ServiceDaemon;
+import org.apache.openejb.server.ServiceException;
+import org.apache.openejb.server.ServicePool;
+import org.junit.Test;
+
+import javax.ejb.Remote;
+import javax.naming.Context;
+import javax.naming.InitialContext;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Bytes on the wire and round trip time of small calls with and without the connection dictionary (protocol 4.7).
+ */
+public class ConnectionDictionaryBenchmarkTest {
+    private static final String DICTIONARY = "openejb.client.connection.dictionary";
+    private static final int CALLS = 2000;
+
+    private static final AtomicLong RESPONSES = new AtomicLong();
+    private static final AtomicLong REQUESTS = new AtomicLong();
+
+    @Test
+    public void benchmark() throws Exception {
+        final EjbServer ejbServer = new EjbServer();
+        final KeepAliveServer keepAliveServer = new KeepAliveServer(ejbServer, false);
+
+        final Properties initProps = new Properties();
+        initProps.setProperty("openejb.deployments.classpath.include", "");
+        initProps.setProperty("openejb.deployments.classpath.filter.descriptors", "true");
+        OpenEJB.init(initProps, new ServerFederation());
+        ejbServer.init(new Properties());
+
+        final ServicePool pool = new ServicePool(new Counting(keepAliveServer), 10, 5000, true);
+        final ServiceDaemon serviceDaemon = new ServiceDaemon(pool, 0, "localhost");
+        serviceDaemon.start();
+
+        final String dictionary = System.getProperty(DICTIONARY);
+        try {
+            final Assembler assembler = SystemInstance.get().getComponent(Assembler.class);
+            final ConfigurationFactory config = new ConfigurationFactory();
+
+            final EjbJar ejbJar = new EjbJar();
+            ejbJar.addEnterpriseBean(new StatelessBean(QuoteBean.class));
+            assembler.createApplication(config.configureApplication(ejbJar));
+
+            final Properties props = new Properties();
+            props.put(Context.INITIAL_CONTEXT_FACTORY, "org.apache.openejb.client.RemoteInitialContextFactory");
+            props.put(Context.PROVIDER_URL, "ejbd://127.0.0.1:" + serviceDaemon.getPort());
+            final Quotes quotes = (Quotes) new InitialContext(props).lookup("QuoteBeanRemote");
+
+            System.setProperty(DICTIONARY, "false");
+            final Result classic = run(quotes);
+
+            System.setProperty(DICTIONARY, "true");
+            final Result compact = run(quotes);
+
+            Logger.getLogger(ConnectionDictionaryBenchmarkTest.class.getName()).info(String.format("%-12s %10s %10s %10s%n%s%n%s",
+                "Encoding", "Request", "Response", "Avg (us)", classic.toString("classic"), compact.toString("dictionary")));
+
+            assertTrue(compact.requests < classic.requests);
+            assertTrue(compact.responses < classic.responses);
+        } finally {
+            if (dictionary == null) {
+                System.clearProperty(DICTIONARY);
+            } else {
+                System.setProperty(DICTIONARY, dictionary);
+            }
+            serviceDaemon.stop();
+            OpenEJB.destroy();
+        }
+    }
+
+    private static Result run(final Quotes quotes) {
+        // warm up, the first calls of a connection fill its dictionary
+        for (int i = 0; i < 100; i++) {
+            call(quotes, i);
+        }
+
+        final long requests = REQUESTS.get();
+        final long responses = RESPONSES.get();
+        final long start = System.nanoTime();
+        for (int i = 0; i < CALLS; i++) {
+            call(quotes, i);
+        }
+        final long time = System.nanoTime() - start;
+        return new Result((REQUESTS.get() - requests) / CALLS, (RESPONSES.get() - responses) / CALLS, TimeUnit.NANOSECONDS.toMicros(time / CALLS));
+    }
+
+    private static void call(final Quotes quotes, final int i) {
+        assertEquals("ABC", quotes.symbol("abc"));
+        assertEquals(2 * i, quotes.quote(new Quote("ABC", i)).getPrice());
+    }
+
+    // per call (2 invocations)
+    private static final class Result {
+        private final long requests;
+        private final long responses;
+        private final long average;
+
+        private Result(final long requests, final long responses, final long average) {
+            this.requests = requests;
+            this.responses = responses;
+            this.average = average;
+        }
+
+        public String toString(final String name) {
+            return String.format("%-12s %10s %10s %10s", name, requests, responses, average);
+        }
+    }
+
+    @Remote
+    public interface Quotes {
+        String symbol(String value);
+
+        Quote quote(Quote quote);
+    }
+
+    public static class QuoteBean implements Quotes {
+        @Override
+        public String symbol(final String value) {
+            return value.toUpperCase();
+        }
+
+        @Override
+        public Quote quote(final Quote quote) {
+            return new Quote(quote.getSymbol(), quote.getPrice() * 2);
+        }
+    }
+
+    public static class Quote implements Serializable {
+        private final String symbol;
+        private final long price;
+
+        public Quote(final String symbol, final long price) {
+            this.symbol = symbol;
+            this.price = price;
+        }
+
+        public String getSymbol() {
+            return symbol;
+        }
+
+        public long getPrice() {
+            return price;
+        }
+    }
+
+    // counts what the server receives (requests) and sends (responses)
+    private static class Counting implements ServerService {
+        private final ServerService delegate;
+
+        private Counting(final ServerService delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void service(final Socket socket) throws ServiceException, IOException {
+            delegate.service(new CountingSocket(socket));
+        }
+
+        @Override
+        public void service(final InputStream in, final OutputStream out) throws ServiceException, IOException {
+            delegate.service(in, out);
+        }
+
+        @Override
+        public void init(final Properties props) throws Exception {
+            delegate.init(props);
+        }
+
+        @Override
+        public void start() throws ServiceException {
+            delegate.start();
+        }
+
+        @Override
+        public void stop() throws ServiceException {
+            delegate.stop();
+        }
+
+        @Override
+        public String getName() {
+            return delegate.getName();
+        }
+
+        @Override
+        public String getIP() {
+            return delegate.getIP();
+        }
+
+        @Override
+        public int getPort() {
+            return delegate.getPort();
+        }
+    }
+
+    private static class CountingSocket extends Socket {
+        private final Socket socket;
+
+        private CountingSocket(final Socket socket) {
+            this.socket = socket;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return new FilterInputStream(socket.getInputStream()) {
+                @Override
+                public int read() throws IOException {
+                    final int read = super.read();
+                    if (read >= 0) {
+                        REQUESTS.incrementAndGet();
+                    }
+                    return read;
+                }
+
+                @Override
+                public int read(final byte[] b, final int off, final int len) throws IOException {
+                    final int read = super.read(b, off, len);
+                    if (read > 0) {
+                        REQUESTS.addAndGet(read);
+                    }
+                    return read;
+                }
+            };
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            return new FilterOutputStream(socket.getOutputStream()) {
+                @Override
+                public void write(final int b) throws IOException {
+                    RESPONSES.incrementAndGet();
+                    out.write(b);
+                }
+
+                @Override
+                public void write(final byte[] b, final int off, final int len) throws IOException {
+                    RESPONSES.addAndGet(len);
+                    out.write(b, off, len);
+                }
+            };
+        }
+
+        @Override
+        public InetAddress getInetAddress() {
+            return socket.getInetAddress();
+        }
+
+        @Override
+        public SocketAddress getRemoteSocketAddress() {
+            return socket.getRemoteSocketAddress();
+        }
+
+        @Override
+        public boolean isClosed() {
+            return socket.isClosed();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            socket.close();
+        }
+    }
+}
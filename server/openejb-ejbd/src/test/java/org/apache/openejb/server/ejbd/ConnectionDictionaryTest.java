@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.ejbd;
+
+import org.apache.openejb.OpenEJB;
+import org.apache.openejb.assembler.classic.Assembler;
+import org.apache.openejb.client.EjbObjectInputStream;
+import org.apache.openejb.client.event.ConnectionOpened;
+import org.apache.openejb.client.event.Observes;
+import org.apache.openejb.client.Client;
+import org.apache.openejb.config.ConfigurationFactory;
+import org.apache.openejb.core.ServerFederation;
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.StatelessBean;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.server.ServiceDaemon;
+import org.apache.openejb.server.ServicePool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ejb.EJBException;
+import javax.ejb.Remote;
+import javax.naming.Context;
+import javax.naming.InitialContext;
+import java.io.Serializable;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ConnectionDictionaryTest {
+    private static final String BLACKLIST = "tomee.serialization.class.blacklist";
+
+    private final Connections connections = new Connections();
+
+    private ServiceDaemon serviceDaemon;
+    private String blacklist;
+
+    @Before
+    public void start() throws Exception {
+        blacklist = System.getProperty(BLACKLIST);
+        System.setProperty(BLACKLIST, Refused.class.getName());
+        EjbObjectInputStream.reloadResolverConfig();
+        Client.addEventObserver(connections);
+
+        final EjbServer ejbServer = new EjbServer();
+        final KeepAliveServer keepAliveServer = new KeepAliveServer(ejbServer, false);
+
+        final Properties initProps = new Properties();
+        initProps.setProperty("openejb.deployments.classpath.include", "");
+        initProps.setProperty("openejb.deployments.classpath.filter.descriptors", "true");
+        OpenEJB.init(initProps, new ServerFederation());
+        ejbServer.init(new Properties());
+
+        final ServicePool pool = new ServicePool(keepAliveServer, 10, 5000, true);
+        serviceDaemon = new ServiceDaemon(pool, 0, "localhost");
+        serviceDaemon.start();
+
+        final EjbJar ejbJar = new EjbJar();
+        ejbJar.addEnterpriseBean(new StatelessBean(EchoBean.class));
+        SystemInstance.get().getComponent(Assembler.class).createApplication(new ConfigurationFactory().configureApplication(ejbJar));
+    }
+
+    @After
+    public void stop() throws Exception {
+        Client.removeEventObserver(connections);
+        if (blacklist == null) {
+            System.clearProperty(BLACKLIST);
+        } else {
+            System.setProperty(BLACKLIST, blacklist);
+        }
+        EjbObjectInputStream.reloadResolverConfig();
+        serviceDaemon.stop();
+        OpenEJB.destroy();
+    }
+
+    @Test
+    public void connectionIsClosedAfterARequestFailedToBeRead() throws Exception {
+        final Properties props = new Properties();
+        props.put(Context.INITIAL_CONTEXT_FACTORY, "org.apache.openejb.client.RemoteInitialContextFactory");
+        props.put(Context.PROVIDER_URL, "ejbd://127.0.0.1:" + serviceDaemon.getPort());
+        final Echo echo = (Echo) new InitialContext(props).lookup("EchoBeanRemote");
+
+        assertEquals("a", echo.echo("a"));
+        assertEquals(1, connections.opened.get());
+
+        try {
+            echo.echo(new Refused());
+            fail();
+        } catch (final EJBException e) {
+            // the server stopped reading the request in the middle of it
+        }
+
+        // the descriptors the failed request defined after the refused one are unknown to the server,
+        // the next request goes through a new connection with its own dictionary
+        assertEquals("b", echo.echo("b"));
+        assertEquals(2, connections.opened.get());
+        assertEquals("c", echo.echo(new Wrapper("c")).toString());
+        assertEquals(2, connections.opened.get());
+    }
+
+    @Remote
+    public interface Echo {
+        Object echo(Object value);
+    }
+
+    public static class EchoBean implements Echo {
+        @Override
+        public Object echo(final Object value) {
+            return value;
+        }
+    }
+
+    public static class Refused implements Serializable {
+        // defined after the refused class
+        private final Wrapper wrapper = new Wrapper("refused");
+    }
+
+    public static class Wrapper implements Serializable {
+        private final String value;
+
+        public Wrapper(final String value) {
+            this.value = value;
+        }
+
+        @Override
+        public String toString() {
+            return value;
+        }
+    }
+
+    public static class Connections {
+        private final AtomicInteger opened = new AtomicInteger();
+
+        public void opened(@Observes final ConnectionOpened event) {
+            opened.incrementAndGet();
+        }
+    }
+}
@@ -220,6 +220,7 @@ public class FullPoolFailoverTest extends TestCase {
         }
 
         OpenEJB.destroy();
+        System.clearProperty(org.apache.openejb.client.SocketConnectionFactory.PROPERTY_POOL_SIZE);
     }
 
     private final List<ServiceDaemon> daemons = new ArrayList<ServiceDaemon>();
@@ -0,0 +1,349 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.ejbd;
+
+import org.apache.openejb.OpenEJB;
+import org.apache.openejb.assembler.classic.Assembler;
+import org.apache.openejb.client.AuthenticationRequest;
+import org.apache.openejb.client.AuthenticationResponse;
+import org.apache.openejb.client.ClusterMetaData;
+import org.apache.openejb.client.ClusterRequest;
+import org.apache.openejb.client.ClusterResponse;
+import org.apache.openejb.client.ConnectionDictionary;
+import org.apache.openejb.client.IdentityToken;
+import org.apache.openejb.client.JNDIContext;
+import org.apache.openejb.client.KeepAliveStyle;
+import org.apache.openejb.client.ProtocolMetaData;
+import org.apache.openejb.client.RequestType;
+import org.apache.openejb.client.ResponseCodes;
+import org.apache.openejb.config.ConfigurationFactory;
+import org.apache.openejb.core.ServerFederation;
+import org.apache.openejb.core.security.AbstractSecurityService;
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.StatelessBean;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.server.ServiceDaemon;
+import org.apache.openejb.server.ServicePool;
+import org.apache.openejb.spi.SecurityService;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.annotation.Resource;
+import javax.ejb.Remote;
+import javax.ejb.SessionContext;
+import javax.naming.AuthenticationException;
+import javax.naming.Context;
+import javax.naming.InitialContext;
+import javax.security.auth.Subject;
+import javax.security.auth.callback.Callback;
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.auth.callback.NameCallback;
+import javax.security.auth.callback.PasswordCallback;
+import javax.security.auth.login.Configuration;
+import javax.security.auth.login.LoginException;
+import javax.security.auth.spi.LoginModule;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class IdentityTokenTest {
+
+    private ServiceDaemon serviceDaemon;
+    private EjbServer ejbServer;
+
+    @BeforeClass
+    public static void initJAAS() {
+        System.setProperty("java.security.auth.login.config", IdentityTokenTest.class.getResource("/login.config").getFile());
+        Configuration.getConfiguration().refresh();
+    }
+
+    @AfterClass
+    public static void resetJAAS() {
+        System.clearProperty("java.security.auth.login.config");
+    }
+
+    @Before
+    public void start() throws Exception {
+        start(new Properties());
+    }
+
+    private void start(final Properties serverProps) throws Exception {
+        ejbServer = new EjbServer();
+        final KeepAliveServer keepAliveServer = new KeepAliveServer(ejbServer, false);
+
+        final Properties initProps = new Properties();
+        initProps.setProperty("openejb.deployments.classpath.include", "");
+        initProps.setProperty("openejb.deployments.classpath.filter.descriptors", "true");
+        OpenEJB.init(initProps, new ServerFederation());
+
+        serverProps.setProperty("identity.token", "true");
+        ejbServer.init(serverProps);
+
+        final ServicePool pool = new ServicePool(keepAliveServer, 10, 5000, true);
+        serviceDaemon = new ServiceDaemon(pool, 0, "localhost");
+        serviceDaemon.start();
+
+        final Assembler assembler = SystemInstance.get().getComponent(Assembler.class);
+        final ConfigurationFactory config = new ConfigurationFactory();
+
+        final EjbJar ejbJar = new EjbJar();
+        ejbJar.addEnterpriseBean(new StatelessBean(WhoAmIBean.class));
+        assembler.createApplication(config.configureApplication(ejbJar));
+
+        CountingLoginModule.LOGINS.set(0);
+    }
+
+    @After
+    public void stop() throws Exception {
+        serviceDaemon.stop();
+        OpenEJB.destroy();
+    }
+
+    @Test
+    public void loginOncePerCredentials() throws Exception {
+        final List<Context> contexts = new ArrayList<Context>();
+        for (int i = 0; i < 3; i++) {
+            final Context context = context("foo", "bar", true);
+            assertEquals("foo", WhoAmI.class.cast(context.lookup("WhoAmIBeanRemote")).whoAmI());
+            contexts.add(context);
+        }
+        assertEquals(1, CountingLoginModule.LOGINS.get());
+
+        final IdentityTokens tokens = ejbServer.server.getIdentityTokens();
+        for (final Context context : contexts) {
+            assertEquals(1, tokens.getSessionCount());
+            context.close();
+        }
+        // the last context logged out the shared token
+        assertEquals(0, tokens.getSessionCount());
+        assertEquals(1, tokens.getRevokedCount());
+
+        try {
+            context("foo", "wrong", true);
+            fail();
+        } catch (final AuthenticationException e) {
+            // other credentials, not the cached token
+        }
+        assertEquals(1, CountingLoginModule.LOGINS.get());
+    }
+
+    @Test
+    public void logoutRevokesTheToken() throws Exception {
+        final Context context = context("foo", "bar", false);
+        assertEquals("foo", WhoAmI.class.cast(context.lookup("WhoAmIBeanRemote")).whoAmI());
+        context.close();
+
+        final IdentityTokens tokens = ejbServer.server.getIdentityTokens();
+        assertEquals(0, tokens.getSessionCount());
+        assertEquals(1, tokens.getRevokedCount());
+    }
+
+    @Test
+    public void expiredTokenIsRenewed() throws Exception {
+        stop();
+        final Properties serverProps = new Properties();
+        serverProps.setProperty("identity.token.ttl", "1000");
+        start(serverProps);
+
+        for (final boolean cache : new boolean[]{true, false}) {
+            CountingLoginModule.LOGINS.set(0);
+            final Context context = context("foo", "bar", cache);
+            final WhoAmI bean = WhoAmI.class.cast(context.lookup("WhoAmIBeanRemote"));
+            assertEquals("foo", bean.whoAmI());
+
+            Thread.sleep(1100);
+            assertEquals("foo", bean.whoAmI());
+            assertEquals(2, CountingLoginModule.LOGINS.get());
+
+            context.close();
+            assertEquals(0, ejbServer.server.getIdentityTokens().getSessionCount());
+        }
+    }
+
+    @Test
+    public void olderClientsLoginWithoutToken() throws Exception {
+        final ProtocolMetaData protocol = new ProtocolMetaData("4.7");
+        final Socket socket = new Socket("127.0.0.1", serviceDaemon.getPort());
+        try {
+            socket.setSoTimeout(10000);
+
+            final OutputStream out = socket.getOutputStream();
+            out.write(KeepAliveStyle.PING.ordinal());
+            protocol.writeExternal(out);
+            out.write(ConnectionDictionary.UNUSED);
+            final ObjectOutputStream oos = new ObjectOutputStream(out);
+            oos.writeByte(1); // ServerMetaData of older clients, not asking for the protocol of the server
+            oos.writeObject(new URI[]{new URI("ejbd://127.0.0.1:" + serviceDaemon.getPort())});
+            final ClusterRequest clusterRequest = new ClusterRequest(new ClusterMetaData(0));
+            clusterRequest.setMetaData(protocol);
+            oos.write(clusterRequest.getRequestType().getCode());
+            clusterRequest.writeExternal(oos);
+            oos.write(RequestType.AUTH_REQUEST.getCode());
+            final AuthenticationRequest request = new AuthenticationRequest("TokenLM", "foo", "bar");
+            request.setMetaData(protocol);
+            request.writeExternal(oos); // without the token of 4.8
+            oos.flush();
+
+            final InputStream in = socket.getInputStream();
+            final ProtocolMetaData responseProtocol = new ProtocolMetaData();
+            responseProtocol.readExternal(in);
+            assertEquals(protocol.getSpec(), responseProtocol.getSpec());
+            final ObjectInputStream ois = new ObjectInputStream(in);
+            final ClusterResponse clusterResponse = new ClusterResponse();
+            clusterResponse.setMetaData(protocol);
+            clusterResponse.readExternal(ois);
+            final AuthenticationResponse response = new AuthenticationResponse();
+            response.setMetaData(protocol);
+            response.readExternal(ois);
+
+            assertEquals(ResponseCodes.AUTH_GRANTED, response.getResponseCode());
+            assertFalse(response.getIdentity().getClientIdentity() instanceof IdentityToken);
+            assertEquals(1, CountingLoginModule.LOGINS.get());
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void refusedTokens() throws Exception {
+        final SecurityService securityService = SystemInstance.get().getComponent(SecurityService.class);
+        final IdentityTokens tokens = new IdentityTokens(securityService, "secret", 1000, 1);
+        final Object identity = securityService.login("TokenLM", "foo", "bar");
+
+        final long now = System.currentTimeMillis();
+        final IdentityToken token = tokens.issue("foo", identity, now);
+        assertSame(identity, tokens.validate(token, now));
+
+        assertRefused(tokens, new IdentityToken(token.getId(), "admin", token.getIssued(), token.getExpiry(), token.getSignature()), now);
+        assertRefused(tokens, new IdentityToken(token.getId(), "foo", token.getIssued(), token.getExpiry() + 1000, token.getSignature()), now);
+        assertRefused(tokens, token, now + 1000);
+
+        // an other server with the same secret signs the same way but doesn't know the identity
+        final IdentityTokens other = new IdentityTokens(securityService, "secret", 1000, 1);
+        assertRefused(other, token, now);
+
+        // bounded, the eldest identity is evicted and logged out
+        final Object second = securityService.login("TokenLM", "foo", "bar");
+        final IdentityToken secondToken = tokens.issue("foo", second, now);
+        assertNotSame(identity, second);
+        assertSame(second, tokens.validate(secondToken, now));
+        assertRefused(tokens, token, now);
+        assertEquals(1, tokens.getSessionCount());
+
+        tokens.revoke(secondToken);
+        assertRefused(tokens, secondToken, now);
+    }
+
+    private static void assertRefused(final IdentityTokens tokens, final IdentityToken token, final long now) {
+        try {
+            tokens.validate(token, now);
+            fail();
+        } catch (final LoginException e) {
+            // expected
+        }
+    }
+
+    private Context context(final String user, final String password, final boolean cache) throws Exception {
+        final Properties props = new Properties();
+        props.put(Context.INITIAL_CONTEXT_FACTORY, "org.apache.openejb.client.RemoteInitialContextFactory");
+        props.put(Context.PROVIDER_URL, "ejbd://127.0.0.1:" + serviceDaemon.getPort());
+        props.put(Context.SECURITY_PRINCIPAL, user);
+        props.put(Context.SECURITY_CREDENTIALS, password);
+        props.put("openejb.authentication.realmName", "TokenLM");
+        props.put(JNDIContext.IDENTITY_TOKEN_CACHE, Boolean.toString(cache));
+        return new InitialContext(props);
+    }
+
+    @Remote
+    public interface WhoAmI {
+        String whoAmI();
+    }
+
+    public static class WhoAmIBean implements WhoAmI {
+        @Resource
+        private SessionContext context;
+
+        @Override
+        public String whoAmI() {
+            return context.getCallerPrincipal().getName();
+        }
+    }
+
+    public static class CountingLoginModule implements LoginModule {
+        private static final AtomicInteger LOGINS = new AtomicInteger();
+
+        private Subject subject;
+        private CallbackHandler callbackHandler;
+        private String user;
+
+        @Override
+        public void initialize(final Subject subject, final CallbackHandler callbackHandler, final Map<String, ?> sharedState, final Map<String, ?> options) {
+            this.subject = subject;
+            this.callbackHandler = callbackHandler;
+        }
+
+        @Override
+        public boolean login() throws LoginException {
+            final NameCallback name = new NameCallback("name");
+            final PasswordCallback password = new PasswordCallback("password", false);
+            try {
+                callbackHandler.handle(new Callback[]{name, password});
+            } catch (final Exception e) {
+                throw new LoginException(e.getMessage());
+            }
+            if (!"foo".equals(name.getName()) || password.getPassword() == null || !"bar".equals(new String(password.getPassword()))) {
+                throw new LoginException("Invalid credentials");
+            }
+            LOGINS.incrementAndGet();
+            user = name.getName();
+            return true;
+        }
+
+        @Override
+        public boolean commit() throws LoginException {
+            subject.getPrincipals().add(new AbstractSecurityService.User(user));
+            return true;
+        }
+
+        @Override
+        public boolean abort() throws LoginException {
+            return true;
+        }
+
+        @Override
+        public boolean logout() throws LoginException {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.ejbd;
+
+import org.apache.openejb.AppContext;
+import org.apache.openejb.OpenEJB;
+import org.apache.openejb.assembler.classic.Assembler;
+import org.apache.openejb.client.Client;
+import org.apache.openejb.client.EJBHomeProxy;
+import org.apache.openejb.client.event.JNDILookupCacheInvalidated;
+import org.apache.openejb.client.event.JNDILookupCacheStatistics;
+import org.apache.openejb.client.event.Observes;
+import org.apache.openejb.config.ConfigurationFactory;
+import org.apache.openejb.core.ServerFederation;
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.EnterpriseBean;
+import org.apache.openejb.jee.StatefulBean;
+import org.apache.openejb.jee.StatelessBean;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.server.ServiceDaemon;
+import org.apache.openejb.server.ServicePool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ejb.CreateException;
+import javax.ejb.EJBHome;
+import javax.ejb.EJBObject;
+import javax.ejb.Remote;
+import javax.ejb.RemoteHome;
+import javax.naming.Context;
+import javax.naming.InitialContext;
+import javax.naming.NameNotFoundException;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JNDILookupCacheTest {
+
+    private final Events events = new Events();
+
+    private ServiceDaemon serviceDaemon;
+    private Assembler assembler;
+    private Properties props;
+
+    @Before
+    public void start() throws Exception {
+        System.setProperty("openejb.client.jndi.cache.report", "1");
+        Client.addEventObserver(events);
+
+        final EjbServer ejbServer = new EjbServer();
+        final KeepAliveServer keepAliveServer = new KeepAliveServer(ejbServer, false);
+
+        final Properties initProps = new Properties();
+        initProps.setProperty("openejb.deployments.classpath.include", "");
+        initProps.setProperty("openejb.deployments.classpath.filter.descriptors", "true");
+        OpenEJB.init(initProps, new ServerFederation());
+        ejbServer.init(new Properties());
+
+        final ServicePool pool = new ServicePool(keepAliveServer, 10, 5000, true);
+        serviceDaemon = new ServiceDaemon(pool, 0, "localhost");
+        serviceDaemon.start();
+
+        assembler = SystemInstance.get().getComponent(Assembler.class);
+        deploy("one", OneBean.class);
+
+        props = new Properties();
+        props.put(Context.INITIAL_CONTEXT_FACTORY, "org.apache.openejb.client.RemoteInitialContextFactory");
+        props.put(Context.PROVIDER_URL, "ejbd://127.0.0.1:" + serviceDaemon.getPort());
+    }
+
+    @After
+    public void stop() throws Exception {
+        Client.removeEventObserver(events);
+        System.clearProperty("openejb.client.jndi.cache.report");
+        serviceDaemon.stop();
+        OpenEJB.destroy();
+    }
+
+    @Test
+    public void cachedUntilRedeployed() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            assertEquals("one", ((Named) new InitialContext(props).lookup("OneBeanRemote")).name());
+        }
+
+        // the first lookup can't be cached before the server told its version
+        final JNDILookupCacheStatistics statistics = events.last();
+        assertEquals(3, statistics.getHits());
+        assertEquals(2, statistics.getMisses());
+        assertTrue(events.invalidated.isEmpty());
+
+        try {
+            new InitialContext(props).lookup("TwoBeanRemote");
+            fail();
+        } catch (final NameNotFoundException e) {
+            // not deployed yet
+        }
+
+        final AppContext two = deploy("two", TwoBean.class);
+        assertEquals("one", ((Named) new InitialContext(props).lookup("OneBeanRemote")).name());
+        assertEquals(1, events.invalidated.size());
+
+        assertEquals("two", ((Named) new InitialContext(props).lookup("TwoBeanRemote")).name());
+        assertEquals("two", ((Named) new InitialContext(props).lookup("TwoBeanRemote")).name());
+
+        assembler.destroyApplication(two);
+        assertEquals("one", ((Named) new InitialContext(props).lookup("OneBeanRemote")).name());
+        try {
+            new InitialContext(props).lookup("TwoBeanRemote");
+            fail();
+        } catch (final NameNotFoundException e) {
+            // undeployed
+        }
+    }
+
+    @Test
+    public void statefulIsNotCached() throws Exception {
+        deploy("counter", new StatefulBean(CounterBean.class));
+
+        // each lookup creates an instance
+        for (int i = 0; i < 5; i++) {
+            final Counter counter = (Counter) new InitialContext(props).lookup("CounterBeanRemote");
+            assertEquals(1, counter.increment());
+            assertEquals(2, counter.increment());
+        }
+        assertEquals(0, events.last().getHits());
+    }
+
+    @Test
+    public void cachedHomesAreNotShared() throws Exception {
+        deploy("home", HomeBean.class);
+
+        // the first lookup tells the client the protocol of the server, the second its deployments
+        final List<EJBHomeProxy> homes = new ArrayList<EJBHomeProxy>();
+        for (int i = 0; i < 4; i++) {
+            homes.add((EJBHomeProxy) new InitialContext(props).lookup("HomeBeanRemoteHome"));
+        }
+        assertEquals(1, events.last().getHits());
+
+        // each lookup has its own metadata, the home proxy holds the identity of its context
+        for (final EJBHomeProxy home : homes) {
+            assertSame(home, home.getEJBHomeHandler().getEjb().getEJBHome());
+        }
+        assertEquals("home", ((NamedObject) homes.get(2).getClass().getMethod("create").invoke(homes.get(2))).name());
+    }
+
+    private AppContext deploy(final String module, final Class<?> bean) throws Exception {
+        return deploy(module, new StatelessBean(bean));
+    }
+
+    private AppContext deploy(final String module, final EnterpriseBean bean) throws Exception {
+        final ConfigurationFactory config = new ConfigurationFactory();
+        final EjbJar ejbJar = new EjbJar(module);
+        ejbJar.addEnterpriseBean(bean);
+        return assembler.createApplication(config.configureApplication(ejbJar));
+    }
+
+    public static class Events {
+        private final List<JNDILookupCacheStatistics> statistics = new ArrayList<JNDILookupCacheStatistics>();
+        private final List<JNDILookupCacheInvalidated> invalidated = new ArrayList<JNDILookupCacheInvalidated>();
+
+        public synchronized void statistics(@Observes final JNDILookupCacheStatistics event) {
+            statistics.add(event);
+        }
+
+        public synchronized void invalidated(@Observes final JNDILookupCacheInvalidated event) {
+            invalidated.add(event);
+        }
+
+        private synchronized JNDILookupCacheStatistics last() {
+            return statistics.get(statistics.size() - 1);
+        }
+    }
+
+    @Remote
+    public interface Named {
+        String name();
+    }
+
+    public static class OneBean implements Named {
+        @Override
+        public String name() {
+            return "one";
+        }
+    }
+
+    public static class TwoBean implements Named {
+        @Override
+        public String name() {
+            return "two";
+        }
+    }
+
+    public interface NamedHome extends EJBHome {
+        NamedObject create() throws CreateException, RemoteException;
+    }
+
+    public interface NamedObject extends EJBObject {
+        String name() throws RemoteException;
+    }
+
+    @RemoteHome(NamedHome.class)
+    public static class HomeBean {
+        public String name() {
+            return "home";
+        }
+    }
+
+    @Remote
+    public interface Counter {
+        int increment();
+    }
+
+    public static class CounterBean implements Counter {
+        private int count;
+
+        @Override
+        public int increment() {
+            return ++count;
+        }
+    }
+}
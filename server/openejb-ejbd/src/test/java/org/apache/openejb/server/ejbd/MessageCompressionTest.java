@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.ejbd;
+
+import org.apache.openejb.OpenEJB;
+import org.apache.openejb.assembler.classic.Assembler;
+import org.apache.openejb.config.ConfigurationFactory;
+import org.apache.openejb.core.ServerFederation;
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.StatelessBean;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.server.ServiceDaemon;
+import org.apache.openejb.server.ServicePool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ejb.Remote;
+import javax.naming.Context;
+import javax.naming.InitialContext;
+import java.util.Arrays;
+import java.util.Properties;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class MessageCompressionTest {
+
+    private ServiceDaemon serviceDaemon;
+    private Properties props;
+
+    @Before
+    public void start() throws Exception {
+        final EjbServer ejbServer = new EjbServer();
+        final KeepAliveServer keepAliveServer = new KeepAliveServer(ejbServer, false);
+
+        final Properties initProps = new Properties();
+        initProps.setProperty("openejb.deployments.classpath.include", "");
+        initProps.setProperty("openejb.deployments.classpath.filter.descriptors", "true");
+        OpenEJB.init(initProps, new ServerFederation());
+        ejbServer.init(new Properties());
+
+        final ServicePool pool = new ServicePool(keepAliveServer, 10, 5000, true);
+        serviceDaemon = new ServiceDaemon(pool, 0, "localhost");
+        serviceDaemon.start();
+
+        final Assembler assembler = SystemInstance.get().getComponent(Assembler.class);
+        final ConfigurationFactory config = new ConfigurationFactory();
+
+        final EjbJar ejbJar = new EjbJar();
+        ejbJar.addEnterpriseBean(new StatelessBean(EchoBean.class));
+        assembler.createApplication(config.configureApplication(ejbJar));
+
+        props = new Properties();
+        props.put(Context.INITIAL_CONTEXT_FACTORY, "org.apache.openejb.client.RemoteInitialContextFactory");
+        props.put(Context.PROVIDER_URL, "ejbd://127.0.0.1:" + serviceDaemon.getPort());
+    }
+
+    @After
+    public void stop() throws Exception {
+        System.clearProperty("openejb.client.compression");
+        serviceDaemon.stop();
+        OpenEJB.destroy();
+    }
+
+    @Test
+    public void lz4() throws Exception {
+        invoke("lz4");
+    }
+
+    @Test
+    public void deflate() throws Exception {
+        invoke("deflate");
+    }
+
+    @Test
+    public void switchedOnTheSameConnection() throws Exception {
+        invoke("none");
+        invoke("lz4");
+        invoke("none");
+    }
+
+    private void invoke(final String codec) throws Exception {
+        System.setProperty("openejb.client.compression", codec);
+        final Echo echo = (Echo) new InitialContext(props).lookup("EchoBeanRemote");
+
+        assertEquals("small", echo.echo("small"));
+
+        final byte[] large = new byte[200 * 1024];
+        for (int i = 0; i < large.length; i++) {
+            large[i] = (byte) ("abcdefgh".charAt(i % 8) + i / 4096);
+        }
+        for (int i = 0; i < 3; i++) {
+            assertArrayEquals(large, echo.echo(large));
+        }
+    }
+
+    @Remote
+    public interface Echo {
+        String echo(String value);
+
+        byte[] echo(byte[] value);
+    }
+
+    public static class EchoBean implements Echo {
+        @Override
+        public String echo(final String value) {
+            return value;
+        }
+
+        @Override
+        public byte[] echo(final byte[] value) {
+            return Arrays.copyOf(value, value.length);
+        }
+    }
+}
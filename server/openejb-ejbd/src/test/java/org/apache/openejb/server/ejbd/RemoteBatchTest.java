@@ -0,0 +1,267 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.ejbd;
+
+import org.apache.openejb.AppContext;
+import org.apache.openejb.OpenEJB;
+import org.apache.openejb.assembler.classic.Assembler;
+import org.apache.openejb.client.ClientFuture;
+import org.apache.openejb.client.RemoteBatch;
+import org.apache.openejb.config.ConfigurationFactory;
+import org.apache.openejb.core.ServerFederation;
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.SingletonBean;
+import org.apache.openejb.jee.StatelessBean;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.server.ServiceDaemon;
+import org.apache.openejb.server.ServicePool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.EJBException;
+import javax.ejb.Remote;
+import javax.naming.Context;
+import javax.naming.InitialContext;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RemoteBatchTest {
+    private static final long DELAY = 300;
+
+    private ServiceDaemon serviceDaemon;
+    private Assembler assembler;
+    private Properties props;
+    private Object counter;
+    private Object slow;
+
+    @Before
+    public void start() throws Exception {
+        final EjbServer ejbServer = new EjbServer();
+        final KeepAliveServer keepAliveServer = new KeepAliveServer(ejbServer, false);
+
+        final Properties initProps = new Properties();
+        initProps.setProperty("openejb.deployments.classpath.include", "");
+        initProps.setProperty("openejb.deployments.classpath.filter.descriptors", "true");
+        OpenEJB.init(initProps, new ServerFederation());
+        final Properties serverProps = new Properties();
+        serverProps.setProperty("batch.max.size", "10");
+        ejbServer.init(serverProps);
+
+        final ServicePool pool = new ServicePool(keepAliveServer, 10, 5000, true);
+        serviceDaemon = new ServiceDaemon(pool, 0, "localhost");
+        serviceDaemon.start();
+
+        assembler = SystemInstance.get().getComponent(Assembler.class);
+        final ConfigurationFactory config = new ConfigurationFactory();
+
+        final EjbJar ejbJar = new EjbJar();
+        ejbJar.addEnterpriseBean(new SingletonBean(CounterBean.class));
+        ejbJar.addEnterpriseBean(new StatelessBean(SlowBean.class));
+        assembler.createApplication(config.configureApplication(ejbJar));
+
+        props = new Properties();
+        props.put(Context.INITIAL_CONTEXT_FACTORY, "org.apache.openejb.client.RemoteInitialContextFactory");
+        props.put(Context.PROVIDER_URL, "ejbd://127.0.0.1:" + serviceDaemon.getPort());
+        final InitialContext context = new InitialContext(props);
+        counter = context.lookup("CounterBeanRemote");
+        slow = context.lookup("SlowBeanRemote");
+    }
+
+    @After
+    public void stop() throws Exception {
+        serviceDaemon.stop();
+        OpenEJB.destroy();
+    }
+
+    @Test
+    public void sequential() throws Exception {
+        final RemoteBatch batch = new RemoteBatch();
+        final CounterAsync counterView = batch.view(counter, CounterAsync.class);
+        final SlowAsync slowView = batch.view(slow, SlowAsync.class);
+
+        final List<ClientFuture<Integer>> counts = new ArrayList<ClientFuture<Integer>>();
+        for (int i = 0; i < 5; i++) {
+            counts.add(counterView.next());
+        }
+        final ClientFuture<String> echo = slowView.echo("batched");
+        final ClientFuture<String> failure = slowView.echo(null);
+        assertEquals(7, batch.size());
+        assertTrue(!echo.isDone());
+
+        batch.send();
+        assertEquals(0, batch.size());
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i + 1, counts.get(i).get(0, TimeUnit.SECONDS).intValue());
+        }
+        assertEquals("batched", echo.get(0, TimeUnit.SECONDS));
+        try {
+            failure.get(0, TimeUnit.SECONDS);
+            fail();
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof EJBException);
+        }
+
+        // reusable
+        final ClientFuture<Integer> next = counterView.next();
+        batch.send();
+        assertEquals(6, next.get(0, TimeUnit.SECONDS).intValue());
+    }
+
+    @Test
+    public void parallel() throws Exception {
+        final RemoteBatch batch = new RemoteBatch(true);
+        final SlowAsync slowView = batch.view(slow, SlowAsync.class);
+
+        final List<ClientFuture<String>> echoes = new ArrayList<ClientFuture<String>>();
+        for (int i = 0; i < 4; i++) {
+            echoes.add(slowView.echo("call " + i));
+        }
+
+        SlowBean.CONCURRENT.set(0);
+        SlowBean.MAX_CONCURRENT.set(0);
+        batch.send();
+        assertTrue("calls ran concurrently", SlowBean.MAX_CONCURRENT.get() > 1);
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals("call " + i, echoes.get(i).get(0, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void unknownDeployment() throws Exception {
+        final EjbJar ejbJar = new EjbJar("gone");
+        ejbJar.addEnterpriseBean(new StatelessBean(GoneBean.class));
+        final AppContext app = assembler.createApplication(new ConfigurationFactory().configureApplication(ejbJar));
+        final Object gone = new InitialContext(props).lookup("GoneBeanRemote");
+        assembler.destroyApplication(app);
+
+        final RemoteBatch batch = new RemoteBatch();
+        final CounterAsync counterView = batch.view(counter, CounterAsync.class);
+        final ClientFuture<Integer> first = counterView.next();
+        final ClientFuture<String> failure = batch.view(gone, SlowAsync.class).echo("gone");
+        final ClientFuture<Integer> second = counterView.next();
+        batch.send();
+
+        assertEquals(1, first.get(0, TimeUnit.SECONDS).intValue());
+        try {
+            failure.get(0, TimeUnit.SECONDS);
+            fail();
+        } catch (final ExecutionException e) {
+            // no such deployment
+        }
+        assertEquals(2, second.get(0, TimeUnit.SECONDS).intValue());
+    }
+
+    @Test
+    public void tooLargeBatchIsRejected() throws Exception {
+        final RemoteBatch batch = new RemoteBatch();
+        final CounterAsync counterView = batch.view(counter, CounterAsync.class);
+        final List<ClientFuture<Integer>> counts = new ArrayList<ClientFuture<Integer>>();
+        for (int i = 0; i < 11; i++) {
+            counts.add(counterView.next());
+        }
+        try {
+            batch.send();
+            fail();
+        } catch (final RemoteException e) {
+            // the server closed the connection
+        }
+        try {
+            counts.get(0).get(0, TimeUnit.SECONDS);
+            fail();
+        } catch (final ExecutionException e) {
+            // not invoked
+        }
+
+        final ClientFuture<Integer> next = counterView.next();
+        batch.send();
+        assertEquals(1, next.get(0, TimeUnit.SECONDS).intValue());
+    }
+
+    @Remote
+    public interface Counter {
+        int next();
+    }
+
+    public interface CounterAsync {
+        ClientFuture<Integer> next();
+    }
+
+    @Remote
+    public interface Slow {
+        String echo(String value);
+    }
+
+    public interface SlowAsync {
+        ClientFuture<String> echo(String value);
+    }
+
+    @ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+    public static class CounterBean implements Counter {
+        private int count;
+
+        @Override
+        public synchronized int next() {
+            return ++count;
+        }
+    }
+
+    public static class SlowBean implements Slow {
+        private static final AtomicInteger CONCURRENT = new AtomicInteger();
+        private static final AtomicInteger MAX_CONCURRENT = new AtomicInteger();
+
+        @Override
+        public String echo(final String value) {
+            if (value == null) {
+                throw new IllegalArgumentException("null");
+            }
+            final int concurrent = CONCURRENT.incrementAndGet();
+            int max;
+            do {
+                max = MAX_CONCURRENT.get();
+            } while (concurrent > max && !MAX_CONCURRENT.compareAndSet(max, concurrent));
+            try {
+                Thread.sleep(DELAY);
+            } catch (final InterruptedException e) {
+                Thread.interrupted();
+            } finally {
+                CONCURRENT.decrementAndGet();
+            }
+            return value;
+        }
+    }
+
+    public static class GoneBean implements Slow {
+        @Override
+        public String echo(final String value) {
+            return value;
+        }
+    }
+}
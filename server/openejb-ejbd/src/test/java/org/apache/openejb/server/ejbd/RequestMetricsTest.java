@@ -0,0 +1,156 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.ejbd;
+
+import org.apache.openejb.AppContext;
+import org.apache.openejb.OpenEJB;
+import org.apache.openejb.assembler.classic.Assembler;
+import org.apache.openejb.config.ConfigurationFactory;
+import org.apache.openejb.core.ServerFederation;
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.StatelessBean;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.monitoring.LocalMBeanServer;
+import org.apache.openejb.server.ServiceDaemon;
+import org.apache.openejb.server.ServicePool;
+import org.apache.openejb.server.context.RequestMetrics;
+import org.apache.openejb.server.context.RequestPhase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ejb.Remote;
+import javax.management.ObjectName;
+import javax.naming.Context;
+import javax.naming.InitialContext;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RequestMetricsTest {
+
+    private EjbServer ejbServer;
+    private ServiceDaemon serviceDaemon;
+    private Assembler assembler;
+    private AppContext app;
+    private Slow slow;
+
+    @Before
+    public void start() throws Exception {
+        ejbServer = new EjbServer();
+        final KeepAliveServer keepAliveServer = new KeepAliveServer(ejbServer, false);
+
+        final Properties initProps = new Properties();
+        initProps.setProperty("openejb.deployments.classpath.include", "");
+        initProps.setProperty("openejb.deployments.classpath.filter.descriptors", "true");
+        OpenEJB.init(initProps, new ServerFederation());
+        final Properties serverProps = new Properties();
+        serverProps.setProperty("metrics", "true");
+        serverProps.setProperty("metrics.log", "true");
+        ejbServer.init(serverProps);
+
+        final ServicePool pool = new ServicePool(keepAliveServer, 10, 5000, true);
+        serviceDaemon = new ServiceDaemon(pool, 0, "localhost");
+        serviceDaemon.start();
+
+        assembler = SystemInstance.get().getComponent(Assembler.class);
+        final ConfigurationFactory config = new ConfigurationFactory();
+
+        final EjbJar ejbJar = new EjbJar();
+        ejbJar.addEnterpriseBean(new StatelessBean(SlowBean.class));
+        app = assembler.createApplication(config.configureApplication(ejbJar));
+
+        final Properties props = new Properties();
+        props.put(Context.INITIAL_CONTEXT_FACTORY, "org.apache.openejb.client.RemoteInitialContextFactory");
+        props.put(Context.PROVIDER_URL, "ejbd://127.0.0.1:" + serviceDaemon.getPort());
+        slow = (Slow) new InitialContext(props).lookup("SlowBeanRemote");
+    }
+
+    @After
+    public void stop() throws Exception {
+        serviceDaemon.stop();
+        ejbServer.stop();
+        OpenEJB.destroy();
+    }
+
+    @Test
+    public void phasesPerDeployment() throws Exception {
+        final byte[] payload = new byte[64 * 1024];
+        for (int i = 0; i < 5; i++) {
+            assertEquals(payload.length, slow.size(payload, 30));
+        }
+
+        final RequestMetrics service = ejbServer.server.getMetrics();
+        final RequestMetrics deployment = service.deployment("SlowBean");
+        for (int i = 0; i < 100 && deployment.getTotal().getCount() < 5; i++) {
+            Thread.sleep(50); // recorded once the response is sent
+        }
+        assertEquals(5, deployment.getTotal().getCount());
+        assertTrue(service.getTotal().getCount() > 5); // jndi lookup
+
+        final long wait = TimeUnit.MILLISECONDS.toNanos(30);
+        assertTrue(deployment.getPhase(RequestPhase.INVOCATION).percentile(50) >= wait);
+        assertTrue(deployment.getPhase(RequestPhase.DESERIALIZATION).getCount() == 5);
+        assertTrue(deployment.getTotal().percentile(50) >= wait);
+        assertTrue(deployment.getRequestSize().percentile(50) > payload.length);
+        assertTrue(deployment.getResponseSize().getMax() < payload.length);
+
+        final ObjectName name = new ObjectName("openejb:type=RequestMetrics,name=ejbd,deployment=SlowBean");
+        assertTrue(LocalMBeanServer.get().isRegistered(name));
+        assertEquals(5L, LocalMBeanServer.get().getAttribute(name, "Total.Count"));
+
+        ejbServer.stop();
+        assertFalse(LocalMBeanServer.get().isRegistered(name));
+    }
+
+    @Test
+    public void deploymentsAreDroppedWithTheirApplication() throws Exception {
+        assertEquals(1, slow.size(new byte[1], 0));
+
+        final RequestMetrics service = ejbServer.server.getMetrics();
+        final RequestMetrics deployment = service.deployment("SlowBean");
+        for (int i = 0; i < 100 && deployment.getTotal().getCount() < 1; i++) {
+            Thread.sleep(50);
+        }
+        final ObjectName name = new ObjectName("openejb:type=RequestMetrics,name=ejbd,deployment=SlowBean");
+        assertTrue(LocalMBeanServer.get().isRegistered(name));
+
+        assembler.destroyApplication(app);
+        assertFalse(LocalMBeanServer.get().isRegistered(name));
+        assertEquals(0, service.deployment("SlowBean").getTotal().getCount());
+    }
+
+    @Remote
+    public interface Slow {
+        int size(byte[] payload, long sleep);
+    }
+
+    public static class SlowBean implements Slow {
+        @Override
+        public int size(final byte[] payload, final long sleep) {
+            try {
+                Thread.sleep(sleep);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return payload.length;
+        }
+    }
+}
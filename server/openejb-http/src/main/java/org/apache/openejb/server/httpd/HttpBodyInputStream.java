@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.httpd;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Request body read from the connection as the application consumes it, delimited by the Content-Length
+ * or by the chunked transfer coding. Whatever the application doesn't read is skipped by {@link #drain(long)}
+ * so the next request of the connection can be read.
+ */
+public class HttpBodyInputStream extends ServletInputStream {
+    private static final int MAX_LINE = 4096;
+
+    private final InputStream input;
+    private final boolean chunked;
+    private long remaining;
+    private boolean chunkStarted;
+    private boolean finished;
+
+    private HttpBodyInputStream(final InputStream input, final long length, final boolean chunked) {
+        this.input = input;
+        this.remaining = length;
+        this.chunked = chunked;
+        this.finished = !chunked && length == 0;
+    }
+
+    public static HttpBodyInputStream fixed(final InputStream input, final long length) {
+        return new HttpBodyInputStream(input, length, false);
+    }
+
+    public static HttpBodyInputStream chunked(final InputStream input) {
+        return new HttpBodyInputStream(input, 0, true);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!hasMore()) {
+            return -1;
+        }
+        final int b = input.read();
+        if (b < 0) {
+            throw new EOFException("Connection closed in the request body");
+        }
+        remaining--;
+        return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!hasMore()) {
+            return -1;
+        }
+        final int read = input.read(b, off, (int) Math.min(len, remaining));
+        if (read < 0) {
+            throw new EOFException("Connection closed in the request body");
+        }
+        remaining -= read;
+        return read;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return finished ? 0 : (int) Math.min(remaining, input.available());
+    }
+
+    /**
+     * Skips the rest of the body, up to max bytes.
+     *
+     * @return false if more than max bytes are left, the connection can't be reused then
+     */
+    public boolean drain(final long max) throws IOException {
+        if (!chunked && remaining > max) {
+            return false;
+        }
+        final byte[] buffer = new byte[4096];
+        long skipped = 0;
+        int read;
+        while ((read = read(buffer, 0, buffer.length)) >= 0) {
+            skipped += read;
+            if (skipped > max) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean hasMore() throws IOException {
+        if (finished) {
+            return false;
+        }
+        if (remaining > 0) {
+            return true;
+        }
+        if (!chunked) {
+            finished = true;
+            return false;
+        }
+
+        if (chunkStarted) {
+            readLine(); // CRLF closing the previous chunk
+        }
+        final String size = readLine();
+        final int extension = size.indexOf(';');
+        try {
+            remaining = Long.parseLong((extension < 0 ? size : size.substring(0, extension)).trim(), 16);
+        } catch (final NumberFormatException e) {
+            throw new IOException("Invalid chunk size: " + size);
+        }
+        chunkStarted = true;
+        if (remaining == 0) { // last chunk, skip the trailers
+            while (!readLine().isEmpty()) {
+                // no-op
+            }
+            finished = true;
+            return false;
+        }
+        return true;
+    }
+
+    private String readLine() throws IOException {
+        final StringBuilder line = new StringBuilder();
+        while (true) {
+            final int b = input.read();
+            if (b < 0) {
+                throw new EOFException("Connection closed in the request body");
+            }
+            if (b == '\n') {
+                final int end = line.length();
+                return end > 0 && line.charAt(end - 1) == '\r' ? line.substring(0, end - 1) : line.toString();
+            }
+            if (line.length() >= MAX_LINE) {
+                throw new IOException("Chunk line too long");
+            }
+            line.append((char) b);
+        }
+    }
+
+    @Override
+    public boolean isFinished() {
+        return finished;
+    }
+
+    @Override
+    public boolean isReady() {
+        return true;
+    }
+
+    @Override
+    public void setReadListener(final ReadListener listener) {
+        // no-op
+    }
+}
@@ -16,10 +16,7 @@
  */
 package org.apache.openejb.server.httpd;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
 import java.net.URI;
 import java.net.URL;
 import java.util.ArrayList;
@@ -38,7 +35,6 @@ import org.apache.openejb.assembler.classic.WebAppBuilder;
 import org.apache.openejb.cdi.Proxys;
 import org.apache.openejb.core.ParentClassLoaderFinder;
 import org.apache.openejb.core.WebContext;
-import org.apache.openejb.loader.IO;
 import org.apache.openejb.loader.SystemInstance;
 import org.apache.openejb.util.AppFinder;
 import org.apache.openejb.web.LightweightWebAppBuilder;
@@ -54,10 +50,8 @@ public class HttpListenerRegistry implements HttpListener {
     private final ThreadLocal<HttpRequest> request = new ThreadLocal<>();
     private final ClassLoader defaultClassLoader;
     private final File[] resourceBases;
-    private final Map<String, String> defaultContextTypes = new HashMap<>();
     private final String welcomeFile = SystemInstance.get().getProperty("openejb.http.welcome", "index.html");
-    private final Map<String, byte[]> cache = new HashMap<>();
-    private final boolean cacheResources = "true".equals(SystemInstance.get().getProperty("openejb.http.resource.cache", "false"));
+    private final StaticResourceHandler resourceHandler = new StaticResourceHandler();
 
     public HttpListenerRegistry() {
         HttpServletRequest mock = null;
@@ -121,19 +115,6 @@ public class HttpListenerRegistry implements HttpListener {
             }
         }
         resourceBases = resources.toArray(new File[resources.size()]);
-
-        defaultContextTypes.put("html", "text/html");
-        defaultContextTypes.put("html", "text/html");
-        defaultContextTypes.put("css", "text/css");
-        defaultContextTypes.put("txt", "text/plain");
-        defaultContextTypes.put("xml", "application/xml");
-        defaultContextTypes.put("xsl", "application/xml");
-        defaultContextTypes.put("js", "application/javascript");
-        defaultContextTypes.put("gif", "image/gif");
-        defaultContextTypes.put("jpeg", "image/jpeg");
-        defaultContextTypes.put("jpg", "image/jpeg");
-        defaultContextTypes.put("png", "image/png");
-        defaultContextTypes.put("tiff", "image/tiff");
     }
 
     @Override
@@ -195,39 +176,24 @@ public class HttpListenerRegistry implements HttpListener {
                 if (servletPath != null) {
                     URL url = SystemInstance.get().getComponent(ServletContext.class).getResource(servletPath);
                     if (url != null) {
-                        serveResource(servletPath, response, url);
+                        resourceHandler.serve(request, response, servletPath, url);
                     } else {
                         final String pathWithoutSlash = "/".equals(path) || "".equals(servletPath) || "/".equals(servletPath) ? welcomeFile :
                                 (servletPath.startsWith("/") ? servletPath.substring(1) : servletPath);
                         url = defaultClassLoader.getResource("META-INF/resources/" + pathWithoutSlash);
                         if (url != null) {
-                            serveResource(servletPath, response, url);
+                            resourceHandler.serve(request, response, pathWithoutSlash, url);
                         } else if (resourceBases.length > 0) {
                             for (final File f : resourceBases) {
                                 final File file = new File(f, pathWithoutSlash);
                                 if (file.isFile()) {
                                     url = file.toURI().toURL();
-                                    serveResource(servletPath, response, url);
+                                    resourceHandler.serve(request, response, pathWithoutSlash, url);
                                     break;
                                 }
                             }
                         }
                     }
-                    if (url != null) {
-                        final int dot = servletPath.lastIndexOf('.');
-                        if (dot > 0 && dot < servletPath.length() - 1) {
-                            final String ext = servletPath.substring(dot + 1);
-                            final String ct = defaultContextTypes.get(ext);
-                            if (ct != null) {
-                                response.setContentType(ct);
-                            } else {
-                                final String uct = SystemInstance.get().getProperty("openejb.embedded.http.content-type." + ext);
-                                if (uct != null) {
-                                    response.setContentType(uct);
-                                }
-                            }
-                        }
-                    }
                 } // TODO else 404
             }
         } finally {
@@ -240,31 +206,6 @@ public class HttpListenerRegistry implements HttpListener {
         }
     }
 
-    private void serveResource(final String key, final HttpResponse response, final URL url) throws IOException {
-        if (cacheResources) {
-            byte[] value = cache.get(key);
-            if (value == null) {
-                final InputStream from = url.openStream();
-                try {
-                    ByteArrayOutputStream to = new ByteArrayOutputStream();
-                    IO.copy(from, to);
-                    value = to.toByteArray();
-                    cache.put(key, value);
-                } finally {
-                    IO.close(from);
-                }
-            }
-            response.getOutputStream().write(value);
-        } else {
-            final InputStream from = url.openStream();
-            try {
-                IO.copy(from, response.getOutputStream());
-            } finally {
-                IO.close(from);
-            }
-        }
-    }
-
     private String getRequestHandledPath(final HttpRequest request) {
         final String servletPath = request.getServletPath();
         return request.getContextPath() + (!servletPath.startsWith("/") ? "/" : "") + servletPath;
@@ -0,0 +1,302 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.httpd;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Request line and headers of a request as read from the socket. Bytes stay in a single buffer, the headers
+ * are only indexed by offsets and a name or a value becomes a String when it is asked for.
+ * Header names are matched ignoring the case.
+ */
+final class HttpRequestHead {
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static final String HTTP_1_0 = "HTTP/1.0";
+    private static final String HTTP_1_1 = "HTTP/1.1";
+    private static final int MAX_SIZE = 64 * 1024;
+
+    // per header: name start, name end, value start, value end
+    private static final int SLOTS = 4;
+
+    /**
+     * Head of a request which was not read from a socket.
+     */
+    static final HttpRequestHead EMPTY = new HttpRequestHead();
+
+    private byte[] buffer;
+    private int size;
+    private int requestLineEnd;
+    private int[] offsets = new int[16 * SLOTS];
+    private int count;
+    private String[] names;
+    private String[] values;
+
+    /**
+     * Reads up to the empty line ending the headers, not further, the body stays in the input.
+     *
+     * @return false if the input ended before a request line
+     */
+    boolean read(final InputStream in) throws IOException {
+        buffer = new byte[1024];
+        int start;
+        do { // tolerate empty lines before the request line (RFC 7230 3.5)
+            start = size;
+            if (!readLine(in)) {
+                return false;
+            }
+        } while (size == start);
+        requestLineEnd = size;
+
+        while (true) {
+            start = size;
+            if (!readLine(in) || size == start) {
+                break; // end of the headers
+            }
+            if (buffer[start] == ' ' || buffer[start] == '\t') {
+                continue; // obsolete line folding, the continuation is ignored
+            }
+
+            int colon = start;
+            while (colon < size && buffer[colon] != ':') {
+                colon++;
+            }
+            if (colon == size) {
+                throw new IOException("Malformed HTTP header: " + new String(buffer, start, size - start, ISO_8859_1));
+            }
+
+            int valueStart = colon + 1;
+            int valueEnd = size;
+            while (valueStart < valueEnd && isWhitespace(buffer[valueStart])) {
+                valueStart++;
+            }
+            while (valueEnd > valueStart && isWhitespace(buffer[valueEnd - 1])) {
+                valueEnd--;
+            }
+
+            if ((count + 1) * SLOTS > offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            final int slot = count++ * SLOTS;
+            offsets[slot] = start;
+            offsets[slot + 1] = colon;
+            offsets[slot + 2] = valueStart;
+            offsets[slot + 3] = valueEnd;
+        }
+        return true;
+    }
+
+    /**
+     * Appends a line without its CRLF (or LF) to the buffer.
+     *
+     * @return false if the input ended before any byte of the line
+     */
+    private boolean readLine(final InputStream in) throws IOException {
+        final int start = size;
+        while (true) {
+            final int b = in.read();
+            if (b < 0) {
+                return size > start;
+            }
+            if (b == '\n') {
+                if (size > start && buffer[size - 1] == '\r') {
+                    size--;
+                }
+                return true;
+            }
+            if (size == buffer.length) {
+                if (size >= MAX_SIZE) {
+                    throw new IOException("HTTP request head larger than " + MAX_SIZE + " bytes");
+                }
+                buffer = Arrays.copyOf(buffer, size * 2);
+            }
+            buffer[size++] = (byte) b;
+        }
+    }
+
+    /**
+     * @return the method, URI and version of the request line, missing ones are null
+     */
+    String[] requestLine() {
+        final String[] parts = new String[3];
+        int i = 0;
+        int part = 0;
+        while (part < parts.length) {
+            while (i < requestLineEnd && buffer[i] == ' ') {
+                i++;
+            }
+            if (i == requestLineEnd) {
+                break;
+            }
+            final int start = i;
+            while (i < requestLineEnd && buffer[i] != ' ') {
+                i++;
+            }
+            parts[part] = token(part, start, i);
+            part++;
+        }
+        return parts;
+    }
+
+    private String token(final int part, final int start, final int end) {
+        if (part == 0) { // known methods are normalized to upper case, custom ones kept as sent
+            for (final HttpRequest.Method method : HttpRequest.Method.values()) {
+                if (equalsIgnoreCase(method.name(), start, end)) {
+                    return method.name();
+                }
+            }
+        } else if (part == 2) {
+            if (equals(HTTP_1_1, start, end)) {
+                return HTTP_1_1;
+            }
+            if (equals(HTTP_1_0, start, end)) {
+                return HTTP_1_0;
+            }
+        }
+        return new String(buffer, start, end - start, ISO_8859_1);
+    }
+
+    int size() {
+        return count;
+    }
+
+    boolean contains(final String name) {
+        return indexOf(name, 0) >= 0;
+    }
+
+    /**
+     * @return the first value of the header or null
+     */
+    String get(final String name) {
+        final int index = indexOf(name, 0);
+        return index < 0 ? null : value(index);
+    }
+
+    List<String> getAll(final String name) {
+        int index = indexOf(name, 0);
+        if (index < 0) {
+            return Collections.emptyList();
+        }
+        final List<String> all = new ArrayList<>(2);
+        do {
+            all.add(value(index));
+            index = indexOf(name, index + 1);
+        } while (index >= 0);
+        return all;
+    }
+
+    /**
+     * @return the header names, as first sent, without duplicates
+     */
+    List<String> names() {
+        final List<String> distinct = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final String name = name(i);
+            boolean seen = false;
+            for (final String current : distinct) {
+                if (current.equalsIgnoreCase(name)) {
+                    seen = true;
+                    break;
+                }
+            }
+            if (!seen) {
+                distinct.add(name);
+            }
+        }
+        return distinct;
+    }
+
+    Map<String, List<String>> toMap() {
+        final Map<String, List<String>> map = new LinkedHashMap<>();
+        for (final String name : names()) {
+            map.put(name, getAll(name));
+        }
+        return map;
+    }
+
+    private int indexOf(final String name, final int from) {
+        for (int i = from; i < count; i++) {
+            if (equalsIgnoreCase(name, offsets[i * SLOTS], offsets[i * SLOTS + 1])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private String name(final int index) {
+        if (names == null) {
+            names = new String[count];
+        }
+        if (names[index] == null) {
+            final int slot = index * SLOTS;
+            names[index] = new String(buffer, offsets[slot], offsets[slot + 1] - offsets[slot], ISO_8859_1);
+        }
+        return names[index];
+    }
+
+    private String value(final int index) {
+        if (values == null) {
+            values = new String[count];
+        }
+        if (values[index] == null) {
+            final int slot = index * SLOTS;
+            values[index] = new String(buffer, offsets[slot + 2], offsets[slot + 3] - offsets[slot + 2], ISO_8859_1);
+        }
+        return values[index];
+    }
+
+    private boolean equals(final String value, final int start, final int end) {
+        if (end - start != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (buffer[start + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean equalsIgnoreCase(final String value, final int start, final int end) {
+        if (end - start != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            final int b = buffer[start + i];
+            final char c = value.charAt(i);
+            if (b != c && toLowerCase(b) != toLowerCase(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int toLowerCase(final int c) {
+        return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+    }
+
+    private static boolean isWhitespace(final byte b) {
+        return b == ' ' || b == '\t';
+    }
+}
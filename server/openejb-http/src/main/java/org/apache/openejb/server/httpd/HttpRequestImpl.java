@@ -46,9 +46,9 @@ import java.security.Principal;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
@@ -108,24 +108,26 @@ public class HttpRequestImpl implements HttpRequest {
     private URI uri;
 
     /**
-     * the headers for this page
+     * the request line and the headers for this page
      */
-    private final Map<String, List<String>> headers = new HashMap<>();
+    private HttpRequestHead head = HttpRequestHead.EMPTY;
 
     /**
-     * the form parameters for this page
+     * the form parameters for this page, parsed from the body on first access
      */
-    private final Map<String, String> formParams = new HashMap<>();
+    private Map<String, String> formParams;
+    private boolean formBody;
 
     /**
-     * the URL (or query) parameters for this page
+     * the URL (or query) parameters for this page, parsed from the URI on first access
      */
-    private final Map<String, List<String>> queryParams = new HashMap<>();
+    private Map<String, List<String>> queryParams;
+    private URI queryURI;
 
     /**
      * All form and query parameters.  Query parameters override form parameters.
      */
-    private final Map<String, List<String>> parameters = new HashMap<>();
+    private Map<String, List<String>> parameters;
 
     private volatile Collection<Part> parts;
 
@@ -138,7 +140,8 @@ public class HttpRequestImpl implements HttpRequest {
      * the content of the body of the request
      */
     private byte[] body;
-    private ServletByteArrayIntputStream in;
+    private String version = "HTTP/1.0";
+    private ServletInputStream in;
     private int length;
     private String contentType;
 
@@ -155,6 +158,7 @@ public class HttpRequestImpl implements HttpRequest {
     private String path = "/";
     private Locale locale = Locale.getDefault();
     private HttpSession session;
+    private boolean sessionResolved;
     private String encoding = "UTF-8";
     private ServletContext context = null;
     private String contextPath = "";
@@ -179,19 +183,17 @@ public class HttpRequestImpl implements HttpRequest {
      * @return The value of the header
      */
     public String getHeader(String name) {
-        List<String> strings = headers.get(name);
-        return strings == null || strings.isEmpty() ? null : strings.get(0);
+        return head.get(name);
     }
 
     @Override
     public Enumeration<String> getHeaderNames() {
-        return new ArrayEnumeration(new ArrayList<>(headers.keySet()));
+        return new ArrayEnumeration(head.names());
     }
 
     @Override
     public Enumeration<String> getHeaders(String s) {
-        final List<String> list = headers.get(s);
-        return new ArrayEnumeration(list == null ? Collections.emptyList() : list);
+        return new ArrayEnumeration(head.getAll(s));
     }
 
     @Override
@@ -207,11 +209,11 @@ public class HttpRequestImpl implements HttpRequest {
      * @return The value of the parameter
      */
     public String getFormParameter(String name) {
-        return formParams.get(name);
+        return formParams().get(name);
     }
 
     public Map<String, String> getFormParameters() {
-        return new HashMap<>(formParams);
+        return new HashMap<>(formParams());
     }
 
     /**
@@ -272,7 +274,7 @@ public class HttpRequestImpl implements HttpRequest {
     @Override
     public String getQueryString() {
         StringBuilder str = new StringBuilder("");
-        for (final Map.Entry<String, List<String>> q : queryParams.entrySet()) {
+        for (final Map.Entry<String, List<String>> q : queryParams().entrySet()) {
             for (final String v : q.getValue()) {
                 str.append(q.getKey()).append("=").append(v).append("&");
             }
@@ -291,6 +293,7 @@ public class HttpRequestImpl implements HttpRequest {
 
     @Override
     public String getRequestedSessionId() {
+        final HttpSession session = session();
         if (session != null) {
             return session.getId();
         }
@@ -323,8 +326,8 @@ public class HttpRequestImpl implements HttpRequest {
     }
 
     public void addQueryParams(final String query) {
-        parseQueryParams(query);
-        parameters.putAll(queryParams); // a merge would be better
+        parseQueryParams(query, queryParams());
+        parameters().putAll(queryParams); // a merge would be better
     }
 
     /**
@@ -394,38 +397,21 @@ public class HttpRequestImpl implements HttpRequest {
      * @throws java.io.IOException if an exception is thrown
      */
     protected boolean readMessage(InputStream input) throws IOException {
-        final DataInput di = new DataInputStream(input);
+        return readMessage(input, false);
+    }
 
-        if (!readRequestLine(di)) {
+    /**
+     * @param streamBody if true the body, unless it is a form, is read from the input as the application consumes it
+     */
+    protected boolean readMessage(final InputStream input, final boolean streamBody) throws IOException {
+        if (!readRequestLine(input)) {
             return false;
         }
-        readHeaders(di);
-        readBody(di);
-
-        for (final Map.Entry<String, String> formParameters : getFormParameters().entrySet()) {
-            parameters.put(formParameters.getKey(), singletonList(formParameters.getValue()));
-        }
-        parameters.putAll(queryParams);
-
-        if (headers.containsKey("Cookie")) {
-            final String cookie = getHeader("Cookie");
-            if (cookie != null) {
-                final String[] cookies = cookie.split(";");
-                for (String c : cookies) {
-                    final String current = c.trim();
-                    if (current.startsWith("EJBSESSIONID=")) {
-                        final SessionManager.SessionWrapper sessionWrapper =
-                                SystemInstance.get().getComponent(SessionManager.class).findSession(current.substring("EJBSESSIONID=".length()));
-                        session = sessionWrapper == null ? null : sessionWrapper.session;
-                    } else if (current.startsWith("JSESSIONID=")) {
-                        final SessionManager.SessionWrapper sessionWrapper =
-                                SystemInstance.get().getComponent(SessionManager.class).findSession(current.substring("JSESSIONID=".length()));
-                        session = sessionWrapper == null ? null : sessionWrapper.session;
-                    }
-                }
-            }
+        readHeaders();
+        if (!streamBody || !streamBody(input)) {
+            readBody(new DataInputStream(input));
         }
-        return true;
+        return true; // parameters, cookies and the session are resolved on first access
     }
 
     public void print(final Logger log, boolean formatXml) {
@@ -433,12 +419,13 @@ public class HttpRequestImpl implements HttpRequest {
             final StringBuilder builder = new StringBuilder();
             builder.append("******************* REQUEST ******************\n");
             builder.append(method).append(" ").append(uri).append("\n");
+            final Map<String, List<String>> headers = head.toMap();
             for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
                 builder.append(entry).append("\n");
             }
             builder.append("\n");
 
-            final String text = new String(body);
+            final String text = body != null ? new String(body) : "<streamed body>";
             if (formatXml && OpenEJBHttpServer.isTextXml(headers)) {
                 builder.append(OpenEJBHttpServer.reformat(text)).append("\n");
             } else {
@@ -450,77 +437,40 @@ public class HttpRequestImpl implements HttpRequest {
     }
 
     /**
-     * reads and parses the request line
+     * reads and parses the request line and reads the headers
      *
      * @param in the input to be read
      * @throws java.io.IOException if an exception is thrown
      */
-    private boolean readRequestLine(DataInput in) throws IOException {
-        String line;
-        try {
-            line = in.readLine();
-//            System.out.println(line);
-        } catch (Exception e) {
-            throw new IOException("Could not read the HTTP Request Line :"
-                + e.getClass().getName()
-                + " : "
-                + e.getMessage());
-        }
-        if (line == null) {
+    private boolean readRequestLine(InputStream in) throws IOException {
+        final HttpRequestHead read = new HttpRequestHead();
+        if (!read.read(in)) {
             return false;
         }
+        head = read;
 
-        StringTokenizer lineParts = new StringTokenizer(line, " ");
+        final String[] lineParts = head.requestLine();
         /* [1] Parse the method */
-        parseMethod(lineParts);
+        if (lineParts[0] == null) {
+            throw new IOException("Could not parse the HTTP Request Method : empty request line");
+        }
+        method = lineParts[0];
         /* [2] Parse the URI */
-        parseURI(lineParts);
+        if (lineParts[1] == null) {
+            throw new IOException("Could not parse the HTTP Request URI : " + method);
+        }
+        parseURI(lineParts[1]);
+        if (lineParts[2] != null) {
+            version = lineParts[2];
+        }
         return true;
     }
 
     /**
-     * parses the method for this page
-     *
-     * @param lineParts a StringTokenizer of the request line
-     * @throws java.io.IOException if an exeption is thrown
+     * @return the HTTP version of the request line, HTTP/1.0 if it is missing
      */
-    private void parseMethod(StringTokenizer lineParts) throws IOException {
-        String token;
-        try {
-            token = lineParts.nextToken();
-        } catch (final Exception e) {
-            throw new IOException("Could not parse the HTTP Request Method :"
-                + e.getClass().getName()
-                + " : "
-                + e.getMessage());
-        }
-
-        // in JAXRS you can create your own method
-        try { // to control the case
-            method = Method.valueOf(token.toUpperCase(Locale.ENGLISH)).name();
-        } catch (final Exception e) {
-            method = token;
-        }
-        /*
-        if (token.equalsIgnoreCase("GET")) {
-            method = Method.GET.name();
-        } else if (token.equalsIgnoreCase("POST")) {
-            method = Method.POST.name();
-        } else if (token.equalsIgnoreCase("PUT")) {
-            method = Method.PUT.name();
-        } else if (token.equalsIgnoreCase("DELETE")) {
-            method = Method.DELETE.name();
-        } else if (token.equalsIgnoreCase("HEAD")) {
-            method = Method.HEAD.name();
-        } else if (token.equalsIgnoreCase("OPTIONS")) {
-            method = Method.HEAD.name();
-        } else if (token.equalsIgnoreCase("PATCH")) {
-            method = Method.PATCH.name();
-        } else {
-            method = Method.UNSUPPORTED.name();
-            throw new IOException("Unsupported HTTP Request Method :" + token);
-        }
-        */
+    protected String getVersion() {
+        return version;
     }
 
     /**
@@ -539,14 +489,27 @@ public class HttpRequestImpl implements HttpRequest {
                 + " : "
                 + e.getMessage());
         }
+        parseURI(token);
+    }
 
+    private void parseURI(final String token) throws IOException {
         try {
-            uri = new URI(socketURI.toString() + token.replace("//", "/"));
+            uri = new URI(socketURI.toString() + (token.contains("//") ? token.replace("//", "/") : token));
         } catch (URISyntaxException e) {
             throw new IOException("Malformed URI :" + token + " Exception: " + e.getMessage());
         }
+        queryURI = uri;
+        queryParams = null;
+    }
 
-        parseQueryParams(uri.getQuery());
+    private Map<String, List<String>> queryParams() {
+        if (queryParams == null) {
+            queryParams = new HashMap<>();
+            if (queryURI != null) {
+                parseQueryParams(queryURI.getQuery(), queryParams);
+            }
+        }
+        return queryParams;
     }
 
     /**
@@ -554,7 +517,7 @@ public class HttpRequestImpl implements HttpRequest {
      *
      * @param query the URL (or query) parameters to be parsed
      */
-    private void parseQueryParams(String query) {
+    private static void parseQueryParams(String query, final Map<String, List<String>> queryParams) {
         if (query == null)
             return;
         StringTokenizer parameters = new StringTokenizer(query, "&");
@@ -587,45 +550,9 @@ public class HttpRequestImpl implements HttpRequest {
     }
 
     /**
-     * reads the headers from the data input sent from the browser
-     *
-     * @param in the data input sent from the browser
-     * @throws java.io.IOException if an exeption is thrown
+     * uses the headers read with the request line
      */
-    private void readHeaders(DataInput in) throws IOException {
-//        System.out.println("\nREQUEST");
-        while (true) {
-            // Header Field
-            String hf;
-
-            try {
-                hf = in.readLine();
-                //System.out.println(hf);
-            } catch (Exception e) {
-                throw new IOException("Could not read the HTTP Request Header Field :"
-                    + e.getClass().getName()
-                    + " : "
-                    + e.getMessage());
-            }
-
-            if (hf == null || hf.equals("")) {
-                break;
-            }
-
-            /* [1] parse the name */
-            final int colonIndex = hf.indexOf((int) ':');
-            final String name = hf.substring(0, colonIndex);
-
-            /* [2] Parse the Value */
-            final String value = hf.substring(colonIndex + 1, hf.length()).trim();
-            List<String> values = headers.get(name);
-            if (values == null) {
-                values = new ArrayList<>();
-                headers.put(name, values);
-            }
-            values.add(value);
-        }
-
+    private void readHeaders() {
         // Update the URI to be what the client sees the the server as.
         final String host = getHeader("Host");
         if (host != null) {
@@ -650,15 +577,6 @@ public class HttpRequestImpl implements HttpRequest {
             } catch (URISyntaxException ignore) {
             }
         }
-
-        //temp-debug-------------------------------------------
-        //java.util.Iterator myKeys = headers.keySet().iterator();
-        //String temp = null;
-        //while(myKeys.hasNext()) {
-        //    temp = (String)myKeys.next();
-        //    System.out.println("Test: " + temp + "=" + headers.get(temp));
-        //}
-        //end temp-debug---------------------------------------
     }
 
     private boolean hasBody() {
@@ -666,6 +584,23 @@ public class HttpRequestImpl implements HttpRequest {
             && !method.equals(Method.HEAD.name()) && !method.equals(Method.OPTIONS.name());
     }
 
+    private boolean streamBody(final InputStream input) {
+        length = parseContentLength();
+        contentType = getHeader(HttpRequest.HEADER_CONTENT_TYPE);
+        if (!hasBody() || (contentType != null && (contentType.startsWith(FORM_URL_ENCODED) || contentType.startsWith(MULTIPART_FORM_DATA)))) {
+            return false; // nothing to stream or parameters are needed right away
+        }
+        if (CHUNKED.equals(getHeader(TRANSFER_ENCODING))) {
+            this.in = HttpBodyInputStream.chunked(input);
+            return true;
+        }
+        if (length >= 0) {
+            this.in = HttpBodyInputStream.fixed(input, length);
+            return true;
+        }
+        return false;
+    }
+
     /**
      * reads the body from the data input passed in
      *
@@ -682,40 +617,13 @@ public class HttpRequestImpl implements HttpRequest {
 
         final boolean hasBody = hasBody();
         if (hasBody && contentType != null && (contentType.startsWith(FORM_URL_ENCODED) || contentType.startsWith(MULTIPART_FORM_DATA))) {
-            String rawParams;
-
             try {
                 body = readContent(in);
                 this.in = new ServletByteArrayIntputStream(body);
-                rawParams = new String(body);
             } catch (Exception e) {
                 throw (IOException) new IOException("Could not read the HTTP Request Body: " + e.getMessage()).initCause(e);
             }
-
-            StringTokenizer parameters = new StringTokenizer(rawParams, "&");
-            String name;
-            String value;
-
-            while (parameters.hasMoreTokens()) {
-                StringTokenizer param = new StringTokenizer(parameters.nextToken(), "=");
-
-                /* [1] Parse the Name */
-                name = URLDecoder.decode(param.nextToken(), "UTF-8");
-                if (name == null)
-                    break;
-
-                /* [2] Parse the Value */
-                if (param.hasMoreTokens()) {
-                    value = URLDecoder.decode(param.nextToken(), "UTF-8");
-                } else {
-                    value = ""; //if there is no token set value to blank string
-                }
-
-                if (value == null)
-                    value = "";
-
-                formParams.put(name, value);
-            }
+            formBody = true;
         } else if (hasBody && CHUNKED.equals(getHeader(TRANSFER_ENCODING))) {
             try {
                 ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
@@ -751,6 +659,47 @@ public class HttpRequestImpl implements HttpRequest {
 
     }
 
+    private Map<String, String> formParams() {
+        if (formParams == null) {
+            formParams = new HashMap<>();
+            if (formBody) {
+                try {
+                    parseFormParams(new String(body), formParams);
+                } catch (final UnsupportedEncodingException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+        return formParams;
+    }
+
+    private static void parseFormParams(final String rawParams, final Map<String, String> formParams) throws UnsupportedEncodingException {
+        StringTokenizer parameters = new StringTokenizer(rawParams, "&");
+        String name;
+        String value;
+
+        while (parameters.hasMoreTokens()) {
+            StringTokenizer param = new StringTokenizer(parameters.nextToken(), "=");
+
+            /* [1] Parse the Name */
+            name = URLDecoder.decode(param.nextToken(), "UTF-8");
+            if (name == null)
+                break;
+
+            /* [2] Parse the Value */
+            if (param.hasMoreTokens()) {
+                value = URLDecoder.decode(param.nextToken(), "UTF-8");
+            } else {
+                value = ""; //if there is no token set value to blank string
+            }
+
+            if (value == null)
+                value = "";
+
+            formParams.put(name, value);
+        }
+    }
+
     private byte[] readContent(DataInput in) throws IOException {
         if (length >= 0) {
             byte[] body = new byte[length];
@@ -837,41 +786,64 @@ public class HttpRequestImpl implements HttpRequest {
 
     @Override
     public Cookie[] getCookies() {
-        if (cookies != null) return toCookies(cookies);
-
-        cookies = new HashMap<String, String>();
-
-        String cookieHeader = getHeader(HEADER_COOKIE);
-        if (cookieHeader == null) return toCookies(cookies);
-
-        StringTokenizer tokens = new StringTokenizer(cookieHeader, ";");
-        while (tokens.hasMoreTokens()) {
-            StringTokenizer token = new StringTokenizer(tokens.nextToken(), "=");
-            String name = token.nextToken();
-            String value = token.nextToken();
-            cookies.put(name, value);
-        }
-        return toCookies(cookies);
+        return toCookies(cookies());
     }
 
     protected Map<?, ?> getInternalCookies() {
+        return cookies();
+    }
+
+    /**
+     * @return the cookies in the order they were sent, parsed on first access
+     */
+    private Map<String, String> cookies() {
         if (cookies != null) return cookies;
 
-        cookies = new HashMap<String, String>();
+        cookies = new LinkedHashMap<String, String>();
 
         String cookieHeader = getHeader(HEADER_COOKIE);
         if (cookieHeader == null) return cookies;
 
-        StringTokenizer tokens = new StringTokenizer(cookieHeader, ";");
-        while (tokens.hasMoreTokens()) {
-            StringTokenizer token = new StringTokenizer(tokens.nextToken(), "=");
-            String name = token.nextToken();
-            String value = token.nextToken();
-            cookies.put(name, value);
+        int start = 0;
+        while (start < cookieHeader.length()) {
+            int end = cookieHeader.indexOf(';', start);
+            if (end < 0) {
+                end = cookieHeader.length();
+            }
+            final int equals = cookieHeader.indexOf('=', start);
+            if (equals > start && equals < end) {
+                final String name = cookieHeader.substring(start, equals).trim();
+                if (!name.isEmpty()) {
+                    cookies.put(name, cookieHeader.substring(equals + 1, end).trim());
+                }
+            }
+            start = end + 1;
         }
         return cookies;
     }
 
+    /**
+     * @return the session of the request, looked up from its session cookie on first access
+     */
+    private HttpSession session() {
+        if (!sessionResolved) {
+            sessionResolved = true;
+            if (session == null && head.contains(HEADER_COOKIE)) {
+                String id = null;
+                for (final Map.Entry<String, String> cookie : cookies().entrySet()) {
+                    if ("EJBSESSIONID".equals(cookie.getKey()) || "JSESSIONID".equals(cookie.getKey())) {
+                        id = cookie.getValue();
+                    }
+                }
+                if (id != null) {
+                    final SessionManager.SessionWrapper sessionWrapper = SystemInstance.get().getComponent(SessionManager.class).findSession(id);
+                    session = sessionWrapper == null ? null : sessionWrapper.session;
+                }
+            }
+        }
+        return session;
+    }
+
     private Cookie[] toCookies(Map<String, String> cookies) {
         Cookie[] out = new Cookie[cookies.size()];
         int i = 0;
@@ -891,7 +863,7 @@ public class HttpRequestImpl implements HttpRequest {
     }
 
     public HttpSession getSession(boolean create) {
-        if (session == null && create) {
+        if (session() == null && create) {
             long timeout = -1; // default is infinite *here* only
             if (contextPath != null) { // TODO: webapp should be contextual, would need to normalize jaxws, jaxrs, servlet, jsf...before but would be better
                 final Assembler assembler = SystemInstance.get().getComponent(Assembler.class);
@@ -993,6 +965,7 @@ public class HttpRequestImpl implements HttpRequest {
 
     @Override
     public String changeSessionId() {
+        final HttpSession session = session();
         if (session != null) {
             if (HttpSessionImpl.class.isInstance(session)) {
                 HttpSessionImpl.class.cast(session).newSessionId();
@@ -1049,18 +1022,29 @@ public class HttpRequestImpl implements HttpRequest {
     }
 
     public void addInternalParameter(final String key, final String val) {
-        parameters.put(key, asList(val));
+        parameters().put(key, asList(val));
+    }
+
+    private Map<String, List<String>> parameters() {
+        if (parameters == null) {
+            parameters = new HashMap<>();
+            for (final Map.Entry<String, String> formParameters : formParams().entrySet()) {
+                parameters.put(formParameters.getKey(), singletonList(formParameters.getValue()));
+            }
+            parameters.putAll(queryParams());
+        }
+        return parameters;
     }
 
     public String getParameter(String name) {
-        final List<String> strings = parameters.get(name);
+        final List<String> strings = parameters().get(name);
         return strings == null ? null : strings.iterator().next();
     }
 
     @Override
     public Map<String, String[]> getParameterMap() {
         final Map<String, String[]> params = new HashMap<String, String[]>();
-        for (final Map.Entry<String, List<String>> p : parameters.entrySet()) {
+        for (final Map.Entry<String, List<String>> p : parameters().entrySet()) {
             final List<String> values = p.getValue();
             params.put(p.getKey(), values.toArray(new String[values.size()]));
         }
@@ -1069,12 +1053,12 @@ public class HttpRequestImpl implements HttpRequest {
 
     @Override
     public Enumeration<String> getParameterNames() {
-        return new ArrayEnumeration(new ArrayList<>(parameters.keySet()));
+        return new ArrayEnumeration(new ArrayList<>(parameters().keySet()));
     }
 
     @Override
     public String[] getParameterValues(final String s) {
-        final List<String> strings = parameters.get(s);
+        final List<String> strings = parameters().get(s);
         return strings == null ? null : strings.toArray(new String[strings.size()]);
     }
 
@@ -1095,6 +1079,7 @@ public class HttpRequestImpl implements HttpRequest {
 
     @Deprecated // TODO should be dropped, do we drop axis module as well?
     public Map<String, String> getParameters() {
+        final Map<String, List<String>> parameters = parameters();
         final HashMap<String, String> converted = new HashMap<String, String>(parameters.size());
         for (final Map.Entry<String, List<String>> entry : parameters.entrySet()) {
             converted.put(entry.getKey(), entry.getValue().iterator().next());
@@ -1280,7 +1265,7 @@ public class HttpRequestImpl implements HttpRequest {
             final HttpRequestImpl cast = HttpRequestImpl.class.cast(request);
             final HttpRequestImpl httpRequest = new HttpRequestImpl(cast.socketURI);
             httpRequest.uri = cast.uri;
-            httpRequest.parameters.putAll(cast.parameters);
+            httpRequest.parameters().putAll(cast.parameters());
             httpRequest.initPathFromContext(cast.contextPath);
             httpRequest.initServletPath(path);
             httpRequest.method = cast.method;
@@ -28,11 +28,16 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.ByteArrayOutputStream;
 import java.io.DataOutput;
 import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.URLConnection;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -82,6 +87,11 @@ public class HttpResponseImpl implements HttpResponse {
      * a line feed character
      */
     public static final String CRLF = "\r\n";
+
+    /**
+     * Bytes of a streamed body buffered before the response is committed.
+     */
+    public static final int STREAM_BUFFER = 8192;
     /**
      * a space character
      */
@@ -97,10 +107,25 @@ public class HttpResponseImpl implements HttpResponse {
 
     private HttpRequestImpl request;
     private URLConnection content;
+    private transient File file;
+    private long fileLength;
 
     private boolean commited = false;
     private String encoding = "UTF-8";
     private Locale locale = Locale.getDefault();
+    private long contentLength = -1;
+
+    /**
+     * Set when the body is streamed to the connection, see {@link #stream(OutputStream, WritableByteChannel, boolean, boolean)}.
+     */
+    private transient OutputStream stream;
+    private transient WritableByteChannel channel;
+    private boolean keepAlive;
+    private boolean chunkable;
+    private boolean chunked;
+    private boolean headWritten;
+    private boolean finishing;
+    private boolean finished;
 
     protected void setRequest(final HttpRequestImpl request) {
         this.request = request;
@@ -365,12 +390,12 @@ public class HttpResponseImpl implements HttpResponse {
 
     @Override
     public void setContentLength(final int i) {
-        // no-op
+        contentLength = i; // only used to frame a streamed body, otherwise the buffer size is sent
     }
 
     @Override
     public void setContentLengthLong(final long length) {
-        // no-op
+        contentLength = length;
     }
 
     /**
@@ -431,6 +456,13 @@ public class HttpResponseImpl implements HttpResponse {
      * @throws java.io.IOException if an exception is thrown
      */
     protected void writeMessage(final OutputStream output, final boolean indent) throws IOException {
+        if (stream != null) { // the body went to the connection as it was written
+            if (!finished) {
+                finishStream();
+            }
+            return;
+        }
+
         flushBuffer();
 
         final ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -438,9 +470,22 @@ public class HttpResponseImpl implements HttpResponse {
         closeMessage();
         writeResponseLine(out);
         writeHeaders(out);
-        writeBody(out, indent);
-        out.flush();
-        output.write(baos.toByteArray());
+        if (file != null) {
+            out.writeBytes(CRLF);
+            out.flush();
+            output.write(baos.toByteArray());
+            if (!isBodyless()) {
+                transferFile(output);
+            }
+        } else if (isBodyless()) {
+            out.writeBytes(CRLF);
+            out.flush();
+            output.write(baos.toByteArray());
+        } else {
+            writeBody(out, indent);
+            out.flush();
+            output.write(baos.toByteArray());
+        }
         output.flush();
     }
 
@@ -448,10 +493,138 @@ public class HttpResponseImpl implements HttpResponse {
      * initalizes the body
      */
     private void initBody() {
-        sosi = new ServletByteArrayOutputStream();
+        sosi = stream != null ? new StreamingOutputStream() : new ServletByteArrayOutputStream();
         writer = new PrintWriter(sosi);
     }
 
+    /**
+     * Sends the body to the output as it is written instead of buffering it all. Up to {@link #STREAM_BUFFER}
+     * bytes are buffered, beyond that or when flushed the headers are committed and the body is framed by
+     * the Content-Length set by the application, chunked or, for HTTP/1.0 clients, by closing the connection.
+     *
+     * @param channel the channel of the connection, files are transferred to it, can be null
+     * @param chunked if the client accepts the chunked transfer coding (HTTP/1.1)
+     */
+    protected void stream(final OutputStream output, final WritableByteChannel channel, final boolean keepAlive, final boolean chunked) {
+        this.stream = output;
+        this.channel = channel;
+        this.keepAlive = keepAlive;
+        this.chunkable = chunked;
+        setHeader("Connection", keepAlive ? "keep-alive" : "close");
+        initBody();
+    }
+
+    /**
+     * @return false if the connection has to be closed once the streamed response is finished
+     */
+    protected boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * @return true once the status line and the headers of a streamed response are sent
+     */
+    protected boolean isHeadWritten() {
+        return headWritten;
+    }
+
+    /**
+     * @return true for the responses without body: to a HEAD request or a 304
+     */
+    private boolean isBodyless() {
+        return request != null && "HEAD".equals(request.getMethod()) || isNotModified();
+    }
+
+    /**
+     * A 304 has no body and no Content-Length, the one of the cached response stays valid (RFC 7230 3.3.2).
+     */
+    private boolean isNotModified() {
+        return code == HttpServletResponse.SC_NOT_MODIFIED;
+    }
+
+    private void writeHead(final long length) throws IOException {
+        setCookieHeader();
+        if (isNotModified()) {
+            headers.remove("Content-Length");
+        } else if (length >= 0) {
+            setHeader("Content-Length", Long.toString(length));
+        } else if (contentLength >= 0) {
+            setHeader("Content-Length", Long.toString(contentLength));
+        } else if (getHeader("Content-Length") == null && !isBodyless()) {
+            if (chunkable) {
+                setHeader("Transfer-Encoding", "chunked");
+                chunked = true;
+            } else { // the end of the connection ends the body
+                keepAlive = false;
+                setHeader("Connection", "close");
+            }
+        }
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(baos);
+        writeResponseLine(out);
+        writeHeaders(out);
+        out.writeBytes(CRLF);
+        out.flush();
+        baos.writeTo(stream);
+        headWritten = true;
+        commited = true;
+    }
+
+    private void sendBuffer() throws IOException {
+        if (!headWritten) {
+            writeHead(-1);
+        }
+        final ByteArrayOutputStream buffer = sosi.getOutputStream();
+        if (buffer.size() > 0 && !isBodyless()) {
+            if (chunked) {
+                stream.write((Integer.toHexString(buffer.size()) + CRLF).getBytes());
+                buffer.writeTo(stream);
+                stream.write(CRLF.getBytes());
+            } else {
+                buffer.writeTo(stream);
+            }
+        }
+        buffer.reset();
+        stream.flush();
+    }
+
+    private void finishStream() throws IOException {
+        finished = true;
+        finishing = true;
+        try {
+            writer.flush(); // to the buffer
+        } finally {
+            finishing = false;
+        }
+
+        if (!headWritten) {
+            if (file != null) {
+                writeHead(fileLength);
+                if (!isBodyless()) {
+                    transferFile(stream);
+                }
+            } else if (content != null) {
+                writeHead(content.getContentLength());
+                if (!isBodyless()) {
+                    writeBody(new DataOutputStream(stream), false, true);
+                }
+            } else {
+                final ByteArrayOutputStream buffer = sosi.getOutputStream();
+                writeHead(buffer.size());
+                if (!isBodyless()) {
+                    buffer.writeTo(stream);
+                }
+            }
+        } else {
+            sendBuffer();
+            if (chunked) {
+                stream.write(("0" + CRLF + CRLF).getBytes());
+            }
+        }
+        stream.flush();
+    }
+
     /**
      * Creates a string version of the response similar to:
      * <p/>
@@ -473,7 +646,11 @@ public class HttpResponseImpl implements HttpResponse {
 
 
     private void setContentLengthHeader() {
-        if (content == null) {
+        if (isNotModified()) {
+            headers.remove("Content-Length");
+        } else if (file != null) {
+            setHeader("Content-Length", Long.toString(fileLength));
+        } else if (content == null) {
             writer.flush();
             writer.close();
             final int length = sosi.getOutputStream().size();
@@ -550,7 +727,13 @@ public class HttpResponseImpl implements HttpResponse {
      * @throws java.io.IOException if an exception is thrown
      */
     private void writeBody(final DataOutput out, final boolean indent) throws IOException {
-        out.writeBytes(CRLF);
+        writeBody(out, indent, false);
+    }
+
+    private void writeBody(final DataOutput out, final boolean indent, final boolean headWritten) throws IOException {
+        if (!headWritten) {
+            out.writeBytes(CRLF);
+        }
         if (content == null) {
             if (indent && OpenEJBHttpServer.isTextXml(headers)) {
                 final String xml = new String(sosi.getOutputStream().toByteArray());
@@ -569,6 +752,50 @@ public class HttpResponseImpl implements HttpResponse {
         }
     }
 
+    /**
+     * Sends the file with {@link FileChannel#transferTo}, straight to the socket when its channel is known.
+     */
+    private void transferFile(final OutputStream output) throws IOException {
+        output.flush(); // the head goes first
+        final WritableByteChannel target = channel != null ? channel : Channels.newChannel(output);
+        try (final FileInputStream in = new FileInputStream(file)) {
+            final FileChannel source = in.getChannel();
+            long position = 0;
+            while (position < fileLength) {
+                final long sent = source.transferTo(position, fileLength - position, target);
+                if (sent <= 0) {
+                    throw new IOException(file + " was truncated while being sent");
+                }
+                position += sent;
+            }
+        }
+    }
+
+    private final class StreamingOutputStream extends ServletByteArrayOutputStream {
+        @Override
+        public void write(final int b) throws IOException {
+            getOutputStream().write(b);
+            if (getOutputStream().size() >= STREAM_BUFFER) {
+                sendBuffer();
+            }
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            getOutputStream().write(b, off, len);
+            if (getOutputStream().size() >= STREAM_BUFFER) {
+                sendBuffer();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (!finishing && !finished) {
+                sendBuffer();
+            }
+        }
+    }
+
     /**
      * gets the name of the server being used
      *
@@ -752,6 +979,16 @@ public class HttpResponseImpl implements HttpResponse {
         this.content = content;
     }
 
+    /**
+     * Uses the file as body instead of what was written to the response, it is transferred when the response is written.
+     *
+     * @param length the length of the file to send
+     */
+    protected void sendFile(final File file, final long length) {
+        this.file = file;
+        this.fileLength = length;
+    }
+
     public void setStatusMessage(final String responseString) {
         this.setResponseString(responseString);
     }
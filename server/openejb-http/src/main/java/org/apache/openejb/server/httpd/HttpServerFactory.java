@@ -22,6 +22,14 @@ import org.apache.xbean.recipe.ParameterNames;
 public class HttpServerFactory {
     @ParameterNames("useJetty")
     public static ServerService createServerService(final boolean useJetty) {
+        return createServerService(useJetty, false);
+    }
+
+    @ParameterNames({"useJetty", "useNio"})
+    public static ServerService createServerService(final boolean useJetty, final boolean useNio) {
+        if (useNio) {
+            return new NioHttpEjbServer();
+        }
         if (useJetty) {
             try {
                 ClassLoader cl = Thread.currentThread().getContextClassLoader();
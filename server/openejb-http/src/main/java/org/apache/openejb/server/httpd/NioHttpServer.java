@@ -0,0 +1,417 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.httpd;
+
+import org.apache.openejb.OpenEJBException;
+import org.apache.openejb.loader.Options;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.server.ServiceDaemon;
+import org.apache.openejb.server.ServiceException;
+import org.apache.openejb.server.context.RequestInfos;
+import org.apache.openejb.util.DaemonThreadFactory;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+
+import javax.servlet.ServletInputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Non blocking connector of the embedded http server. A selector waits for the requests of all the connections
+ * so the idle keep-alive ones don't hold a thread. A readable connection goes to a worker which serves its
+ * requests in blocking mode, the pipelined ones already received included, streaming the bodies both ways
+ * (Content-Length or chunked), then gives it back to the selector.
+ */
+public class NioHttpServer extends OpenEJBHttpServer {
+
+    private static final Logger log = Logger.getInstance(LogCategory.HTTPSERVER, NioHttpServer.class);
+    private static final byte[] CONTINUE = ("HTTP/1.1 100 Continue" + HttpResponseImpl.CRLF + HttpResponseImpl.CRLF).getBytes();
+
+    private String name;
+    private String ip;
+    private int port;
+    private int backlog;
+    private int threads;
+    private int readTimeout;
+    private long keepAliveTimeout;
+    private int maxKeepAliveRequests;
+    private long maxSwallowSize;
+
+    private final Queue<Connection> idle = new ConcurrentLinkedQueue<>();
+    private volatile boolean running;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private ThreadPoolExecutor workers;
+    private Thread selectorThread;
+
+    public NioHttpServer() {
+        this(null);
+    }
+
+    public NioHttpServer(final HttpListener listener) {
+        super(listener);
+    }
+
+    @Override
+    public void init(final Properties props) throws Exception {
+        super.init(props);
+
+        final Options options = new Options(props);
+        name = props.getProperty("name");
+        ip = options.get("bind", "0.0.0.0");
+        port = options.get("port", 0);
+        threads = options.get("threads", 200);
+        backlog = options.get("backlog", threads);
+        readTimeout = options.get("readTimeout", 30000);
+        keepAliveTimeout = options.get("keepAliveTimeout", 15000L);
+        maxKeepAliveRequests = options.get("maxKeepAliveRequests", 100);
+        maxSwallowSize = options.get("maxSwallowSize", 2 * 1024 * 1024L);
+    }
+
+    @Override
+    public synchronized void start() throws ServiceException {
+        if (running) {
+            return;
+        }
+        super.start();
+
+        try {
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.socket().setReuseAddress(true);
+            serverChannel.socket().bind(new InetSocketAddress(ServiceDaemon.getAddress(ip), port), backlog);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (final IOException e) {
+            close();
+            throw new ServiceException("Service failed to open socket", e);
+        }
+
+        if (port == 0) {
+            port = serverChannel.socket().getLocalPort();
+            if (name != null) {
+                SystemInstance.get().getProperties().put(name + ".port", Integer.toString(port));
+            }
+        }
+
+        workers = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<Runnable>(),
+            new DaemonThreadFactory("openejb-nio-httpd", port));
+        workers.allowCoreThreadTimeOut(true);
+
+        running = true;
+        selectorThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                select();
+            }
+        });
+        selectorThread.setName("openejb-nio-httpd-selector-" + port);
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+    }
+
+    @Override
+    public void stop() throws ServiceException {
+        synchronized (this) {
+            if (running) {
+                running = false;
+                selector.wakeup();
+                try {
+                    selectorThread.join(TimeUnit.SECONDS.toMillis(10));
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                workers.shutdown();
+                try {
+                    if (!workers.awaitTermination(5, TimeUnit.SECONDS)) {
+                        workers.shutdownNow();
+                    }
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        super.stop();
+    }
+
+    @Override
+    public int getPort() {
+        return port;
+    }
+
+    @Override
+    public String getIP() {
+        return ip;
+    }
+
+    private void select() {
+        long lastSweep = System.currentTimeMillis();
+        final List<Connection> ready = new ArrayList<>();
+        try {
+            while (running) {
+                selector.select(1000);
+                if (!running) {
+                    break;
+                }
+
+                Connection connection;
+                while ((connection = idle.poll()) != null) {
+                    connection.register();
+                }
+
+                final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    final SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.isReadable()) {
+                        key.cancel();
+                        ready.add(Connection.class.cast(key.attachment()));
+                    }
+                }
+
+                if (!ready.isEmpty()) {
+                    selector.selectNow(); // deregisters the cancelled keys, needed to go back to blocking mode
+                    for (final Connection current : ready) {
+                        current.schedule();
+                    }
+                    ready.clear();
+                }
+
+                final long now = System.currentTimeMillis();
+                if (now - lastSweep >= 1000) {
+                    lastSweep = now;
+                    for (final SelectionKey key : selector.keys()) {
+                        final Object attachment = key.attachment();
+                        if (Connection.class.isInstance(attachment) && now - Connection.class.cast(attachment).idleSince > keepAliveTimeout) {
+                            key.cancel();
+                            Connection.class.cast(attachment).close();
+                        }
+                    }
+                }
+            }
+        } catch (final Throwable t) {
+            log.error("HTTP selector failed", t);
+        } finally {
+            close();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            try {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                new Connection(channel).register();
+            } catch (final IOException e) {
+                channel.close();
+            }
+        }
+    }
+
+    private void close() {
+        if (selector != null) {
+            for (final SelectionKey key : selector.keys()) {
+                try {
+                    key.channel().close();
+                } catch (final IOException e) {
+                    // no-op
+                }
+            }
+            try {
+                selector.close();
+            } catch (final IOException e) {
+                // no-op
+            }
+        }
+        if (serverChannel != null) {
+            try {
+                serverChannel.close();
+            } catch (final IOException e) {
+                // no-op
+            }
+        }
+        Connection connection;
+        while ((connection = idle.poll()) != null) {
+            connection.close();
+        }
+    }
+
+    private static boolean isKeepAlive(final HttpRequestImpl request) {
+        final String connection = request.getHeader("Connection");
+        if ("HTTP/1.1".equals(request.getVersion())) {
+            return connection == null || !"close".equalsIgnoreCase(connection);
+        }
+        return "keep-alive".equalsIgnoreCase(connection);
+    }
+
+    private enum State {
+        IDLE, CLOSE, ASYNC
+    }
+
+    private final class Connection implements Runnable {
+        private final SocketChannel channel;
+        private final Socket socket;
+        private final URI socketURI;
+        private InputStream in;
+        private OutputStream out;
+        private int requests;
+        private volatile long idleSince;
+
+        private Connection(final SocketChannel channel) {
+            this.channel = channel;
+            this.socket = channel.socket();
+            this.socketURI = URI.create("http://" + socket.getLocalAddress().getHostAddress() + ":" + socket.getLocalPort());
+        }
+
+        // selector thread
+        private void register() {
+            try {
+                idleSince = System.currentTimeMillis();
+                channel.register(selector, SelectionKey.OP_READ, this);
+            } catch (final ClosedChannelException e) {
+                close();
+            }
+        }
+
+        // selector thread
+        private void schedule() {
+            try {
+                channel.configureBlocking(true);
+                workers.execute(this);
+            } catch (final IOException | RejectedExecutionException e) {
+                close();
+            }
+        }
+
+        @Override
+        public void run() {
+            State state = State.CLOSE;
+            try {
+                if (in == null) {
+                    socket.setSoTimeout(readTimeout);
+                    in = new BufferedInputStream(socket.getInputStream());
+                    out = new BufferedOutputStream(socket.getOutputStream());
+                }
+                state = serve();
+            } catch (final Throwable t) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Closing connection " + socket.getRemoteSocketAddress() + ": " + t.getMessage(), t);
+                }
+            } finally {
+                if (state == State.IDLE && running) {
+                    try {
+                        channel.configureBlocking(false);
+                        idle.add(this);
+                        selector.wakeup();
+                    } catch (final IOException e) {
+                        close();
+                    }
+                } else if (state != State.ASYNC) { // an async request closes the connection itself
+                    close();
+                }
+            }
+        }
+
+        private State serve() throws IOException {
+            while (true) {
+                RequestInfos.initRequestInfo(socket);
+                try {
+                    final HttpRequestImpl request = new HttpRequestImpl(socketURI);
+                    final HttpResponseImpl response = new HttpResponseImpl();
+                    try {
+                        if (!readRequest(request, response, in, true)) {
+                            return State.CLOSE;
+                        }
+                    } catch (final OpenEJBException e) {
+                        writeResponse(HttpResponseImpl.createError(e.getMessage(), e), out);
+                        return State.CLOSE;
+                    }
+
+                    final boolean keepAlive = running && isKeepAlive(request) && ++requests < maxKeepAliveRequests;
+                    response.stream(out, channel, keepAlive, "HTTP/1.1".equals(request.getVersion()));
+                    if ("100-continue".equalsIgnoreCase(request.getHeader("Expect"))) {
+                        out.write(CONTINUE);
+                        out.flush();
+                    }
+
+                    try {
+                        if (!NioHttpServer.this.dispatch(socket, request, response)) {
+                            return State.ASYNC;
+                        }
+                    } catch (final OpenEJBException e) {
+                        log.error(e.getMessage(), e);
+                        if (!response.isHeadWritten()) {
+                            writeResponse(HttpResponseImpl.createError(e.getMessage(), e), out);
+                        }
+                        return State.CLOSE;
+                    }
+
+                    if (!writeResponse(response, out) || !response.isKeepAlive()) {
+                        return State.CLOSE;
+                    }
+
+                    final ServletInputStream body = request.getInputStream();
+                    if (HttpBodyInputStream.class.isInstance(body) // the next request follows the unread part
+                        && !HttpBodyInputStream.class.cast(body).drain(maxSwallowSize)) {
+                        return State.CLOSE; // not worth reading
+                    }
+                } finally {
+                    RequestInfos.clearRequestInfo();
+                }
+
+                if (in.available() == 0) {
+                    return State.IDLE;
+                } // else pipelined request
+            }
+        }
+
+        private void close() {
+            try {
+                channel.close();
+            } catch (final IOException e) {
+                // no-op
+            }
+        }
+    }
+}
@@ -230,35 +230,52 @@ public class OpenEJBHttpServer implements HttpServer {
             response = HttpResponseImpl.createError(t.getMessage(), t);
             return true;
         } finally {
-            try {
-                if (response != null) {
-                    response.writeMessage(out, false);
-                    if (print.size() > 0 && print.contains(Output.RESPONSE)) {
-                        response.writeMessage(new LoggerOutputStream(log, "debug"), indent);
-                    }
-                }
-            } catch (final Throwable t2) {
-
-                if (log.isDebugEnabled()) {
-                    log.debug("Could not write response", t2);
-                } else {
-                    //SocketException is something a client can cause, so do not log it (potential DOS)
-                    if (!SocketException.class.isInstance(t2)) {
-                        log.warning("Could not write response:" + t2);
-                    }
-                }
+            if (response != null) {
+                writeResponse(response, out);
+            }
+        }
+    }
+
+    /**
+     * @return false if the response couldn't be written
+     */
+    protected boolean writeResponse(final HttpResponseImpl response, final OutputStream out) {
+        try {
+            response.writeMessage(out, false);
+            if (print.size() > 0 && print.contains(Output.RESPONSE)) {
+                response.writeMessage(new LoggerOutputStream(log, "debug"), indent);
+            }
+            return true;
+        } catch (final Throwable t2) {
 
+            if (log.isDebugEnabled()) {
+                log.debug("Could not write response", t2);
+            } else {
+                //SocketException is something a client can cause, so do not log it (potential DOS)
+                if (!SocketException.class.isInstance(t2)) {
+                    log.warning("Could not write response:" + t2);
+                }
             }
+            return false;
         }
     }
 
     private HttpResponseImpl process(final Socket socket, final URI socketURI, final InputStream in) throws OpenEJBException {
         final HttpRequestImpl req = new HttpRequestImpl(socketURI);
         final HttpResponseImpl res = new HttpResponseImpl();
+        if (!readRequest(req, res, in, false)) {
+            return res;
+        }
+        return dispatch(socket, req, res) ? res : null;
+    }
 
+    /**
+     * @return false if the connection was closed before a request
+     */
+    protected boolean readRequest(final HttpRequestImpl req, final HttpResponseImpl res, final InputStream in, final boolean streamBody) throws OpenEJBException {
         try {
-            if (!req.readMessage(in)) {
-                return res;
+            if (!req.readMessage(in, streamBody)) {
+                return false;
             }
 
             if (print.size() > 0 && print.contains(Output.REQUEST)) {
@@ -278,7 +295,13 @@ public class OpenEJBHttpServer implements HttpServer {
             log.error("BAD REQUEST", t);
             throw new OpenEJBException("Could not read the request.\n" + t.getClass().getName() + ":\n" + t.getMessage(), t);
         }
+        return true;
+    }
 
+    /**
+     * @return false if the request went asynchronous, the response is then written by its {@link OpenEJBAsyncContext}
+     */
+    protected boolean dispatch(final Socket socket, final HttpRequestImpl req, final HttpResponseImpl res) throws OpenEJBException {
         final URI uri;
         String location = null;
         try {
@@ -300,8 +323,7 @@ public class OpenEJBHttpServer implements HttpServer {
             throw new OpenEJBException("Error occurred while executing the module " + location + "\n" + t.getClass().getName() + ":\n" + t.getMessage(), t);
         }
 
-        final boolean async = "true".equals(req.getAttribute("openejb_async"));
-        return !async ? res : null;
+        return !"true".equals(req.getAttribute("openejb_async"));
     }
 
     public static String reformat(final String raw) {
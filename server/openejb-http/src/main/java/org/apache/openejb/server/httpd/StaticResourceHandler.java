@@ -0,0 +1,381 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.httpd;
+
+import org.apache.openejb.loader.IO;
+import org.apache.openejb.loader.SystemInstance;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves the static resources of the embedded http server.
+ * <p/>
+ * Files are sent with {@link java.nio.channels.FileChannel#transferTo}, other resources (jars) are kept in memory
+ * when small enough. Responses carry an ETag and a Last-Modified date and conditional GETs get a 304.
+ * A precompressed variant (same name + .gz) is sent to the clients accepting gzip, unless it is older than the
+ * resource: it is then considered outdated. Files written together (a checkout, an unzipped archive) can get
+ * dates a bit apart so dates less than 2 seconds apart are considered equal.
+ * <p/>
+ * Resources are cached in a LRU cache bounded by openejb.http.resource.cache.size bytes, a resource is checked
+ * each time it is served: the last modified date and length of a file, the last modified date of the jar
+ * (or of the url) of the other resources.
+ */
+public class StaticResourceHandler {
+    private static final String GZIP = ".gz";
+    private static final int ENTRY_OVERHEAD = 256; // rough size of the metadata of an entry
+    private static final long DATE_TOLERANCE = TimeUnit.SECONDS.toMillis(2);
+
+    private static final ThreadLocal<SimpleDateFormat> HTTP_DATE = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            final SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("GMT"));
+            return format;
+        }
+    };
+
+    private final Map<String, String> contentTypes = new HashMap<>();
+    private final boolean cacheResources;
+    private final long maxCacheSize;
+    private final int maxContentSize;
+
+    private final Map<String, Resource> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long cacheSize;
+
+    public StaticResourceHandler() {
+        final SystemInstance systemInstance = SystemInstance.get();
+        cacheResources = "true".equals(systemInstance.getProperty("openejb.http.resource.cache", "true"));
+        maxCacheSize = Long.parseLong(systemInstance.getProperty("openejb.http.resource.cache.size", Integer.toString(10 * 1024 * 1024)));
+        maxContentSize = Integer.parseInt(systemInstance.getProperty("openejb.http.resource.cache.max-entry-size", Integer.toString(512 * 1024)));
+
+        contentTypes.put("html", "text/html");
+        contentTypes.put("htm", "text/html");
+        contentTypes.put("css", "text/css");
+        contentTypes.put("txt", "text/plain");
+        contentTypes.put("xml", "application/xml");
+        contentTypes.put("xsl", "application/xml");
+        contentTypes.put("js", "application/javascript");
+        contentTypes.put("json", "application/json");
+        contentTypes.put("map", "application/json");
+        contentTypes.put("pdf", "application/pdf");
+        contentTypes.put("gif", "image/gif");
+        contentTypes.put("jpeg", "image/jpeg");
+        contentTypes.put("jpg", "image/jpeg");
+        contentTypes.put("png", "image/png");
+        contentTypes.put("svg", "image/svg+xml");
+        contentTypes.put("ico", "image/x-icon");
+        contentTypes.put("tiff", "image/tiff");
+        contentTypes.put("woff", "font/woff");
+        contentTypes.put("woff2", "font/woff2");
+    }
+
+    /**
+     * @param path the requested path, its extension gives the content type
+     * @param url  the resource found for this path
+     */
+    public void serve(final HttpRequest request, final HttpResponse response, final String path, final URL url) throws IOException {
+        final Resource resource = find(url);
+
+        final String contentType = contentType(path);
+        if (contentType != null) {
+            response.setContentType(contentType);
+        }
+
+        Resource variant = resource;
+        if (resource.gzip != null) {
+            response.setHeader("Vary", "Accept-Encoding");
+            if (acceptsGzip(request.getHeader("Accept-Encoding"))) {
+                variant = resource.gzip;
+                response.setHeader("Content-Encoding", "gzip");
+            }
+        }
+        response.setHeader("ETag", variant.etag);
+        if (variant.lastModified > 0) {
+            response.setHeader("Last-Modified", variant.lastModifiedHeader);
+        }
+
+        if (isNotModified(request, variant)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        if (variant.file != null && HttpResponseImpl.class.isInstance(response) && !response.isCommitted()) {
+            HttpResponseImpl.class.cast(response).sendFile(variant.file, variant.length);
+        } else if (variant.content != null) {
+            response.getOutputStream().write(variant.content);
+        } else {
+            IO.copy(variant.url, response.getOutputStream());
+        }
+    }
+
+    private String contentType(final String path) {
+        final int dot = path.lastIndexOf('.');
+        if (dot <= 0 || dot == path.length() - 1) {
+            return null;
+        }
+        final String ext = path.substring(dot + 1);
+        final String ct = contentTypes.get(ext);
+        if (ct != null) {
+            return ct;
+        }
+        final String uct = SystemInstance.get().getProperty("openejb.embedded.http.content-type." + ext);
+        if (uct != null) {
+            return uct;
+        }
+        return URLConnection.getFileNameMap().getContentTypeFor(path);
+    }
+
+    private static boolean acceptsGzip(final String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (final String coding : acceptEncoding.split(",")) {
+            final String[] params = coding.split(";");
+            if (!"gzip".equalsIgnoreCase(params[0].trim())) {
+                continue;
+            }
+            for (int i = 1; i < params.length; i++) {
+                final String param = params[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(param.substring(2)) > 0;
+                    } catch (final NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isNotModified(final HttpRequest request, final Resource resource) {
+        final String method = request.getMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            return false;
+        }
+
+        final String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) { // wins over If-Modified-Since
+            for (final String tag : ifNoneMatch.split(",")) {
+                final String value = tag.trim();
+                if ("*".equals(value) || resource.etag.equals(value) || resource.etag.equals("W/" + value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        final String ifModifiedSince = request.getHeader("If-Modified-Since");
+        if (ifModifiedSince != null && resource.lastModified > 0) {
+            try {
+                final long since = HTTP_DATE.get().parse(ifModifiedSince).getTime();
+                return resource.lastModified / 1000 <= since / 1000; // the header has a second precision
+            } catch (final ParseException e) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private Resource find(final URL url) throws IOException {
+        if (!cacheResources) {
+            return load(url);
+        }
+
+        final String key = url.toExternalForm();
+        Resource resource;
+        synchronized (cache) {
+            resource = cache.get(key);
+        }
+        if (resource != null && resource.isValid()) {
+            return resource;
+        }
+
+        resource = load(url);
+        synchronized (cache) {
+            final Resource old = cache.put(key, resource);
+            if (old != null) {
+                cacheSize -= old.weight;
+            }
+            cacheSize += resource.weight;
+
+            final Iterator<Resource> eldest = cache.values().iterator();
+            while (cacheSize > maxCacheSize && eldest.hasNext()) {
+                cacheSize -= eldest.next().weight;
+                eldest.remove();
+            }
+        }
+        return resource;
+    }
+
+    boolean isCached(final URL url) {
+        synchronized (cache) {
+            return cache.containsKey(url.toExternalForm());
+        }
+    }
+
+    long getCacheSize() {
+        synchronized (cache) {
+            return cacheSize;
+        }
+    }
+
+    private Resource load(final URL url) throws IOException {
+        final Resource resource = loadVariant(url);
+        if (resource == null) {
+            throw new IOException("Can't read " + url);
+        }
+
+        Resource gzip = null;
+        try {
+            gzip = loadVariant(new URL(url.toExternalForm() + GZIP));
+        } catch (final IOException e) {
+            // no precompressed variant
+        }
+        if (gzip == null || gzip.lastModified + DATE_TOLERANCE < resource.lastModified) { // ignore an outdated variant
+            return resource;
+        }
+        return new Resource(resource, gzip);
+    }
+
+    /**
+     * @return null if the resource doesn't exist
+     */
+    private Resource loadVariant(final URL url) throws IOException {
+        final File file = toFile(url);
+        if (file != null) {
+            if (!file.isFile()) {
+                return null;
+            }
+            return new Resource(url, file, file.length(), file.lastModified(), null);
+        }
+
+        final URLConnection connection = url.openConnection();
+        connection.connect(); // fails if the resource doesn't exist
+        final long length = connection.getContentLengthLong();
+        final long lastModified = lastModified(connection);
+        byte[] content = null;
+        if (cacheResources && length >= 0 && length <= maxContentSize) {
+            final InputStream from = connection.getInputStream();
+            try {
+                final ByteArrayOutputStream to = new ByteArrayOutputStream((int) length);
+                IO.copy(from, to);
+                content = to.toByteArray();
+            } finally {
+                IO.close(from);
+            }
+        }
+        return new Resource(url, null, content != null ? content.length : length, lastModified, content);
+    }
+
+    /**
+     * The date of a jar is read from its file, getting the headers of a file url would open it.
+     */
+    private static long lastModified(final URLConnection connection) {
+        if (JarURLConnection.class.isInstance(connection)) {
+            final File jar = toFile(JarURLConnection.class.cast(connection).getJarFileURL());
+            if (jar != null) {
+                return jar.lastModified();
+            }
+        }
+        return connection.getLastModified();
+    }
+
+    private static File toFile(final URL url) {
+        if (!"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            return new File(url.toURI());
+        } catch (final URISyntaxException | IllegalArgumentException e) {
+            return new File(url.getPath());
+        }
+    }
+
+    private static final class Resource {
+        private final URL url;
+        private final File file; // null if not on the file system
+        private final long length;
+        private final long lastModified;
+        private final byte[] content; // null for files and large resources
+        private final Resource gzip;
+        private final String etag;
+        private final String lastModifiedHeader;
+        private final int weight;
+
+        private Resource(final URL url, final File file, final long length, final long lastModified, final byte[] content) {
+            this.url = url;
+            this.file = file;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.content = content;
+            this.gzip = null;
+            this.etag = "W/\"" + length + '-' + lastModified + '"';
+            this.lastModifiedHeader = HTTP_DATE.get().format(new Date(lastModified));
+            this.weight = ENTRY_OVERHEAD + (content != null ? content.length : 0);
+        }
+
+        private Resource(final Resource resource, final Resource gzip) {
+            this.url = resource.url;
+            this.file = resource.file;
+            this.length = resource.length;
+            this.lastModified = resource.lastModified;
+            this.content = resource.content;
+            this.gzip = gzip;
+            this.etag = resource.etag;
+            this.lastModifiedHeader = resource.lastModifiedHeader;
+            this.weight = resource.weight + gzip.weight;
+        }
+
+        /**
+         * @return false if the resource changed since it was loaded, a precompressed variant added later is only seen once it changed
+         */
+        private boolean isValid() {
+            return isUnchanged() && (gzip == null || gzip.isValid());
+        }
+
+        private boolean isUnchanged() {
+            if (file != null) {
+                return file.lastModified() == lastModified && file.length() == length;
+            }
+            try {
+                return lastModified(url.openConnection()) == lastModified;
+            } catch (final IOException e) {
+                return false;
+            }
+        }
+    }
+}
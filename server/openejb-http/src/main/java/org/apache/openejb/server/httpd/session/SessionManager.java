@@ -18,14 +18,16 @@ package org.apache.openejb.server.httpd.session;
 
 import org.apache.openejb.core.WebContext;
 import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.monitoring.LocalMBeanServer;
+import org.apache.openejb.monitoring.Managed;
+import org.apache.openejb.monitoring.ManagedMBean;
+import org.apache.openejb.monitoring.ObjectNameBuilder;
 import org.apache.openejb.server.httpd.BeginWebBeansListener;
 import org.apache.openejb.server.httpd.EndWebBeansListener;
 import org.apache.openejb.server.httpd.HttpSession;
 import org.apache.openejb.util.DaemonThreadFactory;
 import org.apache.openejb.util.Duration;
-import org.apache.webbeans.config.WebBeansContext;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.concurrent.ConcurrentHashMap;
@@ -33,15 +35,46 @@ import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.management.ObjectName;
 import javax.servlet.http.HttpSessionEvent;
 
+/**
+ * Sessions of the embedded http server. Expiration uses a timing wheel: a session sits in the bucket of the
+ * eviction tick it expires at, each eviction only visits the buckets of the elapsed ticks. Accessing a session
+ * only updates its last access time, a session found still alive when its bucket is visited moves to the bucket
+ * of its new expiration. A session sits in the wheel through its slot, the slot of a removed session forgets it
+ * so the wheel doesn't keep it (and its application) until the bucket comes round.
+ * <p/>
+ * Registered in JMX as openejb:type=SessionManager,id=n once the first session is created, n numbering the
+ * managers of the JVM.
+ */
+@Managed
 public class SessionManager {
     public static final String EJBSESSIONID = "EJBSESSIONID";
     public static final String JSESSIONID = "JSESSIONID";
 
+    private static final int WHEEL_SIZE = 512; // power of 2
+    private static final int MASK = WHEEL_SIZE - 1;
+    private static final AtomicInteger IDS = new AtomicInteger();
+
     private final ConcurrentMap<String, SessionWrapper> sessions = new ConcurrentHashMap<>();
 
-    private static volatile ScheduledExecutorService es;
+    // the wheel, only used by the eviction thread, new sessions wait in pending until the next eviction
+    private final Slot[] buckets = new Slot[WHEEL_SIZE];
+    private final AtomicReference<Slot> pending = new AtomicReference<>();
+    private long tick = TimeUnit.MINUTES.toMillis(1);
+    private long current = -1;
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private volatile long lastExpired;
+    private volatile long lastEvictionTime;
+
+    private volatile ScheduledExecutorService es;
+    private volatile ObjectName objectName;
 
     public void destroy(final WebContext app) {
         if (app == null) {
@@ -56,8 +89,12 @@ public class SessionManager {
             while (iterator.hasNext()) {
                 final SessionWrapper next = iterator.next();
                 if (next.app == app) {
-                    doDestroy(next);
-                    iterator.remove();
+                    try {
+                        doDestroy(next);
+                    } finally {
+                        iterator.remove();
+                        next.slot.clear();
+                    }
                 }
             }
         } finally {
@@ -86,8 +123,12 @@ public class SessionManager {
             return;
         }
         es.shutdownNow();
+        if (objectName != null) {
+            LocalMBeanServer.unregisterSilently(objectName);
+        }
         for (final SessionWrapper rs : sessions.values()) {
             rs.session.invalidate();
+            rs.slot.clear();
         }
         sessions.clear();
     }
@@ -97,20 +138,94 @@ public class SessionManager {
             return;
         }
         final Duration duration = new Duration(SystemInstance.get().getProperty("openejb.http.eviction.duration", "1 minute"));
+        tick = Math.max(1, duration.getUnit().toMillis(duration.getTime()));
         es = Executors.newScheduledThreadPool(1, new DaemonThreadFactory(SessionManager.class));
         es.scheduleWithFixedDelay(new Runnable() {
             @Override
             public void run() {
-                for (final SessionWrapper data : new ArrayList<>(sessions.values())) {
-                    final HttpSession session = data.session;
-                    if (session.getMaxInactiveInterval() > 0
-                            && session.getLastAccessedTime() + TimeUnit.SECONDS.toMillis(session.getMaxInactiveInterval()) < System.currentTimeMillis()) {
-                        doDestroy(data);
-                        sessions.remove(data.session.getId());
+                evict(System.currentTimeMillis());
+            }
+        }, tick, tick, TimeUnit.MILLISECONDS);
+
+        if (LocalMBeanServer.isJMXActive()) {
+            final ObjectNameBuilder jmxName = new ObjectNameBuilder("openejb");
+            jmxName.set("type", "SessionManager");
+            jmxName.set("id", Integer.toString(IDS.incrementAndGet()));
+            objectName = jmxName.build();
+            LocalMBeanServer.registerSilently(new ManagedMBean(this), objectName);
+        }
+    }
+
+    /**
+     * Expires the sessions of the buckets up to now, only called by the eviction thread.
+     */
+    synchronized void evict(final long now) {
+        final long start = System.nanoTime();
+        final long target = now / tick;
+        if (current < 0) {
+            current = target;
+        } else if (target - current > WHEEL_SIZE) { // one turn visits all the buckets
+            current = target - WHEEL_SIZE;
+        }
+
+        for (Slot next = pending.getAndSet(null); next != null; ) {
+            final Slot slot = next;
+            next = slot.next;
+            final SessionWrapper wrapper = slot.wrapper;
+            if (wrapper != null) {
+                schedule(wrapper);
+            }
+        }
+
+        long count = 0;
+        for (; current <= target; current++) {
+            final int bucket = (int) (current & MASK);
+            Slot next = buckets[bucket];
+            buckets[bucket] = null;
+            while (next != null) {
+                final Slot slot = next;
+                next = slot.next;
+                slot.next = null;
+
+                final SessionWrapper wrapper = slot.wrapper;
+                if (wrapper == null || sessions.get(wrapper.id) != wrapper) {
+                    continue; // already invalidated
+                }
+                final HttpSession session = wrapper.session;
+                final int maxInactive = session.getMaxInactiveInterval();
+                if (maxInactive > 0 && session.getLastAccessedTime() + TimeUnit.SECONDS.toMillis(maxInactive) < now) {
+                    try {
+                        doDestroy(wrapper);
+                    } finally {
+                        sessions.remove(wrapper.id, wrapper);
+                        slot.clear();
                     }
+                    count++;
+                } else {
+                    schedule(wrapper);
                 }
             }
-        }, duration.getTime(), duration.getTime(), duration.getUnit());
+        }
+
+        expired.addAndGet(count);
+        lastExpired = count;
+        lastEvictionTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * Puts the session in the bucket it expires at, a session without timeout or expiring after a full turn
+     * of the wheel is just checked again a turn later.
+     */
+    private void schedule(final SessionWrapper wrapper) {
+        final HttpSession session = wrapper.session;
+        final int maxInactive = session.getMaxInactiveInterval();
+        long at = current + MASK;
+        if (maxInactive > 0) {
+            at = Math.min(at, (session.getLastAccessedTime() + TimeUnit.SECONDS.toMillis(maxInactive)) / tick + 1);
+        }
+        final int bucket = (int) (Math.max(at, current + 1) & MASK);
+        wrapper.slot.next = buckets[bucket];
+        buckets[bucket] = wrapper.slot;
     }
 
     public SessionWrapper findSession(final String id) {
@@ -118,7 +233,10 @@ public class SessionManager {
     }
 
     public void removeSession(final String sessionId) {
-        sessions.remove(sessionId);
+        final SessionWrapper removed = sessions.remove(sessionId);
+        if (removed != null) {
+            removed.slot.clear();
+        }
     }
 
     public Collection<String> findSessionIds() {
@@ -132,29 +250,96 @@ public class SessionManager {
     public SessionWrapper newSession(final BeginWebBeansListener begin, final EndWebBeansListener end,
                                      final HttpSession session, final WebContext app) {
         final SessionWrapper wrapper = new SessionWrapper(begin, end, session, app);
-        final SessionWrapper existing = sessions.putIfAbsent(session.getId(), wrapper);
-        if (existing == null && es == null) {
-            synchronized (this) {
-                if (es == null) {
-                    initEviction();
+        final SessionWrapper existing = sessions.putIfAbsent(wrapper.id, wrapper);
+        if (existing == null) {
+            created.incrementAndGet();
+            Slot head;
+            do {
+                head = pending.get();
+                wrapper.slot.next = head;
+            } while (!pending.compareAndSet(head, wrapper.slot));
+
+            if (es == null) {
+                synchronized (this) {
+                    if (es == null) {
+                        initEviction();
+                    }
                 }
             }
         }
         return existing == null ? wrapper : existing;
     }
 
+    @Managed
+    public int getActiveSessions() {
+        return sessions.size();
+    }
+
+    @Managed
+    public long getCreatedSessions() {
+        return created.get();
+    }
+
+    @Managed
+    public long getExpiredSessions() {
+        return expired.get();
+    }
+
+    /**
+     * @return sessions expired by the last eviction, which runs every eviction duration
+     */
+    @Managed
+    public long getLastExpiredSessions() {
+        return lastExpired;
+    }
+
+    @Managed
+    public double getExpiredSessionsPerMinute() {
+        return lastExpired * (double) TimeUnit.MINUTES.toMillis(1) / tick;
+    }
+
+    /**
+     * @return duration of the last eviction in milliseconds
+     */
+    @Managed
+    public long getLastEvictionTime() {
+        return lastEvictionTime;
+    }
+
     public static class SessionWrapper extends HttpSessionEvent {
         public final BeginWebBeansListener begin;
         public final EndWebBeansListener end;
         public final HttpSession session;
         public final WebContext app;
 
+        // key of the session, its id can change later
+        private final String id;
+        private final Slot slot = new Slot(this);
+
         public SessionWrapper(final BeginWebBeansListener begin, final EndWebBeansListener end, final HttpSession session, final WebContext app) {
             super(session);
             this.begin = begin;
             this.end = end;
             this.session = session;
             this.app = app;
+            this.id = session.getId();
+        }
+    }
+
+    /**
+     * Place of a session in the wheel or in the pending list.
+     */
+    private static final class Slot {
+        private volatile SessionWrapper wrapper;
+        // next slot of the same wheel bucket, or of the pending list
+        private Slot next;
+
+        private Slot(final SessionWrapper wrapper) {
+            this.wrapper = wrapper;
+        }
+
+        private void clear() {
+            wrapper = null;
         }
     }
 }
@@ -22,10 +22,18 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import javax.servlet.http.Cookie;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Collections;
 
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 
@@ -63,4 +71,67 @@ public class HttpRequestImplTest {
         req.initPathFromContext("/api/bar"); // that's too late we tolerate a wrong context only if its value is "/"
         assertEquals("/foo/bar", req.getServletPath());
     }
+
+    @Test
+    public void readHeaders() throws Exception {
+        final HttpRequestImpl req = read(
+            "\r\n" +
+            "get /api/foo?a=1&b=x%20y&a=2 HTTP/1.1\r\n" +
+            "Host: localhost:1234\r\n" +
+            "Accept:  text/plain \r\n" +
+            "X-Multi: one\r\n" +
+            "x-multi: two\r\n" +
+            "Cookie: theme=dark; token=a=b;JSESSIONID=unknown\r\n" +
+            "\r\n" +
+            "GET /next HTTP/1.1\r\n");
+
+        assertEquals("GET", req.getMethod());
+        assertEquals("HTTP/1.1", req.getVersion());
+        assertEquals("/api/foo", req.getURI().getPath());
+        assertEquals("text/plain", req.getHeader("accept"));
+        assertEquals("one", req.getHeader("X-MULTI"));
+        assertEquals(asList("one", "two"), Collections.list(req.getHeaders("X-Multi")));
+        assertEquals(asList("Host", "Accept", "X-Multi", "Cookie"), Collections.list(req.getHeaderNames()));
+        assertNull(req.getHeader("Missing"));
+
+        assertArrayEquals(new String[]{"1", "2"}, req.getParameterValues("a"));
+        assertEquals("x y", req.getParameter("b"));
+
+        final Cookie[] cookies = req.getCookies();
+        assertEquals(3, cookies.length);
+        assertEquals("theme", cookies[0].getName());
+        assertEquals("a=b", cookies[1].getValue());
+        assertNull(req.getSession(false));
+    }
+
+    @Test
+    public void readForm() throws Exception {
+        final HttpRequestImpl req = read(
+            "POST /form?q=query HTTP/1.0\r\n" +
+            "Content-Type: application/x-www-form-urlencoded\r\n" +
+            "Content-Length: 13\r\n" +
+            "\r\n" +
+            "f=form&q=body");
+        assertEquals("HTTP/1.0", req.getVersion());
+        assertEquals("form", req.getParameter("f"));
+        assertEquals("query", req.getParameter("q")); // query overrides form
+        assertEquals("body", req.getFormParameter("q"));
+    }
+
+    @Test
+    public void endOfStream() throws Exception {
+        assertFalse(new HttpRequestImpl(new URI("http://localhost:1234")).readMessage(new ByteArrayInputStream(new byte[0])));
+    }
+
+    @Test(expected = IOException.class)
+    public void malformedHeader() throws Exception {
+        read("GET / HTTP/1.1\r\nnot a header\r\n\r\n");
+    }
+
+    private static HttpRequestImpl read(final String raw) throws Exception {
+        final HttpRequestImpl req = new HttpRequestImpl(new URI("http://localhost:1234"));
+        final InputStream in = new ByteArrayInputStream(raw.getBytes("ISO-8859-1"));
+        req.readMessage(in);
+        return req;
+    }
 }
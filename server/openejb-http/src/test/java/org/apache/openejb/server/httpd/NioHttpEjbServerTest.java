@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.httpd;
+
+import org.apache.openejb.junit.ApplicationComposerRule;
+import org.apache.openejb.testing.Classes;
+import org.apache.openejb.testing.ContainerProperties;
+import org.apache.openejb.testing.EnableServices;
+import org.apache.openejb.testing.RandomPort;
+import org.junit.Rule;
+import org.junit.Test;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.URL;
+
+import static org.apache.openejb.server.httpd.NioHttpServerTest.body;
+import static org.apache.openejb.server.httpd.NioHttpServerTest.headers;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The httpejbd service configured by its properties, through HttpServerFactory, uses the non blocking connector.
+ */
+@EnableServices("http")
+@Classes(innerClassesAsBean = true)
+@ContainerProperties({
+    @ContainerProperties.Property(name = "httpejbd.useJetty", value = "false"),
+    @ContainerProperties.Property(name = "httpejbd.useNio", value = "true")
+})
+public class NioHttpEjbServerTest {
+    @Rule
+    public final ApplicationComposerRule container = new ApplicationComposerRule(this);
+
+    @RandomPort("http")
+    private URL context;
+
+    @Test
+    public void keepAlive() throws IOException {
+        // the blocking connector serves a single request per connection
+        try (final Socket socket = new Socket(context.getHost(), context.getPort())) {
+            socket.setSoTimeout(10000);
+            final String request = "GET /openejb/hello HTTP/1.1\r\nHost: localhost\r\n\r\n";
+            socket.getOutputStream().write((request + request).getBytes());
+            final InputStream in = socket.getInputStream();
+            assertEquals("hello", body(in, headers(in)));
+            assertEquals("hello", body(in, headers(in)));
+        }
+    }
+
+    @WebServlet("/hello")
+    public static class HelloServlet extends HttpServlet {
+        @Override
+        protected void service(final HttpServletRequest req, final HttpServletResponse resp) throws ServletException, IOException {
+            resp.getWriter().write("hello");
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.httpd;
+
+import org.apache.openejb.core.CoreContainerSystem;
+import org.apache.openejb.core.ivm.naming.IvmJndiFactory;
+import org.apache.openejb.loader.IO;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.server.httpd.session.SessionManager;
+import org.apache.openejb.spi.ContainerSystem;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NioHttpServerTest {
+    private NioHttpServer server;
+
+    @Before
+    public void start() throws Exception {
+        SystemInstance.get().setComponent(SessionManager.class, new SessionManager());
+        SystemInstance.get().setComponent(ContainerSystem.class, new CoreContainerSystem(new IvmJndiFactory()));
+        server = new NioHttpServer(new HttpListener() {
+            @Override
+            public void onMessage(final HttpRequest request, final HttpResponse response) throws Exception {
+                final String path = request.getURI().getPath();
+                if ("/echo".equals(path)) {
+                    IO.copy(request.getInputStream(), response.getOutputStream());
+                } else if ("/flush".equals(path)) {
+                    response.getOutputStream().write("first".getBytes());
+                    response.getOutputStream().flush();
+                    response.getOutputStream().write("second".getBytes());
+                } else if ("/file".equals(path)) {
+                    final File file = new File("src/test/web/bar.txt");
+                    HttpResponseImpl.class.cast(response).sendFile(file, file.length());
+                } else {
+                    response.getWriter().write("hello " + path);
+                }
+            }
+        });
+        final Properties properties = new Properties();
+        properties.setProperty("bind", "127.0.0.1");
+        properties.setProperty("port", "0");
+        properties.setProperty("threads", "4");
+        properties.setProperty("maxSwallowSize", "1024");
+        server.init(properties);
+        server.start();
+    }
+
+    @After
+    public void stop() throws Exception {
+        server.stop();
+        SystemInstance.reset();
+    }
+
+    @Test
+    public void pipelinedKeepAlive() throws Exception {
+        try (final Socket socket = socket()) {
+            socket.getOutputStream().write((
+                "GET /a HTTP/1.1\r\nHost: localhost\r\n\r\n" +
+                "GET /b HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes());
+            final InputStream in = socket.getInputStream();
+            assertEquals("hello /a", body(in, headers(in)));
+            assertEquals("hello /b", body(in, headers(in)));
+
+            // later request on the same connection, once back to the selector
+            Thread.sleep(100);
+            socket.getOutputStream().write("GET /c HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n".getBytes());
+            final String headers = headers(in);
+            assertTrue(headers, headers.contains("Connection: close"));
+            assertEquals("hello /c", body(in, headers));
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    public void chunkedRequest() throws Exception {
+        try (final Socket socket = socket()) {
+            socket.getOutputStream().write((
+                "POST /echo HTTP/1.1\r\nHost: localhost\r\nContent-Type: text/plain\r\nTransfer-Encoding: chunked\r\n\r\n" +
+                "5\r\nhello\r\n7;ext=1\r\n chunks\r\n0\r\nX-Trailer: ignored\r\n\r\n" +
+                "GET /next HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes());
+            final InputStream in = socket.getInputStream();
+            assertEquals("hello chunks", body(in, headers(in)));
+            assertEquals("hello /next", body(in, headers(in)));
+        }
+    }
+
+    @Test
+    public void chunkedResponse() throws Exception {
+        try (final Socket socket = socket()) {
+            socket.getOutputStream().write("GET /flush HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes());
+            final InputStream in = socket.getInputStream();
+            final String headers = headers(in);
+            assertTrue(headers, headers.contains("Transfer-Encoding: chunked"));
+            assertEquals("firstsecond", body(in, headers));
+        }
+    }
+
+    @Test
+    public void fileTransfer() throws Exception {
+        try (final Socket socket = socket()) {
+            socket.getOutputStream().write((
+                "GET /file HTTP/1.1\r\nHost: localhost\r\n\r\n" +
+                "GET /after HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes());
+            final InputStream in = socket.getInputStream();
+            assertEquals(IO.slurp(new File("src/test/web/bar.txt")), body(in, headers(in)));
+            assertEquals("hello /after", body(in, headers(in)));
+        }
+    }
+
+    @Test
+    public void http10Closes() throws Exception {
+        try (final Socket socket = socket()) {
+            socket.getOutputStream().write("GET /old HTTP/1.0\r\n\r\n".getBytes());
+            final InputStream in = socket.getInputStream();
+            final String headers = headers(in);
+            assertTrue(headers, headers.contains("Content-Length: 10"));
+            assertEquals("hello /old", body(in, headers));
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    public void unreadBodyIsSkipped() throws Exception {
+        try (final Socket socket = socket()) {
+            socket.getOutputStream().write((
+                "POST /ignored HTTP/1.1\r\nHost: localhost\r\nContent-Length: 5\r\n\r\nhello" +
+                "GET /next HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes());
+            final InputStream in = socket.getInputStream();
+            assertEquals("hello /ignored", body(in, headers(in)));
+            assertEquals("hello /next", body(in, headers(in)));
+        }
+    }
+
+    @Test
+    public void largeUnreadBodyClosesTheConnection() throws Exception {
+        try (final Socket socket = socket()) {
+            // the body is not even sent, skipping it would cost more than the limit
+            socket.getOutputStream().write("POST /ignored HTTP/1.1\r\nHost: localhost\r\nContent-Length: 1048576\r\n\r\n".getBytes());
+            final InputStream in = socket.getInputStream();
+            assertEquals("hello /ignored", body(in, headers(in)));
+            assertEquals(-1, in.read());
+        }
+    }
+
+    private Socket socket() throws IOException {
+        final Socket socket = new Socket("127.0.0.1", server.getPort());
+        socket.setSoTimeout(10000);
+        return socket;
+    }
+
+    static String headers(final InputStream in) throws IOException {
+        final StringBuilder builder = new StringBuilder();
+        while (!builder.toString().endsWith("\r\n\r\n")) {
+            final int c = in.read();
+            if (c < 0) {
+                throw new IOException("Unexpected end of stream: " + builder);
+            }
+            builder.append((char) c);
+        }
+        return builder.toString();
+    }
+
+    static String body(final InputStream in, final String headers) throws IOException {
+        if (headers.contains("Transfer-Encoding: chunked")) {
+            final ByteArrayOutputStream body = new ByteArrayOutputStream();
+            int size;
+            while ((size = Integer.parseInt(line(in), 16)) > 0) {
+                body.write(read(in, size));
+                line(in);
+            }
+            line(in);
+            return new String(body.toByteArray());
+        }
+        final int start = headers.indexOf("Content-Length: ") + "Content-Length: ".length();
+        return new String(read(in, Integer.parseInt(headers.substring(start, headers.indexOf("\r\n", start)))));
+    }
+
+    private static String line(final InputStream in) throws IOException {
+        final StringBuilder builder = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0) {
+                throw new IOException("Unexpected end of stream");
+            }
+            if (c != '\r') {
+                builder.append((char) c);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static byte[] read(final InputStream in, final int length) throws IOException {
+        final byte[] bytes = new byte[length];
+        int read = 0;
+        while (read < length) {
+            final int n = in.read(bytes, read, length - read);
+            if (n < 0) {
+                throw new IOException("Unexpected end of stream");
+            }
+            read += n;
+        }
+        return bytes;
+    }
+}
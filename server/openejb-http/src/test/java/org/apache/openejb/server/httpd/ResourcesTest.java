@@ -17,12 +17,14 @@
 package org.apache.openejb.server.httpd;
 
 import org.apache.openejb.junit.ApplicationComposerRule;
+import org.apache.openejb.loader.Files;
 import org.apache.openejb.loader.IO;
 import org.apache.openejb.testing.Classes;
 import org.apache.openejb.testing.ContainerProperties;
 import org.apache.openejb.testing.EnableServices;
 import org.apache.openejb.testing.RandomPort;
 import org.apache.openejb.testing.WebResource;
+import org.junit.BeforeClass;
 import org.junit.Rule;
 import org.junit.Test;
 
@@ -35,25 +37,47 @@ import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.File;
 import java.io.IOException;
+import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 @EnableServices("http")
-@WebResource("src/test/web")
+@WebResource("target/ResourcesTest-web") // a copy of src/test/web, the test sets the dates of the files
 @Classes
 @ContainerProperties(@ContainerProperties.Property(name = "httpejbd.useJetty", value = "fase"))
 public class ResourcesTest {
+    private static final File WEB = new File("target/ResourcesTest-web");
+
     @Rule
     public final ApplicationComposerRule container = new ApplicationComposerRule(this);
 
     @RandomPort("http")
     private URL context;
 
+    @BeforeClass
+    public static void copyWebResources() throws IOException {
+        Files.delete(WEB);
+        IO.copyDirectory(new File("src/test/web"), WEB);
+
+        final File compressed = new File(WEB, "compressed.txt");
+        assertTrue(new File(WEB, "compressed.txt.gz").setLastModified(compressed.lastModified()));
+
+        final File outdated = new File(WEB, "outdated.txt");
+        IO.copy(compressed, outdated);
+        IO.copy(new File(WEB, "compressed.txt.gz"), new File(WEB, "outdated.txt.gz"));
+        assertTrue(new File(WEB, "outdated.txt.gz").setLastModified(outdated.lastModified() - TimeUnit.MINUTES.toMillis(1)));
+    }
+
     @Test
     public void classloader() throws IOException {
         assertTrue(IO.slurp(new URL(context.toExternalForm() + "openejb/foo.txt")).contains("from classloader"));
@@ -65,4 +89,53 @@ public class ResourcesTest {
         assertTrue(IO.slurp(new URL(context.toExternalForm() + "openejb/bar.txt")).contains("from web"));
         assertTrue(IO.slurp(new URL(context.toExternalForm() + "openejb/sub/bar.txt")).contains("from web2"));
     }
+
+    @Test
+    public void conditionalGet() throws IOException {
+        final URL url = new URL(context.toExternalForm() + "openejb/bar.txt");
+        final HttpURLConnection first = HttpURLConnection.class.cast(url.openConnection());
+        assertEquals(200, first.getResponseCode());
+        assertEquals("text/plain", first.getContentType());
+        assertTrue(IO.slurp(first.getInputStream()).contains("from web"));
+        final String etag = first.getHeaderField("ETag");
+        final String lastModified = first.getHeaderField("Last-Modified");
+        assertNotNull(etag);
+        assertNotNull(lastModified);
+
+        final HttpURLConnection byTag = HttpURLConnection.class.cast(url.openConnection());
+        byTag.setRequestProperty("If-None-Match", etag);
+        assertEquals(304, byTag.getResponseCode());
+        assertNull(byTag.getHeaderField("Content-Length"));
+
+        final HttpURLConnection byDate = HttpURLConnection.class.cast(url.openConnection());
+        byDate.setRequestProperty("If-Modified-Since", lastModified);
+        assertEquals(304, byDate.getResponseCode());
+
+        final HttpURLConnection otherTag = HttpURLConnection.class.cast(url.openConnection());
+        otherTag.setRequestProperty("If-None-Match", "\"other\"");
+        assertEquals(200, otherTag.getResponseCode());
+    }
+
+    @Test
+    public void precompressed() throws IOException {
+        final URL url = new URL(context.toExternalForm() + "openejb/compressed.txt");
+
+        final HttpURLConnection plain = HttpURLConnection.class.cast(url.openConnection());
+        assertNull(plain.getHeaderField("Content-Encoding"));
+        assertTrue(IO.slurp(plain.getInputStream()).contains("precompressed"));
+
+        final HttpURLConnection gzip = HttpURLConnection.class.cast(url.openConnection());
+        gzip.setRequestProperty("Accept-Encoding", "gzip, deflate");
+        assertEquals("gzip", gzip.getHeaderField("Content-Encoding"));
+        assertEquals("text/plain", gzip.getContentType());
+        assertTrue(IO.slurp(new GZIPInputStream(gzip.getInputStream())).contains("gzip variant"));
+    }
+
+    @Test
+    public void outdatedPrecompressedVariantIsIgnored() throws IOException {
+        final HttpURLConnection gzip = HttpURLConnection.class.cast(new URL(context.toExternalForm() + "openejb/outdated.txt").openConnection());
+        gzip.setRequestProperty("Accept-Encoding", "gzip");
+        assertNull(gzip.getHeaderField("Content-Encoding"));
+        assertTrue(IO.slurp(gzip.getInputStream()).contains("precompressed"));
+    }
 }
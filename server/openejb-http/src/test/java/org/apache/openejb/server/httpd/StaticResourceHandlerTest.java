@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.httpd;
+
+import org.apache.openejb.loader.Files;
+import org.apache.openejb.loader.IO;
+import org.apache.openejb.loader.SystemInstance;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StaticResourceHandlerTest {
+    private final File folder = new File("target/StaticResourceHandlerTest");
+
+    @Before
+    public void init() {
+        Files.delete(folder);
+        assertTrue(folder.mkdirs());
+    }
+
+    @After
+    public void reset() {
+        SystemInstance.reset();
+        Files.delete(folder);
+    }
+
+    @Test
+    public void cacheIsBounded() throws Exception {
+        SystemInstance.get().setProperty("openejb.http.resource.cache.size", "600"); // two files
+        final StaticResourceHandler handler = new StaticResourceHandler();
+        final URL a = file("a.txt", "a");
+        final URL b = file("b.txt", "b");
+        final URL c = file("c.txt", "c");
+
+        serve(handler, a);
+        serve(handler, b);
+        serve(handler, a); // b is now the least recently used
+        serve(handler, c);
+
+        assertTrue(handler.isCached(a));
+        assertFalse(handler.isCached(b));
+        assertTrue(handler.isCached(c));
+        assertTrue(handler.getCacheSize() <= 600);
+    }
+
+    @Test
+    public void changedFileIsReloaded() throws Exception {
+        final StaticResourceHandler handler = new StaticResourceHandler();
+        final URL url = file("changing.txt", "first version");
+
+        final HttpResponseImpl first = serve(handler, url);
+        assertTrue(content(first).contains("first version"));
+
+        final File file = new File(url.toURI());
+        final long lastModified = file.lastModified();
+        IO.writeString(file, "second version");
+        assertTrue(file.setLastModified(lastModified + TimeUnit.SECONDS.toMillis(10)));
+
+        final HttpResponseImpl second = serve(handler, url);
+        assertTrue(content(second).contains("second version"));
+        assertNotEquals(first.getHeader("ETag"), second.getHeader("ETag"));
+        assertTrue(handler.isCached(url));
+    }
+
+    @Test
+    public void notModifiedHasNoBody() throws Exception {
+        final StaticResourceHandler handler = new StaticResourceHandler();
+        final URL url = file("cached.txt", "cached by the client");
+        final String etag = serve(handler, url).getHeader("ETag");
+
+        final HttpResponseImpl response = serve(handler, url, "If-None-Match: " + etag + "\r\n");
+        assertEquals(304, response.getStatus());
+        final String message = content(response);
+        assertFalse(message, message.contains("Content-Length"));
+        assertTrue(message, message.endsWith("\r\n\r\n"));
+    }
+
+    private URL file(final String name, final String content) throws IOException {
+        final File file = new File(folder, name);
+        IO.writeString(file, content);
+        return file.toURI().toURL();
+    }
+
+    private static HttpResponseImpl serve(final StaticResourceHandler handler, final URL url) throws Exception {
+        return serve(handler, url, "");
+    }
+
+    private static HttpResponseImpl serve(final StaticResourceHandler handler, final URL url, final String headers) throws Exception {
+        final HttpRequestImpl request = new HttpRequestImpl(new URI("http://localhost:1234"));
+        final String raw = "GET /resource.txt HTTP/1.1\r\nHost: localhost\r\n" + headers + "\r\n";
+        request.readMessage(new ByteArrayInputStream(raw.getBytes("ISO-8859-1")));
+        final HttpResponseImpl response = new HttpResponseImpl();
+        response.setRequest(request);
+        handler.serve(request, response, "/resource.txt", url);
+        return response;
+    }
+
+    private static String content(final HttpResponseImpl response) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.writeMessage(out, false);
+        return new String(out.toByteArray(), "ISO-8859-1");
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.httpd.session;
+
+import org.apache.openejb.AppContext;
+import org.apache.openejb.core.WebContext;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.monitoring.LocalMBeanServer;
+import org.apache.openejb.server.httpd.HttpSessionImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.TimeUnit;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class SessionManagerTest {
+    private SessionManager manager;
+
+    @Before
+    public void init() {
+        SystemInstance.get().setProperty("openejb.http.eviction", "false"); // evict() is called by the test
+        manager = new SessionManager();
+        SystemInstance.get().setComponent(SessionManager.class, manager);
+    }
+
+    @After
+    public void reset() {
+        SystemInstance.reset();
+    }
+
+    @Test
+    public void expireOnlyDueSessions() {
+        final HttpSessionImpl shortLived = newSession(1);
+        final HttpSessionImpl longLived = newSession(600);
+        final HttpSessionImpl eternal = newSession(0);
+        final HttpSessionImpl invalidated = newSession(1);
+        invalidated.invalidate();
+        assertEquals(3, manager.getActiveSessions());
+        assertEquals(4, manager.getCreatedSessions());
+
+        final long now = System.currentTimeMillis();
+        manager.evict(now);
+        assertEquals(0, manager.getExpiredSessions());
+
+        manager.evict(now + TimeUnit.MINUTES.toMillis(2));
+        assertNull(manager.findSession(shortLived.getId()));
+        assertNotNull(manager.findSession(longLived.getId()));
+        assertEquals(1, manager.getExpiredSessions());
+        assertEquals(1, manager.getLastExpiredSessions());
+
+        manager.evict(now + TimeUnit.MINUTES.toMillis(12));
+        assertNull(manager.findSession(longLived.getId()));
+        assertEquals(2, manager.getExpiredSessions());
+
+        // after a pause longer than a turn of the wheel
+        manager.evict(now + TimeUnit.DAYS.toMillis(2));
+        assertNotNull(manager.findSession(eternal.getId()));
+        assertEquals(1, manager.getActiveSessions());
+        assertEquals(2, manager.getExpiredSessions());
+    }
+
+    @Test
+    public void removedSessionsAreNotKeptByTheWheel() {
+        final WebContext app = new WebContext((AppContext) null);
+        HttpSessionImpl removed = newSession(0);
+        HttpSessionImpl undeployed = new HttpSessionImpl("", 0);
+        manager.newSession(null, null, undeployed, app);
+        final HttpSessionImpl kept = newSession(0);
+        manager.evict(System.currentTimeMillis()); // the sessions wait a turn of the wheel in their bucket
+
+        final WeakReference<HttpSessionImpl> removedRef = new WeakReference<>(removed);
+        final WeakReference<HttpSessionImpl> undeployedRef = new WeakReference<>(undeployed);
+        manager.removeSession(removed.getId());
+        manager.destroy(app);
+        removed = null;
+        undeployed = null;
+
+        for (int i = 0; i < 20 && (removedRef.get() != null || undeployedRef.get() != null); i++) {
+            System.gc();
+        }
+        assertNull(removedRef.get());
+        assertNull(undeployedRef.get());
+        assertNotNull(manager.findSession(kept.getId()));
+    }
+
+    @Test
+    public void eachManagerHasItsMBean() throws MalformedObjectNameException {
+        SystemInstance.get().setProperty("openejb.http.eviction", "true");
+        final ObjectName managers = new ObjectName("openejb:type=SessionManager,*");
+        final int before = LocalMBeanServer.get().queryNames(managers, null).size();
+
+        final SessionManager first = new SessionManager();
+        final SessionManager second = new SessionManager();
+        first.initEviction();
+        second.initEviction();
+        try {
+            assertEquals(before + 2, LocalMBeanServer.get().queryNames(managers, null).size());
+        } finally {
+            first.destroy();
+            second.destroy();
+        }
+        assertEquals(before, LocalMBeanServer.get().queryNames(managers, null).size());
+    }
+
+    private HttpSessionImpl newSession(final int timeout) {
+        final HttpSessionImpl session = new HttpSessionImpl("", timeout);
+        manager.newSession(null, null, session, null);
+        return session;
+    }
+}
@@ -0,0 +1,249 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.server.discovery;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Versioned view of the cluster used by the gossip mode of {@link MultipointServer}.
+ * <p/>
+ * Each node owns the version of its own entry and bumps it when its services change or its lease is
+ * due, any node can declare an other one dead at its current version (a dead entry wins at the same version)
+ * and a node reading itself dead refutes it with a higher version.
+ * Every change gets a local sequence number so a peer only receives the entries changed since what it was sent.
+ */
+class Membership {
+
+    private final URI me;
+    private final long lease;
+    private final Map<URI, Member> members = new HashMap<URI, Member>();
+    private long sequence;
+
+    /**
+     * @param lease time after which the local entry is announced again even if it didn't change, in milliseconds.
+     *              Entries not announced for two leases are considered dead, dead ones are forgotten after four.
+     */
+    Membership(final URI me, final long lease) {
+        this.me = me;
+        this.lease = lease;
+        // a restarted node has to win over what the cluster remembers of its previous run
+        put(new Member(me, System.currentTimeMillis(), true, Collections.<String>emptySet(), 0, System.currentTimeMillis()));
+    }
+
+    public URI getMe() {
+        return me;
+    }
+
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    public synchronized Member get(final URI origin) {
+        return members.get(origin);
+    }
+
+    public synchronized int size() {
+        return members.size();
+    }
+
+    public synchronized List<Member> getMembers() {
+        return new ArrayList<Member>(members.values());
+    }
+
+    /**
+     * @return the live members, this node excluded
+     */
+    public synchronized List<URI> getAlive() {
+        final List<URI> alive = new ArrayList<URI>(members.size());
+        for (final Member member : members.values()) {
+            if (member.alive && !me.equals(member.origin)) {
+                alive.add(member.origin);
+            }
+        }
+        return alive;
+    }
+
+    /**
+     * @return the services of the live members, this node excluded
+     */
+    public synchronized List<String> getServices() {
+        final List<String> services = new ArrayList<String>();
+        for (final Member member : members.values()) {
+            if (member.alive && !me.equals(member.origin)) {
+                services.addAll(member.services);
+            }
+        }
+        return services;
+    }
+
+    /**
+     * @return the entries changed after the given sequence, oldest change first
+     */
+    public synchronized List<Member> changedSince(final long since) {
+        final List<Member> changed = new ArrayList<Member>();
+        for (final Member member : members.values()) {
+            if (member.sequence > since) {
+                changed.add(member);
+            }
+        }
+        Collections.sort(changed, Member.BY_SEQUENCE);
+        return changed;
+    }
+
+    /**
+     * Updates the local entry and ages the others.
+     */
+    public synchronized void tick(final Collection<String> services, final long now) {
+        final Member self = members.get(me);
+        final Set<String> current = new HashSet<String>(services);
+        if (!self.services.equals(current) || now - self.changed >= lease) {
+            put(new Member(me, self.version + 1, true, current, ++sequence, now));
+        }
+
+        final List<Member> expired = new ArrayList<Member>();
+        final Iterator<Member> iterator = members.values().iterator();
+        while (iterator.hasNext()) {
+            final Member member = iterator.next();
+            final long age = now - member.changed;
+            if (member.alive && age > 2 * lease) {
+                expired.add(member);
+            } else if (!member.alive && age > 4 * lease) {
+                iterator.remove();
+            }
+        }
+        for (final Member member : expired) {
+            put(new Member(member.origin, member.version, false, Collections.<String>emptySet(), ++sequence, now));
+        }
+    }
+
+    /**
+     * @return true if the entry changed the view
+     */
+    public synchronized boolean merge(final URI origin, final long version, final boolean alive, final Set<String> services, final long now) {
+        final Member known = members.get(origin);
+
+        if (me.equals(origin)) {
+            if (!alive || version >= known.version) {
+                // someone thinks we are dead or remembers a previous run, refute
+                put(new Member(me, Math.max(version, known.version) + 1, true, known.services, ++sequence, now));
+            }
+            return false;
+        }
+
+        if (!isNewer(known, version, alive)) {
+            return false;
+        }
+
+        put(new Member(origin, version, alive, alive ? new HashSet<String>(services) : Collections.<String>emptySet(), ++sequence, now));
+        return true;
+    }
+
+    /**
+     * @return true if the entry is more recent than what this view knows
+     */
+    public synchronized boolean isNewer(final URI origin, final long version, final boolean alive) {
+        return isNewer(members.get(origin), version, alive);
+    }
+
+    private static boolean isNewer(final Member known, final long version, final boolean alive) {
+        return known == null || version > known.version || version == known.version && !alive && known.alive;
+    }
+
+    /**
+     * Declares a member dead at its current version, typically when the connection to it is lost.
+     *
+     * @return true if it was considered alive
+     */
+    public synchronized boolean suspect(final URI origin, final long now) {
+        final Member known = members.get(origin);
+        if (known == null || !known.alive || me.equals(origin)) {
+            return false;
+        }
+        put(new Member(origin, known.version, false, Collections.<String>emptySet(), ++sequence, now));
+        return true;
+    }
+
+    private void put(final Member member) {
+        members.put(member.origin, member);
+    }
+
+    public static class Member {
+
+        private static final Comparator<Member> BY_SEQUENCE = new Comparator<Member>() {
+            @Override
+            public int compare(final Member a, final Member b) {
+                return Long.compare(a.sequence, b.sequence);
+            }
+        };
+
+        private final URI origin;
+        private final long version;
+        private final boolean alive;
+        private final Set<String> services;
+        private final long sequence;
+        private final long changed;
+
+        public Member(final URI origin, final long version, final boolean alive, final Set<String> services, final long sequence, final long changed) {
+            this.origin = origin;
+            this.version = version;
+            this.alive = alive;
+            this.services = Collections.unmodifiableSet(services);
+            this.sequence = sequence;
+            this.changed = changed;
+        }
+
+        public URI getOrigin() {
+            return origin;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public boolean isAlive() {
+            return alive;
+        }
+
+        public Set<String> getServices() {
+            return services;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        @Override
+        public String toString() {
+            return "Member{" +
+                "origin=" + origin +
+                ", version=" + version +
+                ", alive=" + alive +
+                ", services=" + services.size() +
+                '}';
+        }
+    }
+}
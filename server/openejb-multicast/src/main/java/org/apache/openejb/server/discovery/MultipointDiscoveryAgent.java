@@ -60,6 +60,15 @@ public class MultipointDiscoveryAgent implements DiscoveryAgent, ServerService,
 
     private long heartRate = 500;
 
+    @Managed
+    private boolean gossip;
+
+    @Managed
+    private int gossipFanout = 3;
+
+    @Managed
+    private int gossipAntiEntropy = 20;
+
     @Managed(append = false)
     private Tracker tracker;
 
@@ -95,6 +104,9 @@ public class MultipointDiscoveryAgent implements DiscoveryAgent, ServerService,
         discoveryHost = options.get("discoveryHost", host);
         name = name != null ? name : options.get("discoveryName", MultipointServer.randomColor());
         reconnectDelay = options.get("reconnectDelay", new Duration("30 seconds"));
+        gossip = options.get("gossip", gossip);
+        gossipFanout = options.get("gossip_fanout", gossipFanout);
+        gossipAntiEntropy = options.get("gossip_anti_entropy", gossipAntiEntropy);
 
         final Set<URI> uris = new LinkedHashSet<URI>();
 
@@ -179,7 +191,8 @@ public class MultipointDiscoveryAgent implements DiscoveryAgent, ServerService,
         try {
             if (running.compareAndSet(false, true)) {
                 log.info("MultipointDiscoveryAgent Starting");
-                multipointServer = new MultipointServer(host, discoveryHost, port, tracker, name, debug, roots, reconnectDelay).start();
+                multipointServer = new MultipointServer(host, discoveryHost, port, tracker, name, debug, roots, reconnectDelay,
+                    gossip, gossipFanout, gossipAntiEntropy).start();
                 log.info("MultipointDiscoveryAgent Started");
 
                 this.port = multipointServer.getPort();
@@ -312,6 +325,11 @@ public class MultipointDiscoveryAgent implements DiscoveryAgent, ServerService,
         return multipointServer.getConnectionsQueued();
     }
 
+    @Managed
+    public List<URI> getMembers() {
+        return multipointServer.getMembers();
+    }
+
     @Managed
     public long getReconnectDelay() {
         return multipointServer.getReconnectDelay();
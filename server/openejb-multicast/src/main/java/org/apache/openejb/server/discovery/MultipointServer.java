@@ -43,6 +43,7 @@ import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -66,6 +67,15 @@ import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
+ * By default every node connects to every other one and heartbeats its services on each connection.
+ * <p/>
+ * In gossip mode a node only opens connections until it has {@code fanout} of them and the heartbeats
+ * only say the node is alive: the membership ({@link Membership}) travels from peer to peer, each connection
+ * carrying only the entries changed since what was last sent on it. Every {@code antiEntropy} heartbeats the
+ * versions known on each side are exchanged and the missing entries pulled, and a node which lost a connection
+ * or stopped hearing from a peer declares it dead to the others.
+ * All the nodes of a cluster have to use the same mode.
+ *
  * @version $Rev$ $Date$
  */
 @Managed
@@ -75,6 +85,14 @@ public class MultipointServer {
 
     private static final URI END_LIST = URI.create("end:list");
 
+    // gossip messages, can't be mistaken for the "group:uri" services of the default heartbeat
+    private static final char GOSSIP = '\u0001';
+    private static final String ALIVE = GOSSIP + "A";
+    private static final String MEMBER = GOSSIP + "M";
+    private static final String SERVICE = GOSSIP + "S";
+    private static final String DIGEST = GOSSIP + "D";
+    private static final String PULL = GOSSIP + "P";
+
     private final int port;
 
     private final URI me;
@@ -110,11 +128,29 @@ public class MultipointServer {
     private final Condition started = lock.newCondition();
     private final Condition stopped = lock.newCondition();
 
+    /**
+     * Null unless in gossip mode
+     */
+    private final Membership membership;
+    private final int fanout;
+    private final int antiEntropy;
+    private long gossiped;
+
     public MultipointServer(final int port, final Tracker tracker) throws IOException {
         this("localhost", "localhost", port, tracker, randomColor(), true, new HashSet<URI>(0), new Duration(30, TimeUnit.SECONDS));
     }
 
-    public MultipointServer(final String bindHost, String broadcastHost, final int port, final Tracker tracker, final String name, final boolean debug, final Set<URI> roots, Duration reconnectDelay) throws IOException {
+    public MultipointServer(final String bindHost, final String broadcastHost, final int port, final Tracker tracker, final String name, final boolean debug, final Set<URI> roots, final Duration reconnectDelay) throws IOException {
+        this(bindHost, broadcastHost, port, tracker, name, debug, roots, reconnectDelay, false, 0, 0);
+    }
+
+    /**
+     * @param gossip      disseminate the membership from peer to peer instead of connecting everyone
+     * @param fanout      connections a node opens in gossip mode
+     * @param antiEntropy heartbeats between two exchanges of the known versions in gossip mode
+     */
+    public MultipointServer(final String bindHost, String broadcastHost, final int port, final Tracker tracker, final String name, final boolean debug, final Set<URI> roots, Duration reconnectDelay,
+                            final boolean gossip, final int fanout, final int antiEntropy) throws IOException {
         if (tracker == null)
             throw new NullPointerException("tracker cannot be null");
         if (bindHost == null)
@@ -159,6 +195,10 @@ public class MultipointServer {
 
         me = createURI(broadcastHost, this.port);
 
+        this.fanout = Math.max(1, fanout);
+        this.antiEntropy = Math.max(1, antiEntropy);
+        this.membership = gossip ? new Membership(me, tracker.getHeartRate() * this.antiEntropy * 5) : null;
+
         serverChannel.register(selector, SelectionKey.OP_ACCEPT);
 
         println("Broadcasting");
@@ -227,6 +267,17 @@ public class MultipointServer {
         return port;
     }
 
+    public boolean isGossip() {
+        return membership != null;
+    }
+
+    /**
+     * @return the live members known in gossip mode, empty otherwise
+     */
+    public List<URI> getMembers() {
+        return membership != null ? membership.getAlive() : new ArrayList<URI>(0);
+    }
+
     /**
      * Attempt to connect back to the network if
      * - We aren't already connected
@@ -270,9 +321,15 @@ public class MultipointServer {
                 }
             });
             thread.setName(multipointServer);
-            thread.start();
 
-            await(started, 10, TimeUnit.SECONDS);
+            // held until awaiting so the signal can't be sent before
+            lock.lock();
+            try {
+                thread.start();
+                await(started, 10, TimeUnit.SECONDS);
+            } finally {
+                lock.unlock();
+            }
         }
         return this;
     }
@@ -298,13 +355,15 @@ public class MultipointServer {
     }
 
     public void stop() {
-        running.set(false);
+        lock.lock();
         try {
+            running.set(false);
             serverChannel.close();
         } catch (IOException e) {
             throw new CloseException(e);
         } finally {
             await(stopped, 10, TimeUnit.SECONDS);
+            lock.unlock();
         }
     }
 
@@ -333,6 +392,15 @@ public class MultipointServer {
         public boolean hangup;
         private final boolean client;
 
+        // gossip mode
+        private long heard = System.currentTimeMillis();
+        private long sent;
+        private int gossips;
+        private URI peer;
+        private final Set<URI> pulls = new LinkedHashSet<URI>();
+        private final Set<URI> requests = new LinkedHashSet<URI>();
+        private Received received;
+
         public Session(final SocketChannel channel, final InetSocketAddress address, final URI uri) throws ClosedChannelException {
             this.channel = channel;
             this.client = uri != null;
@@ -436,6 +504,8 @@ public class MultipointServer {
             if (channel.read(read) == -1)
                 throw new EOFException();
 
+            heard = System.currentTimeMillis();
+
             final byte[] buf = read.array();
 
             final int end = endOfText(buf, 0, read.position());
@@ -483,9 +553,17 @@ public class MultipointServer {
             final long now = System.currentTimeMillis();
             final long delay = now - last;
 
+            if (membership != null && now - heard > tracker.getHeartRate() * tracker.getMaxMissedHeartbeats()) {
+                throw new IOException("Silent for " + (now - heard) + "ms");
+            }
+
             if (delay >= tracker.getHeartRate()) {
                 last = now;
-                heartbeat();
+                if (membership != null) {
+                    gossip();
+                } else {
+                    heartbeat();
+                }
             }
 
         }
@@ -500,6 +578,143 @@ public class MultipointServer {
             write(strings);
             state(SelectionKey.OP_READ | SelectionKey.OP_WRITE, State.HEARTBEAT);
         }
+
+        private void gossip() throws IOException {
+            heartbeats.record();
+
+            if (write != null && write.hasRemaining()) {
+                return; // the peer is slow, what changed in between goes with the next one
+            }
+
+            final List<String> lines = new ArrayList<String>();
+            lines.add(ALIVE + me);
+
+            for (final URI origin : requests) {
+                lines.add(PULL + origin);
+            }
+            requests.clear();
+
+            for (final Membership.Member member : membership.changedSince(sent)) {
+                sent = member.getSequence();
+                pulls.remove(member.getOrigin());
+
+                // a peer knows better whether it is alive, but has to read it when it is said dead
+                if (!member.isAlive() || !member.getOrigin().equals(peer)) {
+                    list(member, lines);
+                }
+            }
+
+            for (final URI origin : pulls) {
+                final Membership.Member member = membership.get(origin);
+                if (member != null) {
+                    list(member, lines);
+                }
+            }
+            pulls.clear();
+
+            if (++gossips % antiEntropy == 0) {
+                for (final Membership.Member member : membership.getMembers()) {
+                    lines.add(DIGEST + member.getVersion() + " " + (member.isAlive() ? 1 : 0) + " " + member.getOrigin());
+                }
+            }
+
+            write(lines);
+            state(SelectionKey.OP_READ | SelectionKey.OP_WRITE, State.HEARTBEAT);
+        }
+
+        private void list(final Membership.Member member, final List<String> lines) {
+            lines.add(MEMBER + member.getVersion() + " " + (member.isAlive() ? 1 : 0) + " " + member.getServices().size() + " " + member.getOrigin());
+            for (final String service : member.getServices()) {
+                lines.add(SERVICE + service);
+            }
+        }
+
+        /**
+         * A malformed line is dropped, what it said comes again with the next digest
+         */
+        private void gossip(final String message) {
+            try {
+                parse(message);
+            } catch (final RuntimeException e) {
+                received = null; // its services would be taken for another member
+                log.warning(message("Dropped malformed gossip '" + message.substring(1) + "': " + e));
+            }
+        }
+
+        private void parse(final String message) {
+            final String content = message.substring(2);
+
+            switch (message.charAt(1)) {
+                case 'A': {
+                    peer = URI.create(content);
+                }
+                break;
+
+                case 'M': {
+                    final String[] parts = content.split(" ", 4);
+                    received = new Received(URI.create(parts[3]), Long.parseLong(parts[0]), "1".equals(parts[1]), Integer.parseInt(parts[2]));
+                    if (received.complete()) {
+                        received = null;
+                    }
+                }
+                break;
+
+                case 'S': {
+                    if (received != null) {
+                        received.services.add(content);
+                        if (received.complete()) {
+                            received = null;
+                        }
+                    }
+                }
+                break;
+
+                case 'D': {
+                    final String[] parts = content.split(" ", 3);
+                    final URI origin = URI.create(parts[2]);
+                    final long version = Long.parseLong(parts[0]);
+                    final boolean alive = "1".equals(parts[1]);
+
+                    if (me.equals(origin)) {
+                        membership.merge(origin, version, alive, Collections.<String>emptySet(), System.currentTimeMillis());
+                    } else if (membership.isNewer(origin, version, alive)) {
+                        requests.add(origin);
+                    }
+                }
+                break;
+
+                case 'P': {
+                    pulls.add(URI.create(content));
+                }
+                break;
+            }
+        }
+
+        /**
+         * A member entry followed by its services
+         */
+        private class Received {
+            private final URI origin;
+            private final long version;
+            private final boolean alive;
+            private final int count;
+            private final Set<String> services = new HashSet<String>();
+
+            private Received(final URI origin, final long version, final boolean alive, final int count) {
+                this.origin = origin;
+                this.version = version;
+                this.alive = alive;
+                this.count = count;
+            }
+
+            private boolean complete() {
+                if (services.size() < count) {
+                    return false;
+                }
+                membership.merge(origin, version, alive, services, System.currentTimeMillis());
+                return true;
+            }
+        }
     }
 
     private static enum State {
@@ -570,12 +785,25 @@ public class MultipointServer {
                 } catch (CancelledKeyException | ClosedChannelException ex) {
                     synchronized (connect) {
                         final Session session = (Session) key.attachment();
-                        if (session.state != State.CLOSED) {
+                        if (session != null && session.state != State.CLOSED) {
                             close(key);
                         }
                     }
+                } catch (RuntimeException ex) { // a peer sent something we don't understand, not worth the whole loop
+                    final Session session = (Session) key.attachment();
+                    if (session == null) {
+                        log.error("Multipoint Failure.", ex);
+                        continue;
+                    }
+                    log.warning(session.message("Closing the session: " + ex));
+                    close(key);
                 } catch (IOException ex) {
                     final Session session = (Session) key.attachment();
+                    if (session == null) {
+                        // the server key, the connection being accepted is already gone
+                        log.debug("Accept failed " + ex.getMessage());
+                        continue;
+                    }
                     session.trace(ex.getClass().getSimpleName() + ": " + ex.getMessage());
                     close(key);
                 }
@@ -594,6 +822,10 @@ public class MultipointServer {
                 }
             }
 
+            if (membership != null) {
+                gossip();
+            }
+
             // Here is where we actually will expire missing services
             tracker.checkServices();
 
@@ -610,6 +842,39 @@ public class MultipointServer {
         log.info("MultipointServer has terminated.");
     }
 
+    /**
+     * Once per heartbeat, refreshes the tracker with the services of the live members
+     * and opens connections to random members while under the fanout
+     */
+    private void gossip() {
+        final long now = System.currentTimeMillis();
+        if (now - gossiped < tracker.getHeartRate()) {
+            return;
+        }
+        gossiped = now;
+
+        membership.tick(tracker.getRegisteredServices(), now);
+
+        for (final String service : membership.getServices()) {
+            tracker.processData(service);
+        }
+
+        final List<URI> alive = membership.getAlive();
+        Collections.shuffle(alive);
+        for (final URI uri : alive) {
+            if (isFanoutReached()) {
+                break;
+            }
+            connect(uri);
+        }
+    }
+
+    private boolean isFanoutReached() {
+        synchronized (connect) {
+            return connections.size() + connect.size() >= fanout;
+        }
+    }
+
     private long adjustedSelectorTimeout(final long start) {
         final long end = System.nanoTime();
         final long elapsed = TimeUnit.NANOSECONDS.toMillis(end - start);
@@ -841,6 +1106,10 @@ public class MultipointServer {
 
                         session.listed.add(uri);
 
+                        if (membership != null && isFanoutReached()) {
+                            continue; // will hear about them through the gossip
+                        }
+
                         try {
                             connect(uri);
                         } catch (Exception e) {
@@ -858,7 +1127,11 @@ public class MultipointServer {
                 String message;
                 while ((message = session.read()) != null) {
                     //                    session.trace(message);
-                    tracker.processData(message);
+                    if (membership != null && message.length() > 1 && message.charAt(0) == GOSSIP) {
+                        session.gossip(message);
+                    } else {
+                        tracker.processData(message);
+                    }
                 }
             }
             break;
@@ -940,8 +1213,16 @@ public class MultipointServer {
         } else {
             log.info("Closed " + session);
             session.trace("closed");
+            boolean reachable = false;
             synchronized (connect) {
                 connections.remove(session.uri);
+                for (final Session other : connections.values()) {
+                    reachable |= session.peer != null && session.peer.equals(other.peer);
+                }
+            }
+
+            if (membership != null && session.peer != null && !reachable && membership.suspect(session.peer, System.currentTimeMillis())) {
+                session.info("suspect " + session.peer);
             }
         }
 
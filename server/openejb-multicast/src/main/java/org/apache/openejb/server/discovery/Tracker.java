@@ -28,7 +28,6 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -72,6 +71,7 @@ public class Tracker {
         this.useExponentialBackOff = exponentialBackoff > 1;
         this.log = log;
         this.debug = debug;
+        this.executor.allowCoreThreadTimeOut(true);
         this.log.info("Created " + this);
     }
 
@@ -187,7 +187,9 @@ public class Tracker {
         return debug && log.isDebugEnabled();
     }
 
-    private final Executor executor = new ThreadPoolExecutor(1, 2, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(1), new ThreadFactory() {
+    // unbounded, a burst of discoveries (a gossip round, a node joining a large cluster)
+    // must not be rejected on the thread reading the network
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
         @Override
         public Thread newThread(final Runnable runable) {
             final Thread t = new Thread(runable, "Discovery Agent Notifier");
@@ -0,0 +1,247 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.server.discovery;
+
+import org.apache.openejb.server.DiscoveryListener;
+import org.apache.openejb.util.Duration;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MultipointGossipTest {
+
+    // -DMultipointGossipTest.nodes=500 to try hundreds
+    private static final int NODES = Integer.getInteger("MultipointGossipTest.nodes", 50);
+    private static final int FANOUT = 3;
+
+    // dozens of nodes log a lot, keeps a reference so the level sticks
+    private static final java.util.logging.Logger DISCOVERY = java.util.logging.Logger.getLogger("OpenEJB.server.discovery");
+
+    @BeforeClass
+    public static void quiet() {
+        DISCOVERY.setLevel(Level.WARNING);
+    }
+
+    @AfterClass
+    public static void reset() {
+        DISCOVERY.setLevel(null);
+    }
+
+    @Test
+    public void membership() {
+        final URI me = URI.create("conn://localhost:1");
+        final URI other = URI.create("conn://localhost:2");
+        final Membership membership = new Membership(me, 1000);
+        final long now = System.currentTimeMillis();
+
+        assertTrue(membership.merge(other, 5, true, set("default:ejbd://other:4201"), now));
+        assertFalse(membership.merge(other, 4, true, set("default:ejbd://old:4201"), now));
+        assertEquals(asList("default:ejbd://other:4201"), membership.getServices());
+
+        // dead wins at the same version, alive again only with a newer one
+        assertTrue(membership.merge(other, 5, false, Collections.<String>emptySet(), now));
+        assertFalse(membership.merge(other, 5, true, set("default:ejbd://other:4201"), now));
+        assertTrue(membership.getServices().isEmpty());
+        assertTrue(membership.merge(other, 6, true, set("default:ejbd://other:4201"), now));
+
+        // only the changes since what a peer was sent
+        final long sent = membership.getSequence();
+        assertTrue(membership.changedSince(sent).isEmpty());
+        membership.tick(set("default:ejbd://me:4201"), now);
+        final List<Membership.Member> changed = membership.changedSince(sent);
+        assertEquals(1, changed.size());
+        assertEquals(me, changed.get(0).getOrigin());
+
+        // said dead, refutes with a newer version
+        final long version = membership.get(me).getVersion();
+        assertFalse(membership.merge(me, version, false, Collections.<String>emptySet(), now));
+        assertTrue(membership.get(me).isAlive());
+        assertTrue(membership.get(me).getVersion() > version);
+
+        assertTrue(membership.suspect(other, now));
+        assertFalse(membership.suspect(other, now));
+
+        // not announced for two leases, dead, then forgotten
+        assertTrue(membership.merge(URI.create("conn://localhost:3"), 1, true, set("default:ejbd://third:4201"), now));
+        membership.tick(set("default:ejbd://me:4201"), now + 2500);
+        assertFalse(membership.get(URI.create("conn://localhost:3")).isAlive());
+        membership.tick(set("default:ejbd://me:4201"), now + 7000);
+        assertEquals(1, membership.size());
+    }
+
+    @Test
+    public void dozensOfNodes() throws Exception {
+        final List<MultipointServer> servers = new ArrayList<MultipointServer>();
+        final List<Tracker> trackers = new ArrayList<Tracker>();
+        final Random random = new Random();
+
+        try {
+            for (int i = 0; i < NODES; i++) {
+                final Tracker.Builder builder = new Tracker.Builder();
+                builder.setHeartRate(200);
+                builder.setMaxMissedHeartbeats(10);
+                final Tracker tracker = builder.build();
+                tracker.setDiscoveryListener(new Listener());
+                tracker.registerService(URI.create("ejbd://node" + i + ":4201"));
+
+                // join through a random node, not everyone through the same one
+                final Set<URI> roots = new HashSet<URI>();
+                if (i > 0) {
+                    roots.add(URI.create("conn://localhost:" + servers.get(random.nextInt(i)).getPort()));
+                }
+
+                servers.add(new MultipointServer("localhost", "localhost", 0, tracker, "node" + i, false, roots,
+                    new Duration(1, TimeUnit.SECONDS), true, FANOUT, 20).start());
+                trackers.add(tracker);
+            }
+
+            awaitDiscovered(trackers, NODES - 1, null);
+
+            // far from the full mesh
+            int sessions = 0;
+            for (final MultipointServer server : servers) {
+                sessions += server.getSessions().size();
+            }
+            assertTrue("sessions=" + sessions, sessions <= 2 * NODES * (FANOUT + 1));
+
+            // a change reaches everyone
+            trackers.get(7).registerService(URI.create("ejbds://node7:4203"));
+            awaitDiscovered(trackers, NODES, trackers.get(7));
+
+            // a node leaving too
+            servers.remove(NODES / 2).stop(); // stopping twice would wait for a stop signal already sent
+            trackers.get(NODES / 2).unregisterService(URI.create("ejbd://node" + (NODES / 2) + ":4201"));
+            final List<Tracker> remaining = new ArrayList<Tracker>(trackers);
+            remaining.remove(NODES / 2);
+            awaitDiscovered(remaining, NODES - 1, trackers.get(7));
+        } finally {
+            for (final MultipointServer server : servers) {
+                server.stop();
+            }
+        }
+    }
+
+    @Test
+    public void malformedGossipIsDropped() throws Exception {
+        final Tracker.Builder builder = new Tracker.Builder();
+        builder.setHeartRate(200);
+        final Tracker tracker = builder.build();
+        tracker.setDiscoveryListener(new Listener());
+        final MultipointServer server = new MultipointServer("localhost", "localhost", 0, tracker, "malformed", false, new HashSet<URI>(),
+            new Duration(1, TimeUnit.SECONDS), true, FANOUT, 20).start();
+
+        try (final Socket socket = new Socket("localhost", server.getPort())) {
+            final OutputStream out = socket.getOutputStream();
+            final InputStream in = socket.getInputStream();
+
+            // greeting then the lists, the server lists first
+            send(out, "conn://localhost:9");
+            String line;
+            do {
+                line = read(in);
+            } while (!"end:list".equals(line));
+            send(out, "end:list");
+            do { // heartbeating
+                line = read(in);
+            } while (!line.startsWith("\u0001A"));
+
+            send(out, "\u0001Mnot a version", "\u0001M1 1 1", "\u0001Dx 1 conn://localhost:9", "\u0001A::", "\u0001P::",
+                "\u0001Sdefault:ejbd://wrong:4201",
+                "\u0001M1 1 1 conn://localhost:9", "\u0001Sdefault:ejbd://peer:4201");
+
+            final long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+            while (!tracker.getServicesDiscovered().equals(set("default:ejbd://peer:4201"))) {
+                if (System.currentTimeMillis() > end) {
+                    fail("Discovered " + tracker.getServicesDiscovered());
+                }
+                Thread.sleep(100);
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static void send(final OutputStream out, final String... lines) throws IOException {
+        for (final String line : lines) {
+            out.write(line.getBytes("UTF-8"));
+            out.write(3);
+        }
+        out.flush();
+    }
+
+    private static String read(final InputStream in) throws IOException {
+        final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != 3) {
+            if (b < 0) {
+                throw new IOException("closed");
+            }
+            line.write(b);
+        }
+        return line.toString("UTF-8");
+    }
+
+    private static void awaitDiscovered(final List<Tracker> trackers, final int services, final Tracker owner) throws InterruptedException {
+        final long end = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(Math.max(1, NODES / 50));
+        for (final Tracker tracker : trackers) {
+            final int expected = tracker == owner ? services - 1 : services;
+            while (tracker.getServicesDiscovered().size() != expected) {
+                if (System.currentTimeMillis() > end) {
+                    fail("Discovered " + tracker.getServicesDiscovered().size() + " services instead of " + expected);
+                }
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    private static Set<String> set(final String... values) {
+        return new HashSet<String>(asList(values));
+    }
+
+    private static class Listener implements DiscoveryListener {
+        @Override
+        public void serviceAdded(final URI service) {
+            // no-op
+        }
+
+        @Override
+        public void serviceRemoved(final URI service) {
+            // no-op
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission control in front of the {@link ServicePool} threads, at most {@link #getLimit()} requests
+ * are served or waiting for a thread at once, the others are rejected right away instead of queuing.
+ * A connection kept alive only counts while one of its requests is served.
+ * <p/>
+ * The limit follows the latency the pool adds (AIMD): a connection waiting longer than the target for a thread
+ * shrinks it by the backoff ratio, at most once per target period, while connections served in time when
+ * the pool is at least half busy grow it by one. It stays between the min and max limits.
+ */
+public class ConcurrencyLimit {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long target;
+    private final double backoff;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong decreases = new AtomicLong();
+    private volatile int limit;
+    private long lastDecrease;
+
+    /**
+     * @param target  wait for a thread over which the pool is considered overloaded
+     * @param backoff ratio applied to the limit on overload, between 0 and 1
+     */
+    public ConcurrencyLimit(final int minLimit, final int maxLimit, final long target, final TimeUnit unit, final double backoff) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Invalid limits [" + minLimit + ", " + maxLimit + "]");
+        }
+        if (backoff <= 0 || backoff >= 1) {
+            throw new IllegalArgumentException("backoff must be between 0 and 1: " + backoff);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.target = unit.toNanos(target);
+        this.backoff = backoff;
+        this.limit = maxLimit;
+        this.lastDecrease = System.nanoTime() - this.target;
+    }
+
+    /**
+     * @return false if the request has to be rejected, otherwise {@link #release()} has to follow
+     */
+    public boolean acquire() {
+        while (true) {
+            final int current = inFlight.get();
+            if (current >= limit) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                admitted.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * @param wait time an admitted connection waited for a thread, in nanoseconds
+     */
+    public void sample(final long wait) {
+        sample(wait, System.nanoTime());
+    }
+
+    synchronized void sample(final long wait, final long now) {
+        if (wait > target) {
+            if (now - lastDecrease >= target) {
+                lastDecrease = now;
+                limit = Math.max(minLimit, (int) (limit * backoff));
+                decreases.incrementAndGet();
+            }
+        } else if (inFlight.get() * 2 >= limit && limit < maxLimit) {
+            limit++;
+        }
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    /**
+     * @return wait for a thread over which the limit decreases, in milliseconds
+     */
+    public long getTarget() {
+        return TimeUnit.NANOSECONDS.toMillis(target);
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getAdmittedCount() {
+        return admitted.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public long getDecreaseCount() {
+        return decreases.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrencyLimit{limit=" + limit + ", inFlight=" + inFlight.get() + ", rejected=" + rejected.get() + '}';
+    }
+}
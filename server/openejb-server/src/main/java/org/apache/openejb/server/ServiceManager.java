@@ -147,6 +147,9 @@ public abstract class ServiceManager {
                     if (factory != null) {
                         recipe.setConstructorArgNames(factory.getParameterNames()); // can throw an exception so call it before next line
                         recipe.setFactoryMethod("createServerService");
+                        for (final String parameter : factory.getParameterNames()) {
+                            recipe.setProperty(parameter, serviceProperties.getProperty(parameter));
+                        }
                     } else if (ReflectionUtil.findStaticFactory(serviceClass, "createServerService", null, null) != null) { // old behavior, remove when sure previous check is ok
                         recipe.setFactoryMethod("createServerService");
                     }
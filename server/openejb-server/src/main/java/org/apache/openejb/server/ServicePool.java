@@ -28,6 +28,7 @@ import java.io.OutputStream;
 import java.net.Socket;
 import java.util.Properties;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -40,11 +41,14 @@ public class ServicePool extends ServerServiceFilter {
 
     private static final Logger log = Logger.getInstance(LogCategory.SERVICEPOOL, "org.apache.openejb.util.resources");
     private static final int KEEP_ALIVE_TIME = 1000 * 60 * 1;
+    private static final ThreadLocal<Requests> REQUESTS = new ThreadLocal<Requests>();
 
     private final ThreadPoolExecutor threadPool;
     private final AtomicBoolean stop = new AtomicBoolean();
     private boolean forceSocketClose = true;
 
+    private final ConcurrencyLimit admission;
+
     public ServicePool(final ServerService next, final Properties properties) {
         /**Defaults.
          * This suggests that 10 core threads should cope with up to 19 runnables (threads + queue, whereby queue = threads - 1).
@@ -59,7 +63,22 @@ public class ServicePool extends ServerServiceFilter {
         this(next, properties.get("threadsCore", 10), properties.get("threads", 150),
                 properties.get("queue", 0), properties.get("block", true),
                 properties.get("keepAliveTime", KEEP_ALIVE_TIME),
-                properties.get("forceSocketClose", true));
+                properties.get("forceSocketClose", true), admission(properties));
+    }
+
+    /**
+     * The optional adaptive limit of connections admitted into the pool, see {@link ConcurrencyLimit}.
+     */
+    private static ConcurrencyLimit admission(final Options properties) {
+        if (!properties.get("adaptiveLimit", false)) {
+            return null;
+        }
+        final int core = Math.max(2, properties.get("threadsCore", 10));
+        final int threads = Math.max(core, properties.get("threads", 150));
+        return new ConcurrencyLimit(properties.get("limitMin", core),
+            properties.get("limitMax", threads + Math.max(0, properties.get("queue", 0))),
+            properties.get("limitTarget", 50), TimeUnit.MILLISECONDS,
+            Double.parseDouble(properties.get("limitBackoff", "0.9")));
     }
 
     public ServicePool(final ServerService next, final int threads) {
@@ -71,9 +90,15 @@ public class ServicePool extends ServerServiceFilter {
     }
 
     public ServicePool(final ServerService next, int threadCore, int threads, int queue, final boolean block, long keepAliveTime, boolean forceClose) {
+        this(next, threadCore, threads, queue, block, keepAliveTime, forceClose, null);
+    }
+
+    public ServicePool(final ServerService next, int threadCore, int threads, int queue, final boolean block, long keepAliveTime, boolean forceClose,
+                       final ConcurrencyLimit admission) {
         super(next);
 
         this.forceSocketClose = forceClose;
+        this.admission = admission;
 
         if (keepAliveTime <= 0) {
             keepAliveTime = KEEP_ALIVE_TIME;
@@ -128,10 +153,15 @@ public class ServicePool extends ServerServiceFilter {
                 @Override
                 public void rejectedExecution(final Runnable r, final ThreadPoolExecutor tpe) {
 
-                    if (null == r || null == tpe || tpe.isShutdown() || tpe.isTerminated() || tpe.isTerminating()) {
+                    if (null == r || null == tpe) {
                         return;
                     }
 
+                    // a dropped runnable never closes its socket, service() does it
+                    if (tpe.isShutdown() || tpe.isTerminated() || tpe.isTerminating()) {
+                        throw new RejectedExecutionException("ServicePool '" + ServicePool.this.getName() + "' is shutdown");
+                    }
+
                     if (log.isWarningEnabled()) {
                         log.warning(String.format("ServicePool '" + ServicePool.this.getName() + "' with (%1$s) threads is at capicity (%2$s) for queue (%3$s) on process: %4$s"
                             + "\nConsider increasing the 'threadCore','threads' and 'queue' size properties.", c, t, q, r));
@@ -160,6 +190,7 @@ public class ServicePool extends ServerServiceFilter {
                         } else {
                             log.error("ServicePool '" + ServicePool.this.getName() + "' rejected asynchronous process: " + r
                                 + "\nIt is strongly advised that the 'threadCore', 'threads', 'queue' size and 'block' properties are modified to prevent data loss!");
+                            throw new RejectedExecutionException("ServicePool '" + ServicePool.this.getName() + "' rejected " + r);
                         }
                     }
                 }
@@ -169,13 +200,44 @@ public class ServicePool extends ServerServiceFilter {
 
         if (log.isInfoEnabled()) {
             log.info(String.format("Created ServicePool '%1$s' with (%2$s) core threads, limited to (%3$s) threads with a queue of (%4$s)", getName(), c, t, q));
+            if (null != admission) {
+                log.info(String.format("ServicePool '%1$s' admits between (%2$s) and (%3$s) connections adapting to a thread wait target of (%4$s) milliseconds",
+                    getName(), admission.getMinLimit(), admission.getMaxLimit(), admission.getTarget()));
+            }
         }
     }
 
+    public ConcurrencyLimit getAdmission() {
+        return admission;
+    }
+
     public ThreadPoolExecutor getThreadPool() {
         return threadPool;
     }
 
+    /**
+     * Admits a request of the connection served by the current thread, services keeping connections alive
+     * call it before each request. The first request is admitted with the connection.
+     * A request over the limit is not read: the connection has to be reset, the client only sends it again
+     * when openejb.client.requestretry is true.
+     *
+     * @return false if the request has to be rejected, otherwise {@link #releaseRequest()} has to follow
+     */
+    public static boolean acquireRequest() {
+        final Requests requests = REQUESTS.get();
+        return requests == null || requests.acquire();
+    }
+
+    /**
+     * Ends a request admitted by {@link #acquireRequest()}, an idle connection doesn't count against the limit.
+     */
+    public static void releaseRequest() {
+        final Requests requests = REQUESTS.get();
+        if (requests != null) {
+            requests.release();
+        }
+    }
+
     @Override
     public void service(final InputStream in, final OutputStream out) throws ServiceException, IOException {
     }
@@ -183,6 +245,16 @@ public class ServicePool extends ServerServiceFilter {
     @Override
     public void service(final Socket socket) throws ServiceException, IOException {
 
+        if (null != admission && !admission.acquire()) {
+            if (log.isDebugEnabled()) {
+                log.debug("ServicePool '" + getName() + "' rejected a connection from " + socket.getInetAddress() + " over its limit: " + admission);
+            }
+            reject(socket);
+            return;
+        }
+
+        final long admitted = System.nanoTime();
+        final Requests requests = null != admission ? new Requests(admission) : null;
         final ClassLoader tccl = Thread.currentThread().getContextClassLoader();
         final Runnable ctxCL = new Runnable() {
 
@@ -198,6 +270,10 @@ public class ServicePool extends ServerServiceFilter {
 
                 final Thread thread = Thread.currentThread();
                 try {
+                    if (null != admission) {
+                        admission.sample(System.nanoTime() - admitted);
+                    }
+
                     cl = thread.getContextClassLoader();
                     thread.setContextClassLoader(tccl);
 
@@ -205,6 +281,7 @@ public class ServicePool extends ServerServiceFilter {
                         return;
                     }
 
+                    REQUESTS.set(requests);
                     ServicePool.super.service(socket);
 
                 } catch (SecurityException e) {
@@ -245,11 +322,70 @@ public class ServicePool extends ServerServiceFilter {
                     }
 
                     thread.setContextClassLoader(cl);
+
+                    REQUESTS.remove();
+                    if (null != requests) {
+                        requests.release();
+                    }
                 }
             }
         };
 
-        threadPool.execute(ctxCL);
+        try {
+            threadPool.execute(ctxCL);
+        } catch (final RejectedExecutionException e) {
+            // never run, so neither closes the socket nor gives back its admission
+            if (log.isDebugEnabled()) {
+                log.debug(e.getMessage() + ", resetting the connection from " + socket.getInetAddress());
+            }
+            reject(socket);
+            if (null != admission) {
+                admission.release();
+            }
+        }
+    }
+
+    /**
+     * Resets the connection without reading anything, the client knows its request was not processed
+     * and can send it again, to another server or later.
+     */
+    private static void reject(final Socket socket) {
+        try {
+            socket.setSoLinger(true, 0);
+        } catch (Throwable e) {
+            //Ignore
+        }
+        try {
+            socket.close();
+        } catch (Throwable e) {
+            //Ignore
+        }
+    }
+
+    /**
+     * The admission of the requests of a connection, only used by its thread
+     */
+    private static final class Requests {
+        private final ConcurrencyLimit limit;
+        private boolean admitted = true; // with the connection
+
+        private Requests(final ConcurrencyLimit limit) {
+            this.limit = limit;
+        }
+
+        private boolean acquire() {
+            if (!admitted) {
+                admitted = limit.acquire();
+            }
+            return admitted;
+        }
+
+        private void release() {
+            if (admitted) {
+                admitted = false;
+                limit.release();
+            }
+        }
     }
 
     @Managed
@@ -318,6 +454,31 @@ public class ServicePool extends ServerServiceFilter {
             return getThreadPool().getCompletedTaskCount();
         }
 
+        @Managed(description = "Adaptive limit of admitted connections, -1 when there is none")
+        public int getAdmissionLimit() {
+            return null != admission ? admission.getLimit() : -1;
+        }
+
+        @Managed
+        public int getAdmissionInFlight() {
+            return null != admission ? admission.getInFlight() : -1;
+        }
+
+        @Managed
+        public long getAdmissionAdmittedCount() {
+            return null != admission ? admission.getAdmittedCount() : -1;
+        }
+
+        @Managed
+        public long getAdmissionRejectedCount() {
+            return null != admission ? admission.getRejectedCount() : -1;
+        }
+
+        @Managed
+        public long getAdmissionDecreaseCount() {
+            return null != admission ? admission.getDecreaseCount() : -1;
+        }
+
         @Managed
         public void setMaximumPoolSize(final int maximumPoolSize) {
             getThreadPool().setMaximumPoolSize(maximumPoolSize);
@@ -20,6 +20,7 @@ import org.apache.openejb.loader.SystemInstance;
 import org.apache.openejb.monitoring.LocalMBeanServer;
 import org.apache.openejb.monitoring.ManagedMBean;
 import org.apache.openejb.monitoring.ObjectNameBuilder;
+import org.apache.openejb.util.DaemonThreadFactory;
 import org.apache.openejb.util.LogCategory;
 import org.apache.openejb.util.Logger;
 import org.apache.xbean.finder.ResourceFinder;
@@ -28,9 +29,23 @@ import javax.management.MBeanServer;
 import javax.management.ObjectName;
 import java.io.IOException;
 import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @version $Rev$ $Date$
@@ -38,11 +53,20 @@ import java.util.Properties;
  */
 public class SimpleServiceManager extends ServiceManager {
 
+    /**
+     * How many services can be started at the same time, a service waits for the ones listed
+     * in its dependsOn property (comma separated service names).
+     */
+    public static final String PARALLELISM = "openejb.server.services.parallelism";
+    public static final String DEPENDS_ON = "dependsOn";
+
     private static final Logger LOGGER = Logger.getInstance(LogCategory.OPENEJB_SERVER, SimpleServiceManager.class);
 
     private static ObjectName objectName = null;
 
     private ServerService[] daemons;
+    private final Map<ServerService, String> names = new IdentityHashMap<ServerService, String>();
+    private final Map<ServerService, Collection<String>> dependencies = new IdentityHashMap<ServerService, Collection<String>>();
     private volatile boolean stopped = false;
     private final ServiceFinder serviceFinder;
 
@@ -146,12 +170,88 @@ public class SimpleServiceManager extends ServiceManager {
 
         final Map<String, Properties> availableServices = this.serviceFinder.mapAvailableServices(ServerService.class);
 
-        final List<ServerService> enabledServers = initServers(availableServices);
+        final List<ServerService> enabledServers = sort(initServers(availableServices));
 
         daemons = enabledServers.toArray(new ServerService[enabledServers.size()]);
         stopped = false;
     }
 
+    @Override
+    protected ServerService initServer(final String serviceName, final Properties serviceProperties) throws IOException {
+        final ServerService service = super.initServer(serviceName, serviceProperties);
+        if (service != null) {
+            final Collection<String> dependsOn = new LinkedHashSet<String>();
+            final String value = serviceProperties.getProperty(DEPENDS_ON);
+            if (value != null) {
+                for (final String name : value.split(",")) {
+                    if (!name.trim().isEmpty()) {
+                        dependsOn.add(name.trim());
+                    }
+                }
+            }
+            names.put(service, serviceName);
+            dependencies.put(service, dependsOn);
+        }
+        return service;
+    }
+
+    // dependencies first, unknown (disabled) dependencies are ignored and cycles keep the discovery order
+    private List<ServerService> sort(final List<ServerService> services) {
+        final Set<String> available = new HashSet<String>();
+        for (final ServerService service : services) {
+            available.add(nameOf(service));
+        }
+
+        final List<ServerService> sorted = new ArrayList<ServerService>(services.size());
+        final Set<String> added = new HashSet<String>();
+        final List<ServerService> remaining = new ArrayList<ServerService>(services);
+        while (!remaining.isEmpty()) {
+            boolean progress = false;
+            for (final ServerService service : new ArrayList<ServerService>(remaining)) {
+                boolean ready = true;
+                for (final String dependency : dependenciesOf(service)) {
+                    if (available.contains(dependency) && !added.contains(dependency)) {
+                        ready = false;
+                        break;
+                    }
+                }
+                if (ready) {
+                    sorted.add(service);
+                    added.add(nameOf(service));
+                    remaining.remove(service);
+                    progress = true;
+                }
+            }
+            if (!progress) {
+                LOGGER.warning("Circular dependsOn between services " + namesOf(remaining) + ", they will be started in discovery order");
+                for (final ServerService service : remaining) {
+                    dependencies.put(service, Collections.<String>emptySet());
+                }
+                sorted.addAll(remaining);
+                break;
+            }
+        }
+        return sorted;
+    }
+
+    private String nameOf(final ServerService service) {
+        final String name = names.get(service);
+        return name != null ? name : service.getName();
+    }
+
+    private Collection<String> dependenciesOf(final ServerService service) {
+        final Collection<String> dependsOn = dependencies.get(service);
+        return dependsOn != null ? dependsOn : Collections.<String>emptySet();
+    }
+
+    private Collection<String> namesOf(final Collection<ServerService> services) {
+        final Collection<String> result = new ArrayList<String>(services.size());
+        for (final ServerService service : services) {
+            result.add(nameOf(service));
+        }
+        return result;
+    }
+
     @Override
     public synchronized void start(final boolean block) throws ServiceException {
 
@@ -164,32 +264,32 @@ public class SimpleServiceManager extends ServiceManager {
         // starting then displaying to get a more relevant log
 
         final Exception[] errors = new Exception[daemons.length];
-        for (int i = 0; i < daemons.length; i++) {
-            final ServerService d = daemons[i];
-
-            try {
-                d.start();
-                errors[i] = null;
-            } catch (Exception e) {
-                errors[i] = e;
-                LOGGER.info("Can't start service " + d.getName(), e);
+        final long[] durations = new long[daemons.length];
+        final int parallelism = SystemInstance.get().getOptions().get(PARALLELISM, 1);
+        if (parallelism <= 1 || daemons.length <= 1) {
+            for (int i = 0; i < daemons.length; i++) {
+                startDaemon(i, errors, durations);
             }
+        } else {
+            startConcurrently(Math.min(parallelism, daemons.length), errors, durations);
         }
 
         if (display) {
             LOGGER.info("  ** Bound Services **");
-            printRow("NAME", "IP", "PORT");
+            printRow("NAME", "IP", "PORT", "TIME");
         }
         for (int i = 0; i < daemons.length; i++) {
             final ServerService d = daemons[i];
             if (errors[i] == null) {
                 if (display && d.getPort() != -1) {
-                    printRow(d.getName(), d.getIP(), d.getPort() + "");
+                    printRow(d.getName(), d.getIP(), d.getPort() + "", durations[i] + "ms");
+                } else {
+                    LOGGER.debug("Started service " + d.getName() + " in " + durations[i] + "ms");
                 }
             } else {
                 logger.fatal("Service Start Failed: " + d.getName() + " " + d.getIP() + " " + d.getPort() + ": " + errors[i].getMessage());
                 if (display) {
-                    printRow(d.getName(), "----", "FAILED");
+                    printRow(d.getName(), "----", "FAILED", durations[i] + "ms");
                 }
             }
         }
@@ -223,12 +323,75 @@ public class SimpleServiceManager extends ServiceManager {
         logger.info("Stopping Remote Server");
     }
 
+    private void startDaemon(final int i, final Exception[] errors, final long[] durations) {
+        final ServerService d = daemons[i];
+        final long start = System.nanoTime();
+        try {
+            d.start();
+            errors[i] = null;
+        } catch (Exception e) {
+            errors[i] = e;
+            LOGGER.info("Can't start service " + d.getName(), e);
+        } finally {
+            durations[i] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        }
+    }
+
+    // daemons are sorted so dependencies are submitted (and taken by the pool) before the services waiting for them
+    private void startConcurrently(final int parallelism, final Exception[] errors, final long[] durations) throws ServiceException {
+        final Map<String, CountDownLatch> started = new HashMap<String, CountDownLatch>();
+        for (final ServerService daemon : daemons) {
+            started.put(nameOf(daemon), new CountDownLatch(1));
+        }
+
+        final ExecutorService es = Executors.newFixedThreadPool(parallelism, new DaemonThreadFactory("openejb-service-starter-"));
+        try {
+            final Collection<Future<?>> futures = new ArrayList<Future<?>>(daemons.length);
+            for (int i = 0; i < daemons.length; i++) {
+                final int index = i;
+                final ServerService daemon = daemons[i];
+                futures.add(es.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (final String dependency : dependenciesOf(daemon)) {
+                                final CountDownLatch latch = started.get(dependency);
+                                if (latch != null) {
+                                    latch.await();
+                                }
+                            }
+                            startDaemon(index, errors, durations);
+                        } catch (final InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            errors[index] = e;
+                        } finally {
+                            started.get(nameOf(daemon)).countDown();
+                        }
+                    }
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceException("Interrupted while starting services", e);
+        } catch (final ExecutionException e) {
+            throw new ServiceException(e.getCause());
+        } finally {
+            es.shutdownNow();
+        }
+    }
+
     @Override
     public synchronized void stop() throws ServiceException {
         logger.info("Stopping server services");
         stopped = true;
 
-        final ServerService[] services = daemons.clone();
+        final ServerService[] services = new ServerService[daemons.length];
+        for (int i = 0; i < daemons.length; i++) { // reverse of the start order so dependencies are still there
+            services[i] = daemons[daemons.length - 1 - i];
+        }
 
         final MBeanServer server = LocalMBeanServer.get();
         for (final ServerService service : services) {
@@ -266,7 +429,7 @@ public class SimpleServiceManager extends ServiceManager {
         notifyAll();
     }
 
-    private void printRow(String col1, String col2, String col3) {
+    private void printRow(String col1, String col2, String col3, final String col4) {
 
         col1 += "                    ";
         col1 = col1.substring(0, 20);
@@ -277,7 +440,7 @@ public class SimpleServiceManager extends ServiceManager {
         col3 += "                    ";
         col3 = col3.substring(0, 6);
 
-        final String sb = "  " + col1 + " " + col2 + " " + col3;
+        final String sb = "  " + col1 + " " + col2 + " " + col3 + " " + col4;
 
         LOGGER.info(sb);
     }
@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.context;
+
+import org.apache.openejb.monitoring.Managed;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of positive values, recording is a couple of atomic increments so it can sit on every request.
+ * <p/>
+ * Values under 16 have their own bucket, above each power of two is split in 8 buckets so percentiles
+ * are exact to 12.5%. Unlike {@link org.apache.openejb.monitoring.Stats} it keeps every value, not a window.
+ */
+@Managed(append = true)
+public class Histogram {
+
+    private static final int LINEAR = 16;
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = LINEAR + (63 - 4) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(final long value) {
+        final long v = Math.max(0, value);
+        buckets.incrementAndGet(index(v));
+        count.incrementAndGet();
+        sum.addAndGet(v);
+
+        long current;
+        while (v > (current = max.get())) {
+            if (max.compareAndSet(current, v)) {
+                break;
+            }
+        }
+    }
+
+    static int index(final long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR + (exponent - 4) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return the largest value of the bucket
+     */
+    static long highest(final int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        final int exponent = (index - LINEAR) / SUB_BUCKETS + 4;
+        final long sub = (index - LINEAR) % SUB_BUCKETS;
+        final long width = 1L << (exponent - SUB_BITS);
+        return ((SUB_BUCKETS + sub) << (exponent - SUB_BITS)) + width - 1;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the value under which this percentage of the values are, 0 without values
+     */
+    public long percentile(final double percentile) {
+        final long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+
+        final long rank = Math.max(1, (long) Math.ceil(total * Math.min(100, percentile) / 100.));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(highest(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    @Managed
+    public long getCount() {
+        return count.get();
+    }
+
+    @Managed
+    public long getSum() {
+        return sum.get();
+    }
+
+    @Managed
+    public double getMean() {
+        final long total = count.get();
+        return total == 0 ? 0 : sum.get() / (double) total;
+    }
+
+    @Managed
+    public long getMax() {
+        return max.get();
+    }
+
+    @Managed
+    public long getPercentile50() {
+        return percentile(50);
+    }
+
+    @Managed
+    public long getPercentile90() {
+        return percentile(90);
+    }
+
+    @Managed
+    public long getPercentile99() {
+        return percentile(99);
+    }
+
+    @Managed
+    public long getPercentile999() {
+        return percentile(99.9);
+    }
+
+    @Override
+    public String toString() {
+        return "Histogram{count=" + count.get() + ", p50=" + percentile(50) + ", p99=" + percentile(99) + ", max=" + max.get() + '}';
+    }
+}
@@ -16,6 +16,7 @@
  */
 package org.apache.openejb.server.context;
 
+import org.apache.openejb.client.ConnectionDictionary;
 import org.apache.openejb.server.stream.CountingInputStream;
 import org.apache.openejb.server.stream.CountingOutputStream;
 
@@ -26,6 +27,7 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketAddress;
+import java.util.Arrays;
 
 public final class RequestInfos {
 
@@ -77,6 +79,15 @@ public final class RequestInfos {
         public String ip;
         private InputStream inputStream;
         private OutputStream outputStream;
+        private ConnectionDictionary dictionary;
+        private String deploymentId;
+
+        private final long[] phases = new long[RequestPhase.values().length];
+        private boolean timed;
+        private long started;
+        private long mark;
+        private long readMark;
+        private long writeMark;
 
         public InputStream getInputStream() {
             if (null == inputStream) {
@@ -97,10 +108,109 @@ public final class RequestInfos {
 
         public void setInputStream(final InputStream inputStream) {
             this.inputStream = inputStream;
+            this.readMark = readNanos();
         }
 
         public void setOutputStream(final OutputStream outputStream) {
             this.outputStream = outputStream;
+            this.writeMark = writeNanos();
+        }
+
+        /**
+         * @return the dictionary of the connection when it is kept alive, null otherwise.
+         */
+        public ConnectionDictionary getDictionary() {
+            return dictionary;
+        }
+
+        public void setDictionary(final ConnectionDictionary dictionary) {
+            this.dictionary = dictionary;
+        }
+
+        /**
+         * @return the deployment the request targets, null if it is not a single deployment request
+         */
+        public String getDeploymentId() {
+            return deploymentId;
+        }
+
+        public void setDeploymentId(final String deploymentId) {
+            this.deploymentId = deploymentId;
+        }
+
+        /**
+         * Starts timing the phases of a new request, until then {@link #lap(RequestPhase)} is a no-op.
+         */
+        public void begin() {
+            Arrays.fill(phases, 0);
+            deploymentId = null;
+            timed = true;
+            started = System.nanoTime();
+            mark = started;
+            readMark = readNanos();
+            writeMark = writeNanos();
+        }
+
+        public boolean isTimed() {
+            return timed;
+        }
+
+        /**
+         * Ends the current phase: the time since the previous lap is added to it, except the time blocked
+         * on timed {@link CountingInputStream}/{@link CountingOutputStream} which goes to
+         * {@link RequestPhase#READ}/{@link RequestPhase#WRITE}.
+         */
+        public void lap(final RequestPhase phase) {
+            if (!timed) {
+                return;
+            }
+
+            final long now = System.nanoTime();
+            final long read = readNanos() - readMark;
+            final long written = writeNanos() - writeMark;
+            phases[RequestPhase.READ.ordinal()] += read;
+            phases[RequestPhase.WRITE.ordinal()] += written;
+            phases[phase.ordinal()] += Math.max(0, now - mark - read - written);
+
+            mark = now;
+            readMark += read;
+            writeMark += written;
+        }
+
+        /**
+         * @return the nanoseconds spent in this phase since {@link #begin()}
+         */
+        public long getPhase(final RequestPhase phase) {
+            return phases[phase.ordinal()];
+        }
+
+        /**
+         * @return the nanoseconds from {@link #begin()} to the last lap
+         */
+        public long getElapsed() {
+            return timed ? mark - started : 0;
+        }
+
+        /**
+         * @return the bytes read for the current request, -1 if they are not counted
+         */
+        public long getRequestSize() {
+            return CountingInputStream.class.isInstance(inputStream) ? CountingInputStream.class.cast(inputStream).getCount() : -1;
+        }
+
+        /**
+         * @return the bytes written for the current request, -1 if they are not counted
+         */
+        public long getResponseSize() {
+            return CountingOutputStream.class.isInstance(outputStream) ? CountingOutputStream.class.cast(outputStream).getCount() : -1;
+        }
+
+        private long readNanos() {
+            return CountingInputStream.class.isInstance(inputStream) ? CountingInputStream.class.cast(inputStream).getNanos() : 0;
+        }
+
+        private long writeNanos() {
+            return CountingOutputStream.class.isInstance(outputStream) ? CountingOutputStream.class.cast(outputStream).getNanos() : 0;
         }
 
         @Override
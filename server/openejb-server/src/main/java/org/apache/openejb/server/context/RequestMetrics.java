@@ -0,0 +1,190 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.context;
+
+import org.apache.openejb.assembler.classic.EjbJarInfo;
+import org.apache.openejb.assembler.classic.EnterpriseBeanInfo;
+import org.apache.openejb.assembler.classic.event.AssemblerBeforeApplicationDestroyed;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.monitoring.LocalMBeanServer;
+import org.apache.openejb.monitoring.Managed;
+import org.apache.openejb.monitoring.ManagedMBean;
+import org.apache.openejb.monitoring.ObjectNameBuilder;
+import org.apache.openejb.observer.Observes;
+
+import javax.management.ObjectName;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Phase timings, in nanoseconds, and sizes, in bytes, of the requests of a service, see
+ * {@link RequestInfos.RequestInfo#lap(RequestPhase)}. Requests targeting a single deployment are also
+ * recorded in the metrics of the deployment.
+ * <p/>
+ * Registered in JMX as openejb:type=RequestMetrics,name=&lt;service&gt; and
+ * openejb:type=RequestMetrics,name=&lt;service&gt;,deployment=&lt;id&gt;, the metrics of a deployment are dropped
+ * with its application.
+ */
+@Managed
+public class RequestMetrics {
+
+    @Managed
+    private final Histogram total = new Histogram();
+
+    @Managed
+    private final Histogram read = new Histogram();
+
+    @Managed
+    private final Histogram deserialization = new Histogram();
+
+    @Managed
+    private final Histogram login = new Histogram();
+
+    @Managed
+    private final Histogram invocation = new Histogram();
+
+    @Managed
+    private final Histogram serialization = new Histogram();
+
+    @Managed
+    private final Histogram write = new Histogram();
+
+    @Managed
+    private final Histogram requestSize = new Histogram();
+
+    @Managed
+    private final Histogram responseSize = new Histogram();
+
+    private final Histogram[] phases = {read, deserialization, login, invocation, serialization, write};
+
+    private final ObjectNameBuilder jmxName;
+    private final ConcurrentMap<String, RequestMetrics> deployments;
+
+    private RequestMetrics(final ObjectNameBuilder jmxName, final boolean deployments) {
+        this.jmxName = jmxName;
+        this.deployments = deployments ? new ConcurrentHashMap<String, RequestMetrics>() : null;
+    }
+
+    /**
+     * @return new metrics for this service, registered in JMX when it is active, to {@link #unregister()} once done
+     */
+    public static RequestMetrics of(final String service) {
+        final ObjectNameBuilder jmxName = new ObjectNameBuilder("openejb");
+        jmxName.set("type", "RequestMetrics");
+        jmxName.set("name", service);
+        final RequestMetrics metrics = new RequestMetrics(jmxName, true);
+        metrics.register();
+        SystemInstance.get().addObserver(metrics);
+        return metrics;
+    }
+
+    public void record(final RequestInfos.RequestInfo info) {
+        recordOne(info);
+
+        final String deploymentId = info.getDeploymentId();
+        if (deploymentId != null && deployments != null) {
+            deployment(deploymentId).recordOne(info);
+        }
+    }
+
+    private void recordOne(final RequestInfos.RequestInfo info) {
+        total.record(info.getElapsed());
+        for (final RequestPhase phase : RequestPhase.values()) {
+            phases[phase.ordinal()].record(info.getPhase(phase));
+        }
+
+        final long in = info.getRequestSize();
+        if (in >= 0) {
+            requestSize.record(in);
+        }
+        final long out = info.getResponseSize();
+        if (out >= 0) {
+            responseSize.record(out);
+        }
+    }
+
+    /**
+     * @return the metrics of this deployment, created on first use
+     */
+    public RequestMetrics deployment(final String deploymentId) {
+        RequestMetrics metrics = deployments.get(deploymentId);
+        if (metrics == null) {
+            final ObjectNameBuilder name = jmxName.copy();
+            name.set("deployment", deploymentId);
+            final RequestMetrics created = new RequestMetrics(name, false);
+            metrics = deployments.putIfAbsent(deploymentId, created);
+            if (metrics == null) {
+                metrics = created;
+                metrics.register();
+            }
+        }
+        return metrics;
+    }
+
+    public void beforeApplicationDestroyed(@Observes final AssemblerBeforeApplicationDestroyed event) {
+        for (final EjbJarInfo ejbJar : event.getApp().ejbJars) {
+            for (final EnterpriseBeanInfo bean : ejbJar.enterpriseBeans) {
+                final RequestMetrics metrics = deployments.remove(bean.ejbDeploymentId);
+                if (metrics != null) {
+                    metrics.unregister();
+                }
+            }
+        }
+    }
+
+    public Histogram getTotal() {
+        return total;
+    }
+
+    public Histogram getPhase(final RequestPhase phase) {
+        return phases[phase.ordinal()];
+    }
+
+    public Histogram getRequestSize() {
+        return requestSize;
+    }
+
+    public Histogram getResponseSize() {
+        return responseSize;
+    }
+
+    private void register() {
+        if (LocalMBeanServer.isJMXActive()) {
+            LocalMBeanServer.registerSilently(new ManagedMBean(this), jmxName.build());
+        }
+    }
+
+    /**
+     * Removes these metrics and the ones of the deployments from JMX.
+     */
+    public void unregister() {
+        if (deployments != null) {
+            SystemInstance.get().removeObserver(this);
+            for (final RequestMetrics metrics : deployments.values()) {
+                metrics.unregister();
+            }
+            deployments.clear();
+        }
+
+        if (LocalMBeanServer.isJMXActive()) {
+            final ObjectName name = jmxName.build();
+            if (LocalMBeanServer.get().isRegistered(name)) {
+                LocalMBeanServer.unregisterSilently(name);
+            }
+        }
+    }
+}
@@ -19,17 +19,29 @@ package org.apache.openejb.server.stream;
 import java.io.IOException;
 import java.io.InputStream;
 
+/**
+ * Counts the bytes read and, when timed, the time spent blocked in the delegate.
+ */
 public class CountingInputStream extends InputStream {
     private final InputStream delegate;
+    private final boolean timed;
     private int count = 0;
+    private long nanos = 0;
 
     public CountingInputStream(final InputStream rawIn) {
+        this(rawIn, false);
+    }
+
+    public CountingInputStream(final InputStream rawIn, final boolean timed) {
         delegate = rawIn;
+        this.timed = timed;
     }
 
     @Override
     public int read() throws IOException {
+        final long start = start();
         final int r = delegate.read();
+        stop(start);
         if (r == -1) {
             return -1;
         }
@@ -40,21 +52,25 @@ public class CountingInputStream extends InputStream {
 
     @Override
     public int read(final byte[] b) throws IOException {
-        final int read = delegate.read(b);
-        count += read;
-        return read;
+        return read(b, 0, b.length);
     }
 
     @Override
     public int read(final byte[] b, final int off, final int len) throws IOException {
+        final long start = start();
         final int read = delegate.read(b, off, len);
-        count += read;
+        stop(start);
+        if (read > 0) {
+            count += read;
+        }
         return read;
     }
 
     @Override
     public long skip(final long n) throws IOException {
+        final long start = start();
         final long skip = delegate.skip(n);
+        stop(start);
         count += skip;
         return skip;
     }
@@ -84,7 +100,24 @@ public class CountingInputStream extends InputStream {
         return delegate.markSupported();
     }
 
+    private long start() {
+        return timed ? System.nanoTime() : 0;
+    }
+
+    private void stop(final long start) {
+        if (timed) {
+            nanos += System.nanoTime() - start;
+        }
+    }
+
     public int getCount() {
         return count;
     }
+
+    /**
+     * @return the nanoseconds spent reading the delegate, 0 when not timed
+     */
+    public long getNanos() {
+        return nanos;
+    }
 }
@@ -21,40 +21,75 @@ import java.io.IOException;
 import java.io.OutputStream;
 
 // IMPORTANT: write(byte[]) methods are theorically useless but 1) good for perf, 2) avoid to break on windows (socket impl)
+/**
+ * Counts the bytes written and, when timed, the time spent blocked in the delegate.
+ */
 public class CountingOutputStream extends FilterOutputStream {
+    private final boolean timed;
     private int count = 0;
+    private long nanos = 0;
 
     public CountingOutputStream(final OutputStream rawIn) {
+        this(rawIn, false);
+    }
+
+    public CountingOutputStream(final OutputStream rawIn, final boolean timed) {
         super(rawIn);
+        this.timed = timed;
     }
 
     @Override
     public void write(final int b) throws IOException {
         count++;
-        super.write(b);
+        final long start = start();
+        out.write(b);
+        stop(start);
     }
 
     @Override
     public void write(final byte[] b) throws IOException {
         count += b.length;
-        super.write(b);
+        final long start = start();
+        out.write(b);
+        stop(start);
     }
 
     @Override
     public void write(final byte[] b, final int off, final int len) throws IOException {
         count += len;
-        super.write(b, off, len);
+        final long start = start();
+        out.write(b, off, len);
+        stop(start);
     }
 
     public void flush() throws IOException {
+        final long start = start();
         out.flush();
+        stop(start);
     }
 
     public void close() throws IOException {
         out.close();
     }
 
+    private long start() {
+        return timed ? System.nanoTime() : 0;
+    }
+
+    private void stop(final long start) {
+        if (timed) {
+            nanos += System.nanoTime() - start;
+        }
+    }
+
     public int getCount() {
         return count;
     }
+
+    /**
+     * @return the nanoseconds spent writing to the delegate, 0 when not timed
+     */
+    public long getNanos() {
+        return nanos;
+    }
 }
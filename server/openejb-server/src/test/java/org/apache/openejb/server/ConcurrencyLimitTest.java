@@ -0,0 +1,283 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrencyLimitTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void rejectsOverTheLimit() {
+        final ConcurrencyLimit limit = new ConcurrencyLimit(1, 2, 50, TimeUnit.MILLISECONDS, 0.5);
+        assertTrue(limit.acquire());
+        assertTrue(limit.acquire());
+        assertFalse(limit.acquire());
+        assertEquals(1, limit.getRejectedCount());
+
+        limit.release();
+        assertTrue(limit.acquire());
+        assertEquals(3, limit.getAdmittedCount());
+        assertEquals(2, limit.getInFlight());
+    }
+
+    @Test
+    public void additiveIncreaseMultiplicativeDecrease() {
+        final ConcurrencyLimit limit = new ConcurrencyLimit(2, 20, 50, TimeUnit.MILLISECONDS, 0.5);
+        assertEquals(20, limit.getLimit());
+
+        final long start = System.nanoTime();
+        limit.sample(80 * MS, start + 100 * MS);
+        assertEquals(10, limit.getLimit());
+
+        // once per target period
+        limit.sample(80 * MS, start + 120 * MS);
+        assertEquals(10, limit.getLimit());
+        limit.sample(80 * MS, start + 160 * MS);
+        assertEquals(5, limit.getLimit());
+        assertEquals(2, limit.getDecreaseCount());
+
+        // grows back only when at least half busy
+        limit.sample(MS, start + 200 * MS);
+        assertEquals(5, limit.getLimit());
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limit.acquire());
+        }
+        limit.sample(MS, start + 210 * MS);
+        limit.sample(MS, start + 220 * MS);
+        assertEquals(7, limit.getLimit());
+
+        // never under the minimum
+        for (int i = 0; i < 10; i++) {
+            limit.sample(80 * MS, start + (300 + 100 * i) * MS);
+        }
+        assertEquals(2, limit.getLimit());
+    }
+
+    @Test
+    public void servicePoolResetsRejectedConnections() throws Exception {
+        final CountDownLatch served = new CountDownLatch(2);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ServerService blocking = new ServerServiceFilter(null) {
+            @Override
+            public void service(final Socket socket) throws ServiceException, IOException {
+                served.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (final InterruptedException e) {
+                    Thread.interrupted();
+                }
+            }
+
+            @Override
+            public String getName() {
+                return "blocking";
+            }
+
+            @Override
+            public void start() throws ServiceException {
+                // no-op
+            }
+
+            @Override
+            public void stop() throws ServiceException {
+                // no-op
+            }
+        };
+
+        final Properties properties = new Properties();
+        properties.setProperty("threadsCore", "2");
+        properties.setProperty("threads", "2");
+        properties.setProperty("adaptiveLimit", "true");
+        properties.setProperty("limitMax", "2");
+        final ServicePool pool = new ServicePool(blocking, properties);
+        final ServiceDaemon daemon = new ServiceDaemon(pool, 0, "localhost");
+        daemon.start();
+        try {
+            final Socket first = new Socket(InetAddress.getByName("localhost"), daemon.getPort());
+            final Socket second = new Socket(InetAddress.getByName("localhost"), daemon.getPort());
+            assertTrue(served.await(10, TimeUnit.SECONDS));
+
+            final Socket third = new Socket(InetAddress.getByName("localhost"), daemon.getPort());
+            third.setSoTimeout(10000);
+            try {
+                final InputStream in = third.getInputStream();
+                final OutputStream out = third.getOutputStream();
+                out.write(1);
+                out.flush();
+                assertEquals(-1, in.read());
+            } catch (final SocketException e) {
+                // reset
+            }
+            assertEquals(1, pool.getAdmission().getRejectedCount());
+
+            release.countDown();
+            first.close();
+            second.close();
+            third.close();
+        } finally {
+            release.countDown();
+            daemon.stop();
+        }
+    }
+
+    @Test
+    public void idleKeptAliveConnectionsDontCount() throws Exception {
+        final CountDownLatch waiting = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ServerService keepAlive = new ServerServiceFilter(null) {
+            @Override
+            public void service(final Socket socket) throws ServiceException, IOException {
+                final InputStream in = socket.getInputStream();
+                final OutputStream out = socket.getOutputStream();
+                int request;
+                while ((request = in.read()) != -1) {
+                    if (!ServicePool.acquireRequest()) {
+                        out.write('B'); // busy
+                        out.flush();
+                        continue;
+                    }
+                    try {
+                        if (request == 'w') {
+                            waiting.countDown();
+                            release.await(10, TimeUnit.SECONDS);
+                        }
+                        out.write('Y');
+                        out.flush();
+                    } catch (final InterruptedException e) {
+                        Thread.interrupted();
+                    } finally {
+                        ServicePool.releaseRequest();
+                    }
+                }
+            }
+
+            @Override
+            public String getName() {
+                return "keep-alive";
+            }
+
+            @Override
+            public void start() throws ServiceException {
+                // no-op
+            }
+
+            @Override
+            public void stop() throws ServiceException {
+                // no-op
+            }
+        };
+
+        final Properties properties = new Properties();
+        properties.setProperty("threadsCore", "2");
+        properties.setProperty("threads", "2");
+        properties.setProperty("adaptiveLimit", "true");
+        properties.setProperty("limitMin", "1");
+        properties.setProperty("limitMax", "1");
+        final ServicePool pool = new ServicePool(keepAlive, properties);
+        final ServiceDaemon daemon = new ServiceDaemon(pool, 0, "localhost");
+        daemon.start();
+        try (final Socket first = new Socket(InetAddress.getByName("localhost"), daemon.getPort())) {
+            first.setSoTimeout(10000);
+            assertEquals('Y', request(first, 'x'));
+            awaitIdle(pool);
+
+            // the first connection is idle, the second one is admitted
+            try (final Socket second = new Socket(InetAddress.getByName("localhost"), daemon.getPort())) {
+                second.setSoTimeout(10000);
+                second.getOutputStream().write('w');
+                second.getOutputStream().flush();
+                assertTrue(waiting.await(10, TimeUnit.SECONDS));
+
+                assertEquals('B', request(first, 'x'));
+                assertEquals(1, pool.getAdmission().getRejectedCount());
+
+                release.countDown();
+                assertEquals('Y', second.getInputStream().read());
+            }
+            awaitIdle(pool);
+            assertEquals('Y', request(first, 'x'));
+        } finally {
+            release.countDown();
+            daemon.stop();
+        }
+    }
+
+    private static void awaitIdle(final ServicePool pool) throws InterruptedException {
+        final long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (pool.getAdmission().getInFlight() > 0 && System.currentTimeMillis() < end) {
+            Thread.sleep(10); // released once the response is written
+        }
+    }
+
+    private static int request(final Socket socket, final int request) throws IOException {
+        socket.getOutputStream().write(request);
+        socket.getOutputStream().flush();
+        return socket.getInputStream().read();
+    }
+
+    @Test
+    public void servicePoolGivesBackDroppedConnections() throws Exception {
+        final Properties properties = new Properties();
+        properties.setProperty("threadsCore", "2");
+        properties.setProperty("adaptiveLimit", "true");
+        properties.setProperty("limitMax", "2");
+        final ServicePool pool = new ServicePool(new ServerServiceFilter(null) {
+            @Override
+            public void service(final Socket socket) throws ServiceException, IOException {
+                throw new AssertionError("dropped connections are not served");
+            }
+
+            @Override
+            public String getName() {
+                return "dropping";
+            }
+        }, properties);
+        pool.getThreadPool().shutdown();
+
+        final ServerSocket server = new ServerSocket(0, 1, InetAddress.getByName("localhost"));
+        try {
+            for (int i = 0; i < 3; i++) {
+                final Socket client = new Socket(InetAddress.getByName("localhost"), server.getLocalPort());
+                final Socket accepted = server.accept();
+                pool.service(accepted);
+
+                assertTrue(accepted.isClosed());
+                assertEquals(0, pool.getAdmission().getInFlight());
+                client.close();
+            }
+        } finally {
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server;
+
+import org.apache.openejb.loader.SystemInstance;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+
+public class SimpleServiceManagerDependsOnTest {
+    private static final List<String> EVENTS = Collections.synchronizedList(new ArrayList<String>());
+
+    @Before
+    public void init() throws Exception {
+        EVENTS.clear();
+        SystemInstance.reset();
+    }
+
+    @After
+    public void reset() {
+        SystemInstance.reset();
+    }
+
+    @Test
+    public void serial() throws Exception {
+        run();
+    }
+
+    @Test
+    public void parallel() throws Exception {
+        SystemInstance.get().setProperty(SimpleServiceManager.PARALLELISM, "4");
+        run();
+    }
+
+    private void run() throws Exception {
+        final SimpleServiceManager serviceManager = new SimpleServiceManager(new ServiceFinder() {
+            @Override
+            public Map<String, Properties> mapAvailableServices(final Class interfase) throws IOException, ClassNotFoundException {
+                final Map<String, Properties> services = new LinkedHashMap<String, Properties>();
+                services.put("third", service("second"));
+                services.put("second", service("first"));
+                services.put("first", service(null));
+                return services;
+            }
+        });
+        serviceManager.init();
+        serviceManager.start(false);
+        assertEquals(asList("start first", "start second", "start third"), EVENTS);
+
+        EVENTS.clear();
+        serviceManager.stop();
+        assertEquals(asList("stop third", "stop second", "stop first"), EVENTS);
+    }
+
+    private static Properties service(final String dependsOn) {
+        final Properties properties = new Properties();
+        properties.setProperty("server", RecordingService.class.getName());
+        properties.setProperty("disabled", "false");
+        if (dependsOn != null) {
+            properties.setProperty(SimpleServiceManager.DEPENDS_ON, dependsOn);
+        }
+        properties.put(ServerService.class, RecordingService.class);
+        return properties;
+    }
+
+    public static class RecordingService implements ServerService, SelfManaging {
+        private String name;
+
+        @Override
+        public void init(final Properties props) throws Exception {
+            name = props.getProperty("name");
+        }
+
+        @Override
+        public void start() throws ServiceException {
+            if ("first".equals(name)) { // slowest one, others must wait for it
+                try {
+                    Thread.sleep(200);
+                } catch (final InterruptedException e) {
+                    Thread.interrupted();
+                }
+            }
+            EVENTS.add("start " + name);
+        }
+
+        @Override
+        public void stop() throws ServiceException {
+            EVENTS.add("stop " + name);
+        }
+
+        @Override
+        public void service(final InputStream in, final OutputStream out) throws ServiceException, IOException {
+            // no-op
+        }
+
+        @Override
+        public void service(final Socket socket) throws ServiceException, IOException {
+            // no-op
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getIP() {
+            return "127.0.0.1";
+        }
+
+        @Override
+        public int getPort() {
+            return -1;
+        }
+    }
+}
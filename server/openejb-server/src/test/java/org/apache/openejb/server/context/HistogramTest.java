@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.context;
+
+import org.apache.openejb.server.stream.CountingInputStream;
+import org.apache.openejb.server.stream.CountingOutputStream;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistogramTest {
+
+    @Test
+    public void bucketsCoverTheirValues() {
+        for (long value = 0; value < 1000000; value += 7) {
+            final int index = Histogram.index(value);
+            assertTrue(value <= Histogram.highest(index));
+            assertTrue(index == 0 || value > Histogram.highest(index - 1));
+        }
+        assertTrue(Histogram.index(Long.MAX_VALUE) >= 0);
+    }
+
+    @Test
+    public void percentiles() {
+        final Histogram histogram = new Histogram();
+        assertEquals(0, histogram.percentile(99));
+
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000000, histogram.getMax());
+        assertEquals(500500., histogram.getMean(), 0.001);
+
+        assertWithin(500000, histogram.getPercentile50());
+        assertWithin(990000, histogram.getPercentile99());
+        assertEquals(1000000, histogram.percentile(100));
+    }
+
+    @Test
+    public void concurrentRecords() throws Exception {
+        final Histogram histogram = new Histogram();
+        final int threads = 4;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        histogram.record(i);
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        assertTrue(done.await(1, TimeUnit.MINUTES));
+        assertEquals(40000, histogram.getCount());
+        assertEquals(9999, histogram.getMax());
+    }
+
+    @Test
+    public void lapsExcludeTheTimeBlockedOnStreams() throws Exception {
+        final RequestInfos.RequestInfo info = new RequestInfos.RequestInfo();
+        info.lap(RequestPhase.INVOCATION);
+        assertEquals(0, info.getElapsed());
+
+        final CountingInputStream in = new CountingInputStream(new ByteArrayInputStream(new byte[100]) {
+            @Override
+            public synchronized int read(final byte[] b, final int off, final int len) {
+                sleep(20);
+                return super.read(b, off, len);
+            }
+        }, true);
+        info.setInputStream(in);
+        info.begin();
+        assertEquals(100, in.read(new byte[200]));
+        info.lap(RequestPhase.DESERIALIZATION);
+
+        sleep(20);
+        info.lap(RequestPhase.INVOCATION);
+
+        info.setOutputStream(new CountingOutputStream(new ByteArrayOutputStream(), true));
+        info.getOutputStream().write(new byte[10]);
+        info.lap(RequestPhase.SERIALIZATION);
+
+        assertTrue(info.getPhase(RequestPhase.READ) >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertTrue(info.getPhase(RequestPhase.DESERIALIZATION) < TimeUnit.MILLISECONDS.toNanos(20));
+        assertTrue(info.getPhase(RequestPhase.INVOCATION) >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertEquals(100, info.getRequestSize());
+        assertEquals(10, info.getResponseSize());
+
+        long sum = 0;
+        for (final RequestPhase phase : RequestPhase.values()) {
+            sum += info.getPhase(phase);
+        }
+        assertEquals(info.getElapsed(), sum);
+    }
+
+    private static void assertWithin(final long expected, final long actual) {
+        assertTrue(actual + " not within 12.5% of " + expected, Math.abs(actual - expected) <= expected / 8);
+    }
+
+    private static void sleep(final long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
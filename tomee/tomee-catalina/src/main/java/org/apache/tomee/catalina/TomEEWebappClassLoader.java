@@ -50,12 +50,14 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.LogManager;
 
 // TODO: rework it
@@ -72,6 +74,7 @@ public class TomEEWebappClassLoader extends ParallelWebappClassLoader {
 
     public static final String TOMEE_WEBAPP_FIRST = "tomee.webapp-first";
     public static final String TOMEE_EAR_DEFAULT = "tomee.ear.webapp-first";
+    public static final String TOMEE_PACKAGE_INDEX = "tomee.webappclassloader.package-index";
 
     static {
         boolean result = ClassLoader.registerAsParallelCapable();
@@ -91,7 +94,10 @@ public class TomEEWebappClassLoader extends ParallelWebappClassLoader {
     private final int hashCode;
     private Collection<File> additionalRepos;
     private volatile boolean stopped = false;
-    private final Map<String, Boolean> filterTempCache = new HashMap<>(); // used only in sync block + isEar
+    private final AtomicLong loadingTime = new AtomicLong();
+    private final AtomicInteger loadedClasses = new AtomicInteger();
+    private final ThreadLocal<Boolean> loading = new ThreadLocal<>(); // per loader, a load can go through several webapps
+    private volatile WebappPackageIndex packageIndex;
     private volatile LazyStopStandardRoot webResourceRoot;
 
     public TomEEWebappClassLoader() {
@@ -138,6 +144,22 @@ public class TomEEWebappClassLoader extends ParallelWebappClassLoader {
 
     @Override
     public Class<?> loadClass(final String name, final boolean resolve) throws ClassNotFoundException {
+        if (loading.get() != null) { // nested load, already accounted by the outer one
+            return doLoadClass(name, resolve);
+        }
+
+        loading.set(Boolean.TRUE);
+        final long start = System.nanoTime();
+        try {
+            return doLoadClass(name, resolve);
+        } finally {
+            loadingTime.addAndGet(System.nanoTime() - start);
+            loadedClasses.incrementAndGet();
+            loading.remove();
+        }
+    }
+
+    private Class<?> doLoadClass(final String name, final boolean resolve) throws ClassNotFoundException {
         if ("org.apache.openejb.hibernate.OpenEJBJtaPlatform".equals(name)
                 || "org.apache.openejb.jpa.integration.hibernate.PrefixNamingStrategy".equals(name)
                 || "org.apache.openejb.jpa.integration.eclipselink.PrefixSessionCustomizer".equals(name)
@@ -146,17 +168,22 @@ public class TomEEWebappClassLoader extends ParallelWebappClassLoader {
                 || "org.apache.openejb.eclipselink.JTATransactionController".equals(name)
                 || "org.apache.tomee.mojarra.TomEEInjectionProvider".equals(name)) {
             // don't load them from system classloader (breaks all in embedded mode and no sense in other cases)
-            synchronized (this) {
-                final ClassLoader old = getJavaseClassLoader();
-                setJavaseClassLoader(NoClassClassLoader.INSTANCE);
-                delegate = false;
+            final boolean parentFirst = filter(name, true);
+            if (parentFirst) {
                 try {
-                    return super.loadClass(name, resolve);
-                } finally {
-                    setJavaseClassLoader(old);
-                    setDelegate(originalDelegate);
+                    return Class.forName(name, resolve, getParent());
+                } catch (final ClassNotFoundException cnfe) {
+                    // try the webapp
                 }
             }
+            final Class<?> c = loadLocally(name, resolve, false);
+            if (c != null) {
+                return c;
+            }
+            if (parentFirst) {
+                throw new ClassNotFoundException(name);
+            }
+            return Class.forName(name, resolve, getParent());
         }
 
         // avoid to redefine classes from server in this classloader is it not already loaded
@@ -164,55 +191,90 @@ public class TomEEWebappClassLoader extends ParallelWebappClassLoader {
             try {
                 return OpenEJB.class.getClassLoader().loadClass(name); // we could use containerClassLoader but this is server loader so cut it even more
             } catch (final ClassNotFoundException e) {
-                synchronized (this) {
-                    return super.loadClass(name, resolve);
-                }
+                return super.loadClass(name, resolve);
             } catch (final NoClassDefFoundError ncdfe) {
-                synchronized (this) {
-                    return super.loadClass(name, resolve);
-                }
+                return super.loadClass(name, resolve);
             }
         } else if (name.startsWith("javax.faces.") || name.startsWith("org.apache.webbeans.jsf")) {
-            synchronized (this) {
-                delegate = false;
-                try {
-                    return super.loadClass(name, resolve);
-                } finally {
-                    setDelegate(originalDelegate);
+            final Class<?> c = loadLocally(name, resolve, true);
+            if (c != null) {
+                return c;
+            }
+            return super.loadClass(name, resolve);
+        }
+        if (isEar && !filter(name, true)) {
+            if (URLClassLoaderFirst.class.isInstance(getParent())) { // true
+                final URLClassLoaderFirst urlClassLoaderFirst = URLClassLoaderFirst.class.cast(getParent());
+                Class<?> c = urlClassLoaderFirst.findAlreadyLoadedClass(name);
+                if (c != null) {
+                    return c;
+                }
+                c = urlClassLoaderFirst.loadInternal(name, resolve);
+                if (c != null) {
+                    return c;
+                }
+            }
+            if (isLocal(name)) {
+                final Class<?> c = loadLocally(name, resolve, true);
+                if (c != null) {
+                    return c;
                 }
             }
         }
-        synchronized (this) { // TODO: rework it to avoid it and get aligned on Java 7 classloaders (but not a big issue)
-            if (isEar) {
-                final boolean filter = filter(name, true);
-                filterTempCache.put(name, filter); // will be called again by super.loadClass() so cache it
-                if (!filter) {
-                    if (URLClassLoaderFirst.class.isInstance(getParent())) { // true
-                        final URLClassLoaderFirst urlClassLoaderFirst = URLClassLoaderFirst.class.cast(getParent());
-                        Class<?> c = urlClassLoaderFirst.findAlreadyLoadedClass(name);
-                        if (c != null) {
-                            return c;
-                        }
-                        c = urlClassLoaderFirst.loadInternal(name, resolve);
-                        if (c != null) {
-                            return c;
-                        }
-                    }
-                    return loadWithDelegate(getResource(name.replace('.', '/') + CLASS_EXTENSION) == null, resolve, name);
+        return super.loadClass(name, resolve);
+    }
+
+    /**
+     * Webapp first loading without touching the shared delegate flag,
+     * only the lock of the class is held so other classes load in parallel.
+     *
+     * @return the class or null if the webapp doesn't have it (or the JVM/container must provide it).
+     */
+    private Class<?> loadLocally(final String name, final boolean resolve, final boolean javaseFirst) throws ClassNotFoundException {
+        if (javaseFirst && filter(name, true)) {
+            return null;
+        }
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> c = findLoadedClass0(name);
+            if (c == null) {
+                c = findLoadedClass(name);
+            }
+            if (c == null) {
+                if (javaseFirst && getJavaseClassLoader().getResource(name.replace('.', '/') + CLASS_EXTENSION) != null) {
+                    return null;
+                }
+                try {
+                    c = findClass(name);
+                } catch (final ClassNotFoundException cnfe) {
+                    return null;
                 }
             }
-            return super.loadClass(name, resolve);
+            if (resolve) {
+                resolveClass(c);
+            }
+            return c;
         }
     }
 
-    private Class<?> loadWithDelegate(final boolean delegate, final boolean resolve, final String name) throws ClassNotFoundException {
-        setDelegate(delegate);
-        try {
-            return super.loadClass(name, resolve);
-        } finally {
-            filterTempCache.remove(name); // no more needed since class is loaded, avoid to waste mem
-            setDelegate(originalDelegate);
+    private boolean isLocal(final String name) {
+        final WebappPackageIndex index = packageIndex;
+        if (index != null) {
+            return index.isLocal(name);
         }
+        return getResource(name.replace('.', '/') + CLASS_EXTENSION) != null;
+    }
+
+    public long getLoadingTime() {
+        return TimeUnit.NANOSECONDS.toMillis(loadingTime.get());
+    }
+
+    public int getLoadedClasses() {
+        return loadedClasses.get();
+    }
+
+    public int getIndexedPackages() {
+        final WebappPackageIndex index = packageIndex;
+        return index == null ? -1 : index.size();
     }
 
     @Override
@@ -248,14 +310,6 @@ public class TomEEWebappClassLoader extends ParallelWebappClassLoader {
         if ("org.apache.tomee.mojarra.TomEEInjectionProvider".equals(name)) {
             return false;
         }
-        if (isEar) { // check we are called from super and we already cached the result in loadClass
-            synchronized (this) {
-                final Boolean cache = filterTempCache.get(name);
-                if (cache != null) {
-                    return cache;
-                }
-            }
-        }
         return URLClassLoaderFirst.shouldSkip(name);
     }
 
@@ -285,6 +339,7 @@ public class TomEEWebappClassLoader extends ParallelWebappClassLoader {
         thread.setContextClassLoader(this);
         try {
             super.stop();
+            packageIndex = null;
             // super.destroy();
             if (webResourceRoot != null) {
                 webResourceRoot.internalStop();
@@ -381,12 +436,21 @@ public class TomEEWebappClassLoader extends ParallelWebappClassLoader {
             configurer = new CompositeClassLoaderConfigurer(configurer, configurerTxt);
         }
 
+        if (SystemInstance.get().getOptions().get(TOMEE_PACKAGE_INDEX, true)) {
+            packageIndex = WebappPackageIndex.build(resources, getURLs());
+        }
+
         stopped = false;
     }
 
     public void addURL(final URL url) {
         if (configurer == null || configurer.accept(url)) {
             super.addURL(url);
+
+            final WebappPackageIndex index = packageIndex;
+            if (index != null) {
+                packageIndex = index.with(url);
+            }
         }
     }
 
@@ -1854,6 +1854,12 @@ public class TomcatWebAppBuilder implements WebAppBuilder, ContextListener, Pare
         addConfiguredDocBases(standardContext, contextInfo);
 
         ensureMyFacesDontLooseFacesContext(standardContext);
+
+        if (TomEEWebappClassLoader.class.isInstance(classLoader)) {
+            final TomEEWebappClassLoader webappClassLoader = TomEEWebappClassLoader.class.cast(classLoader);
+            logger.info("Class loading of " + standardContext.getName() + ": " + webappClassLoader.getLoadedClasses()
+                    + " loads in " + webappClassLoader.getLoadingTime() + "ms (indexed packages: " + webappClassLoader.getIndexedPackages() + ")");
+        }
     }
 
     private void ensureMyFacesDontLooseFacesContext(final StandardContext standardContext) {
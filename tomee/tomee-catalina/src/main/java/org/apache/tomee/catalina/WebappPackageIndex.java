@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.catalina;
+
+import org.apache.catalina.WebResource;
+import org.apache.catalina.WebResourceRoot;
+import org.apache.openejb.util.URLs;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Packages owning at least one class in the webapp (WEB-INF/classes, WEB-INF/lib and added urls).
+ * Built once when the loader starts, it replaces the getResource(name.class) probe
+ * used to decide if a class is local.
+ *
+ * Immutable: adding an url creates a new index.
+ */
+final class WebappPackageIndex {
+    private static final String WEB_INF_CLASSES = "/WEB-INF/classes";
+
+    private final Set<String> packages;
+
+    private WebappPackageIndex(final Set<String> packages) {
+        this.packages = Collections.unmodifiableSet(packages);
+    }
+
+    /**
+     * @return the index or null if a repository can't be listed (the caller then needs to probe resources).
+     */
+    static WebappPackageIndex build(final WebResourceRoot resources, final URL[] urls) {
+        final Set<String> packages = new HashSet<>();
+        if (resources != null) {
+            indexResources(resources, WEB_INF_CLASSES, "", packages);
+        }
+        for (final URL url : urls) {
+            if (!index(url, packages)) {
+                return null;
+            }
+        }
+        return new WebappPackageIndex(packages);
+    }
+
+    WebappPackageIndex with(final URL url) {
+        final Set<String> packages = new HashSet<>(this.packages);
+        if (!index(url, packages)) {
+            return null;
+        }
+        return new WebappPackageIndex(packages);
+    }
+
+    boolean isLocal(final String className) {
+        final int dot = className.lastIndexOf('.');
+        return packages.contains(dot < 0 ? "" : className.substring(0, dot));
+    }
+
+    int size() {
+        return packages.size();
+    }
+
+    private static boolean index(final URL url, final Set<String> packages) {
+        if (url == null) {
+            return true;
+        }
+
+        final File file;
+        try {
+            file = URLs.toFile(url);
+        } catch (final RuntimeException e) { // not a file, WEB-INF/classes of a war is listed through the resources
+            return url.toExternalForm().contains(WEB_INF_CLASSES);
+        }
+
+        if (file.isDirectory()) {
+            if (!file.getAbsolutePath().replace(File.separatorChar, '/').endsWith(WEB_INF_CLASSES)) {
+                indexDirectory(file, "", packages);
+            }
+            return true;
+        }
+        if (file.isFile()) {
+            try (final JarFile jar = new JarFile(file)) {
+                final Enumeration<JarEntry> entries = jar.entries();
+                while (entries.hasMoreElements()) {
+                    final String name = entries.nextElement().getName();
+                    if (name.endsWith(TomEEWebappClassLoader.CLASS_EXTENSION)) {
+                        final int slash = name.lastIndexOf('/');
+                        packages.add(slash < 0 ? "" : name.substring(0, slash).replace('/', '.'));
+                    }
+                }
+                return true;
+            } catch (final IOException e) {
+                return false;
+            }
+        }
+        return true; // doesn't exist so nothing to load from it
+    }
+
+    private static void indexDirectory(final File directory, final String pkg, final Set<String> packages) {
+        final File[] children = directory.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (final File child : children) {
+            final String name = child.getName();
+            if (child.isDirectory()) {
+                indexDirectory(child, pkg.isEmpty() ? name : pkg + '.' + name, packages);
+            } else if (name.endsWith(TomEEWebappClassLoader.CLASS_EXTENSION)) {
+                packages.add(pkg);
+            }
+        }
+    }
+
+    private static void indexResources(final WebResourceRoot resources, final String path, final String pkg, final Set<String> packages) {
+        final String[] children = resources.list(path);
+        if (children == null) {
+            return;
+        }
+        for (final String name : children) {
+            final String childPath = path + '/' + name;
+            if (name.endsWith(TomEEWebappClassLoader.CLASS_EXTENSION)) {
+                packages.add(pkg);
+                continue;
+            }
+            final WebResource resource = resources.getResource(childPath);
+            if (resource != null && resource.isDirectory()) {
+                indexResources(resources, childPath, pkg.isEmpty() ? name : pkg + '.' + name, packages);
+            }
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.catalina;
+
+import org.apache.catalina.WebResource;
+import org.apache.catalina.WebResourceRoot;
+import org.apache.openejb.classloader.WebAppEnricher;
+import org.apache.openejb.loader.Files;
+import org.apache.openejb.loader.IO;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.xbean.asm5.ClassWriter;
+import org.apache.xbean.asm5.Opcodes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TomEEWebappClassLoaderTest {
+    private static final String LOCAL = "org.apache.tomee.catalina.generated.Local";
+
+    private File classes;
+    private TomEEWebappClassLoader loader;
+
+    @Before
+    public void start() throws Exception {
+        SystemInstance.get().setComponent(WebAppEnricher.class, new WebAppEnricher() {
+            @Override
+            public URL[] enrichment(final ClassLoader webappClassLaoder) {
+                return new URL[0];
+            }
+        });
+
+        classes = Files.mkdir(Files.tmpdir(), "TomEEWebappClassLoaderTest-" + System.nanoTime());
+        final ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_7, Opcodes.ACC_PUBLIC, LOCAL.replace('.', '/'), null, "java/lang/Object", null);
+        writer.visitEnd();
+        final File classFile = new File(classes, LOCAL.replace('.', '/') + ".class");
+        Files.mkdirs(classFile.getParentFile());
+        IO.copy(writer.toByteArray(), classFile);
+
+        // an ear webapp: classes of the indexed packages are loaded webapp first
+        final ClassLoader ear = new URLClassLoader(new URL[0], getClass().getClassLoader());
+        loader = new TomEEWebappClassLoader(ear);
+        loader.setResources(stub(WebResourceRoot.class));
+        loader.addURL(classes.toURI().toURL());
+        loader.start();
+    }
+
+    @After
+    public void stop() {
+        try {
+            loader.internalDestroy();
+        } finally {
+            Files.delete(classes);
+            SystemInstance.reset();
+        }
+    }
+
+    @Test
+    public void indexHitAndMiss() throws Exception {
+        assertEquals(1, loader.getIndexedPackages());
+
+        final Class<?> local = loader.loadClass(LOCAL);
+        assertSame(loader, local.getClassLoader());
+
+        final Class<?> container = loader.loadClass(TomEEWebappClassLoaderTest.class.getName()); // not in the index
+        assertSame(TomEEWebappClassLoaderTest.class, container);
+        assertNotSame(loader, container.getClassLoader());
+        assertEquals(2, loader.getLoadedClasses());
+    }
+
+    @Test
+    public void concurrentLoadingOfTheSameClass() throws Exception {
+        final int threads = 16;
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService es = Executors.newFixedThreadPool(threads);
+        try {
+            final Collection<Future<Class<?>>> loads = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                loads.add(es.submit(new Callable<Class<?>>() {
+                    @Override
+                    public Class<?> call() throws Exception {
+                        start.await();
+                        return loader.loadClass(LOCAL);
+                    }
+                }));
+            }
+            start.countDown();
+
+            final List<Class<?>> loaded = new ArrayList<>();
+            for (final Future<Class<?>> load : loads) {
+                loaded.add(load.get(1, TimeUnit.MINUTES)); // a LinkageError (duplicate definition) would fail here
+            }
+            for (final Class<?> c : loaded) {
+                assertSame(loaded.get(0), c);
+                assertSame(loader, c.getClassLoader());
+            }
+            assertEquals(threads, loader.getLoadedClasses());
+            assertTrue(loader.getLoadingTime() >= 0);
+        } finally {
+            es.shutdownNow();
+        }
+    }
+
+    // only what the loader needs: no WEB-INF content, everything comes from the added url
+    private static <T> T stub(final Class<T> api) {
+        return api.cast(Proxy.newProxyInstance(TomEEWebappClassLoaderTest.class.getClassLoader(), new Class<?>[]{api}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                final Class<?> type = method.getReturnType();
+                if ("hashCode".equals(method.getName())) {
+                    return System.identityHashCode(proxy);
+                }
+                if ("equals".equals(method.getName())) {
+                    return proxy == args[0];
+                }
+                if (type == boolean.class) {
+                    return false;
+                }
+                if (type == int.class) {
+                    return 0;
+                }
+                if (type == long.class) {
+                    return 0L;
+                }
+                if (type.isArray()) {
+                    return Array.newInstance(type.getComponentType(), 0);
+                }
+                if (type == WebResource.class) {
+                    return stub(WebResource.class);
+                }
+                return null;
+            }
+        }));
+    }
+}
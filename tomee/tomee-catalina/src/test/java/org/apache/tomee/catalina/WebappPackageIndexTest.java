@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.catalina;
+
+import org.apache.openejb.loader.Files;
+import org.apache.openejb.loader.IO;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class WebappPackageIndexTest {
+    private File work;
+
+    @Before
+    public void mkdir() {
+        work = Files.mkdir(Files.tmpdir(), "WebappPackageIndexTest-" + System.nanoTime());
+    }
+
+    @After
+    public void delete() {
+        Files.delete(work);
+    }
+
+    @Test
+    public void hitsAndMisses() throws IOException {
+        final File classes = Files.mkdirs(new File(work, "classes/org/foo"));
+        IO.writeString(new File(classes, "Foo.class"), "");
+        IO.writeString(new File(classes, "foo.properties"), "");
+        final File lib = jar(new File(work, "lib.jar"), "org/bar/Bar.class", "Root.class", "META-INF/MANIFEST.MF");
+
+        final WebappPackageIndex index = WebappPackageIndex.build(null, new URL[]{
+            new File(work, "classes").toURI().toURL(), lib.toURI().toURL(), new File(work, "missing.jar").toURI().toURL()});
+        assertNotNull(index);
+        assertEquals(3, index.size());
+        assertTrue(index.isLocal("org.foo.Other"));
+        assertTrue(index.isLocal("org.bar.Bar"));
+        assertTrue(index.isLocal("Root"));
+        assertFalse(index.isLocal("org.foo.sub.Foo")); // packages are not hierarchical
+        assertFalse(index.isLocal("org.Foo"));
+        assertFalse(index.isLocal("java.lang.String"));
+        assertFalse(index.isLocal("META-INF.MANIFEST"));
+
+        final WebappPackageIndex added = index.with(jar(new File(work, "added.jar"), "org/added/Added.class").toURI().toURL());
+        assertNotNull(added);
+        assertTrue(added.isLocal("org.added.Added"));
+        assertFalse(index.isLocal("org.added.Added")); // immutable
+    }
+
+    @Test
+    public void unreadableJarDisablesTheIndex() throws IOException {
+        final File notAJar = new File(work, "broken.jar");
+        IO.writeString(notAJar, "not a zip");
+        assertNull(WebappPackageIndex.build(null, new URL[]{notAJar.toURI().toURL()}));
+    }
+
+    private static File jar(final File file, final String... entries) throws IOException {
+        try (final JarOutputStream out = new JarOutputStream(new FileOutputStream(file))) {
+            for (final String entry : entries) {
+                out.putNextEntry(new JarEntry(entry));
+                out.closeEntry();
+            }
+        }
+        return file;
+    }
+}